@@ -16,8 +16,10 @@
  */
 package org.apache.jackrabbit.oak;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.registerMBean;
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.registerObserver;
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.scheduleWithFixedDelay;
@@ -64,6 +66,8 @@ import org.apache.jackrabbit.oak.plugins.index.CompositeIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.index.ParallelReindex;
+import org.apache.jackrabbit.oak.plugins.index.ReindexStatsMBean;
 import org.apache.jackrabbit.oak.plugins.index.property.jmx.PropertyIndexAsyncReindex;
 import org.apache.jackrabbit.oak.plugins.index.property.jmx.PropertyIndexAsyncReindexMBean;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
@@ -295,11 +299,28 @@ public class Oak {
     };
 
     /**
-     * Flag controlling the asynchronous indexing behavior. If false (default)
-     * there will be no background indexing happening.
-     * 
+     * Default name of the asynchronous indexing lane, used for index
+     * definitions with {@code async = "async"}.
      */
-    private boolean asyncIndexing = false;
+    public static final String DEFAULT_ASYNC_LANE = "async";
+
+    /**
+     * Default delay in seconds between runs of an asynchronous indexing lane.
+     */
+    public static final long DEFAULT_ASYNC_DELAY = 5;
+
+    /**
+     * The asynchronous indexing lanes, with the delay in seconds between two
+     * runs of each lane. If empty (default) there will be no background
+     * indexing happening.
+     */
+    private final Map<String, Long> asyncLanes = newLinkedHashMap();
+
+    /**
+     * Number of threads used to reindex property indexes. With a single
+     * thread (default) reindexing happens in a single traversal.
+     */
+    private int reindexThreads = ParallelReindex.DEFAULT_THREADS;
 
     public Oak(NodeStore store) {
         this.store = checkNotNull(store);
@@ -499,7 +520,42 @@ public class Oak {
      *
      */
     public Oak withAsyncIndexing() {
-        this.asyncIndexing = true;
+        return withAsyncIndexing(DEFAULT_ASYNC_LANE, DEFAULT_ASYNC_DELAY);
+    }
+
+    /**
+     * Enable an asynchronous (background) indexing lane. Index definitions
+     * are assigned to a lane with their {@code async} property. Each lane
+     * keeps its own checkpoint and statistics, and runs as a separate
+     * background task, so that slow indexes of one lane don't delay the
+     * indexes of other lanes.
+     *
+     * @param name the name of the lane
+     * @param delayInSeconds the delay between two runs of the lane
+     * @return this builder
+     * @see #withAsyncIndexing()
+     */
+    @Nonnull
+    public Oak withAsyncIndexing(@Nonnull String name, long delayInSeconds) {
+        checkArgument(!name.isEmpty() && !name.startsWith(":")
+                && !IndexConstants.ASYNC_REINDEX_VALUE.equals(name),
+                "Invalid async indexing lane name: %s", name);
+        checkArgument(delayInSeconds > 0, "delay must be positive");
+        asyncLanes.put(name, delayInSeconds);
+        return this;
+    }
+
+    /**
+     * Enable parallel reindexing of property indexes with the given number
+     * of threads.
+     *
+     * @param threads the number of reindexing threads
+     * @return this builder
+     */
+    @Nonnull
+    public Oak withParallelReindex(int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.reindexThreads = threads;
         return this;
     }
 
@@ -521,17 +577,29 @@ public class Oak {
         initHooks.add(new EditorHook(CompositeEditorProvider
                 .compose(editorProviders)));
 
-        if (asyncIndexing) {
-            String name = "async";
-            AsyncIndexUpdate task = new AsyncIndexUpdate(name, store,
-                    indexEditors);
-            regs.add(scheduleWithFixedDelay(whiteboard, task, 5, true));
-            regs.add(registerMBean(whiteboard, IndexStatsMBean.class,
-                    task.getIndexStats(), IndexStatsMBean.TYPE, name));
+        ParallelReindex parallelReindex = null;
+        if (reindexThreads > 1) {
+            parallelReindex = new ParallelReindex(reindexThreads);
+            regs.add(registerMBean(whiteboard, ReindexStatsMBean.class,
+                    parallelReindex.getReindexStats(), ReindexStatsMBean.TYPE,
+                    "reindex"));
+        }
+
+        if (!asyncLanes.isEmpty()) {
+            for (Map.Entry<String, Long> lane : asyncLanes.entrySet()) {
+                String name = lane.getKey();
+                AsyncIndexUpdate task = new AsyncIndexUpdate(name, store,
+                        indexEditors).withParallelReindex(parallelReindex);
+                regs.add(scheduleWithFixedDelay(whiteboard, task, lane.getValue(), true));
+                regs.add(registerMBean(whiteboard, IndexStatsMBean.class,
+                        task.getIndexStats(), IndexStatsMBean.TYPE, name));
+            }
 
+            String name = DEFAULT_ASYNC_LANE;
             PropertyIndexAsyncReindex asyncPI = new PropertyIndexAsyncReindex(
                     new AsyncIndexUpdate(IndexConstants.ASYNC_REINDEX_VALUE,
-                            store, indexEditors, true), getExecutor());
+                            store, indexEditors, true)
+                            .withParallelReindex(parallelReindex), getExecutor());
             regs.add(registerMBean(whiteboard,
                     PropertyIndexAsyncReindexMBean.class, asyncPI,
                     PropertyIndexAsyncReindexMBean.TYPE, name));
@@ -554,7 +622,8 @@ public class Oak {
                 workspaceInitializers, store, defaultWorkspaceName, indexEditors);
 
         // add index hooks later to prevent the OakInitializer to do excessive indexing
-        with(new IndexUpdateProvider(indexEditors));
+        with(new IndexUpdateProvider(indexEditors)
+                .withParallelReindex(parallelReindex));
         withEditorHook();
 
         // Register observer last to prevent sending events while initialising
@@ -93,6 +93,8 @@ public class CacheLIRS<K, V> implements LoadingCache<K, V> {
     private final Weigher<K, V> weigher;
     
     private final CacheLoader<K, V> loader;
+
+    private final EvictionCallback<K, V> evicted;
     
     /**
      * Create a new cache with the given number of entries, and the default
@@ -114,10 +116,22 @@ public class CacheLIRS<K, V> implements LoadingCache<K, V> {
      * @param stackMoveDistance how many other item are to be moved to the top
      *        of the stack before the current item is moved
      */
-    @SuppressWarnings("unchecked")
     CacheLIRS(Weigher<K, V> weigher, long maxMemory, int averageMemory, 
             int segmentCount, int stackMoveDistance, final CacheLoader<K, V> loader) {
+        this(weigher, maxMemory, averageMemory, segmentCount,
+                stackMoveDistance, loader, null);
+    }
+
+    /**
+     * Create a new cache with the given memory size and an optional
+     * callback that is notified whenever a resident entry is evicted.
+     */
+    @SuppressWarnings("unchecked")
+    CacheLIRS(Weigher<K, V> weigher, long maxMemory, int averageMemory, 
+            int segmentCount, int stackMoveDistance, final CacheLoader<K, V> loader,
+            EvictionCallback<K, V> evicted) {
         this.weigher = weigher;
+        this.evicted = evicted;
         setMaxMemory(maxMemory);
         setAverageMemory(averageMemory);
         if (Integer.bitCount(segmentCount) != 1) {
@@ -1071,12 +1085,16 @@ public class CacheLIRS<K, V> implements LoadingCache<K, V> {
             // but at least one cold entry (the new one) must stay
             while (usedMemory > maxMemory && queueSize > 1) {
                 Entry<K, V> e = queue.queuePrev;
+                V value = e.value;
                 usedMemory -= e.memory;
                 evictionCount++;
                 removeFromQueue(e);
                 e.value = null;
                 e.memory = 0;
                 addToQueue(queue2, e);
+                if (cache.evicted != null) {
+                    cache.evicted.evicted(e.key, value);
+                }
                 // the size of the non-resident-cold entries needs to be limited
                 while (queue2Size + queue2Size > stackSize) {
                     e = queue2.queuePrev;
@@ -1334,6 +1352,27 @@ public class CacheLIRS<K, V> implements LoadingCache<K, V> {
 
     }
     
+    /**
+     * Listener for cache evictions.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public interface EvictionCallback<K, V> {
+
+        /**
+         * Called when a resident entry is evicted because the cache ran out
+         * of memory. The callback is invoked while holding the lock of the
+         * affected cache segment, so it should not block and must not access
+         * the cache again.
+         *
+         * @param key the key of the evicted entry
+         * @param value the value of the evicted entry
+         */
+        void evicted(K key, V value);
+
+    }
+
     /**
      * A builder for the cache.
      */
@@ -1342,6 +1381,7 @@ public class CacheLIRS<K, V> implements LoadingCache<K, V> {
         private Weigher<?, ?> weigher;
         private long maxWeight;
         private int averageWeight = 100;
+        private EvictionCallback<?, ?> evicted;
 
         public Builder recordStats() {
             return this;
@@ -1368,6 +1408,11 @@ public class CacheLIRS<K, V> implements LoadingCache<K, V> {
             return this;
         }
 
+        public <K, V> Builder evictionCallback(EvictionCallback<K, V> evicted) {
+            this.evicted = evicted;
+            return this;
+        }
+
         public <K, V> CacheLIRS<K, V> build() {
             return build(null);
         }
@@ -1376,7 +1421,10 @@ public class CacheLIRS<K, V> implements LoadingCache<K, V> {
                 CacheLoader<K, V> cacheLoader) {
             @SuppressWarnings("unchecked")
             Weigher<K, V> w = (Weigher<K, V>) weigher;
-            return new CacheLIRS<K, V>(w, maxWeight, averageWeight, 16, 16, cacheLoader);
+            @SuppressWarnings("unchecked")
+            EvictionCallback<K, V> e = (EvictionCallback<K, V>) evicted;
+            return new CacheLIRS<K, V>(w, maxWeight, averageWeight, 16, 16,
+                    cacheLoader, e);
         }
 
     }
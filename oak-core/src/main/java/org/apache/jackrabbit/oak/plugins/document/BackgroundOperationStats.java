@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.stats.PowerOfTwoHistogram;
+
+/**
+ * Timing statistics of the background operations of a
+ * {@link DocumentNodeStore}, kept in histograms with power-of-two
+ * millisecond buckets.
+ */
+class BackgroundOperationStats implements BackgroundOperationStatsMBean {
+
+    private static final int BUCKETS = 24;
+
+    final PowerOfTwoHistogram split = new PowerOfTwoHistogram(BUCKETS);
+
+    final PowerOfTwoHistogram write = new PowerOfTwoHistogram(BUCKETS);
+
+    final PowerOfTwoHistogram read = new PowerOfTwoHistogram(BUCKETS);
+
+    private final AtomicLong persistedLastRevCount = new AtomicLong();
+
+    private final AtomicLong persistTime = new AtomicLong();
+
+    private final DocumentNodeStore store;
+
+    BackgroundOperationStats(DocumentNodeStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Records that the background write persisted the _lastRev of the
+     * given number of paths in the given number of nanoseconds.
+     */
+    void lastRevPersisted(int paths, long nanos) {
+        persistedLastRevCount.addAndGet(paths);
+        persistTime.addAndGet(nanos);
+    }
+
+    //------------------------------------< BackgroundOperationStatsMBean >--
+
+    @Override
+    public int getSplitCandidateCount() {
+        return store.getSplitCandidateCount();
+    }
+
+    @Override
+    public long getSplitCount() {
+        return split.getCount();
+    }
+
+    @Override
+    public long getMeanSplitTime() {
+        return split.getMean();
+    }
+
+    @Override
+    public long getMaxSplitTime() {
+        return split.getMax();
+    }
+
+    @Override
+    public long[] getSplitTimeHistogram() {
+        return split.getHistogram();
+    }
+
+    @Override
+    public long getWriteCount() {
+        return write.getCount();
+    }
+
+    @Override
+    public long getMeanWriteTime() {
+        return write.getMean();
+    }
+
+    @Override
+    public long getMaxWriteTime() {
+        return write.getMax();
+    }
+
+    @Override
+    public long[] getWriteTimeHistogram() {
+        return write.getHistogram();
+    }
+
+    @Override
+    public long getPersistedLastRevCount() {
+        return persistedLastRevCount.get();
+    }
+
+    @Override
+    public long getLastRevPersistRate() {
+        long nanos = persistTime.get();
+        if (nanos == 0) {
+            return 0;
+        }
+        return persistedLastRevCount.get() * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public long getReadCount() {
+        return read.getCount();
+    }
+
+    @Override
+    public long getMeanReadTime() {
+        return read.getMean();
+    }
+
+    @Override
+    public long getMaxReadTime() {
+        return read.getMax();
+    }
+
+    @Override
+    public long[] getReadTimeHistogram() {
+        return read.getHistogram();
+    }
+
+    @Override
+    public long getTimePercentile(String operation, int percentile) {
+        PowerOfTwoHistogram timer;
+        if ("split".equals(operation)) {
+            timer = split;
+        } else if ("write".equals(operation)) {
+            timer = write;
+        } else if ("read".equals(operation)) {
+            timer = read;
+        } else {
+            throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+        return timer.getPercentile(percentile);
+    }
+}
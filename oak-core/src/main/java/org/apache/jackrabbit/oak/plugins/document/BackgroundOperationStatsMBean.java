@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+/**
+ * MBean exposing the timing of the background operations of a
+ * {@link DocumentNodeStore}. The split, write and read operations are
+ * scheduled independently and each have their own statistics. All times
+ * are in milliseconds.
+ */
+public interface BackgroundOperationStatsMBean {
+    String TYPE = "DocumentNodeStoreBackgroundOperationStats";
+
+    /**
+     * @return  number of documents waiting to be split
+     */
+    int getSplitCandidateCount();
+
+    /**
+     * @return  number of background split operations
+     */
+    long getSplitCount();
+
+    /**
+     * @return  mean time of the background split operations
+     */
+    long getMeanSplitTime();
+
+    /**
+     * @return  maximum time of the background split operations
+     */
+    long getMaxSplitTime();
+
+    /**
+     * @return  histogram of the background split times
+     * @see #getReadTimeHistogram()
+     */
+    long[] getSplitTimeHistogram();
+
+    /**
+     * @return  number of background write operations
+     */
+    long getWriteCount();
+
+    /**
+     * @return  mean time of the background write operations
+     */
+    long getMeanWriteTime();
+
+    /**
+     * @return  maximum time of the background write operations
+     */
+    long getMaxWriteTime();
+
+    /**
+     * @return  histogram of the background write times
+     * @see #getReadTimeHistogram()
+     */
+    long[] getWriteTimeHistogram();
+
+    /**
+     * @return  number of paths with a _lastRev persisted by the background
+     *          write operations
+     */
+    long getPersistedLastRevCount();
+
+    /**
+     * @return  average number of paths per second with a _lastRev persisted
+     *          by the background write operations
+     */
+    long getLastRevPersistRate();
+
+    /**
+     * @return  number of background read operations
+     */
+    long getReadCount();
+
+    /**
+     * @return  mean time of the background read operations
+     */
+    long getMeanReadTime();
+
+    /**
+     * @return  maximum time of the background read operations
+     */
+    long getMaxReadTime();
+
+    /**
+     * Histogram of the background read times. The entry at index {@code i}
+     * is the number of operations that took between 2<sup>i</sup>
+     * (inclusive) and 2<sup>i+1</sup> (exclusive) milliseconds, with the
+     * first entry also including operations faster than one millisecond.
+     *
+     * @return  histogram of the background read times
+     */
+    long[] getReadTimeHistogram();
+
+    /**
+     * @param operation   one of "split", "write" or "read"
+     * @param percentile  percentile between 0 and 100
+     * @return  upper bound in milliseconds of the histogram bucket that
+     *          contains the given percentile of operation times, or zero
+     *          if the operation did not run yet
+     */
+    long getTimePercentile(String operation, int percentile);
+}
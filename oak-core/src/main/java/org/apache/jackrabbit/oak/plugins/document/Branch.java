@@ -190,6 +190,21 @@ class Branch {
         }
     }
 
+    /**
+     * @return the paths modified by the commits of this branch.
+     */
+    @Nonnull
+    Iterable<String> getModifiedPaths() {
+        Iterable<Iterable<String>> paths = transform(commits.values(),
+                new Function<BranchCommit, Iterable<String>>() {
+            @Override
+            public Iterable<String> apply(BranchCommit branchCommit) {
+                return branchCommit.getModifiedPaths();
+            }
+        });
+        return Iterables.concat(paths);
+    }
+
     /**
      * Gets the most recent unsaved last revision at <code>readRevision</code>
      * or earlier in this branch for the given <code>path</code>.
@@ -326,8 +326,8 @@ public class Commit {
                 // again when the _revisions entry is set at the end
                 NodeDocument.setCommitRoot(op, revision, commitRootDepth);
                 opLog.add(op);
-                createOrUpdateNode(store, op);
             }
+            createOrUpdateNodes(store, changedNodes);
             // finally write the commit root, unless it was already written
             // with added nodes (the commit root might be written twice,
             // first to check if there was a conflict, and only then to commit
@@ -428,6 +428,28 @@ public class Commit {
         checkSplitCandidate(doc);
     }
 
+    /**
+     * Try to create or update the nodes with as few calls to the store as
+     * possible. If there was a conflict, this method throws an exception,
+     * even though the changes are still applied.
+     *
+     * @param store the store
+     * @param ops the operations
+     */
+    private void createOrUpdateNodes(DocumentStore store, List<UpdateOp> ops) {
+        if (ops.size() == 1) {
+            createOrUpdateNode(store, ops.get(0));
+            return;
+        } else if (ops.isEmpty()) {
+            return;
+        }
+        List<NodeDocument> docs = store.createOrUpdate(NODES, ops);
+        for (int i = 0; i < ops.size(); i++) {
+            checkConflicts(ops.get(i), docs.get(i));
+            checkSplitCandidate(docs.get(i));
+        }
+    }
+
     private void checkSplitCandidate(@Nullable NodeDocument doc) {
         if (doc != null && doc.getMemory() > SPLIT_CANDIDATE_THRESHOLD) {
             nodeStore.addSplitCandidate(doc.getId());
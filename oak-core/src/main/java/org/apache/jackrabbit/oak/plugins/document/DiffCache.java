@@ -57,6 +57,20 @@ public interface DiffCache {
     Entry newEntry(@Nonnull Revision from,
                           @Nonnull Revision to);
 
+    /**
+     * Starts a new cache entry for changes made by another cluster node or
+     * for a diff computed from the node states. Unlike entries created with
+     * {@link #newEntry(Revision, Revision)}, these entries are only kept by
+     * the local cache.
+     *
+     * @param from the from revision.
+     * @param to the to revision.
+     * @return the cache entry.
+     */
+    @Nonnull
+    Entry newExternalEntry(@Nonnull Revision from,
+                           @Nonnull Revision to);
+
     public interface Entry {
 
         /**
@@ -39,6 +39,10 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -74,6 +78,7 @@ import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.kernel.BlobSerializer;
 import org.apache.jackrabbit.oak.plugins.document.Branch.BranchCommit;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.plugins.document.util.LoggingDocumentStoreWrapper;
 import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
 import org.apache.jackrabbit.oak.plugins.document.util.TimingDocumentStoreWrapper;
@@ -88,6 +93,7 @@ import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.apache.jackrabbit.oak.stats.Clock;
+import org.apache.jackrabbit.oak.stats.PowerOfTwoHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -122,6 +128,36 @@ public final class DocumentNodeStore
      */
     static final int REMEMBER_REVISION_ORDER_MILLIS = 60 * 60 * 1000;
 
+    /**
+     * How long journal entries are kept, in milliseconds. Entries of all
+     * cluster nodes are removed once older. The default is one day.
+     */
+    static final long JOURNAL_MAX_AGE_MILLIS = Long.getLong(
+            "oak.documentMK.journalMaxAge", TimeUnit.DAYS.toMillis(1));
+
+    /**
+     * How often old journal entries are removed, in milliseconds.
+     */
+    static final long JOURNAL_GC_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * External changes with at most this many changed paths are added to
+     * the diff cache by the background read.
+     */
+    static final int EXTERNAL_DIFF_CACHE_LIMIT = 1000;
+
+    /**
+     * Number of threads splitting documents in the background.
+     */
+    static final int SPLIT_THREADS = Integer.getInteger(
+            "oak.documentMK.splitThreads", 4);
+
+    /**
+     * Number of split candidates processed by a single split thread in one
+     * batch.
+     */
+    static final int SPLIT_BATCH_SIZE = 100;
+
     /**
      * The document store (might be used by multiple node stores).
      */
@@ -197,6 +233,31 @@ public final class DocumentNodeStore
      */
     private final UnsavedModifications unsavedLastRevisions = new UnsavedModifications();
 
+    /**
+     * The paths changed by commits of this cluster node since the last
+     * journal entry was written. Commits add to this set while holding the
+     * shared {@link #backgroundOperationLock}, the background write takes it
+     * while holding the exclusive lock.
+     */
+    private final Set<String> journalPaths =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Set when more paths changed than a journal entry can hold.
+     */
+    private volatile boolean journalOverflow;
+
+    /**
+     * The root _lastRev of this cluster node when the last journal entry
+     * was written.
+     */
+    private Revision journalPrevious;
+
+    /**
+     * The time of the last removal of old journal entries.
+     */
+    private long lastJournalGC;
+
     /**
      * Set of IDs for documents that may need to be split.
      */
@@ -215,7 +276,23 @@ public final class DocumentNodeStore
      */
     private volatile Revision headRevision;
 
-    private Thread backgroundThread;
+    private final List<Thread> backgroundThreads = Lists.newArrayList();
+
+    /**
+     * Monitors serializing each kind of background operation. Different
+     * kinds of operations run concurrently.
+     */
+    private final Object backgroundSplitMonitor = new Object();
+    private final Object backgroundWriteMonitor = new Object();
+    private final Object backgroundReadMonitor = new Object();
+
+    /**
+     * Splits batches of candidate documents in parallel.
+     */
+    private final ThreadPoolExecutor splitExecutor;
+
+    private final BackgroundOperationStats backgroundOperationStats =
+            new BackgroundOperationStats(this);
 
     /**
      * Background thread performing the clusterId lease renew.
@@ -406,15 +483,43 @@ public final class DocumentNodeStore
         dispatcher = new ChangeDispatcher(getRoot());
         commitQueue = new CommitQueue(this, dispatcher);
         batchCommitQueue = new BatchCommitQueue(store, revisionComparator);
-        backgroundThread = new Thread(
-                new BackgroundOperation(this, isDisposed),
-                "DocumentNodeStore background thread");
-        backgroundThread.setDaemon(true);
+        backgroundThreads.add(new Thread(
+                new BackgroundSplitOperation(this, isDisposed),
+                "DocumentNodeStore background split thread"));
+        backgroundThreads.add(new Thread(
+                new BackgroundWriteOperation(this, isDisposed),
+                "DocumentNodeStore background write thread"));
+        backgroundThreads.add(new Thread(
+                new BackgroundReadOperation(this, isDisposed),
+                "DocumentNodeStore background read thread"));
+        for (Thread t : backgroundThreads) {
+            t.setDaemon(true);
+        }
+        splitExecutor = new ThreadPoolExecutor(SPLIT_THREADS, SPLIT_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, "DocumentNodeStore split thread "
+                        + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        splitExecutor.allowCoreThreadTimeOut(true);
         checkLastRevRecovery();
+        // the next journal entry continues from the current root _lastRev
+        NodeDocument rootDoc = store.find(NODES, Utils.getIdFromPath("/"), 0);
+        if (rootDoc != null) {
+            journalPrevious = rootDoc.getLastRev().get(clusterId);
+        }
         // Renew the lease because it may have been stale
         renewClusterIdLease();
 
-        backgroundThread.start();
+        for (Thread t : backgroundThreads) {
+            t.start();
+        }
 
         if (clusterNodeInfo != null) {
             leaseUpdateThread = new Thread(
@@ -440,11 +545,14 @@ public final class DocumentNodeStore
             synchronized (isDisposed) {
                 isDisposed.notifyAll();
             }
-            try {
-                backgroundThread.join();
-            } catch (InterruptedException e) {
-                // ignore
+            for (Thread t : backgroundThreads) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
             }
+            splitExecutor.shutdown();
             if (leaseUpdateThread != null) {
                 try {
                     leaseUpdateThread.join();
@@ -762,25 +870,29 @@ public final class DocumentNodeStore
         for (;;) {
             docs = readChildDocs(path, name, rawLimit);
             int numReturned = 0;
-            for (NodeDocument doc : docs) {
-                numReturned++;
-                String p = doc.getPath();
-                // remember name of last returned document for
-                // potential next round of readChildDocs()
-                name = PathUtils.getName(p);
-                // filter out deleted children
-                DocumentNodeState child = getNode(p, rev);
-                if (child == null) {
-                    continue;
-                }
-                if (c.children.size() < limit) {
-                    // add to children until limit is reached
-                    c.children.add(Utils.unshareString(PathUtils.getName(p)));
-                } else {
-                    // enough collected and we know there are more
-                    c.hasMore = true;
-                    return c;
+            try {
+                for (NodeDocument doc : docs) {
+                    numReturned++;
+                    String p = doc.getPath();
+                    // remember name of last returned document for
+                    // potential next round of readChildDocs()
+                    name = PathUtils.getName(p);
+                    // filter out deleted children
+                    DocumentNodeState child = getNode(p, rev);
+                    if (child == null) {
+                        continue;
+                    }
+                    if (c.children.size() < limit) {
+                        // add to children until limit is reached
+                        c.children.add(Utils.unshareString(PathUtils.getName(p)));
+                    } else {
+                        // enough collected and we know there are more
+                        c.hasMore = true;
+                        return c;
+                    }
                 }
+            } finally {
+                Utils.closeIfCloseable(docs);
             }
             // if we get here we have less than or equal the requested children
             if (numReturned < rawLimit) {
@@ -817,8 +929,9 @@ public final class DocumentNodeStore
         }
         if (name != null || limit > NUM_CHILDREN_CACHE_LIMIT) {
             // do not use cache when there is a lower bound name
-            // or more than 16k child docs are requested
-            return store.query(Collection.NODES, from, to, limit);
+            // or more than 16k child docs are requested. stream the
+            // documents instead of reading them all at once
+            return store.stream(Collection.NODES, from, to, null, 0, limit, true);
         }
         StringValue key = new StringValue(path);
         // check cache
@@ -934,6 +1047,9 @@ public final class DocumentNodeStore
                              boolean isBranchCommit, List<String> added,
                              List<String> removed, List<String> changed,
                              DiffCache.Entry cacheEntry) {
+        if (!isBranchCommit) {
+            addJournalPath(path);
+        }
         LastRevTracker tracker = createTracker(rev);
         if (disableBranches) {
             if (pendingLastRev) {
@@ -1195,6 +1311,9 @@ public final class DocumentNodeStore
                 if (store.findAndUpdate(Collection.NODES, op) != null) {
                     // remove from branchCommits map after successful update
                     b.applyTo(getPendingModifications(), commit.getRevision());
+                    for (String p : b.getModifiedPaths()) {
+                        addJournalPath(p);
+                    }
                     getBranches().remove(b);
                 } else {
                     throw new CommitFailedException(MERGE, 2,
@@ -1232,10 +1351,26 @@ public final class DocumentNodeStore
                 node.getLastRevision(), node.getPath());
         if (diff == null) {
             diff = diffImpl(base, node);
+            cacheDiff(base.getLastRevision(), node.getLastRevision(),
+                    node.getPath(), diff);
         }
         return diff;
     }
 
+    /**
+     * Puts a diff computed by this node store into the diff cache. The diff
+     * is only kept locally and, if configured, in the persistent cache,
+     * where it survives a restart.
+     */
+    private void cacheDiff(@Nonnull Revision from,
+                           @Nonnull Revision to,
+                           @Nonnull String path,
+                           @Nonnull String diff) {
+        DiffCache.Entry entry = diffCache.newExternalEntry(from, to);
+        entry.append(path, diff);
+        entry.done();
+    }
+
     String diff(@Nonnull final String fromRevisionId,
                 @Nonnull final String toRevisionId,
                 @Nonnull final String path) throws DocumentStoreException {
@@ -1257,6 +1392,7 @@ public final class DocumentNodeStore
         if (compactDiff == null) {
             // calculate the diff
             compactDiff = diffImpl(from, to);
+            cacheDiff(fromRev, toRev, path, compactDiff);
         }
         JsopWriter writer = new JsopStream();
         diffProperties(from, to, writer);
@@ -1394,46 +1530,116 @@ public final class DocumentNodeStore
 
     //----------------------< background operations >---------------------------
 
+    /**
+     * Runs the background split, write and read operations one after
+     * another. Usually these operations are scheduled independently by
+     * separate background threads.
+     */
     public synchronized void runBackgroundOperations() {
-        if (isDisposed.get()) {
+        runBackgroundSplitOperations();
+        runBackgroundWriteOperations();
+        runBackgroundReadOperations();
+    }
+
+    /**
+     * Splits documents with many revisions. Does not create new revisions.
+     */
+    void runBackgroundSplitOperations() {
+        if (!isBackgroundOperationEnabled()) {
             return;
         }
-        if (simpleRevisionCounter != null) {
-            // only when using timestamp
-            return;
+        synchronized (backgroundSplitMonitor) {
+            try {
+                long time = clock.getTime();
+                backgroundSplit();
+                logAndRecord("split", backgroundOperationStats.split,
+                        clock.getTime() - time);
+            } catch (RuntimeException e) {
+                if (isDisposed.get()) {
+                    return;
+                }
+                throw e;
+            }
         }
-        if (!ENABLE_BACKGROUND_OPS) {
+    }
+
+    /**
+     * Writes back pending updates to _lastRev.
+     */
+    void runBackgroundWriteOperations() {
+        if (!isBackgroundOperationEnabled()) {
             return;
         }
-        try {
-            long start = clock.getTime();
-            long time = start;
-            // split documents (does not create new revisions)
-            backgroundSplit();
-            long splitTime = clock.getTime() - time;
-            time = clock.getTime();
-            // write back pending updates to _lastRev
-            backgroundWrite();
-            long writeTime = clock.getTime() - time;
-            time = clock.getTime();
-            // pull in changes from other cluster nodes
-            backgroundRead(true);
-            long readTime = clock.getTime() - time;
-            String msg = "Background operations stats (split:{}, write:{}, read:{})";
-            if (clock.getTime() - start > TimeUnit.SECONDS.toMillis(10)) {
-                // log as info if it took more than 10 seconds
-                LOG.info(msg, splitTime, writeTime, readTime);
-            } else {
-                LOG.debug(msg, splitTime, writeTime, readTime);
+        synchronized (backgroundWriteMonitor) {
+            try {
+                long time = clock.getTime();
+                backgroundWrite();
+                logAndRecord("write", backgroundOperationStats.write,
+                        clock.getTime() - time);
+            } catch (RuntimeException e) {
+                if (isDisposed.get()) {
+                    return;
+                }
+                throw e;
             }
-        } catch (RuntimeException e) {
-            if (isDisposed.get()) {
-                return;
+        }
+    }
+
+    /**
+     * Pulls in changes from other cluster nodes.
+     */
+    void runBackgroundReadOperations() {
+        if (!isBackgroundOperationEnabled()) {
+            return;
+        }
+        synchronized (backgroundReadMonitor) {
+            try {
+                long time = clock.getTime();
+                backgroundRead(true);
+                logAndRecord("read", backgroundOperationStats.read,
+                        clock.getTime() - time);
+            } catch (RuntimeException e) {
+                if (isDisposed.get()) {
+                    return;
+                }
+                throw e;
             }
-            throw e;
         }
     }
 
+    private boolean isBackgroundOperationEnabled() {
+        if (isDisposed.get()) {
+            return false;
+        }
+        if (simpleRevisionCounter != null) {
+            // only when using timestamp
+            return false;
+        }
+        return ENABLE_BACKGROUND_OPS;
+    }
+
+    private static void logAndRecord(String operation,
+                                     PowerOfTwoHistogram timer,
+                                     long time) {
+        timer.record(time);
+        String msg = "Background {} operation took {} ms";
+        if (time > TimeUnit.SECONDS.toMillis(10)) {
+            // log as info if it took more than 10 seconds
+            LOG.info(msg, operation, time);
+        } else {
+            LOG.debug(msg, operation, time);
+        }
+    }
+
+    @Nonnull
+    public BackgroundOperationStatsMBean getBackgroundOperationStats() {
+        return backgroundOperationStats;
+    }
+
+    int getSplitCandidateCount() {
+        return splitCandidates.size();
+    }
+
     void renewClusterIdLease() {
         if (clusterNodeInfo == null) {
             return;
@@ -1462,6 +1668,9 @@ public final class DocumentNodeStore
         Revision otherSeen = Revision.newRevision(0);
 
         Map<Revision, Revision> externalChanges = Maps.newHashMap();
+        // the previously known _lastRev of other cluster nodes for each
+        // new _lastRev, to look up the changes in the journal
+        Map<Revision, Revision> previousRevisions = Maps.newHashMap();
         for (Map.Entry<Integer, Revision> e : lastRevMap.entrySet()) {
             int machineId = e.getKey();
             if (machineId == clusterId) {
@@ -1473,19 +1682,30 @@ public final class DocumentNodeStore
             if (last == null || r.compareRevisionTime(last) > 0) {
                 lastKnownRevision.put(machineId, r);
                 externalChanges.put(r, otherSeen);
+                previousRevisions.put(r, last);
             }
         }
 
         if (!externalChanges.isEmpty()) {
+            Set<String> changedPaths = readJournal(previousRevisions);
             // invalidate caches
-            store.invalidateCache();
-            // TODO only invalidate affected items
-            docChildrenCache.invalidateAll();
+            if (changedPaths == null) {
+                store.invalidateCache();
+                docChildrenCache.invalidateAll();
+            } else {
+                for (String p : changedPaths) {
+                    store.invalidateCache(NODES, Utils.getIdFromPath(p));
+                    docChildrenCache.invalidate(new StringValue(p));
+                }
+            }
 
+            Revision oldHead;
+            Revision newHead;
             // make sure update to revision comparator is atomic
             // and no local commit is in progress
             backgroundOperationLock.writeLock().lock();
             try {
+                oldHead = headRevision;
                 // the latest revisions of the current cluster node
                 // happened before the latest revisions of other cluster nodes
                 revisionComparator.add(newRevision(), headSeen);
@@ -1494,42 +1714,254 @@ public final class DocumentNodeStore
                     revisionComparator.add(e.getKey(), e.getValue());
                 }
                 // the new head revision is after other revisions
-                setHeadRevision(newRevision());
+                newHead = newRevision();
+                setHeadRevision(newHead);
                 if (dispatchChange) {
                     dispatcher.contentChanged(getRoot(), null);
                 }
             } finally {
                 backgroundOperationLock.writeLock().unlock();
             }
+            // observers compare the new root asynchronously, they will
+            // most likely find the external changes in the diff cache
+            if (dispatchChange && changedPaths != null
+                    && changedPaths.size() <= EXTERNAL_DIFF_CACHE_LIMIT) {
+                applyExternalChanges(changedPaths, oldHead, newHead);
+            }
         }
         revisionComparator.purge(Revision.getCurrentTimestamp() - REMEMBER_REVISION_ORDER_MILLIS);
     }
 
     private void backgroundSplit() {
-        for (Iterator<String> it = splitCandidates.keySet().iterator(); it.hasNext();) {
-            String id = it.next();
-            NodeDocument doc = store.find(Collection.NODES, id);
-            if (doc == null) {
-                continue;
+        List<String> candidates = Lists.newArrayList(splitCandidates.keySet());
+        if (candidates.size() <= SPLIT_BATCH_SIZE) {
+            split(candidates);
+            return;
+        }
+        // split batches of candidates in parallel
+        List<Future<?>> futures = Lists.newArrayList();
+        for (final List<String> batch : Lists.partition(candidates, SPLIT_BATCH_SIZE)) {
+            futures.add(splitExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    split(batch);
+                }
+            }));
+        }
+        RuntimeException failure = null;
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        failure = (RuntimeException) cause;
+                    } else {
+                        failure = new RuntimeException(cause);
+                    }
+                }
             }
-            for (UpdateOp op : doc.split(this)) {
-                NodeDocument before = store.createOrUpdate(Collection.NODES, op);
-                if (before != null) {
-                    NodeDocument after = store.find(Collection.NODES, op.getId());
-                    if (after != null) {
-                        LOG.debug("Split operation on {}. Size before: {}, after: {}",
-                                id, before.getMemory(), after.getMemory());
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void split(List<String> ids) {
+        for (String id : ids) {
+            NodeDocument doc = store.find(Collection.NODES, id);
+            if (doc != null) {
+                for (UpdateOp op : doc.split(this)) {
+                    NodeDocument before = store.createOrUpdate(Collection.NODES, op);
+                    if (before != null) {
+                        NodeDocument after = store.find(Collection.NODES, op.getId());
+                        if (after != null) {
+                            LOG.debug("Split operation on {}. Size before: {}, after: {}",
+                                    id, before.getMemory(), after.getMemory());
+                        }
+                    } else {
+                        LOG.debug("Split operation created {}", op.getId());
                     }
-                } else {
-                    LOG.debug("Split operation created {}", op.getId());
                 }
             }
-            it.remove();
+            splitCandidates.remove(id);
         }
     }
 
     void backgroundWrite() {
-        unsavedLastRevisions.persist(this, backgroundOperationLock.writeLock());
+        long start = System.nanoTime();
+        int num = unsavedLastRevisions.persist(this, new UnsavedModifications.Snapshot() {
+
+            private UpdateOp journalEntry;
+
+            @Override
+            public void acquiring(Revision rootRevision) {
+                journalEntry = newJournalEntry(rootRevision);
+            }
+
+            @Override
+            public void acquired() {
+                if (journalEntry != null) {
+                    writeJournalEntry(journalEntry);
+                }
+            }
+        }, backgroundOperationLock.writeLock());
+        if (num > 0) {
+            backgroundOperationStats.lastRevPersisted(num, System.nanoTime() - start);
+        }
+
+        long now = clock.getTime();
+        if (now - lastJournalGC > JOURNAL_GC_INTERVAL_MILLIS) {
+            lastJournalGC = now;
+            int removed = JournalEntry.removeOlderThan(
+                    store, now - JOURNAL_MAX_AGE_MILLIS);
+            if (removed > 0) {
+                LOG.debug("Removed {} old journal entries", removed);
+            }
+        }
+    }
+
+    //------------------------------< journal >---------------------------------
+
+    private void addJournalPath(String path) {
+        if (journalOverflow) {
+            return;
+        }
+        journalPaths.add(path);
+        if (journalPaths.size() > JournalEntry.MAX_PATHS) {
+            journalOverflow = true;
+            journalPaths.clear();
+        }
+    }
+
+    /**
+     * Creates a journal entry with the paths changed since the last entry
+     * and resets the changed paths. Called by the background write while
+     * holding the exclusive {@link #backgroundOperationLock}, so that the
+     * entry covers exactly the changes up to the given revision.
+     *
+     * @param rootRevision the revision the root _lastRev will be updated to.
+     * @return the journal entry or {@code null} if there is none to write.
+     */
+    @CheckForNull
+    private UpdateOp newJournalEntry(@Nullable Revision rootRevision) {
+        if (rootRevision == null
+                || (journalPaths.isEmpty() && !journalOverflow)) {
+            return null;
+        }
+        Set<String> paths = null;
+        if (!journalOverflow) {
+            paths = Sets.newHashSet(journalPaths);
+        }
+        UpdateOp op = JournalEntry.newEntry(rootRevision, journalPrevious, paths);
+        journalPaths.clear();
+        journalOverflow = false;
+        journalPrevious = rootRevision;
+        return op;
+    }
+
+    /**
+     * Writes a journal entry created by {@link #newJournalEntry(Revision)}.
+     * Called by the background write after releasing the
+     * {@link #backgroundOperationLock}, so that commits are not blocked by
+     * the write, and before the root _lastRev is updated. If the write
+     * fails, the _lastRev is not updated either and the changes are
+     * covered by the next journal entry, which is marked as incomplete.
+     *
+     * @param op the journal entry.
+     */
+    private void writeJournalEntry(@Nonnull UpdateOp op) {
+        try {
+            if (!store.create(Collection.JOURNAL, Collections.singletonList(op))) {
+                LOG.warn("Journal entry {} already exists", op.getId());
+            }
+        } catch (RuntimeException e) {
+            journalOverflow = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the paths changed by other cluster nodes from the journal.
+     *
+     * @param previousRevisions the new root _lastRev of other cluster nodes
+     *                          mapped to the previously known one.
+     * @return the changed paths or {@code null} if the journal does not
+     *          cover all changes.
+     */
+    @CheckForNull
+    private Set<String> readJournal(Map<Revision, Revision> previousRevisions) {
+        Set<String> paths = Sets.newHashSet();
+        try {
+            for (Map.Entry<Revision, Revision> e : previousRevisions.entrySet()) {
+                if (e.getValue() == null) {
+                    return null;
+                }
+                Set<String> changed = JournalEntry.getChangedPaths(
+                        store, e.getValue(), e.getKey());
+                if (changed == null) {
+                    return null;
+                }
+                paths.addAll(changed);
+                if (paths.size() > JournalEntry.MAX_PATHS) {
+                    return null;
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to read journal, invalidating all caches", e);
+            return null;
+        }
+        return paths;
+    }
+
+    /**
+     * Adds the child node changes between two head revisions to the diff
+     * cache, given the paths changed by other cluster nodes in between.
+     */
+    private void applyExternalChanges(Set<String> changedPaths,
+                                      Revision from, Revision to) {
+        Map<String, List<String>> changedChildren = Maps.newHashMap();
+        for (String p : changedPaths) {
+            if (PathUtils.denotesRoot(p)) {
+                continue;
+            }
+            String parent = PathUtils.getParentPath(p);
+            List<String> children = changedChildren.get(parent);
+            if (children == null) {
+                children = Lists.newArrayList();
+                changedChildren.put(parent, children);
+            }
+            children.add(p);
+        }
+        for (Map.Entry<String, List<String>> e : changedChildren.entrySet()) {
+            DocumentNodeState before = getNode(e.getKey(), from);
+            DocumentNodeState after = getNode(e.getKey(), to);
+            if (before == null || after == null
+                    || before.getLastRevision().equals(after.getLastRevision())) {
+                continue;
+            }
+            JsopWriter w = new JsopStream();
+            for (String p : e.getValue()) {
+                boolean existed = getNode(p, from) != null;
+                boolean exists = getNode(p, to) != null;
+                String name = PathUtils.getName(p);
+                if (existed && exists) {
+                    w.tag('^').key(name).object().endObject().newline();
+                } else if (exists) {
+                    w.tag('+').key(name).object().endObject().newline();
+                } else if (existed) {
+                    w.tag('-').value(name).newline();
+                }
+            }
+            DiffCache.Entry entry = diffCache.newExternalEntry(
+                    before.getLastRevision(), after.getLastRevision());
+            entry.append(e.getKey(), w.toString());
+            entry.done();
+        }
     }
 
     //-----------------------------< internal >---------------------------------
@@ -1607,9 +2039,16 @@ public final class DocumentNodeStore
         String fromKey = Utils.getKeyLowerLimit(path);
         String toKey = Utils.getKeyUpperLimit(path);
         Set<String> paths = Sets.newHashSet();
-        for (NodeDocument doc : store.query(Collection.NODES, fromKey, toKey,
-                NodeDocument.MODIFIED_IN_SECS, minValue, Integer.MAX_VALUE)) {
-            paths.add(doc.getPath());
+        // the documents are read again by getNode(), keep them in the cache
+        CloseableIterable<NodeDocument> docs = store.stream(Collection.NODES,
+                fromKey, toKey, NodeDocument.MODIFIED_IN_SECS, minValue,
+                Integer.MAX_VALUE, true);
+        try {
+            for (NodeDocument doc : docs) {
+                paths.add(doc.getPath());
+            }
+        } finally {
+            Utils.closeIfCloseable(docs);
         }
         // also consider nodes with not yet stored modifications (OAK-1107)
         Revision minRev = new Revision(minTimestamp, 0, getClusterId());
@@ -1813,18 +2252,50 @@ public final class DocumentNodeStore
     }
 
     /**
-     * Background operations.
+     * Background split operations.
+     */
+    static class BackgroundSplitOperation extends NodeStoreTask {
+
+        BackgroundSplitOperation(DocumentNodeStore nodeStore,
+                                 AtomicBoolean isDisposed) {
+            super(nodeStore, isDisposed);
+        }
+
+        @Override
+        protected void execute(@Nonnull DocumentNodeStore nodeStore) {
+            nodeStore.runBackgroundSplitOperations();
+        }
+    }
+
+    /**
+     * Background write operations.
+     */
+    static class BackgroundWriteOperation extends NodeStoreTask {
+
+        BackgroundWriteOperation(DocumentNodeStore nodeStore,
+                                 AtomicBoolean isDisposed) {
+            super(nodeStore, isDisposed);
+        }
+
+        @Override
+        protected void execute(@Nonnull DocumentNodeStore nodeStore) {
+            nodeStore.runBackgroundWriteOperations();
+        }
+    }
+
+    /**
+     * Background read operations.
      */
-    static class BackgroundOperation extends NodeStoreTask {
+    static class BackgroundReadOperation extends NodeStoreTask {
 
-        BackgroundOperation(DocumentNodeStore nodeStore,
-                            AtomicBoolean isDisposed) {
+        BackgroundReadOperation(DocumentNodeStore nodeStore,
+                                AtomicBoolean isDisposed) {
             super(nodeStore, isDisposed);
         }
 
         @Override
         protected void execute(@Nonnull DocumentNodeStore nodeStore) {
-            nodeStore.runBackgroundOperations();
+            nodeStore.runBackgroundReadOperations();
         }
     }
 
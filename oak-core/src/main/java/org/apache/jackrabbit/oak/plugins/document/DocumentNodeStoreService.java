@@ -50,6 +50,8 @@ import org.apache.jackrabbit.oak.plugins.blob.BlobGC;
 import org.apache.jackrabbit.oak.plugins.blob.BlobGCMBean;
 import org.apache.jackrabbit.oak.plugins.blob.BlobGarbageCollector;
 import org.apache.jackrabbit.oak.plugins.document.cache.CachingDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.mongo.ReadPreferenceStatsMBean;
 import org.apache.jackrabbit.oak.plugins.document.util.MongoConnection;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.apache.jackrabbit.oak.spi.blob.GarbageCollectableBlobStore;
@@ -405,6 +407,13 @@ public class DocumentNodeStoreService {
                         CacheStatsMBean.TYPE,
                         store.getDocChildrenCacheStats().getName())
         );
+        registrations.add(
+                registerMBean(whiteboard,
+                        BackgroundOperationStatsMBean.class,
+                        store.getBackgroundOperationStats(),
+                        BackgroundOperationStatsMBean.TYPE,
+                        "Document node store background operation statistics")
+        );
         DiffCache cl = store.getDiffCache();
         if (cl instanceof MemoryDiffCache) {
             MemoryDiffCache mcl = (MemoryDiffCache) cl;
@@ -428,6 +437,17 @@ public class DocumentNodeStoreService {
             );
         }
 
+        if (ds instanceof MongoDocumentStore) {
+            MongoDocumentStore mds = (MongoDocumentStore) ds;
+            registrations.add(
+                    registerMBean(whiteboard,
+                            ReadPreferenceStatsMBean.class,
+                            mds.getReadPreferenceStats(),
+                            ReadPreferenceStatsMBean.TYPE,
+                            "Document store read preference statistics")
+            );
+        }
+
         if (store.getBlobStore() instanceof GarbageCollectableBlobStore) {
             BlobGarbageCollector gc = new BlobGarbageCollector() {
                 @Override
@@ -447,6 +467,12 @@ public class DocumentNodeStoreService {
         }, executor);
         registrations.add(registerMBean(whiteboard, RevisionGCMBean.class, revisionGC,
                 RevisionGCMBean.TYPE, "Document node store revision garbage collection"));
+        registrations.add(registerMBean(whiteboard, VersionGCStatsMBean.class,
+                store.getVersionGarbageCollector().getStatsMBean(),
+                VersionGCStatsMBean.TYPE, "Document node store revision garbage collection statistics"));
+        registrations.add(registerMBean(whiteboard, LastRevRecoveryStatsMBean.class,
+                store.getLastRevRecoveryAgent().getStatsMBean(),
+                LastRevRecoveryStatsMBean.TYPE, "Document node store _lastRev recovery statistics"));
 
         //TODO Register JMX bean for Off Heap Cache stats
     }
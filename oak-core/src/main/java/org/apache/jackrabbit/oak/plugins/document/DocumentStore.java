@@ -21,6 +21,8 @@ import java.util.List;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
+
 /**
  * The interface for the backend storage for documents.
  * <p>
@@ -113,6 +115,34 @@ public interface DocumentStore {
                                        long startValue,
                                        int limit);
 
+    /**
+     * Get the documents where the key is greater than a start value and
+     * less than an end value, sorted by the key. Unlike
+     * {@link #query(Collection, String, String, String, long, int)}, the
+     * documents are not read upfront but fetched in batches while the
+     * returned iterable is consumed. The caller must close the iterable
+     * when done. The returned documents are immutable.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param fromKey the start value (excluding)
+     * @param toKey the end value (excluding)
+     * @param indexedProperty the name of the indexed property (optional)
+     * @param startValue the minimum value of the indexed property
+     * @param limit the maximum number of entries to return
+     * @param cache whether the documents read are put into the document
+     *              cache of this store
+     * @return the documents (possibly none)
+     */
+    @Nonnull
+    <T extends Document> CloseableIterable<T> stream(Collection<T> collection,
+                                                     String fromKey,
+                                                     String toKey,
+                                                     String indexedProperty,
+                                                     long startValue,
+                                                     int limit,
+                                                     boolean cache);
+
     /**
      * Remove a document. This method does nothing if there is no document
      * with the given key.
@@ -170,6 +200,22 @@ public interface DocumentStore {
                                      List<String> keys,
                                      UpdateOp updateOp);
 
+    /**
+     * Update multiple documents, each with its own update operation, in as
+     * few round trips to the backend as possible. Only existing documents
+     * are updated and update operations for documents that do not exist are
+     * simply ignored. Conditions contained in the update operations are not
+     * checked. If this method fails with an exception, then only some of the
+     * documents may have been updated. There is no guarantee in which
+     * sequence the updates are performed.
+     *
+     * @param <T> the document type.
+     * @param collection the collection.
+     * @param updateOps the update operations.
+     */
+    <T extends Document> void update(Collection<T> collection,
+                                     List<UpdateOp> updateOps);
+
     /**
      * Create or update a document. For MongoDB, this is using "findAndModify" with
      * the "upsert" flag (insert or update). The returned document is immutable.
@@ -182,6 +228,25 @@ public interface DocumentStore {
     @CheckForNull
     <T extends Document> T createOrUpdate(Collection<T> collection, UpdateOp update);
 
+    /**
+     * Create or update multiple documents. The result is the same as calling
+     * {@link #createOrUpdate(Collection, UpdateOp)} for each of the update
+     * operations, but an implementation may apply the changes with fewer
+     * round trips to the backend. Conditions contained in the update
+     * operations are not checked. If this method fails with an exception,
+     * then only some of the documents may have been created or updated.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param updateOps the update operations
+     * @return the old documents in the same order as the update operations.
+     *          An entry is <code>null</code> if the document didn't exist
+     *          before.
+     */
+    @Nonnull
+    <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                List<UpdateOp> updateOps);
+
     /**
      * Performs a conditional update (e.g. using
      * {@link UpdateOp.Operation.Type#CONTAINS_MAP_ENTRY} and only updates the
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A journal entry lists the paths changed by a cluster node between two
+ * updates of its {@code _lastRev} on the root document. Other cluster nodes
+ * read the journal entries in their background read to invalidate only the
+ * cached documents affected by external changes.
+ * <p>
+ * The id of an entry is derived from the root {@code _lastRev} it was
+ * written for (see {@link #asId(Revision)}), so the entries of a cluster
+ * node are ordered by revision and can be read with a range query. Each
+ * entry also references the root {@code _lastRev} of the previous entry of
+ * the same cluster node, which allows readers to detect gaps in the journal.
+ */
+public final class JournalEntry extends Document {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalEntry.class);
+
+    /**
+     * The changed paths, separated by newlines.
+     */
+    static final String CHANGES = "_c";
+
+    /**
+     * The root {@code _lastRev} of the previous journal entry written by the
+     * same cluster node.
+     */
+    static final String PREVIOUS = "_p";
+
+    /**
+     * Flag set on entries with more changed paths than
+     * {@link #MAX_PATHS}. The paths of these entries are not recorded.
+     */
+    static final String OVERFLOW = "_o";
+
+    /**
+     * The maximum number of paths recorded in a single journal entry, or
+     * read for a single background read.
+     */
+    static final int MAX_PATHS = Integer.getInteger(
+            "oak.documentMK.journalMaxPaths", 10000);
+
+    private static final int QUERY_LIMIT = 100;
+
+    /**
+     * Returns the id of the journal entry for the given root
+     * {@code _lastRev}. Ids are ordered by cluster id and then by revision.
+     *
+     * @param revision the root {@code _lastRev}.
+     * @return the id of the journal entry.
+     */
+    @Nonnull
+    static String asId(@Nonnull Revision revision) {
+        checkNotNull(revision);
+        return String.format("%d_%016x_%08x", revision.getClusterId(),
+                revision.getTimestamp(), revision.getCounter());
+    }
+
+    /**
+     * Creates the update operation for a new journal entry.
+     *
+     * @param revision the root {@code _lastRev} the entry is written for.
+     * @param previous the root {@code _lastRev} of the previous entry, or
+     *                 {@code null} if unknown.
+     * @param paths the changed paths, or {@code null} if there were more
+     *              changes than can be recorded.
+     * @return the update operation.
+     */
+    @Nonnull
+    static UpdateOp newEntry(@Nonnull Revision revision,
+                             @Nullable Revision previous,
+                             @Nullable Set<String> paths) {
+        UpdateOp op = new UpdateOp(asId(revision), true);
+        if (previous != null) {
+            op.set(PREVIOUS, previous.toString());
+        }
+        if (paths == null || paths.size() > MAX_PATHS) {
+            op.set(OVERFLOW, true);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (String p : new TreeSet<String>(paths)) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(p);
+            }
+            op.set(CHANGES, sb.toString());
+        }
+        return op;
+    }
+
+    /**
+     * Reads the paths changed by the given cluster node after the root
+     * {@code _lastRev} {@code from} up to and including {@code to}.
+     *
+     * @param store the document store.
+     * @param from the previously seen root {@code _lastRev} (exclusive).
+     * @param to the current root {@code _lastRev} (inclusive).
+     * @return the changed paths, or {@code null} if the journal does not
+     *         cover the changes between the two revisions completely.
+     */
+    @CheckForNull
+    static Set<String> getChangedPaths(@Nonnull DocumentStore store,
+                                       @Nonnull Revision from,
+                                       @Nonnull Revision to) {
+        Set<String> paths = new TreeSet<String>();
+        String previous = from.toString();
+        String fromKey = asId(from);
+        // ids have a fixed length per cluster node, hence this is the
+        // lowest key after the id of the entry for 'to'
+        String toKey = asId(to) + "0";
+        for (;;) {
+            List<JournalEntry> entries = store.query(
+                    Collection.JOURNAL, fromKey, toKey, QUERY_LIMIT);
+            for (JournalEntry e : entries) {
+                if (!previous.equals(e.get(PREVIOUS))) {
+                    LOG.debug("Gap in journal before {}", e.getId());
+                    return null;
+                }
+                if (e.get(OVERFLOW) != null) {
+                    return null;
+                }
+                e.addChangedPaths(paths);
+                if (paths.size() > MAX_PATHS) {
+                    return null;
+                }
+                previous = e.getRevision();
+            }
+            if (entries.size() < QUERY_LIMIT) {
+                break;
+            }
+            fromKey = entries.get(entries.size() - 1).getId();
+        }
+        if (!to.toString().equals(previous)) {
+            // no journal entry for the current _lastRev
+            return null;
+        }
+        return paths;
+    }
+
+    /**
+     * Removes journal entries that were written for a root {@code _lastRev}
+     * older than the given timestamp, for all cluster nodes known in the
+     * {@link Collection#CLUSTER_NODES} collection. This includes inactive
+     * cluster nodes, which do not remove their own entries anymore.
+     *
+     * @param store the document store.
+     * @param timestamp the timestamp in milliseconds.
+     * @return the number of removed entries.
+     */
+    static int removeOlderThan(@Nonnull DocumentStore store, long timestamp) {
+        // keys between "0" and "a" include all possible cluster ids
+        List<ClusterNodeInfoDocument> clusterNodes = store.query(
+                Collection.CLUSTER_NODES, ClusterNodeInfoDocument.MIN_ID_VALUE,
+                ClusterNodeInfoDocument.MAX_ID_VALUE, Integer.MAX_VALUE);
+        int count = 0;
+        for (ClusterNodeInfoDocument doc : clusterNodes) {
+            int clusterId;
+            try {
+                clusterId = Integer.parseInt(doc.getId());
+            } catch (NumberFormatException e) {
+                // not a cluster node id - ignore
+                continue;
+            }
+            count += removeOlderThan(store, clusterId, timestamp);
+        }
+        return count;
+    }
+
+    /**
+     * Removes journal entries of the given cluster node that were written
+     * for a root {@code _lastRev} older than the given timestamp.
+     *
+     * @param store the document store.
+     * @param clusterId the id of the cluster node.
+     * @param timestamp the timestamp in milliseconds.
+     * @return the number of removed entries.
+     */
+    static int removeOlderThan(@Nonnull DocumentStore store,
+                               int clusterId, long timestamp) {
+        String fromKey = asId(new Revision(0, 0, clusterId));
+        String toKey = asId(new Revision(timestamp, 0, clusterId));
+        int count = 0;
+        for (;;) {
+            List<JournalEntry> entries = store.query(
+                    Collection.JOURNAL, fromKey, toKey, QUERY_LIMIT);
+            if (entries.isEmpty()) {
+                break;
+            }
+            List<String> ids = Lists.newArrayList();
+            for (JournalEntry e : entries) {
+                ids.add(e.getId());
+            }
+            store.remove(Collection.JOURNAL, ids);
+            count += ids.size();
+            if (entries.size() < QUERY_LIMIT) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the root {@code _lastRev} this entry was written for.
+     */
+    @Nonnull
+    String getRevision() {
+        // id format: <clusterId>_<timestamp>_<counter>
+        String[] parts = getId().split("_");
+        return new Revision(Long.parseLong(parts[1], 16),
+                Integer.parseInt(parts[2], 16),
+                Integer.parseInt(parts[0])).toString();
+    }
+
+    private void addChangedPaths(Set<String> paths) {
+        String changes = (String) get(CHANGES);
+        if (changes != null && changes.length() > 0) {
+            Collections.addAll(paths, changes.split("\n"));
+        }
+    }
+}
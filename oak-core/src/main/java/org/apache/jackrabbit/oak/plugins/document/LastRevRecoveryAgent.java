@@ -19,6 +19,7 @@
 
 package org.apache.jackrabbit.oak.plugins.document;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.of;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.mergeSorted;
@@ -26,9 +27,15 @@ import static com.google.common.collect.Iterables.mergeSorted;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
@@ -46,14 +53,31 @@ import org.slf4j.LoggerFactory;
  * Utility class for recovering potential missing _lastRev updates of nodes due to crash of a node.
  */
 public class LastRevRecoveryAgent {
+
+    /**
+     * The default number of threads checking suspects in parallel.
+     */
+    static final int DEFAULT_THREADS = Integer.getInteger(
+            "oak.documentMK.recoveryThreads", 4);
+
+    /**
+     * The number of suspects handed to a thread at once.
+     */
+    static final int BATCH_SIZE = 1000;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private final DocumentNodeStore nodeStore;
 
     private final MissingLastRevSeeker missingLastRevUtil;
 
+    private final LastRevRecoveryStats stats;
+
+    private volatile int threads = DEFAULT_THREADS;
+
     public LastRevRecoveryAgent(DocumentNodeStore nodeStore) {
         this.nodeStore = nodeStore;
+        this.stats = new LastRevRecoveryStats(nodeStore.getClock());
 
         if (nodeStore.getDocumentStore() instanceof MongoDocumentStore) {
             this.missingLastRevUtil =
@@ -63,6 +87,26 @@ public class LastRevRecoveryAgent {
         }
     }
 
+    /**
+     * Sets the number of threads checking suspects in parallel.
+     *
+     * @param threads the number of threads, at least one.
+     * @return this
+     */
+    public LastRevRecoveryAgent setThreads(int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @return the progress of the running or the last recovery.
+     */
+    @Nonnull
+    public LastRevRecoveryStatsMBean getStatsMBean() {
+        return stats;
+    }
+
     /**
      * Recover the correct _lastRev updates for potentially missing candidate nodes.
      * 
@@ -131,57 +175,65 @@ public class LastRevRecoveryAgent {
      *          {@code dryRun} is set true and no document was changed.
      */
     public int recover(Iterator<NodeDocument> suspects,
-                       int clusterId, boolean dryRun) {
+                       final int clusterId, boolean dryRun) {
         Closer closer = Closer.create();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
         try {
-            UnsavedModifications unsaved = new UnsavedModifications();
+            final UnsavedModifications unsaved = new UnsavedModifications();
             closer.register(unsaved);
-            UnsavedModifications unsavedParents = new UnsavedModifications();
+            final UnsavedModifications unsavedParents = new UnsavedModifications();
             closer.register(unsavedParents);
 
             //Map of known last rev of checked paths
-            UnsavedModifications knownLastRevs = new UnsavedModifications();
+            final UnsavedModifications knownLastRevs = new UnsavedModifications();
             closer.register(knownLastRevs);
 
-            long count = 0;
-            while (suspects.hasNext()) {
-                NodeDocument doc = suspects.next();
-                count++;
-                if (count % 100000 == 0) {
-                    log.info("Scanned {} suspects so far...", count);
-                }
+            // limit the number of batches held in memory at the same time
+            final Semaphore inFlight = new Semaphore(threads * 2);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
 
-                Revision currentLastRev = doc.getLastRev().get(clusterId);
-                if (currentLastRev != null) {
-                    knownLastRevs.put(doc.getPath(), currentLastRev);
+            long count = 0;
+            while (suspects.hasNext() && failure.get() == null) {
+                final List<NodeDocument> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+                while (batch.size() < BATCH_SIZE && suspects.hasNext()) {
+                    batch.add(suspects.next());
                 }
-                Revision lostLastRev = determineMissedLastRev(doc, clusterId);
-
-                //1. Update lastRev for this doc
-                if (lostLastRev != null) {
-                    unsaved.put(doc.getPath(), lostLastRev);
+                long previous = count;
+                count += batch.size();
+                stats.scanned(batch.size());
+                if (count / 100000 > previous / 100000) {
+                    log.info("Scanned {} suspects so far...", count);
                 }
 
-                Revision lastRevForParents = lostLastRev != null ? lostLastRev : currentLastRev;
-
-                //If both currentLastRev and lostLastRev are null it means
-                //that no change is done by suspect cluster on this document
-                //so nothing needs to be updated. Probably it was only changed by
-                //other cluster nodes. If this node is parent of any child node which
-                //has been modified by cluster then that node roll up would
-                //add this node path to unsaved
-
-                //2. Update lastRev for parent paths aka rollup
-                if (lastRevForParents != null) {
-                    String path = doc.getPath();
-                    while (true) {
-                        if (PathUtils.denotesRoot(path)) {
-                            break;
+                inFlight.acquireUninterruptibly();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (NodeDocument doc : batch) {
+                                recover(doc, clusterId, unsaved,
+                                        unsavedParents, knownLastRevs);
+                            }
+                            stats.processed(batch.size());
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            inFlight.release();
                         }
-                        path = PathUtils.getParentPath(path);
-                        unsavedParents.put(path, lastRevForParents);
                     }
+                });
+            }
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.info("Waiting for recovery of {} suspects to complete...", count);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DocumentStoreException("Interrupted while recovering suspects", e);
+            }
+            if (failure.get() != null) {
+                throw DocumentStoreException.convert(failure.get());
             }
 
             for (String parentPath : unsavedParents.getPaths()) {
@@ -200,23 +252,27 @@ public class LastRevRecoveryAgent {
             //Note the size before persist as persist operation
             //would empty the internal state
             int size = unsaved.getPaths().size();
-            String updates = unsaved.toString();
 
             if (dryRun) {
                 log.info("Dry run of lastRev recovery identified [{}] documents for " +
-                        "cluster node [{}]: {}", size, clusterId, updates);
+                        "cluster node [{}]: {}", size, clusterId, unsaved);
             } else {
+                // the updates may be many, only log them on request
+                String updates = log.isDebugEnabled() ? unsaved.toString() : "";
+
                 //UnsavedModifications is designed to be used in concurrent
                 //access mode. For recovery case there is no concurrent access
                 //involve so just pass a new lock instance
                 unsaved.persist(nodeStore, new ReentrantLock());
 
                 log.info("Updated lastRev of [{}] documents while performing lastRev recovery for " +
-                        "cluster node [{}]: {}", size, clusterId, updates);
+                        "cluster node [{}]", size, clusterId);
+                log.debug("Updated lastRev: {}", updates);
             }
 
             return size;
         } finally {
+            executor.shutdownNow();
             try {
                 closer.close();
             } catch (IOException e) {
@@ -225,6 +281,48 @@ public class LastRevRecoveryAgent {
         }
     }
 
+    /**
+     * Determines the missing _lastRev of a single suspect and rolls it up
+     * to its ancestors. Called concurrently for different suspects.
+     */
+    private void recover(NodeDocument doc,
+                         int clusterId,
+                         UnsavedModifications unsaved,
+                         UnsavedModifications unsavedParents,
+                         UnsavedModifications knownLastRevs) {
+        Revision currentLastRev = doc.getLastRev().get(clusterId);
+        if (currentLastRev != null) {
+            knownLastRevs.put(doc.getPath(), currentLastRev);
+        }
+        Revision lostLastRev = determineMissedLastRev(doc, clusterId);
+
+        //1. Update lastRev for this doc
+        if (lostLastRev != null) {
+            unsaved.put(doc.getPath(), lostLastRev);
+        }
+
+        Revision lastRevForParents = lostLastRev != null ? lostLastRev : currentLastRev;
+
+        //If both currentLastRev and lostLastRev are null it means
+        //that no change is done by suspect cluster on this document
+        //so nothing needs to be updated. Probably it was only changed by
+        //other cluster nodes. If this node is parent of any child node which
+        //has been modified by cluster then that node roll up would
+        //add this node path to unsaved
+
+        //2. Update lastRev for parent paths aka rollup
+        if (lastRevForParents != null) {
+            String path = doc.getPath();
+            while (true) {
+                if (PathUtils.denotesRoot(path)) {
+                    break;
+                }
+                path = PathUtils.getParentPath(path);
+                unsavedParents.put(path, lastRevForParents);
+            }
+        }
+    }
+
     /**
      * Retrieves possible candidates which have been modified after the given
      * {@code startTime} and recovers the missing updates.
@@ -247,9 +345,13 @@ public class LastRevRecoveryAgent {
         Iterable<NodeDocument> suspects = missingLastRevUtil.getCandidates(startTime);
         log.debug("Performing Last Revision recovery for cluster {}", clusterId);
 
+        stats.started(clusterId, missingLastRevUtil.getCandidateCount(startTime));
+        int recovered = 0;
         try {
-            return recover(suspects.iterator(), clusterId);
+            recovered = recover(suspects.iterator(), clusterId);
+            return recovered;
         } finally {
+            stats.finished(recovered);
             Utils.closeIfCloseable(suspects);
             // Relinquish the lock on the recovery for the cluster on the clusterInfo
             missingLastRevUtil.releaseRecoveryLock(clusterId);
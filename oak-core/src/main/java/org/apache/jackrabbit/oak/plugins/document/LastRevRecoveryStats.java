@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.stats.Clock;
+
+/**
+ * Progress of the _lastRev recovery of a {@link LastRevRecoveryAgent}.
+ */
+class LastRevRecoveryStats implements LastRevRecoveryStatsMBean {
+
+    private final Clock clock;
+
+    private final AtomicLong scanned = new AtomicLong();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private volatile boolean running;
+
+    private volatile int clusterId;
+
+    private volatile long candidateCount = -1;
+
+    private volatile long recovered;
+
+    private volatile long start;
+
+    private volatile long end;
+
+    LastRevRecoveryStats(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Resets the statistics for a new recovery of the given cluster node.
+     */
+    void started(int clusterId, long candidateCount) {
+        this.clusterId = clusterId;
+        this.candidateCount = candidateCount;
+        this.scanned.set(0);
+        this.processed.set(0);
+        this.recovered = 0;
+        this.start = clock.getTime();
+        this.end = 0;
+        this.running = true;
+    }
+
+    void scanned(int count) {
+        scanned.addAndGet(count);
+    }
+
+    void processed(int count) {
+        processed.addAndGet(count);
+    }
+
+    void finished(long recovered) {
+        this.recovered = recovered;
+        this.end = clock.getTime();
+        this.running = false;
+    }
+
+    //---------------------------------------< LastRevRecoveryStatsMBean >--
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getClusterId() {
+        return clusterId;
+    }
+
+    @Override
+    public long getCandidateCount() {
+        return candidateCount;
+    }
+
+    @Override
+    public long getScannedCount() {
+        return scanned.get();
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    @Override
+    public long getRecoveredCount() {
+        return recovered;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        if (start == 0) {
+            return 0;
+        }
+        return (running ? clock.getTime() : end) - start;
+    }
+
+    @Override
+    public long getEstimatedRemainingTime() {
+        long total = candidateCount;
+        long done = processed.get();
+        if (!running || total < 0 || done == 0) {
+            return -1;
+        }
+        long remaining = Math.max(0, total - done);
+        return getElapsedTime() * remaining / done;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+/**
+ * MBean exposing the progress of the running or the last _lastRev recovery
+ * performed by the {@link LastRevRecoveryAgent} of a
+ * {@link DocumentNodeStore}. All times are in milliseconds.
+ */
+public interface LastRevRecoveryStatsMBean {
+    String TYPE = "DocumentNodeStoreLastRevRecoveryStats";
+
+    /**
+     * @return  {@code true} if a recovery is running
+     */
+    boolean isRunning();
+
+    /**
+     * @return  the id of the cluster node recovered or {@code 0} if no
+     *          recovery was performed yet
+     */
+    int getClusterId();
+
+    /**
+     * @return  number of candidate documents of the recovery or {@code -1}
+     *          if unknown
+     */
+    long getCandidateCount();
+
+    /**
+     * @return  number of candidate documents read from the store
+     */
+    long getScannedCount();
+
+    /**
+     * @return  number of candidate documents checked for missing _lastRev
+     *          updates
+     */
+    long getProcessedCount();
+
+    /**
+     * @return  number of documents with a recovered _lastRev
+     */
+    long getRecoveredCount();
+
+    /**
+     * @return  elapsed time of the running or the last recovery
+     */
+    long getElapsedTime();
+
+    /**
+     * @return  estimated remaining time of the running recovery or
+     *          {@code -1} if unknown
+     */
+    long getEstimatedRemainingTime();
+}
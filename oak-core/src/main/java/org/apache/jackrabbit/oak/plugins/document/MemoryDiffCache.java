@@ -63,6 +63,13 @@ class MemoryDiffCache implements DiffCache {
         return new MemoryEntry(from, to);
     }
 
+    @Nonnull
+    @Override
+    public Entry newExternalEntry(@Nonnull Revision from,
+                                  @Nonnull Revision to) {
+        return new MemoryEntry(from, to);
+    }
+
     public CacheStats getDiffCacheStats() {
         return diffCacheStats;
     }
@@ -20,6 +20,7 @@ import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
@@ -27,16 +28,14 @@ import java.util.concurrent.locks.Lock;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.apache.jackrabbit.oak.plugins.document.util.MapFactory;
-import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
-import com.google.common.collect.PeekingIterator;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
@@ -54,7 +53,7 @@ class UnsavedModifications implements Closeable {
     static final int IN_MEMORY_SIZE_LIMIT = 100000;
 
     /**
-     * The maximum number of document to update at once in a multi update.
+     * The maximum number of documents to update at once in a bulk update.
      */
     static final int BACKGROUND_MULTI_UPDATE_LIMIT = 10000;
 
@@ -143,13 +142,34 @@ class UnsavedModifications implements Closeable {
      * @param store the document node store.
      * @param lock the lock to acquire to get a consistent snapshot of the
      *             revisions to write back.
+     * @return the number of paths with a persisted _lastRev.
      */
-    public void persist(@Nonnull DocumentNodeStore store,
-                        @Nonnull Lock lock) {
+    public int persist(@Nonnull DocumentNodeStore store,
+                       @Nonnull Lock lock) {
+        return persist(store, Snapshot.IGNORE, lock);
+    }
+
+    /**
+     * Persist the pending changes to _lastRev to the given store. This method
+     * will persist a snapshot of the pending revisions by acquiring the passed
+     * lock for a short period of time. The given {@code snapshot} is notified
+     * while the lock is held and again after it was released, both times
+     * before any _lastRev is written.
+     *
+     * @param store the document node store.
+     * @param snapshot the snapshot callback.
+     * @param lock the lock to acquire to get a consistent snapshot of the
+     *             revisions to write back.
+     * @return the number of paths with a persisted _lastRev.
+     */
+    public int persist(@Nonnull DocumentNodeStore store,
+                       @Nonnull Snapshot snapshot,
+                       @Nonnull Lock lock) {
         if (map.size() == 0) {
-            return;
+            return 0;
         }
         checkNotNull(store);
+        checkNotNull(snapshot);
         checkNotNull(lock);
 
         // get a copy of the map while holding the lock
@@ -164,62 +184,66 @@ class UnsavedModifications implements Closeable {
                 pending = Maps.newTreeMap(PathComparator.INSTANCE);
             }
             pending.putAll(map);
+            snapshot.acquiring(pending.get("/"));
+        } catch (RuntimeException e) {
+            if (tmpFactory != null) {
+                tmpFactory.dispose();
+            }
+            throw e;
         } finally {
             lock.unlock();
         }
+        int num = 0;
         try {
-            UpdateOp updateOp = null;
-            Revision lastRev = null;
-            PeekingIterator<String> paths = Iterators.peekingIterator(
-                    pending.keySet().iterator());
-            int i = 0;
-            ArrayList<String> pathList = new ArrayList<String>();
-            while (paths.hasNext()) {
-                String p = paths.peek();
-                Revision r = pending.get(p);
-
-                int size = pathList.size();
-                if (updateOp == null) {
-                    // create UpdateOp
-                    Commit commit = new Commit(store, null, r);
-                    updateOp = commit.getUpdateOperationForNode(p);
-                    NodeDocument.setLastRev(updateOp, r);
-                    lastRev = r;
-                    pathList.add(p);
-                    paths.next();
-                    i++;
-                } else if (r.equals(lastRev)) {
-                    // use multi update when possible
-                    pathList.add(p);
-                    paths.next();
-                    i++;
-                }
-                // call update if any of the following is true:
-                // - this is the second-to-last or last path (update last path, the
-                //   root document, individually)
-                // - revision is not equal to last revision (size of ids didn't change)
-                // - the update limit is reached
-                if (i + 2 > pending.size()
-                        || size == pathList.size()
-                        || pathList.size() >= BACKGROUND_MULTI_UPDATE_LIMIT) {
-                    List<String> ids = new ArrayList<String>();
-                    for (String path : pathList) {
-                        ids.add(Utils.getIdFromPath(path));
-                    }
-                    store.getDocumentStore().update(NODES, ids, updateOp);
-                    for (String path : pathList) {
-                        map.remove(path, lastRev);
-                    }
-                    pathList.clear();
-                    updateOp = null;
-                    lastRev = null;
+            snapshot.acquired();
+            // the root document is updated last and individually
+            Revision rootRevision = pending.remove("/");
+            Map<String, Revision> batch = new LinkedHashMap<String, Revision>();
+            for (Map.Entry<String, Revision> entry : pending.entrySet()) {
+                batch.put(entry.getKey(), entry.getValue());
+                if (batch.size() >= BACKGROUND_MULTI_UPDATE_LIMIT) {
+                    num += persist(store, batch);
                 }
             }
+            num += persist(store, batch);
+            if (rootRevision != null) {
+                batch.put("/", rootRevision);
+                num += persist(store, batch);
+            }
         } finally {
             if (tmpFactory != null) {
                 tmpFactory.dispose();
             }
         }
+        return num;
+    }
+
+    /**
+     * Writes the _lastRev of the given batch of paths with a single bulk
+     * update and removes the corresponding pending modifications. The batch
+     * is cleared afterwards.
+     *
+     * @return the number of persisted paths.
+     */
+    private int persist(DocumentNodeStore store, Map<String, Revision> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<UpdateOp> updates = new ArrayList<UpdateOp>(batch.size());
+        for (Map.Entry<String, Revision> entry : batch.entrySet()) {
+            Revision r = entry.getValue();
+            Commit commit = new Commit(store, null, r);
+            UpdateOp updateOp = commit.getUpdateOperationForNode(entry.getKey());
+            NodeDocument.setLastRev(updateOp, r);
+            updates.add(updateOp);
+        }
+        store.getDocumentStore().update(NODES, updates);
+        for (Map.Entry<String, Revision> entry : batch.entrySet()) {
+            map.remove(entry.getKey(), entry.getValue());
+        }
+        int num = batch.size();
+        batch.clear();
+        return num;
     }
 
     @Override
@@ -227,6 +251,41 @@ class UnsavedModifications implements Closeable {
         mapFactory.dispose();
     }
 
+    /**
+     * Callback for the snapshot of pending modifications taken by
+     * {@link #persist(DocumentNodeStore, Snapshot, Lock)}.
+     */
+    interface Snapshot {
+
+        Snapshot IGNORE = new Snapshot() {
+            @Override
+            public void acquiring(Revision rootRevision) {
+            }
+
+            @Override
+            public void acquired() {
+            }
+        };
+
+        /**
+         * Called while the lock is held and after the pending modifications
+         * were copied. An exception thrown by this method aborts the
+         * persist operation.
+         *
+         * @param rootRevision the revision the _lastRev of the root document
+         *                     will be updated to, or {@code null} if the
+         *                     root does not have a pending modification.
+         */
+        void acquiring(@Nullable Revision rootRevision);
+
+        /**
+         * Called after the lock was released and before any _lastRev is
+         * written. An exception thrown by this method aborts the persist
+         * operation.
+         */
+        void acquired();
+    }
+
     @Override
     public String toString() {
         return map.toString();
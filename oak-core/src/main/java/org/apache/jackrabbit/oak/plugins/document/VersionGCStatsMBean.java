@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+/**
+ * MBean exposing the statistics of the running or the last revision garbage
+ * collection of a {@link DocumentNodeStore}. All times are in milliseconds.
+ */
+public interface VersionGCStatsMBean {
+    String TYPE = "DocumentNodeStoreVersionGCStats";
+
+    /**
+     * @return  {@code true} if a garbage collection is running
+     */
+    boolean isRunning();
+
+    /**
+     * @return  {@code true} if the last garbage collection was skipped
+     *          because of a checkpoint
+     */
+    boolean isIgnoredDueToCheckpoint();
+
+    /**
+     * @return  number of deleted documents removed
+     */
+    int getDeletedDocCount();
+
+    /**
+     * @return  number of split documents removed
+     */
+    int getSplitDocCount();
+
+    /**
+     * @return  number of partitions of the document id space
+     */
+    int getPartitionCount();
+
+    /**
+     * @return  number of partitions completed, including those completed
+     *          by a previous, incomplete garbage collection
+     */
+    int getCompletedPartitionCount();
+
+    /**
+     * @return  time spent collecting deleted documents, summed up over
+     *          all partitions
+     */
+    long getCollectDeletedDocsTime();
+
+    /**
+     * @return  time spent removing deleted documents, summed up over
+     *          all partitions
+     */
+    long getDeleteDeletedDocsTime();
+
+    /**
+     * @return  time spent removing split documents
+     */
+    long getSplitDocGCTime();
+
+    /**
+     * @return  elapsed time of the last completed garbage collection
+     */
+    long getElapsedTime();
+
+    /**
+     * @return  number of deleted documents removed per second
+     */
+    long getDeletedDocRate();
+}
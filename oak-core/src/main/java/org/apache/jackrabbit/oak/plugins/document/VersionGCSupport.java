@@ -26,6 +26,9 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+
 import static org.apache.jackrabbit.oak.plugins.document.NodeDocument.SplitDocType;
 
 public class VersionGCSupport {
@@ -36,29 +39,50 @@ public class VersionGCSupport {
     }
 
     public Iterable<NodeDocument> getPossiblyDeletedDocs(final long lastModifiedTime) {
-        return Iterables.filter(getAllDocuments(), new Predicate<NodeDocument>() {
+        return getPossiblyDeletedDocs(lastModifiedTime,
+                NodeDocument.MIN_ID_VALUE, NodeDocument.MAX_ID_VALUE);
+    }
+
+    /**
+     * Returns the possibly deleted documents with an id within the given
+     * range. Both bounds are exclusive.
+     *
+     * @param lastModifiedTime documents modified after this time are not
+     *                         returned.
+     * @param fromId the lower bound of the id range.
+     * @param toId the upper bound of the id range.
+     * @return the possibly deleted documents within the range.
+     */
+    public Iterable<NodeDocument> getPossiblyDeletedDocs(final long lastModifiedTime,
+                                                         String fromId,
+                                                         String toId) {
+        // the documents are only checked once, do not pollute the cache
+        CloseableIterable<NodeDocument> docs = store.stream(Collection.NODES,
+                fromId, toId, null, 0, Integer.MAX_VALUE, false);
+        return CloseableIterable.wrap(Iterables.filter(docs, new Predicate<NodeDocument>() {
             @Override
             public boolean apply(NodeDocument input) {
                 return input.wasDeletedOnce() && !input.hasBeenModifiedSince(lastModifiedTime);
             }
-        });
+        }), docs);
     }
 
     public int deleteSplitDocuments(Set<SplitDocType> gcTypes, long oldestRevTimeStamp) {
         List<String> docsToDelete = Lists.newArrayList();
-        for(NodeDocument doc : getAllDocuments()){
-            SplitDocType splitType = doc.getSplitDocType();
-            if(gcTypes.contains(splitType) && doc.hasAllRevisionLessThan(oldestRevTimeStamp)){
-                docsToDelete.add(doc.getId());
+        CloseableIterable<NodeDocument> docs = store.stream(Collection.NODES,
+                NodeDocument.MIN_ID_VALUE, NodeDocument.MAX_ID_VALUE, null, 0,
+                Integer.MAX_VALUE, false);
+        try {
+            for (NodeDocument doc : docs) {
+                SplitDocType splitType = doc.getSplitDocType();
+                if(gcTypes.contains(splitType) && doc.hasAllRevisionLessThan(oldestRevTimeStamp)){
+                    docsToDelete.add(doc.getId());
+                }
             }
+        } finally {
+            Utils.closeIfCloseable(docs);
         }
         store.remove(Collection.NODES, docsToDelete);
         return docsToDelete.size();
     }
-
-    private List<NodeDocument> getAllDocuments() {
-        //Fetch all documents.
-        return store.query(Collection.NODES,NodeDocument.MIN_ID_VALUE,
-                NodeDocument.MAX_ID_VALUE, Integer.MAX_VALUE);
-    }
 }
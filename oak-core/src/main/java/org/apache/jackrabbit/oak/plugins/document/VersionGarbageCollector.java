@@ -23,22 +23,82 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.StandardSystemProperty;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoVersionGCSupport;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.jackrabbit.oak.plugins.document.NodeDocument.SplitDocType.COMMIT_ROOT_ONLY;
 import static org.apache.jackrabbit.oak.plugins.document.NodeDocument.SplitDocType.DEFAULT_LEAF;
 
 public class VersionGarbageCollector {
+
+    /**
+     * The default number of threads collecting partitions in parallel.
+     */
+    static final int DEFAULT_THREADS = Integer.getInteger(
+            "oak.documentMK.versionGCThreads", 4);
+
+    /**
+     * The default maximum number of documents removed per second. Zero
+     * means no limit.
+     */
+    static final int DEFAULT_MAX_DELETE_RATE = Integer.getInteger(
+            "oak.documentMK.versionGCMaxDeleteRate", 0);
+
+    /**
+     * The maximum number of documents removed with a single call.
+     */
+    static final int DELETE_BATCH_SIZE = 450;
+
+    /**
+     * The id of the settings document with the progress of an incomplete
+     * garbage collection run.
+     */
+    static final String SETTINGS_ID = "versionGC";
+
+    /**
+     * The property of the settings document with the id of the run the
+     * progress belongs to.
+     */
+    static final String RUN = "run";
+
+    /**
+     * The number of path depths with a partition of their own. Documents
+     * with a larger depth fall into one of these partitions according to
+     * the lexical order of their ids.
+     */
+    static final int PARTITION_DEPTHS = 32;
+
+    /**
+     * The maximum number of path prefixes used to split the documents of
+     * a single depth into several partitions.
+     */
+    static final int MAX_PATH_PREFIXES = 32;
+
     private final DocumentNodeStore nodeStore;
     private final VersionGCSupport versionStore;
 
@@ -50,6 +110,20 @@ public class VersionGarbageCollector {
     private static final Set<NodeDocument.SplitDocType> GC_TYPES = EnumSet.of(
             DEFAULT_LEAF, COMMIT_ROOT_ONLY);
 
+    private volatile int threads = DEFAULT_THREADS;
+
+    private volatile int maxDeleteRate = DEFAULT_MAX_DELETE_RATE;
+
+    /**
+     * The statistics of the running or the last garbage collection.
+     */
+    private volatile VersionGCStats stats;
+
+    private volatile boolean ignoredDueToCheckpoint;
+
+    private final VersionGCStatsMBean statsMBean =
+            new VersionGarbageCollectorStats(this);
+
     VersionGarbageCollector(DocumentNodeStore nodeStore) {
         this.nodeStore = nodeStore;
 
@@ -61,6 +135,54 @@ public class VersionGarbageCollector {
         }
     }
 
+    /**
+     * Sets the number of threads collecting partitions of the document id
+     * space in parallel.
+     *
+     * @param threads the number of threads, at least one.
+     * @return this
+     */
+    public VersionGarbageCollector setThreads(int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of documents removed per second, to limit the
+     * load on the document store.
+     *
+     * @param maxDeleteRate the rate or zero for no limit.
+     * @return this
+     */
+    public VersionGarbageCollector setMaxDeleteRate(int maxDeleteRate) {
+        checkArgument(maxDeleteRate >= 0, "maxDeleteRate must not be negative");
+        this.maxDeleteRate = maxDeleteRate;
+        return this;
+    }
+
+    /**
+     * @return the statistics of the running or the last garbage collection
+     *         or {@code null} if none ran yet.
+     */
+    @CheckForNull
+    public VersionGCStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return {@code true} if the last garbage collection was skipped
+     *         because of a checkpoint.
+     */
+    boolean isLastIgnoredDueToCheckpoint() {
+        return ignoredDueToCheckpoint;
+    }
+
+    @Nonnull
+    public VersionGCStatsMBean getStatsMBean() {
+        return statsMBean;
+    }
+
     public VersionGCStats gc(long maxRevisionAge, TimeUnit unit) {
         long maxRevisionAgeInMillis = unit.toMillis(maxRevisionAge);
         Stopwatch sw = Stopwatch.createStarted();
@@ -79,25 +201,117 @@ public class VersionGarbageCollector {
                     Utils.timestampToString(oldestRevTimeStamp)
             );
             stats.ignoredGCDueToCheckPoint = true;
+            ignoredDueToCheckpoint = true;
             return stats;
         }
+        ignoredDueToCheckpoint = false;
+        this.stats = stats;
 
-        collectDeletedDocuments(stats, headRevision, oldestRevTimeStamp);
-        collectSplitDocuments(stats, oldestRevTimeStamp);
+        try {
+            collectDeletedDocuments(stats, headRevision, oldestRevTimeStamp);
+            collectSplitDocuments(stats, oldestRevTimeStamp);
+        } finally {
+            stats.running = false;
+        }
 
         sw.stop();
+        stats.elapsed = sw.elapsed(TimeUnit.MILLISECONDS);
         log.info("Version garbage collected in {}. {}", sw, stats);
         return stats;
     }
 
     private void collectSplitDocuments(VersionGCStats stats, long oldestRevTimeStamp) {
+        Stopwatch sw = Stopwatch.createStarted();
         int count = versionStore.deleteSplitDocuments(GC_TYPES, oldestRevTimeStamp);
         stats.splitDocGCCount += count;
+        stats.splitDocGCElapsed = sw.elapsed(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Collects the deleted documents of all partitions not yet completed by
+     * a previous, incomplete run. The partitions are processed in parallel.
+     */
+    private void collectDeletedDocuments(final VersionGCStats stats,
+                                         final Revision headRevision,
+                                         final long oldestRevTimeStamp) {
+        final DocumentStore store = nodeStore.getDocumentStore();
+        List<Partition> partitions = getPartitions(
+                getPathPrefixes(nodeStore.getRoot(headRevision)));
+        stats.partitionCount = partitions.size();
+
+        // resume the incomplete run, if there is one
+        Document progress = store.find(Collection.SETTINGS, SETTINGS_ID);
+        String previousRun = progress != null ? (String) progress.get(RUN) : null;
+        final String run;
+        if (previousRun != null) {
+            log.info("Resuming incomplete revision garbage collection run {}",
+                    previousRun);
+            run = previousRun;
+        } else {
+            run = new Revision(nodeStore.getClock().getTime(), 0,
+                    nodeStore.getClusterId()).toString();
+            UpdateOp op = new UpdateOp(SETTINGS_ID, true);
+            op.set(Document.ID, SETTINGS_ID);
+            op.set(RUN, run);
+            store.createOrUpdate(Collection.SETTINGS, op);
+        }
+
+        int rate = maxDeleteRate;
+        final RateLimiter limiter = rate > 0 ? RateLimiter.create(rate) : null;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = Lists.newArrayList();
+            for (final Partition p : partitions) {
+                if (progress != null && run.equals(progress.get(p.getKey()))) {
+                    log.debug("Skipping partition {} completed by previous run", p);
+                    stats.increment(0, 0, 0, 1);
+                    continue;
+                }
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        collectDeletedDocuments(p, run, stats, headRevision,
+                                oldestRevTimeStamp, limiter);
+                    }
+                }));
+            }
+            RuntimeException failure = null;
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = new DocumentStoreException("Interrupted", e);
+                    break;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = DocumentStoreException.convert(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                // completed partitions are skipped by the next run
+                nodeStore.invalidateDocChildrenCache();
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        nodeStore.invalidateDocChildrenCache();
+        // all partitions done, next run starts from scratch
+        store.remove(Collection.SETTINGS, SETTINGS_ID);
     }
 
-    private void collectDeletedDocuments(VersionGCStats stats, Revision headRevision, long oldestRevTimeStamp) {
+    private void collectDeletedDocuments(Partition partition,
+                                         String run,
+                                         VersionGCStats stats,
+                                         Revision headRevision,
+                                         long oldestRevTimeStamp,
+                                         @CheckForNull RateLimiter limiter) {
+        Stopwatch collect = Stopwatch.createStarted();
         List<String> docIdsToDelete = new ArrayList<String>();
-        Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(oldestRevTimeStamp);
+        Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(
+                oldestRevTimeStamp, partition.fromId, partition.toId);
         try {
             for (NodeDocument doc : itr) {
                 //Check if node is actually deleted at current revision
@@ -115,22 +329,155 @@ public class VersionGarbageCollector {
         } finally {
             Utils.closeIfCloseable(itr);
         }
+        collect.stop();
 
         if(log.isDebugEnabled()) {
             StringBuilder sb = new StringBuilder("Deleted document with following ids were deleted as part of GC \n");
             Joiner.on(StandardSystemProperty.LINE_SEPARATOR.value()).appendTo(sb, docIdsToDelete);
             log.debug(sb.toString());
         }
-        nodeStore.getDocumentStore().remove(Collection.NODES, docIdsToDelete);
-        nodeStore.invalidateDocChildrenCache();
-        stats.deletedDocGCCount += docIdsToDelete.size();
+        Stopwatch delete = Stopwatch.createStarted();
+        DocumentStore store = nodeStore.getDocumentStore();
+        for (List<String> ids : Lists.partition(docIdsToDelete, DELETE_BATCH_SIZE)) {
+            if (limiter != null) {
+                limiter.acquire(ids.size());
+            }
+            store.remove(Collection.NODES, ids);
+        }
+        delete.stop();
+
+        // remember the completed partition in case this run does not finish
+        UpdateOp op = new UpdateOp(SETTINGS_ID, true);
+        op.set(Document.ID, SETTINGS_ID);
+        op.set(partition.getKey(), run);
+        store.createOrUpdate(Collection.SETTINGS, op);
+
+        stats.increment(docIdsToDelete.size(),
+                collect.elapsed(TimeUnit.MILLISECONDS),
+                delete.elapsed(TimeUnit.MILLISECONDS), 1);
+    }
+
+    /**
+     * Returns the paths of the nodes on the first two levels of the given
+     * tree, up to {@link #MAX_PATH_PREFIXES} paths. The children of nodes
+     * with many child nodes are not included.
+     */
+    @Nonnull
+    static List<String> getPathPrefixes(@Nonnull NodeState root) {
+        List<String> prefixes = Lists.newArrayList();
+        for (ChildNodeEntry entry : root.getChildNodeEntries()) {
+            if (prefixes.size() >= MAX_PATH_PREFIXES) {
+                break;
+            }
+            String path = PathUtils.concat("/", entry.getName());
+            prefixes.add(path);
+            NodeState node = entry.getNodeState();
+            if (node.getChildNodeCount(MAX_PATH_PREFIXES) >= MAX_PATH_PREFIXES) {
+                continue;
+            }
+            for (String name : node.getChildNodeNames()) {
+                if (prefixes.size() >= MAX_PATH_PREFIXES) {
+                    break;
+                }
+                prefixes.add(PathUtils.concat(path, name));
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * Partitions the id space of the NODES collection. Document ids start
+     * with the depth of the path, the partitions are the ranges between the
+     * depth prefixes in lexical order and together cover all ids. The range
+     * of a depth is further split at the given path prefixes with a smaller
+     * depth, so that large subtrees do not end up in a single partition.
+     *
+     * @param pathPrefixes paths to split the ranges of the depths at.
+     */
+    @Nonnull
+    static List<Partition> getPartitions(@Nonnull Iterable<String> pathPrefixes) {
+        TreeSet<String> bounds = new TreeSet<String>();
+        bounds.add(NodeDocument.MIN_ID_VALUE);
+        bounds.add(NodeDocument.MAX_ID_VALUE);
+        for (int depth = 0; depth < PARTITION_DEPTHS; depth++) {
+            bounds.add(depth + ":");
+            for (String prefix : pathPrefixes) {
+                // ids of documents below the prefix start with the bound,
+                // which itself never is an id as it ends with a slash
+                if (!PathUtils.denotesRoot(prefix)
+                        && PathUtils.getDepth(prefix) < depth) {
+                    bounds.add(depth + ":" + prefix + "/");
+                }
+            }
+        }
+        List<Partition> partitions = Lists.newArrayList();
+        String from = null;
+        for (String to : bounds) {
+            if (from != null) {
+                partitions.add(new Partition(from, to));
+            }
+            from = to;
+        }
+        return partitions;
+    }
+
+    /**
+     * A range of document ids. Both bounds are exclusive.
+     */
+    static final class Partition {
+
+        final String fromId;
+        final String toId;
+
+        Partition(String fromId, String toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        /**
+         * @return the key of the partition in the progress document, which
+         *          is derived from its bounds, as the partitions of a
+         *          resumed run may differ.
+         */
+        String getKey() {
+            return "p" + Long.toHexString(Hashing.murmur3_128().hashString(
+                    fromId + "\n" + toId, Charsets.UTF_8).asLong());
+        }
+
+        @Override
+        public String toString() {
+            return "(" + fromId + ", " + toId + ")";
+        }
     }
 
     public static class VersionGCStats {
-        boolean ignoredGCDueToCheckPoint;
-        int deletedDocGCCount;
-        int splitDocGCCount;
+        volatile boolean ignoredGCDueToCheckPoint;
+        volatile boolean running = true;
+        volatile int deletedDocGCCount;
+        volatile int splitDocGCCount;
+        volatile int partitionCount;
+        volatile int completedPartitionCount;
+        volatile long collectDeletedDocsElapsed;
+        volatile long deleteDeletedDocsElapsed;
+        volatile long splitDocGCElapsed;
+        volatile long elapsed;
 
+        synchronized void increment(int deleted, long collectElapsed,
+                                    long deleteElapsed, int partitions) {
+            deletedDocGCCount += deleted;
+            collectDeletedDocsElapsed += collectElapsed;
+            deleteDeletedDocsElapsed += deleteElapsed;
+            completedPartitionCount += partitions;
+        }
+
+        /**
+         * @return the number of deleted documents removed per second while
+         *         removing them, summed up over all partitions.
+         */
+        long getDeletedDocGCRate() {
+            long millis = deleteDeletedDocsElapsed;
+            return millis > 0 ? deletedDocGCCount * 1000L / millis : 0;
+        }
 
         @Override
         public String toString() {
@@ -138,6 +485,11 @@ public class VersionGarbageCollector {
                     "ignoredGCDueToCheckPoint=" + ignoredGCDueToCheckPoint +
                     ", deletedDocGCCount=" + deletedDocGCCount +
                     ", splitDocGCCount=" + splitDocGCCount +
+                    ", partitions=" + completedPartitionCount + "/" + partitionCount +
+                    ", collectDeletedDocsElapsed=" + collectDeletedDocsElapsed +
+                    ", deleteDeletedDocsElapsed=" + deleteDeletedDocsElapsed +
+                    ", splitDocGCElapsed=" + splitDocGCElapsed +
+                    ", elapsed=" + elapsed +
                     '}';
         }
     }
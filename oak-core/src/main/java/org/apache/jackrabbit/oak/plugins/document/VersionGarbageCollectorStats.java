@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import org.apache.jackrabbit.oak.plugins.document.VersionGarbageCollector.VersionGCStats;
+
+/**
+ * Exposes the statistics of the running or the last garbage collection of
+ * a {@link VersionGarbageCollector}.
+ */
+class VersionGarbageCollectorStats implements VersionGCStatsMBean {
+
+    private static final VersionGCStats NONE = new VersionGCStats();
+
+    private final VersionGarbageCollector gc;
+
+    VersionGarbageCollectorStats(VersionGarbageCollector gc) {
+        this.gc = gc;
+    }
+
+    private VersionGCStats stats() {
+        VersionGCStats stats = gc.getStats();
+        return stats != null ? stats : NONE;
+    }
+
+    //-------------------------------------------< VersionGCStatsMBean >--
+
+    @Override
+    public boolean isRunning() {
+        VersionGCStats stats = gc.getStats();
+        return stats != null && stats.running;
+    }
+
+    @Override
+    public boolean isIgnoredDueToCheckpoint() {
+        return gc.isLastIgnoredDueToCheckpoint();
+    }
+
+    @Override
+    public int getDeletedDocCount() {
+        return stats().deletedDocGCCount;
+    }
+
+    @Override
+    public int getSplitDocCount() {
+        return stats().splitDocGCCount;
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return stats().partitionCount;
+    }
+
+    @Override
+    public int getCompletedPartitionCount() {
+        return stats().completedPartitionCount;
+    }
+
+    @Override
+    public long getCollectDeletedDocsTime() {
+        return stats().collectDeletedDocsElapsed;
+    }
+
+    @Override
+    public long getDeleteDeletedDocsTime() {
+        return stats().deleteDeletedDocsElapsed;
+    }
+
+    @Override
+    public long getSplitDocGCTime() {
+        return stats().splitDocGCElapsed;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return stats().elapsed;
+    }
+
+    @Override
+    public long getDeletedDocRate() {
+        return stats().getDeletedDocGCRate();
+    }
+}
@@ -33,13 +33,17 @@ import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
+import org.apache.jackrabbit.oak.plugins.document.JournalEntry;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
 import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
 import org.apache.jackrabbit.oak.plugins.document.UpdateUtils;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 
+import com.google.common.base.Predicate;
 import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
 import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
 
@@ -67,6 +71,12 @@ public class MemoryDocumentStore implements DocumentStore {
     private ConcurrentSkipListMap<String, Document> settings =
             new ConcurrentSkipListMap<String, Document>();
 
+    /**
+     * The 'journal' collection.
+     */
+    private ConcurrentSkipListMap<String, JournalEntry> journal =
+            new ConcurrentSkipListMap<String, JournalEntry>();
+
     private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
 
     /**
@@ -139,6 +149,30 @@ public class MemoryDocumentStore implements DocumentStore {
         }
     }
 
+    @Nonnull
+    @Override
+    public <T extends Document> CloseableIterable<T> stream(Collection<T> collection,
+                                                            String fromKey,
+                                                            String toKey,
+                                                            final String indexedProperty,
+                                                            final long startValue,
+                                                            int limit,
+                                                            boolean cache) {
+        // documents are replaced on update, the weakly consistent view
+        // of the map never exposes a partially updated document
+        Iterable<T> docs = getMap(collection).subMap(fromKey + "\0", toKey).values();
+        if (indexedProperty != null) {
+            docs = Iterables.filter(docs, new Predicate<T>() {
+                @Override
+                public boolean apply(T doc) {
+                    Long value = (Long) doc.get(indexedProperty);
+                    return value != null && value >= startValue;
+                }
+            });
+        }
+        return CloseableIterable.wrap(Iterables.limit(docs, limit));
+    }
+
     @Override
     public <T extends Document> void remove(Collection<T> collection, String path) {
         Lock lock = rwLock.writeLock();
@@ -182,6 +216,8 @@ public class MemoryDocumentStore implements DocumentStore {
             return (ConcurrentSkipListMap<String, T>) clusterNodes;
         }else if (collection == Collection.SETTINGS) {
             return (ConcurrentSkipListMap<String, T>) settings;
+        } else if (collection == Collection.JOURNAL) {
+            return (ConcurrentSkipListMap<String, T>) journal;
         } else {
             throw new IllegalArgumentException(
                     "Unknown collection: " + collection.toString());
@@ -262,6 +298,41 @@ public class MemoryDocumentStore implements DocumentStore {
         }
     }
 
+    @Nonnull
+    @Override
+    public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                       List<UpdateOp> updateOps) {
+        List<T> result = new ArrayList<T>(updateOps.size());
+        Lock lock = rwLock.writeLock();
+        lock.lock();
+        try {
+            for (UpdateOp op : updateOps) {
+                result.add(internalCreateOrUpdate(collection, op, false));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public <T extends Document> void update(Collection<T> collection,
+                                            List<UpdateOp> updateOps) {
+        Lock lock = rwLock.writeLock();
+        lock.lock();
+        try {
+            ConcurrentSkipListMap<String, T> map = getMap(collection);
+            for (UpdateOp op : updateOps) {
+                if (!map.containsKey(op.getId())) {
+                    continue;
+                }
+                internalCreateOrUpdate(collection, op, false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder buff = new StringBuilder();
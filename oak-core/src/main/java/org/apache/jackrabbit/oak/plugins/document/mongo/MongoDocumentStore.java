@@ -22,9 +22,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -59,12 +61,14 @@ import org.apache.jackrabbit.oak.plugins.document.cache.CachingDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.cache.ForwardingListener;
 import org.apache.jackrabbit.oak.plugins.document.cache.NodeDocOffHeapCache;
 import org.apache.jackrabbit.oak.plugins.document.cache.OffHeapCache;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.stats.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -72,6 +76,11 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Striped;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -95,6 +104,12 @@ public class MongoDocumentStore implements CachingDocumentStore {
 
     private static final DBObject BY_ID_ASC = new BasicDBObject(Document.ID, 1);
 
+    /**
+     * The number of documents fetched with a single round trip by a
+     * streaming query.
+     */
+    static final int STREAM_BATCH_SIZE = 100;
+
     static enum DocumentReadPreference {
         PRIMARY,
         PREFER_PRIMARY,
@@ -104,9 +119,15 @@ public class MongoDocumentStore implements CachingDocumentStore {
 
     public static final int IN_CLAUSE_BATCH_SIZE = 500;
 
+    /**
+     * The error code MongoDB reports for a duplicate key.
+     */
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
     private final DBCollection nodes;
     private final DBCollection clusterNodes;
     private final DBCollection settings;
+    private final DBCollection journal;
 
     /**
      * The sum of all milliseconds this class waited for MongoDB.
@@ -116,6 +137,11 @@ public class MongoDocumentStore implements CachingDocumentStore {
     private final Cache<CacheValue, NodeDocument> nodesCache;
     private final CacheStats cacheStats;
 
+    /**
+     * Read counts and latencies per kind of read preference.
+     */
+    private final ReadPreferenceStats readPreferenceStats = new ReadPreferenceStats();
+
     /**
      * Locks to ensure cache consistency on reads, writes and invalidation.
      */
@@ -158,6 +184,8 @@ public class MongoDocumentStore implements CachingDocumentStore {
                 Collection.CLUSTER_NODES.toString());
         settings = db.getCollection(
                 Collection.SETTINGS.toString());
+        journal = db.getCollection(
+                Collection.JOURNAL.toString());
 
         maxReplicationLagMillis = builder.getMaxReplicationLagMillis();
 
@@ -416,7 +444,9 @@ public class MongoDocumentStore implements CachingDocumentStore {
                 LOG.trace("Routing call to secondary for fetching [{}]", key);
             }
 
+            long readStart = System.nanoTime();
             DBObject obj = dbCollection.findOne(getByKeyQuery(key).get(), null, null, readPreference);
+            readPreferenceStats.read(readPreference, readStart);
 
             if (obj == null
                     && readPreference.isSlaveOk()) {
@@ -427,7 +457,10 @@ public class MongoDocumentStore implements CachingDocumentStore {
                 //In such a case we know that document with such an id must exist
                 //but possibly dut to replication lag it has not reached to secondary. So in that case read again
                 //from primary
+                readPreferenceStats.secondaryMiss();
+                readStart = System.nanoTime();
                 obj = dbCollection.findOne(getByKeyQuery(key).get(), null, null, ReadPreference.primary());
+                readPreferenceStats.read(ReadPreference.primary(), readStart);
             }
             if(obj == null){
                 return null;
@@ -491,6 +524,7 @@ public class MongoDocumentStore implements CachingDocumentStore {
 
             cursor.setReadPreference(readPreference);
 
+            long readStart = System.nanoTime();
             List<T> list;
             try {
                 list = new ArrayList<T>();
@@ -499,30 +533,13 @@ public class MongoDocumentStore implements CachingDocumentStore {
                     T doc = convertFromDBObject(collection, o);
                     if (collection == Collection.NODES && doc != null) {
                         doc.seal();
-                        String id = doc.getId();
-                        CacheValue cacheKey = new StringValue(id);
-                        // do not overwrite document in cache if the
-                        // existing one in the cache is newer
-                        NodeDocument cached = nodesCache.getIfPresent(cacheKey);
-                        if (cached != null && cached != NodeDocument.NULL) {
-                            // check mod count
-                            Number cachedModCount = cached.getModCount();
-                            Number modCount = doc.getModCount();
-                            if (cachedModCount == null || modCount == null) {
-                                throw new IllegalStateException(
-                                        "Missing " + Document.MOD_COUNT);
-                            }
-                            if (modCount.longValue() > cachedModCount.longValue()) {
-                                nodesCache.put(cacheKey, (NodeDocument) doc);
-                            }
-                        } else {
-                            nodesCache.put(cacheKey, (NodeDocument) doc);
-                        }
+                        updateCacheFromQuery((NodeDocument) doc);
                     }
                     list.add(doc);
                 }
             } finally {
                 cursor.close();
+                readPreferenceStats.read(readPreference, readStart);
             }
             return list;
         } finally {
@@ -531,6 +548,82 @@ public class MongoDocumentStore implements CachingDocumentStore {
         }
     }
 
+    @Nonnull
+    @Override
+    public <T extends Document> CloseableIterable<T> stream(final Collection<T> collection,
+                                                            String fromKey,
+                                                            String toKey,
+                                                            String indexedProperty,
+                                                            long startValue,
+                                                            int limit,
+                                                            final boolean cache) {
+        log("stream", fromKey, toKey, indexedProperty, startValue, limit, cache);
+        DBCollection dbCollection = getDBCollection(collection);
+        QueryBuilder queryBuilder = QueryBuilder.start(Document.ID);
+        queryBuilder.greaterThan(fromKey);
+        queryBuilder.lessThan(toKey);
+        if (indexedProperty != null) {
+            queryBuilder.and(indexedProperty);
+            queryBuilder.greaterThanEquals(startValue);
+        }
+        String parentId = Utils.getParentIdFromLowerLimit(fromKey);
+        DBCursor cursor = dbCollection.find(queryBuilder.get()).sort(BY_ID_ASC)
+                .batchSize(Math.min(limit, STREAM_BATCH_SIZE));
+        if (limit != Integer.MAX_VALUE) {
+            cursor.limit(limit);
+        }
+        ReadPreference readPreference = getMongoReadPreference(collection,
+                parentId, getDefaultReadPreference(collection));
+        cursor.setReadPreference(readPreference);
+        return CloseableIterable.wrap(Iterables.transform(cursor,
+                new Function<DBObject, T>() {
+            @Override
+            public T apply(DBObject input) {
+                T doc = convertFromDBObject(collection, input);
+                if (collection == Collection.NODES && doc != null) {
+                    doc.seal();
+                    if (cache) {
+                        TreeLock lock = acquire(doc.getId());
+                        try {
+                            updateCacheFromQuery((NodeDocument) doc);
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                }
+                return doc;
+            }
+        }), readPreferenceStats.read(readPreference, cursor));
+    }
+
+    /**
+     * Puts a document read by a query into the {@link #nodesCache}, unless
+     * the cache already has a more recent version of the document. The
+     * caller must hold a lock for the document.
+     *
+     * @param doc the sealed document.
+     */
+    private void updateCacheFromQuery(@Nonnull NodeDocument doc) {
+        CacheValue cacheKey = new StringValue(doc.getId());
+        // do not overwrite document in cache if the
+        // existing one in the cache is newer
+        NodeDocument cached = nodesCache.getIfPresent(cacheKey);
+        if (cached != null && cached != NodeDocument.NULL) {
+            // check mod count
+            Number cachedModCount = cached.getModCount();
+            Number modCount = doc.getModCount();
+            if (cachedModCount == null || modCount == null) {
+                throw new IllegalStateException(
+                        "Missing " + Document.MOD_COUNT);
+            }
+            if (modCount.longValue() > cachedModCount.longValue()) {
+                nodesCache.put(cacheKey, doc);
+            }
+        } else {
+            nodesCache.put(cacheKey, doc);
+        }
+    }
+
     boolean canUseModifiedTimeIdx(long modifiedTimeInSecs) {
         if (maxDeltaForModTimeIdxSecs < 0) {
             return false;
@@ -647,6 +740,211 @@ public class MongoDocumentStore implements CachingDocumentStore {
         return doc;
     }
 
+    @Nonnull
+    @Override
+    public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                       List<UpdateOp> updateOps)
+            throws DocumentStoreException {
+        log("createOrUpdate", updateOps);
+        List<T> result = new ArrayList<T>(updateOps.size());
+        for (int i = 0; i < updateOps.size(); i++) {
+            result.add(null);
+        }
+        // indexes of the operations not applied with a bulk update
+        List<Integer> remaining = new ArrayList<Integer>();
+        if (collection == Collection.NODES) {
+            for (List<Integer> chunk : Lists.partition(indexes(updateOps.size()), IN_CLAUSE_BATCH_SIZE)) {
+                remaining.addAll(bulkUpdate(collection, updateOps, chunk, result));
+            }
+        } else {
+            remaining.addAll(indexes(updateOps.size()));
+        }
+        for (int i : remaining) {
+            T doc = findAndModify(collection, updateOps.get(i), true, false);
+            result.set(i, doc);
+        }
+        log("createOrUpdate returns ", result);
+        return result;
+    }
+
+    /**
+     * Applies the update operations with the given indexes with a single
+     * unordered bulk write. The update of an existing document is
+     * conditional on its modCount as currently known to this store, either
+     * from the cache or read with a single query, and on the absence of a
+     * modCount for documents that do not exist. All operations are sent as
+     * upserts, so an operation whose condition does not match fails with a
+     * duplicate key error reported for exactly that operation. The previous
+     * documents of successful updates are set in {@code result}.
+     *
+     * @return the indexes of the operations that could not be applied
+     *          because the document was created, modified or removed
+     *          concurrently.
+     */
+    private <T extends Document> List<Integer> bulkUpdate(Collection<T> collection,
+                                                          List<UpdateOp> updateOps,
+                                                          List<Integer> indexes,
+                                                          List<T> result) {
+        DBCollection dbCollection = getDBCollection(collection);
+        Map<String, T> oldDocs = findDocuments(collection, updateOps, indexes);
+
+        List<Integer> remaining = new ArrayList<Integer>();
+        List<Integer> bulkIndexes = new ArrayList<Integer>();
+        List<UpdateOp> bulkOps = new ArrayList<UpdateOp>();
+        BulkWriteOperation bulk = dbCollection.initializeUnorderedBulkOperation();
+        for (int i : indexes) {
+            T oldDoc = oldDocs.get(updateOps.get(i).getId());
+            if (oldDoc != null && oldDoc.getModCount() == null) {
+                remaining.add(i);
+                continue;
+            }
+            // make sure we don't modify the original updateOp
+            UpdateOp op = updateOps.get(i).copy();
+            DBObject update = createUpdate(op);
+            QueryBuilder query = createQueryForUpdate(op, false);
+            if (oldDoc != null) {
+                // plain update, fails with a duplicate key error if the
+                // document was modified concurrently
+                query.and(Document.MOD_COUNT).is(oldDoc.getModCount());
+            } else {
+                // create, fails with a duplicate key error if the
+                // document was created concurrently
+                query.and(Document.MOD_COUNT).exists(false);
+            }
+            bulk.find(query.get()).upsert().updateOne(update);
+            bulkIndexes.add(i);
+            bulkOps.add(op);
+        }
+        if (bulkOps.isEmpty()) {
+            return remaining;
+        }
+
+        Set<Integer> failed = new HashSet<Integer>();
+        Set<Integer> upserted = new HashSet<Integer>();
+        long start = start();
+        try {
+            BulkWriteResult writeResult;
+            try {
+                writeResult = bulk.execute();
+            } catch (BulkWriteException e) {
+                for (BulkWriteError err : e.getWriteErrors()) {
+                    if (err.getCode() != DUPLICATE_KEY_ERROR) {
+                        for (UpdateOp op : bulkOps) {
+                            invalidateCache(collection, op.getId());
+                        }
+                        throw DocumentStoreException.convert(e);
+                    }
+                    failed.add(err.getIndex());
+                }
+                writeResult = e.getWriteResult();
+            } catch (MongoException e) {
+                for (UpdateOp op : bulkOps) {
+                    invalidateCache(collection, op.getId());
+                }
+                throw DocumentStoreException.convert(e);
+            }
+            for (BulkWriteUpsert upsert : writeResult.getUpserts()) {
+                upserted.add(upsert.getIndex());
+            }
+        } finally {
+            end("bulkUpdate", start);
+        }
+
+        for (int j = 0; j < bulkOps.size(); j++) {
+            int i = bulkIndexes.get(j);
+            UpdateOp op = bulkOps.get(j);
+            T oldDoc = oldDocs.get(op.getId());
+            if (failed.contains(j)) {
+                // created or modified concurrently, apply it individually
+                invalidateCache(collection, op.getId());
+                remaining.add(i);
+            } else if (upserted.contains(j)) {
+                if (oldDoc == null) {
+                    TreeLock lock = acquire(op.getId());
+                    try {
+                        applyToCache(collection, null, op);
+                    } finally {
+                        lock.unlock();
+                    }
+                } else {
+                    // removed concurrently and created again by the upsert,
+                    // like an individual createOrUpdate would. The new
+                    // document inherits the modCount of the condition, so
+                    // it is not cached
+                    invalidateCache(collection, op.getId());
+                }
+            } else {
+                TreeLock lock = acquire(op.getId());
+                try {
+                    applyToCache(collection, oldDoc, op);
+                } finally {
+                    lock.unlock();
+                }
+                result.set(i, oldDoc);
+            }
+        }
+        Collections.sort(remaining);
+        return remaining;
+    }
+
+    /**
+     * Returns the documents for the update operations with the given
+     * indexes, from the cache if possible and otherwise read with a single
+     * query. Documents that do not exist are not contained in the returned
+     * map.
+     */
+    @Nonnull
+    private <T extends Document> Map<String, T> findDocuments(Collection<T> collection,
+                                                              List<UpdateOp> updateOps,
+                                                              List<Integer> indexes) {
+        Map<String, T> docs = Maps.newHashMap();
+        List<String> uncached = new ArrayList<String>();
+        for (int i : indexes) {
+            String id = updateOps.get(i).getId();
+            @SuppressWarnings("unchecked")
+            T doc = (T) nodesCache.getIfPresent(new StringValue(id));
+            if (doc == null) {
+                uncached.add(id);
+            } else if (doc != NodeDocument.NULL) {
+                docs.put(id, doc);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return docs;
+        }
+        DBCollection dbCollection = getDBCollection(collection);
+        long start = start();
+        try {
+            DBCursor cursor = dbCollection.find(
+                    QueryBuilder.start(Document.ID).in(uncached).get())
+                    .setReadPreference(ReadPreference.primary());
+            try {
+                for (DBObject obj : cursor) {
+                    T doc = convertFromDBObject(collection, obj);
+                    if (doc != null) {
+                        doc.seal();
+                        docs.put(doc.getId(), doc);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (MongoException e) {
+            throw DocumentStoreException.convert(e);
+        } finally {
+            end("findDocuments", start);
+        }
+        return docs;
+    }
+
+    private static List<Integer> indexes(int size) {
+        List<Integer> indexes = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
     @Override
     public <T extends Document> T findAndUpdate(Collection<T> collection, UpdateOp update)
             throws DocumentStoreException {
@@ -778,6 +1076,66 @@ public class MongoDocumentStore implements CachingDocumentStore {
         }
     }
 
+    @Override
+    public <T extends Document> void update(Collection<T> collection,
+                                            List<UpdateOp> updateOps) {
+        if (updateOps.isEmpty()) {
+            return;
+        }
+        log("update", updateOps);
+        DBCollection dbCollection = getDBCollection(collection);
+        // make sure we don't modify the original updateOps
+        List<UpdateOp> ops = Lists.newArrayListWithCapacity(updateOps.size());
+        BulkWriteOperation bulk = dbCollection.initializeUnorderedBulkOperation();
+        for (UpdateOp op : updateOps) {
+            UpdateOp copy = op.copy();
+            DBObject update = createUpdate(copy);
+            bulk.find(getByKeyQuery(copy.getId()).get()).update(update);
+            ops.add(copy);
+        }
+        long start = start();
+        try {
+            Map<String, NodeDocument> cachedDocs = Collections.emptyMap();
+            if (collection == Collection.NODES) {
+                cachedDocs = Maps.newHashMap();
+                for (UpdateOp op : ops) {
+                    cachedDocs.put(op.getId(), nodesCache.getIfPresent(
+                            new StringValue(op.getId())));
+                }
+            }
+            try {
+                bulk.execute();
+            } catch (MongoException e) {
+                // some of the documents may have been updated
+                if (collection == Collection.NODES) {
+                    for (UpdateOp op : ops) {
+                        invalidateCache(collection, op.getId());
+                    }
+                }
+                throw DocumentStoreException.convert(e);
+            }
+            if (collection == Collection.NODES) {
+                // update cache
+                for (UpdateOp op : ops) {
+                    TreeLock lock = acquire(op.getId());
+                    try {
+                        NodeDocument cached = cachedDocs.get(op.getId());
+                        if (cached == null) {
+                            // make sure concurrently loaded document is invalidated
+                            nodesCache.invalidate(new StringValue(op.getId()));
+                        } else {
+                            applyToCache(Collection.NODES, cached, op);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        } finally {
+            end("update", start);
+        }
+    }
+
     DocumentReadPreference getReadPreference(int maxCacheAge){
         if(maxCacheAge >= 0 && maxCacheAge < maxReplicationLagMillis) {
             return DocumentReadPreference.PRIMARY;
@@ -879,7 +1237,9 @@ public class MongoDocumentStore implements CachingDocumentStore {
             return clusterNodes;
         } else if (collection == Collection.SETTINGS) {
             return settings;
-        }else {
+        } else if (collection == Collection.JOURNAL) {
+            return journal;
+        } else {
             throw new IllegalArgumentException(
                     "Unknown collection: " + collection.toString());
         }
@@ -911,6 +1271,15 @@ public class MongoDocumentStore implements CachingDocumentStore {
         return cacheStats;
     }
 
+    /**
+     * @return the read counts and latencies of this store per kind of read
+     *          preference.
+     */
+    @Nonnull
+    public ReadPreferenceStatsMBean getReadPreferenceStats() {
+        return readPreferenceStats;
+    }
+
     long getMaxDeltaForModTimeIdxSecs() {
         return maxDeltaForModTimeIdxSecs;
     }
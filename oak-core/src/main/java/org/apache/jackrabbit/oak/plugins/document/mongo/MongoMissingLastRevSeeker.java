@@ -54,10 +54,7 @@ public class MongoMissingLastRevSeeker extends MissingLastRevSeeker {
 
     @Override
     public CloseableIterable<NodeDocument> getCandidates(final long startTime) {
-        DBObject query =
-                start(NodeDocument.MODIFIED_IN_SECS).greaterThanEquals(
-                                NodeDocument.getModifiedInSecs(startTime))
-                        .get();
+        DBObject query = getCandidatesQuery(startTime);
         DBObject sortFields = new BasicDBObject(NodeDocument.MODIFIED_IN_SECS, -1);
 
         DBCursor cursor =
@@ -72,6 +69,18 @@ public class MongoMissingLastRevSeeker extends MissingLastRevSeeker {
         }), cursor);
     }
 
+    @Override
+    public long getCandidateCount(final long startTime) {
+        return getNodeCollection().count(getCandidatesQuery(startTime),
+                ReadPreference.primary());
+    }
+
+    private static DBObject getCandidatesQuery(long startTime) {
+        return start(NodeDocument.MODIFIED_IN_SECS).greaterThanEquals(
+                        NodeDocument.getModifiedInSecs(startTime))
+                .get();
+    }
+
     @Override
     public boolean acquireRecoveryLock(int clusterId) {
         QueryBuilder query =
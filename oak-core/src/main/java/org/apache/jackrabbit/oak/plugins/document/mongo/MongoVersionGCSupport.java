@@ -71,6 +71,10 @@ public class MongoVersionGCSupport extends VersionGCSupport {
                 start(NodeDocument.DELETED_ONCE).is(Boolean.TRUE)
                                 .put(NodeDocument.MODIFIED_IN_SECS).lessThan(NodeDocument.getModifiedInSecs(lastModifiedTime))
                         .get();
+        return query(query);
+    }
+
+    private CloseableIterable<NodeDocument> query(DBObject query) {
         DBCursor cursor = getNodeCollection().find(query).setReadPreference(ReadPreference.secondaryPreferred());
         return CloseableIterable.wrap(transform(cursor, new Function<DBObject, NodeDocument>() {
             @Override
@@ -80,6 +84,19 @@ public class MongoVersionGCSupport extends VersionGCSupport {
         }), cursor);
     }
 
+    @Override
+    public CloseableIterable<NodeDocument> getPossiblyDeletedDocs(final long lastModifiedTime,
+                                                                  String fromId,
+                                                                  String toId) {
+        //_deletedOnce == true && _modified < lastModifiedTime && fromId < _id < toId
+        DBObject query =
+                start(NodeDocument.DELETED_ONCE).is(Boolean.TRUE)
+                                .put(NodeDocument.MODIFIED_IN_SECS).lessThan(NodeDocument.getModifiedInSecs(lastModifiedTime))
+                                .put(Document.ID).greaterThan(fromId).lessThan(toId)
+                        .get();
+        return query(query);
+    }
+
     @Override
     public int deleteSplitDocuments(Set<SplitDocType> gcTypes, long oldestRevTimeStamp) {
         //OR condition has to be first as we have a index for that
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mongodb.ReadPreference;
+
+/**
+ * Read counts and latencies of a {@link MongoDocumentStore} per kind of
+ * read preference.
+ */
+class ReadPreferenceStats implements ReadPreferenceStatsMBean {
+
+    private final AtomicLong primaryCount = new AtomicLong();
+
+    private final AtomicLong primaryNanos = new AtomicLong();
+
+    private final AtomicLong secondaryCount = new AtomicLong();
+
+    private final AtomicLong secondaryNanos = new AtomicLong();
+
+    private final AtomicLong secondaryMisses = new AtomicLong();
+
+    /**
+     * Records a read with the given read preference.
+     *
+     * @param readPreference the read preference used for the read.
+     * @param startNanos the value of {@link System#nanoTime()} when the
+     *                   read started.
+     */
+    void read(ReadPreference readPreference, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        if (readPreference.isSlaveOk()) {
+            secondaryCount.incrementAndGet();
+            secondaryNanos.addAndGet(nanos);
+        } else {
+            primaryCount.incrementAndGet();
+            primaryNanos.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * Wraps the given resource of a streaming read, typically a cursor. The
+     * read is recorded with the time since this method was called when the
+     * returned {@code Closeable} is closed the first time.
+     *
+     * @param readPreference the read preference used for the read.
+     * @param closeable the resource to close.
+     * @return a {@code Closeable} that closes the resource and records the
+     *          read.
+     */
+    Closeable read(final ReadPreference readPreference,
+                   final Closeable closeable) {
+        final long startNanos = System.nanoTime();
+        final AtomicBoolean closed = new AtomicBoolean();
+        return new Closeable() {
+            @Override
+            public void close() throws IOException {
+                try {
+                    closeable.close();
+                } finally {
+                    if (closed.compareAndSet(false, true)) {
+                        read(readPreference, startNanos);
+                    }
+                }
+            }
+        };
+    }
+
+    void secondaryMiss() {
+        secondaryMisses.incrementAndGet();
+    }
+
+    //----------------------------------------< ReadPreferenceStatsMBean >--
+
+    @Override
+    public long getPrimaryReadCount() {
+        return primaryCount.get();
+    }
+
+    @Override
+    public long getPrimaryReadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(primaryNanos.get());
+    }
+
+    @Override
+    public long getSecondaryReadCount() {
+        return secondaryCount.get();
+    }
+
+    @Override
+    public long getSecondaryReadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(secondaryNanos.get());
+    }
+
+    @Override
+    public long getSecondaryMissCount() {
+        return secondaryMisses.get();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+/**
+ * MBean exposing how many reads of a {@link MongoDocumentStore} were routed
+ * to the primary and to secondaries of a replica set, and how long they took.
+ * All times are in milliseconds.
+ */
+public interface ReadPreferenceStatsMBean {
+    String TYPE = "MongoDocumentStoreReadPreferenceStats";
+
+    /**
+     * @return  number of reads served by the primary
+     */
+    long getPrimaryReadCount();
+
+    /**
+     * @return  accumulated time of reads served by the primary
+     */
+    long getPrimaryReadTime();
+
+    /**
+     * @return  number of reads routed to a secondary (any read preference
+     *          that allows reading from a secondary)
+     */
+    long getSecondaryReadCount();
+
+    /**
+     * @return  accumulated time of reads routed to a secondary
+     */
+    long getSecondaryReadTime();
+
+    /**
+     * @return  number of documents not found on a secondary and therefore
+     *          read again from the primary
+     */
+    long getSecondaryMissCount();
+}
@@ -40,6 +40,10 @@ public class RDBDataSourceFactory {
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RDBDataSourceFactory.class);
 
+    // Maximum number of pooled prepared statements per connection (0 disables pooling)
+    private static final int MAXPREPAREDSTATEMENTS = Integer.getInteger(
+            "org.apache.jackrabbit.oak.plugins.document.rdb.RDBDataSourceFactory.MAXPREPAREDSTATEMENTS", 64);
+
     public static DataSource forJdbcUrl(String url, String username, String passwd, String driverName) {
 
         // load driver class when specified
@@ -73,6 +77,12 @@ public class RDBDataSourceFactory {
             bds.setUsername(username);
             bds.setPassword(passwd);
             bds.setUrl(url);
+            if (MAXPREPAREDSTATEMENTS > 0) {
+                // the document store only uses a small set of distinct
+                // statements; cache them on the physical connection
+                bds.setPoolPreparedStatements(true);
+                bds.setMaxOpenPreparedStatements(MAXPREPAREDSTATEMENTS);
+            }
             return new CloseableDataSource(bds);
         } catch (SQLException ex) {
             String message = "trying to obtain driver for " + url;
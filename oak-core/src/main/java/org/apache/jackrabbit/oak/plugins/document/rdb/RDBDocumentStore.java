@@ -34,6 +34,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -63,12 +64,15 @@ import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Operation;
 import org.apache.jackrabbit.oak.plugins.document.UpdateUtils;
 import org.apache.jackrabbit.oak.plugins.document.cache.CachingDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Objects;
 import com.google.common.cache.Cache;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Striped;
 
@@ -208,7 +212,46 @@ public class RDBDocumentStore implements CachingDocumentStore {
     @Override
     public <T extends Document> List<T> query(Collection<T> collection, String fromKey, String toKey, String indexedProperty,
             long startValue, int limit) {
-        return internalQuery(collection, fromKey, toKey, indexedProperty, startValue, limit);
+        return internalQuery(collection, fromKey, toKey, indexedProperty, startValue, limit, true);
+    }
+
+    @Override
+    public <T extends Document> CloseableIterable<T> stream(final Collection<T> collection, final String fromKey,
+            final String toKey, final String indexedProperty, final long startValue, final int limit, final boolean cache) {
+        // rather than keeping a connection and result set open while the
+        // caller iterates, read the range in batches starting after the
+        // last key returned
+        Iterable<T> docs = new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new AbstractIterator<T>() {
+
+                    private String lastKey = fromKey;
+                    private int remaining = limit;
+                    private Iterator<T> batch = Iterators.emptyIterator();
+                    private boolean exhausted;
+
+                    @Override
+                    protected T computeNext() {
+                        if (!batch.hasNext() && !exhausted && remaining > 0) {
+                            int size = Math.min(remaining, STREAM_BATCH_SIZE);
+                            List<T> docs = internalQuery(collection, lastKey, toKey, indexedProperty, startValue,
+                                    size, cache);
+                            exhausted = docs.size() < size;
+                            batch = docs.iterator();
+                        }
+                        if (!batch.hasNext()) {
+                            return endOfData();
+                        }
+                        T doc = batch.next();
+                        lastKey = doc.getId();
+                        remaining--;
+                        return doc;
+                    }
+                };
+            }
+        };
+        return CloseableIterable.wrap(docs);
     }
 
     @Override
@@ -235,11 +278,21 @@ public class RDBDocumentStore implements CachingDocumentStore {
         internalUpdate(collection, keys, updateOp);
     }
 
+    @Override
+    public <T extends Document> void update(Collection<T> collection, List<UpdateOp> updateOps) {
+        internalUpdate(collection, updateOps);
+    }
+
     @Override
     public <T extends Document> T createOrUpdate(Collection<T> collection, UpdateOp update) {
         return internalCreateOrUpdate(collection, update, true, false);
     }
 
+    @Override
+    public <T extends Document> List<T> createOrUpdate(Collection<T> collection, List<UpdateOp> updateOps) {
+        return internalCreateOrUpdate(collection, updateOps);
+    }
+
     @Override
     public <T extends Document> T findAndUpdate(Collection<T> collection, UpdateOp update) {
         return internalCreateOrUpdate(collection, update, false, true);
@@ -339,6 +392,9 @@ public class RDBDocumentStore implements CachingDocumentStore {
     // number of retries for updates
     private static int RETRIES = 10;
 
+    // number of rows read with a single query by stream()
+    private static int STREAM_BATCH_SIZE = 100;
+
     // for DBs that prefer "concat" over "||"
     private boolean needsConcat = false;
 
@@ -388,6 +444,7 @@ public class RDBDocumentStore implements CachingDocumentStore {
             createTableFor(con, dbtype, Collection.CLUSTER_NODES, options.isDropTablesOnClose());
             createTableFor(con, dbtype, Collection.NODES, options.isDropTablesOnClose());
             createTableFor(con, dbtype, Collection.SETTINGS, options.isDropTablesOnClose());
+            createTableFor(con, dbtype, Collection.JOURNAL, options.isDropTablesOnClose());
         } finally {
             con.close();
         }
@@ -711,8 +768,169 @@ public class RDBDocumentStore implements CachingDocumentStore {
         }
     }
 
+    private <T extends Document> void internalUpdate(Collection<T> collection, List<UpdateOp> updates) {
+        List<UpdateOp> appendable = new ArrayList<UpdateOp>();
+        for (UpdateOp update : updates) {
+            if (isAppendableUpdate(update) && !requiresPreviousState(update)) {
+                appendable.add(update);
+            } else {
+                internalCreateOrUpdate(collection, update.copy(), false, true);
+            }
+        }
+
+        for (List<UpdateOp> chunk : Lists.partition(appendable, CHUNKSIZE)) {
+            // remember what we already have in the cache
+            Map<String, NodeDocument> cachedDocs = Collections.emptyMap();
+            if (collection == Collection.NODES) {
+                cachedDocs = new HashMap<String, NodeDocument>();
+                for (UpdateOp update : chunk) {
+                    cachedDocs.put(update.getId(), nodesCache.getIfPresent(new StringValue(update.getId())));
+                }
+            }
+
+            Connection connection = null;
+            String tableName = getTable(collection);
+            int[] results = null;
+            try {
+                connection = getConnection();
+                results = dbBatchedAppendingUpdates(connection, tableName, chunk);
+                connection.commit();
+            } catch (SQLException ex) {
+                LOG.debug("batched update failed, retrying individually", ex);
+                results = null;
+            } finally {
+                closeConnection(connection);
+            }
+
+            for (int i = 0; i < chunk.size(); i++) {
+                UpdateOp update = chunk.get(i);
+                if (results != null && (results[i] == 1 || results[i] == Statement.SUCCESS_NO_INFO)) {
+                    if (collection == Collection.NODES) {
+                        NodeDocument cached = cachedDocs.get(update.getId());
+                        if (cached == null) {
+                            // make sure concurrently loaded document is invalidated
+                            nodesCache.invalidate(new StringValue(update.getId()));
+                        } else {
+                            T oldDoc = castAsT(cached);
+                            T newDoc = applyChanges(collection, oldDoc, update.copy(), false);
+                            Lock l = getAndLock(update.getId());
+                            try {
+                                applyToCache((NodeDocument) oldDoc, (NodeDocument) newDoc);
+                            } finally {
+                                l.unlock();
+                            }
+                        }
+                    }
+                } else {
+                    // document does not exist or the batch failed
+                    internalCreateOrUpdate(collection, update.copy(), false, true);
+                }
+            }
+        }
+    }
+
+    private <T extends Document> List<T> internalCreateOrUpdate(Collection<T> collection, List<UpdateOp> updates) {
+        List<T> result = new ArrayList<T>(Collections.<T>nCopies(updates.size(), null));
+        // indexes of the updates that need to be applied individually
+        List<Integer> remaining = new ArrayList<Integer>();
+
+        List<Integer> batchIndexes = new ArrayList<Integer>();
+        List<T> oldDocs = new ArrayList<T>();
+        List<T> newDocs = new ArrayList<T>();
+        List<String> appendData = new ArrayList<String>();
+        for (int i = 0; i < updates.size(); i++) {
+            UpdateOp update = updates.get(i).copy();
+            T oldDoc = readDocumentCached(collection, update.getId(), Integer.MAX_VALUE);
+            if (oldDoc == null || oldDoc.get(MODCOUNT) == null || !isAppendableUpdate(update)) {
+                remaining.add(i);
+                continue;
+            }
+            T newDoc = applyChanges(collection, oldDoc, update, false);
+            String data = SR.asString(update);
+            Long modcount = (Long) newDoc.get(MODCOUNT);
+            // every 16th update is a full rewrite, done individually
+            if (modcount % 16 == 0 || data.length() >= this.dataLimitInOctets / CHAR2OCTETRATIO) {
+                remaining.add(i);
+                continue;
+            }
+            batchIndexes.add(i);
+            oldDocs.add(oldDoc);
+            newDocs.add(newDoc);
+            appendData.add(data);
+            if (batchIndexes.size() >= CHUNKSIZE || i == updates.size() - 1) {
+                remaining.addAll(batchedConditionalUpdate(collection, batchIndexes, oldDocs, newDocs, appendData, result));
+                batchIndexes.clear();
+                oldDocs.clear();
+                newDocs.clear();
+                appendData.clear();
+            }
+        }
+        if (!batchIndexes.isEmpty()) {
+            remaining.addAll(batchedConditionalUpdate(collection, batchIndexes, oldDocs, newDocs, appendData, result));
+        }
+
+        Collections.sort(remaining);
+        for (int i : remaining) {
+            result.set(i, internalCreateOrUpdate(collection, updates.get(i).copy(), true, false));
+        }
+        return result;
+    }
+
+    /**
+     * Applies appending updates with a single JDBC batch. Each update only
+     * succeeds if the MODCOUNT of the row still matches the old document.
+     *
+     * @return the indexes of the updates that failed and need to be applied
+     *         individually.
+     */
+    private <T extends Document> List<Integer> batchedConditionalUpdate(Collection<T> collection, List<Integer> indexes,
+            List<T> oldDocs, List<T> newDocs, List<String> appendData, List<T> result) {
+        Connection connection = null;
+        String tableName = getTable(collection);
+        int[] results = null;
+        try {
+            connection = getConnection();
+            results = dbBatchedConditionalAppendingUpdates(connection, tableName, oldDocs, newDocs, appendData);
+            connection.commit();
+        } catch (SQLException ex) {
+            LOG.debug("batched conditional update failed, retrying individually", ex);
+            results = null;
+            try {
+                if (connection != null) {
+                    connection.rollback();
+                }
+            } catch (SQLException e) {
+                LOG.warn("rollback of batched conditional update failed", e);
+            }
+        } finally {
+            closeConnection(connection);
+        }
+
+        List<Integer> failed = new ArrayList<Integer>();
+        for (int j = 0; j < indexes.size(); j++) {
+            if (results != null && (results[j] == 1 || results[j] == Statement.SUCCESS_NO_INFO)) {
+                if (collection == Collection.NODES) {
+                    Lock l = getAndLock(newDocs.get(j).getId());
+                    try {
+                        applyToCache((NodeDocument) oldDocs.get(j), (NodeDocument) newDocs.get(j));
+                    } finally {
+                        l.unlock();
+                    }
+                }
+                result.set(indexes.get(j), oldDocs.get(j));
+            } else {
+                // document changed concurrently or the batch failed
+                if (collection == Collection.NODES) {
+                    invalidateCache(collection, newDocs.get(j).getId());
+                }
+                failed.add(indexes.get(j));
+            }
+        }
+        return failed;
+    }
+
     private <T extends Document> List<T> internalQuery(Collection<T> collection, String fromKey, String toKey,
-            String indexedProperty, long startValue, int limit) {
+            String indexedProperty, long startValue, int limit, boolean cache) {
         Connection connection = null;
         String tableName = getTable(collection);
         List<T> result = new ArrayList<T>();
@@ -725,7 +943,7 @@ public class RDBDocumentStore implements CachingDocumentStore {
             connection = getConnection();
             List<RDBRow> dbresult = dbQuery(connection, tableName, fromKey, toKey, indexedProperty, startValue, limit);
             for (RDBRow r : dbresult) {
-                T doc = runThroughCache(collection, r);
+                T doc = cache ? runThroughCache(collection, r) : SR.fromRow(collection, r);
                 result.add(doc);
             }
         } catch (Exception ex) {
@@ -744,6 +962,8 @@ public class RDBDocumentStore implements CachingDocumentStore {
             return this.tablePrefix + "NODES";
         } else if (collection == Collection.SETTINGS) {
             return this.tablePrefix + "SETTINGS";
+        } else if (collection == Collection.JOURNAL) {
+            return this.tablePrefix + "JOURNAL";
         } else {
             throw new IllegalArgumentException("Unknown collection: " + collection.toString());
         }
@@ -918,6 +1138,18 @@ public class RDBDocumentStore implements CachingDocumentStore {
     private static int CHUNKSIZE = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.CHUNKSIZE", 64);
     // Whether to use cache for query results
     private static boolean NOQUERYFROMCACHE = Boolean.getBoolean("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOQUERYFROMCACHE");
+    // Size (in characters) above which the serialized document is stored (compressed) in BDATA
+    private static int BDATATHRESHOLD = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.BDATATHRESHOLD", 2048);
+    // GZIP compression level used for BDATA
+    private static int GZIPLEVEL = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.GZIPLEVEL", Deflater.BEST_SPEED);
+
+    /**
+     * @return whether the serialized document can be stored in the DATA
+     *         column, or needs to go into BDATA
+     */
+    private boolean fitsIntoData(String data) {
+        return data.length() < Math.min(BDATATHRESHOLD, this.dataLimitInOctets / CHAR2OCTETRATIO);
+    }
 
     private static byte[] asBytes(String data) {
         byte[] bytes;
@@ -935,8 +1167,7 @@ public class RDBDocumentStore implements CachingDocumentStore {
                 ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length());
                 GZIPOutputStream gos = new GZIPOutputStream(bos) {
                     {
-                        // TODO: make this configurable
-                        this.def.setLevel(Deflater.BEST_SPEED);
+                        this.def.setLevel(GZIPLEVEL);
                     }
                 };
                 gos.write(bytes);
@@ -1042,7 +1273,7 @@ public class RDBDocumentStore implements CachingDocumentStore {
             stmt.setObject(si++, cmodcount == null ? 0 : cmodcount, Types.BIGINT);
             stmt.setObject(si++, data.length(), Types.BIGINT);
 
-            if (data.length() <  this.dataLimitInOctets / CHAR2OCTETRATIO) {
+            if (fitsIntoData(data)) {
                 stmt.setString(si++, data);
                 stmt.setBinaryStream(si++, null, 0);
             } else {
@@ -1132,6 +1363,71 @@ public class RDBDocumentStore implements CachingDocumentStore {
         }
     }
 
+    private int[] dbBatchedAppendingUpdates(Connection connection, String tableName, List<UpdateOp> updates) throws SQLException {
+        StringBuilder t = new StringBuilder();
+        t.append("update " + tableName + " set MODIFIED = GREATEST(MODIFIED, ?), MODCOUNT = MODCOUNT + 1, DSIZE = DSIZE + ?, ");
+        t.append(this.needsConcat ? "DATA = CONCAT(DATA, ?) " : "DATA = DATA || CAST(? AS varchar(" + this.dataLimitInOctets
+                + ")) ");
+        t.append("where ID = ?");
+        PreparedStatement stmt = connection.prepareStatement(t.toString());
+        try {
+            for (UpdateOp update : updates) {
+                String appendData = SR.asString(update);
+                int si = 1;
+                stmt.setObject(si++, getModifiedFromUpdate(update), Types.BIGINT);
+                stmt.setObject(si++, 1 + appendData.length(), Types.BIGINT);
+                stmt.setString(si++, "," + appendData);
+                stmt.setString(si++, update.getId());
+                stmt.addBatch();
+            }
+            int[] results = stmt.executeBatch();
+            if (results.length != updates.size()) {
+                throw new SQLException("unexpected number of batch results: " + results.length + " for " + updates.size()
+                        + " updates. Table: " + tableName);
+            }
+            return results;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private <T extends Document> int[] dbBatchedConditionalAppendingUpdates(Connection connection, String tableName,
+            List<T> oldDocs, List<T> newDocs, List<String> appendData) throws SQLException {
+        StringBuilder t = new StringBuilder();
+        t.append("update " + tableName + " set MODIFIED = GREATEST(MODIFIED, ?), HASBINARY = ?, MODCOUNT = ?, CMODCOUNT = ?, DSIZE = DSIZE + ?, ");
+        t.append(this.needsConcat ? "DATA = CONCAT(DATA, ?) " : "DATA = DATA || CAST(? AS varchar(" + this.dataLimitInOctets
+                + ")) ");
+        t.append("where ID = ? and MODCOUNT = ?");
+        PreparedStatement stmt = connection.prepareStatement(t.toString());
+        try {
+            for (int i = 0; i < newDocs.size(); i++) {
+                T document = newDocs.get(i);
+                Number flag = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
+                Boolean hasBinary = flag == null ? false : flag.intValue() == NodeDocument.HAS_BINARY_VAL;
+                Long cmodcount = (Long) document.get(NodeDocument.COLLISIONSMODCOUNT);
+                String data = appendData.get(i);
+                int si = 1;
+                stmt.setObject(si++, document.get(MODIFIED), Types.BIGINT);
+                stmt.setObject(si++, hasBinary ? 1 : 0, Types.SMALLINT);
+                stmt.setObject(si++, document.get(MODCOUNT), Types.BIGINT);
+                stmt.setObject(si++, cmodcount == null ? 0 : cmodcount, Types.BIGINT);
+                stmt.setObject(si++, 1 + data.length(), Types.BIGINT);
+                stmt.setString(si++, "," + data);
+                stmt.setString(si++, document.getId());
+                stmt.setObject(si++, oldDocs.get(i).get(MODCOUNT), Types.BIGINT);
+                stmt.addBatch();
+            }
+            int[] results = stmt.executeBatch();
+            if (results.length != newDocs.size()) {
+                throw new SQLException("unexpected number of batch results: " + results.length + " for " + newDocs.size()
+                        + " updates. Table: " + tableName);
+            }
+            return results;
+        } finally {
+            stmt.close();
+        }
+    }
+
     private boolean dbInsert(Connection connection, String tableName, String id, Long modified, Boolean hasBinary, Long modcount,
             Long cmodcount, String data) throws SQLException {
         PreparedStatement stmt = connection.prepareStatement("insert into " + tableName
@@ -1144,7 +1440,7 @@ public class RDBDocumentStore implements CachingDocumentStore {
             stmt.setObject(si++, modcount, Types.BIGINT);
             stmt.setObject(si++, cmodcount == null ? 0 : cmodcount, Types.BIGINT);
             stmt.setObject(si++, data.length(), Types.BIGINT);
-            if (data.length() <  this.dataLimitInOctets / CHAR2OCTETRATIO) {
+            if (fitsIntoData(data)) {
                 stmt.setString(si++, data);
                 stmt.setBinaryStream(si++, null, 0);
             } else {
@@ -61,6 +61,15 @@ public class SynchronizingDocumentStoreWrapper implements DocumentStore {
         return store.query(collection, fromKey, toKey, indexedProperty, startValue, limit);
     }
 
+    @Override
+    @Nonnull
+    public synchronized <T extends Document> CloseableIterable<T> stream(final Collection<T> collection,
+            final String fromKey, final String toKey, final String indexedProperty, final long startValue,
+            final int limit, final boolean cache) {
+        // read all documents while holding the monitor
+        return CloseableIterable.wrap(store.query(collection, fromKey, toKey, indexedProperty, startValue, limit));
+    }
+
     @Override
     public synchronized <T extends Document> void remove(Collection<T> collection, String key) {
         store.remove(collection, key);
@@ -84,12 +93,25 @@ public class SynchronizingDocumentStoreWrapper implements DocumentStore {
         store.update(collection, keys, updateOp);
     }
 
+    @Override
+    public synchronized <T extends Document> void update(final Collection<T> collection,
+            final List<UpdateOp> updateOps) {
+        store.update(collection, updateOps);
+    }
+
     @Nonnull
     @Override
     public synchronized <T extends Document> T createOrUpdate(final Collection<T> collection, final UpdateOp update) {
         return store.createOrUpdate(collection, update);
     }
 
+    @Nonnull
+    @Override
+    public synchronized <T extends Document> List<T> createOrUpdate(final Collection<T> collection,
+            final List<UpdateOp> updateOps) {
+        return store.createOrUpdate(collection, updateOps);
+    }
+
     @Override
     public synchronized <T extends Document> T findAndUpdate(final Collection<T> collection, final UpdateOp update) {
         return store.findAndUpdate(collection, update);
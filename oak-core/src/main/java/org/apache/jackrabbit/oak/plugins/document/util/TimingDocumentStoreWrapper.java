@@ -162,6 +162,28 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    @Nonnull
+    public <T extends Document> CloseableIterable<T> stream(Collection<T> collection,
+                                                            String fromKey,
+                                                            String toKey,
+                                                            String indexedProperty,
+                                                            long startValue,
+                                                            int limit,
+                                                            boolean cache) {
+        try {
+            long start = now();
+            CloseableIterable<T> result = base.stream(collection, fromKey, toKey, indexedProperty, startValue, limit, cache);
+            updateAndLogTimes("stream", start, 0, 0);
+            if (logCommonCall()) {
+                logCommonCall(start, "stream " + collection + " " + fromKey + " " + toKey + " " + indexedProperty + " " + startValue + " " + limit + " " + cache);
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
     @Override
     public <T extends Document> void remove(Collection<T> collection, String key) {
         try {
@@ -215,6 +237,21 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    public <T extends Document> void update(Collection<T> collection,
+                                            List<UpdateOp> updateOps) {
+        try {
+            long start = now();
+            base.update(collection, updateOps);
+            updateAndLogTimes("update2", start, 0, 0);
+            if (logCommonCall()) {
+                logCommonCall(start, "update2 " + collection);
+            }
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
     @Override
     @CheckForNull
     public <T extends Document> T createOrUpdate(Collection<T> collection, UpdateOp update) {
@@ -231,6 +268,23 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    @Nonnull
+    public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                       List<UpdateOp> updateOps) {
+        try {
+            long start = now();
+            List<T> result = base.createOrUpdate(collection, updateOps);
+            updateAndLogTimes("createOrUpdate2", start, 0, size(result));
+            if (logCommonCall()) {
+                logCommonCall(start, "createOrUpdate2 " + collection);
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
     @Override
     @CheckForNull
     public <T extends Document> T findAndUpdate(Collection<T> collection, UpdateOp update) {
@@ -346,7 +400,7 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
     private static <T extends Document> int size(List<T> list) {
         int result = 0;
         for (T doc : list) {
-            result += doc.getMemory();
+            result += size(doc);
         }
         return result;
     }
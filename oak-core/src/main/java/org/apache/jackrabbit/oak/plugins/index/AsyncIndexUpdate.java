@@ -30,6 +30,7 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import org.apache.jackrabbit.oak.api.CommitFailedException;
@@ -124,6 +125,8 @@ public class AsyncIndexUpdate implements Runnable {
 
     private final MissingIndexProviderStrategy missingStrategy = new DefaultMissingIndexProviderStrategy();
 
+    private ParallelReindex parallelReindex;
+
     public AsyncIndexUpdate(@Nonnull String name, @Nonnull NodeStore store,
             @Nonnull IndexEditorProvider provider, boolean switchOnSync) {
         this.name = checkNotNull(name);
@@ -345,7 +348,8 @@ public class AsyncIndexUpdate implements Runnable {
 
             IndexUpdate indexUpdate =
                     new IndexUpdate(provider, name, after, builder, callback)
-                    .withMissingProviderStrategy(missingStrategy);
+                    .withMissingProviderStrategy(missingStrategy)
+                    .withParallelReindex(parallelReindex);
             CommitFailedException exception =
                     EditorDiff.process(VisibleEditor.wrap(indexUpdate), before, after);
             if (exception != null) {
@@ -428,6 +432,12 @@ public class AsyncIndexUpdate implements Runnable {
         return indexStats;
     }
 
+    public AsyncIndexUpdate withParallelReindex(
+            @CheckForNull ParallelReindex parallelReindex) {
+        this.parallelReindex = parallelReindex;
+        return this;
+    }
+
     public boolean isFinished() {
         return indexStats.getStatus() == STATUS_DONE;
     }
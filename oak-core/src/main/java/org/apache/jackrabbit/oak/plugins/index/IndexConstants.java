@@ -46,6 +46,14 @@ public interface IndexConstants {
      */
     String UNIQUE_PROPERTY_NAME = "unique";
 
+    /**
+     * Number of buckets the indexed paths of each key of a property index are
+     * spread over. Property indexes with this setting use the
+     * {@link org.apache.jackrabbit.oak.plugins.index.property.strategy.BucketedContentMirrorStoreStrategy}.
+     * Changing the value requires a reindex.
+     */
+    String BUCKET_COUNT_PROPERTY_NAME = "bucketCount";
+
     /**
      * Defines the names of the properties that are covered by a specific
      * property index definition.
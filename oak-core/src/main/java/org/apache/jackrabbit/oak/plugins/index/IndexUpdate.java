@@ -19,6 +19,7 @@ package org.apache.jackrabbit.oak.plugins.index;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Sets.union;
 import static org.apache.jackrabbit.oak.api.Type.BOOLEAN;
 import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPERTY_NAME;
@@ -82,6 +83,11 @@ public class IndexUpdate implements Editor {
      */
     private final Map<String, Editor> reindex = new HashMap<String, Editor>();
 
+    /**
+     * Definitions of indexes that need to be re-indexed in parallel.
+     */
+    private final Map<String, NodeBuilder> parallel = new HashMap<String, NodeBuilder>();
+
     /**
      * Callback for the update events of the indexing job
      */
@@ -89,6 +95,12 @@ public class IndexUpdate implements Editor {
 
     private MissingIndexProviderStrategy missingProvider = new MissingIndexProviderStrategy();
 
+    /**
+     * Reindexes supported indexes in parallel, or {@code null} to always
+     * reindex within a single traversal.
+     */
+    private ParallelReindex parallelReindex;
+
     public IndexUpdate(
             IndexEditorProvider provider, String async,
             NodeState root, NodeBuilder builder,
@@ -111,6 +123,7 @@ public class IndexUpdate implements Editor {
         this.root = parent.root;
         this.builder = parent.builder.getChildNode(checkNotNull(name));
         this.updateCallback = parent.updateCallback;
+        this.parallelReindex = parent.parallelReindex;
     }
 
     @Override
@@ -122,6 +135,11 @@ public class IndexUpdate implements Editor {
             log.info("Reindexing will be performed for following indexes: {}",
                     reindex.keySet());
         }
+        if (!parallel.isEmpty()) {
+            log.info("Parallel reindexing will be performed for following indexes: {}",
+                    parallel.keySet());
+            parallelReindex.reindex(provider, root, after, parallel, updateCallback);
+        }
 
         // no-op when reindex is empty
         CommitFailedException exception = process(
@@ -181,7 +199,14 @@ public class IndexUpdate implements Editor {
                                 definition.getChildNode(rm).remove();
                             }
                         }
-                        reindex.put(concat(getPath(), INDEX_DEFINITIONS_NAME, name), editor);
+                        String indexPath = concat(getPath(), INDEX_DEFINITIONS_NAME, name);
+                        if (parallelReindex != null
+                                && parallelReindex.getThreadCount() > 1
+                                && parallelReindex.supports(type)) {
+                            parallel.put(indexPath, definition);
+                        } else {
+                            reindex.put(indexPath, editor);
+                        }
                     }
                 } else {
                     editors.add(editor);
@@ -275,7 +300,7 @@ public class IndexUpdate implements Editor {
     }
 
     protected Set<String> getReindexedDefinitions() {
-        return reindex.keySet();
+        return union(reindex.keySet(), parallel.keySet());
     }
 
     public static class MissingIndexProviderStrategy {
@@ -292,4 +317,10 @@ public class IndexUpdate implements Editor {
         return this;
     }
 
+    public IndexUpdate withParallelReindex(
+            @CheckForNull ParallelReindex parallelReindex) {
+        this.parallelReindex = parallelReindex;
+        return this;
+    }
+
 }
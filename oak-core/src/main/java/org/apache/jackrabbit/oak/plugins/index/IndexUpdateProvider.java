@@ -40,6 +40,8 @@ public class IndexUpdateProvider implements EditorProvider {
 
     private final String async;
 
+    private ParallelReindex parallelReindex;
+
     public IndexUpdateProvider(IndexEditorProvider provider) {
         this(provider, null);
     }
@@ -54,7 +56,14 @@ public class IndexUpdateProvider implements EditorProvider {
     public Editor getRootEditor(
             NodeState before, NodeState after,
             NodeBuilder builder, CommitInfo info) {
-        return VisibleEditor.wrap(new IndexUpdate(provider, async, after, builder, NOOP_CALLBACK));
+        return VisibleEditor.wrap(new IndexUpdate(provider, async, after, builder, NOOP_CALLBACK)
+                .withParallelReindex(parallelReindex));
+    }
+
+    public IndexUpdateProvider withParallelReindex(
+            @CheckForNull ParallelReindex parallelReindex) {
+        this.parallelReindex = parallelReindex;
+        return this;
     }
 
 }
@@ -0,0 +1,721 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static com.google.common.collect.Queues.newArrayDeque;
+import static org.apache.jackrabbit.oak.api.CommitFailedException.CONSTRAINT;
+import static org.apache.jackrabbit.oak.api.CommitFailedException.OAK;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getAncestorPath;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.PROPERTY_NAMES;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.UNIQUE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
+import static org.apache.jackrabbit.oak.spi.commit.CompositeEditor.compose;
+import static org.apache.jackrabbit.oak.spi.commit.EditorDiff.process;
+import static org.apache.jackrabbit.oak.spi.commit.VisibleEditor.wrap;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.PropertyIndexStatistics;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryChildNodeEntry;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeBuilder;
+import org.apache.jackrabbit.oak.spi.commit.Editor;
+import org.apache.jackrabbit.oak.spi.state.AbstractNodeState;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.apache.jackrabbit.util.ISO8601;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * Reindexes property indexes with multiple threads. The content below the
+ * node of the index definitions is split into partitions, which are
+ * indexed in parallel by separate index editors, each writing into its own
+ * copy of the index definitions. The index content of the partitions is
+ * then merged into the actual index definitions.
+ * <br>
+ * The partitions are found breadth first: subtrees are split into their
+ * child subtrees, until there are enough partitions for the configured
+ * number of threads. Nodes with many child nodes are split into ranges of
+ * child nodes instead.
+ * <br>
+ * As the partitions contain disjoint sets of paths, the index content of
+ * the partitions only overlaps for keys found in multiple partitions. For
+ * unique indexes, such an overlap is a constraint violation. The
+ * {@link PropertyIndexStatistics} are combined.
+ * <br>
+ * The index content of a partition is kept in the builder of its index
+ * definition until it is merged. Merging writes through the builders of
+ * the actual index definitions, so the store can persist large merged
+ * content as usual, but the content of a partition that is being indexed
+ * or waits to be merged is kept on the heap for stores whose builders
+ * don't persist pending changes of non-root nodes. At most twice as many
+ * partitions as threads are indexed ahead of the merge, so the memory
+ * needed is bounded by the index content of that many partitions. For
+ * very large repositories, the number of partitions per thread should be
+ * increased accordingly, with the {@code oak.index.reindexPartitionsPerThread}
+ * system property.
+ */
+public class ParallelReindex {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelReindex.class);
+
+    /**
+     * The default number of reindexing threads. With one thread, indexes
+     * are reindexed in a single traversal by {@link IndexUpdate}.
+     */
+    public static final int DEFAULT_THREADS =
+            Integer.getInteger("oak.index.reindexThreads", 1);
+
+    /**
+     * The number of partitions to aim for, per thread, so that
+     * partitions of different sizes are balanced over the threads, and
+     * the content of the partitions held in memory is limited.
+     */
+    private static final int PARTITIONS_PER_THREAD = Math.max(1,
+            Integer.getInteger("oak.index.reindexPartitionsPerThread", 8));
+
+    /**
+     * The maximum depth of the partitions below the node of the index
+     * definitions.
+     */
+    private static final int MAX_DEPTH = 4;
+
+    private final int threads;
+
+    private final ReindexStats stats = new ReindexStats();
+
+    public ParallelReindex(int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.threads = threads;
+    }
+
+    public int getThreadCount() {
+        return threads;
+    }
+
+    public ReindexStatsMBean getReindexStats() {
+        return stats;
+    }
+
+    /**
+     * @param type the type of an index
+     * @return whether indexes of the given type can be reindexed in parallel
+     */
+    boolean supports(@CheckForNull String type) {
+        return PropertyIndexEditorProvider.TYPE.equals(type);
+    }
+
+    /**
+     * Reindexes the given index definitions.
+     *
+     * @param provider the provider of the index editors
+     * @param root the root state
+     * @param after the state of the node of the index definitions
+     * @param definitions the index definitions, by path, without index
+     *            content
+     * @param callback the update callback
+     * @throws CommitFailedException if reindexing failed
+     */
+    void reindex(@Nonnull final IndexEditorProvider provider,
+                 @Nonnull final NodeState root, @Nonnull final NodeState after,
+                 @Nonnull Map<String, NodeBuilder> definitions,
+                 @Nonnull IndexUpdateCallback callback)
+            throws CommitFailedException {
+        final Map<String, NodeState> states = newLinkedHashMap();
+        for (Map.Entry<String, NodeBuilder> entry : definitions.entrySet()) {
+            states.put(entry.getKey(), entry.getValue().getNodeState());
+        }
+        final IndexUpdateCallback sharedCallback = synchronizedCallback(callback);
+        List<Partition> partitions = partition(after);
+        log.info("Reindexing {} in {} partitions with {} threads",
+                new Object[] {states.keySet(), partitions.size(), threads});
+        stats.start(states.keySet(), threads, partitions.size());
+
+        boolean success = false;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                threads, new ReindexThreadFactory());
+        try {
+            // merge the results in the order of the partitions, while the
+            // next partitions are being indexed. Only a limited number of
+            // partitions is indexed ahead, as their content is kept
+            // in memory until merged
+            Deque<Future<Map<String, NodeState>>> futures = newArrayDeque();
+            Iterator<Partition> pending = partitions.iterator();
+            while (pending.hasNext() || !futures.isEmpty()) {
+                while (pending.hasNext() && futures.size() < 2 * threads) {
+                    final Partition partition = pending.next();
+                    futures.add(executor.submit(new Callable<Map<String, NodeState>>() {
+                        @Override
+                        public Map<String, NodeState> call() throws CommitFailedException {
+                            return index(provider, root, states,
+                                    partition.getNodeState(after), sharedCallback);
+                        }
+                    }));
+                }
+                Map<String, NodeState> result = get(futures.removeFirst());
+                for (Map.Entry<String, NodeState> entry : result.entrySet()) {
+                    mergeIndex(entry.getKey(), definitions.get(entry.getKey()), entry.getValue());
+                }
+            }
+            success = true;
+        } finally {
+            executor.shutdownNow();
+            stats.done(success);
+        }
+        log.info("Reindexed {} in {} ms", states.keySet(), stats.getElapsed());
+    }
+
+    private Map<String, NodeState> index(IndexEditorProvider provider,
+            NodeState root, Map<String, NodeState> definitions,
+            NodeState partition, IndexUpdateCallback callback)
+            throws CommitFailedException {
+        Map<String, NodeBuilder> builders = newLinkedHashMap();
+        List<Editor> editors = newArrayList();
+        for (Map.Entry<String, NodeState> entry : definitions.entrySet()) {
+            NodeBuilder definition = entry.getValue().builder();
+            Editor editor = provider.getIndexEditor(
+                    definition.getString(TYPE_PROPERTY_NAME), definition, root, callback);
+            if (editor != null) {
+                builders.put(entry.getKey(), definition);
+                editors.add(editor);
+            }
+        }
+        CommitFailedException exception = process(
+                wrap(new CountingEditor(compose(editors), stats.nodes)),
+                MISSING_NODE, partition);
+        if (exception != null) {
+            throw exception;
+        }
+        stats.partitions.incrementAndGet();
+
+        Map<String, NodeState> result = newHashMap();
+        for (Map.Entry<String, NodeBuilder> entry : builders.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getNodeState());
+        }
+        return result;
+    }
+
+    private static Map<String, NodeState> get(Future<Map<String, NodeState>> future)
+            throws CommitFailedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommitFailedException(OAK, 14, "Interrupted while reindexing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CommitFailedException) {
+                throw (CommitFailedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CommitFailedException(OAK, 15, "Reindexing failed", cause);
+        }
+    }
+
+    /**
+     * Split the given node into partitions.
+     *
+     * @param node the node of the index definitions
+     * @return the partitions
+     */
+    List<Partition> partition(NodeState node) {
+        int target = threads * PARTITIONS_PER_THREAD;
+        List<Partition> partitions = newArrayList();
+        Deque<Partition> pending = newArrayDeque();
+        pending.add(new Partition(Collections.<String>emptyList(), true, null));
+        while (!pending.isEmpty()) {
+            Partition partition = pending.removeFirst();
+            if (partition.children != null
+                    || partition.path.size() >= MAX_DEPTH
+                    || partitions.size() + pending.size() >= target) {
+                partitions.add(partition);
+                continue;
+            }
+            List<String> names = newArrayList();
+            for (String name : partition.getState(node).getChildNodeNames()) {
+                if (!NodeStateUtils.isHidden(name)) {
+                    names.add(name);
+                }
+            }
+            if (names.isEmpty()) {
+                partitions.add(partition);
+                continue;
+            }
+            // the properties of the node itself
+            partitions.add(new Partition(
+                    partition.path, true, Collections.<String>emptyList()));
+            if (names.size() > target) {
+                // a flat node: split into ranges of child nodes
+                int size = (names.size() + target - 1) / target;
+                for (List<String> range : Lists.partition(names, size)) {
+                    partitions.add(new Partition(partition.path, false, range));
+                }
+            } else {
+                for (String name : names) {
+                    List<String> path = newArrayList(partition.path);
+                    path.add(name);
+                    pending.add(new Partition(path, true, null));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Merge the index content of a partition into the given index
+     * definition.
+     */
+    private static void mergeIndex(String path, NodeBuilder definition, NodeState partition)
+            throws CommitFailedException {
+        boolean unique = definition.getBoolean(UNIQUE_PROPERTY_NAME);
+        for (ChildNodeEntry entry : partition.getChildNodeEntries()) {
+            if (!NodeStateUtils.isHidden(entry.getName())) {
+                continue;
+            }
+            NodeBuilder index = definition.child(entry.getName());
+            mergeProperties(index, entry.getNodeState());
+            for (ChildNodeEntry key : entry.getNodeState().getChildNodeEntries()) {
+                String name = key.getName();
+                if (!index.hasChildNode(name)) {
+                    index.setChildNode(name, key.getNodeState());
+                } else if (unique) {
+                    // the partitions are disjoint, so the key
+                    // is used by nodes of different partitions
+                    String msg = String.format("Uniqueness constraint violated at path [%s] for one of the " +
+                            "property in %s having value %s", getAncestorPath(path, 2),
+                            definition.getNames(PROPERTY_NAMES), name);
+                    throw new CommitFailedException(CONSTRAINT, 30, msg);
+                } else if (!merge(index.getChildNode(name), key.getNodeState())) {
+                    throw new IllegalStateException("Conflicting index content for key "
+                            + name + " of " + definition.getNames(PROPERTY_NAMES));
+                }
+            }
+        }
+    }
+
+    /**
+     * Recursively merge the given state into the given builder.
+     *
+     * @return {@code false} if there were conflicting properties, in which
+     *         case the properties of the builder are kept
+     */
+    private static boolean merge(NodeBuilder builder, NodeState state) {
+        boolean merged = mergeProperties(builder, state);
+        for (ChildNodeEntry child : state.getChildNodeEntries()) {
+            String name = child.getName();
+            if (!builder.hasChildNode(name)) {
+                builder.setChildNode(name, child.getNodeState());
+            } else {
+                merged &= merge(builder.getChildNode(name), child.getNodeState());
+            }
+        }
+        return merged;
+    }
+
+    private static boolean mergeProperties(NodeBuilder builder, NodeState state) {
+        boolean merged = true;
+        for (PropertyState property : state.getProperties()) {
+            PropertyState existing = builder.getProperty(property.getName());
+            if (existing == null) {
+                builder.setProperty(property);
+            } else if (!existing.equals(property)) {
+                PropertyState statistics = PropertyIndexStatistics.merge(existing, property);
+                if (statistics != null) {
+                    builder.setProperty(statistics);
+                } else {
+                    merged = false;
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static IndexUpdateCallback synchronizedCallback(
+            final IndexUpdateCallback callback) {
+        return new IndexUpdateCallback() {
+            @Override
+            public void indexUpdate() throws CommitFailedException {
+                synchronized (callback) {
+                    callback.indexUpdate();
+                }
+            }
+        };
+    }
+
+    /**
+     * A part of the content to reindex: a node, optionally without its
+     * properties, with either all its descendants or only the given child
+     * nodes and their descendants.
+     */
+    static class Partition {
+
+        /**
+         * The path of the node, relative to the node of the index
+         * definitions.
+         */
+        final List<String> path;
+
+        final boolean properties;
+
+        /**
+         * The names of the child nodes, or {@code null} for all child nodes.
+         */
+        final List<String> children;
+
+        Partition(List<String> path, boolean properties, List<String> children) {
+            this.path = path;
+            this.properties = properties;
+            this.children = children;
+        }
+
+        NodeState getState(NodeState node) {
+            NodeState state = node;
+            for (String name : path) {
+                state = state.getChildNode(name);
+            }
+            return state;
+        }
+
+        /**
+         * @param node the node of the index definitions
+         * @return a view of the given node that only contains this partition
+         */
+        NodeState getNodeState(NodeState node) {
+            List<NodeState> ancestors = newArrayList();
+            NodeState state = node;
+            for (String name : path) {
+                ancestors.add(state);
+                state = state.getChildNode(name);
+            }
+            NodeState view = state;
+            if (!properties || children != null) {
+                Map<String, NodeState> selected = newLinkedHashMap();
+                if (children == null) {
+                    for (ChildNodeEntry child : state.getChildNodeEntries()) {
+                        selected.put(child.getName(), child.getNodeState());
+                    }
+                } else {
+                    // look up the named children, instead of scanning all
+                    // child nodes for each partition of a flat node
+                    for (String name : children) {
+                        NodeState child = state.getChildNode(name);
+                        if (child.exists()) {
+                            selected.put(name, child);
+                        }
+                    }
+                }
+                view = new PartitionNodeState(state, properties, selected);
+            }
+            for (int i = path.size() - 1; i >= 0; i--) {
+                view = new PartitionNodeState(ancestors.get(i), false,
+                        Collections.singletonMap(path.get(i), view));
+            }
+            return view;
+        }
+
+        @Override
+        public String toString() {
+            return "/" + Joiner.on('/').join(path)
+                    + (properties ? "" : " (no properties)")
+                    + (children == null ? "" : " " + children);
+        }
+
+    }
+
+    /**
+     * A view of a node with only some of its properties and child nodes.
+     */
+    private static class PartitionNodeState extends AbstractNodeState {
+
+        private final NodeState delegate;
+
+        private final boolean properties;
+
+        private final Map<String, NodeState> children;
+
+        PartitionNodeState(NodeState delegate, boolean properties,
+                           Map<String, NodeState> children) {
+            this.delegate = delegate;
+            this.properties = properties;
+            this.children = children;
+        }
+
+        @Override
+        public boolean exists() {
+            return delegate.exists();
+        }
+
+        @Override
+        public boolean hasProperty(String name) {
+            return properties && delegate.hasProperty(name);
+        }
+
+        @Override
+        public PropertyState getProperty(String name) {
+            return properties ? delegate.getProperty(name) : null;
+        }
+
+        @Override
+        public long getPropertyCount() {
+            return properties ? delegate.getPropertyCount() : 0;
+        }
+
+        @Override
+        public Iterable<? extends PropertyState> getProperties() {
+            if (properties) {
+                return delegate.getProperties();
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean hasChildNode(String name) {
+            return children.containsKey(name);
+        }
+
+        @Override
+        public NodeState getChildNode(String name) {
+            NodeState child = children.get(name);
+            return child != null ? child : MISSING_NODE;
+        }
+
+        @Override
+        public Iterable<? extends ChildNodeEntry> getChildNodeEntries() {
+            return MemoryChildNodeEntry.iterable(children.entrySet());
+        }
+
+        @Override
+        public NodeBuilder builder() {
+            return new MemoryNodeBuilder(this);
+        }
+
+    }
+
+    /**
+     * Counts the nodes traversed by the wrapped editor.
+     */
+    private static class CountingEditor implements Editor {
+
+        private final Editor editor;
+
+        private final AtomicLong count;
+
+        CountingEditor(Editor editor, AtomicLong count) {
+            this.editor = editor;
+            this.count = count;
+        }
+
+        @CheckForNull
+        private Editor wrapChild(@CheckForNull Editor child) {
+            return child == null ? null : new CountingEditor(child, count);
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after)
+                throws CommitFailedException {
+            count.incrementAndGet();
+            editor.enter(before, after);
+        }
+
+        @Override
+        public void leave(NodeState before, NodeState after)
+                throws CommitFailedException {
+            editor.leave(before, after);
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after)
+                throws CommitFailedException {
+            editor.propertyAdded(after);
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after)
+                throws CommitFailedException {
+            editor.propertyChanged(before, after);
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before)
+                throws CommitFailedException {
+            editor.propertyDeleted(before);
+        }
+
+        @Override
+        public Editor childNodeAdded(String name, NodeState after)
+                throws CommitFailedException {
+            return wrapChild(editor.childNodeAdded(name, after));
+        }
+
+        @Override
+        public Editor childNodeChanged(String name, NodeState before,
+                NodeState after) throws CommitFailedException {
+            return wrapChild(editor.childNodeChanged(name, before, after));
+        }
+
+        @Override
+        public Editor childNodeDeleted(String name, NodeState before)
+                throws CommitFailedException {
+            return wrapChild(editor.childNodeDeleted(name, before));
+        }
+
+    }
+
+    private static class ReindexThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread thread = new Thread(r, "oak-reindex-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+    final class ReindexStats implements ReindexStatsMBean {
+
+        private volatile String status = STATUS_INIT;
+        private volatile String start = "";
+        private volatile String done = "";
+        private volatile String indexes = "";
+        private volatile int partitionCount;
+        private volatile long startTime;
+        private volatile long endTime;
+
+        final AtomicInteger partitions = new AtomicInteger();
+        final AtomicLong nodes = new AtomicLong();
+
+        void start(Set<String> paths, int threads, int partitionCount) {
+            this.status = STATUS_RUNNING;
+            this.start = now();
+            this.done = "";
+            this.indexes = Joiner.on(", ").join(paths);
+            this.partitionCount = partitionCount;
+            this.startTime = System.currentTimeMillis();
+            this.endTime = 0;
+            this.partitions.set(0);
+            this.nodes.set(0);
+        }
+
+        void done(boolean success) {
+            this.endTime = System.currentTimeMillis();
+            this.done = now();
+            this.status = success ? STATUS_DONE : STATUS_FAILED;
+        }
+
+        long getElapsed() {
+            long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+            return Math.max(0, end - startTime);
+        }
+
+        @Override
+        public String getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getStart() {
+            return start;
+        }
+
+        @Override
+        public String getDone() {
+            return done;
+        }
+
+        @Override
+        public String getIndexes() {
+            return indexes;
+        }
+
+        @Override
+        public int getThreadCount() {
+            return threads;
+        }
+
+        @Override
+        public int getPartitionCount() {
+            return partitionCount;
+        }
+
+        @Override
+        public int getCompletedPartitionCount() {
+            return partitions.get();
+        }
+
+        @Override
+        public long getTraversedNodeCount() {
+            return nodes.get();
+        }
+
+        @Override
+        public long getTraversedNodesPerSecond() {
+            if (startTime == 0) {
+                return 0;
+            }
+            return nodes.get() * 1000 / Math.max(1, getElapsed());
+        }
+
+        @Override
+        public String toString() {
+            return "ReindexStats [status=" + status + ", indexes=" + indexes
+                    + ", partitions=" + partitions + "/" + partitionCount
+                    + ", nodes=" + nodes + "]";
+        }
+
+    }
+
+    private static String now() {
+        return ISO8601.format(Calendar.getInstance());
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+/**
+ * Progress and throughput of the parallel reindexing of property indexes.
+ *
+ * @see ParallelReindex
+ */
+public interface ReindexStatsMBean {
+
+    String TYPE = "ReindexStats";
+
+    String STATUS_INIT = "init";
+
+    String STATUS_RUNNING = "running";
+
+    String STATUS_DONE = "done";
+
+    String STATUS_FAILED = "failed";
+
+    /**
+     * Returns the status of the last reindexing
+     *
+     * @return {@value #STATUS_INIT}, {@value #STATUS_RUNNING},
+     *         {@value #STATUS_DONE} or {@value #STATUS_FAILED}
+     */
+    String getStatus();
+
+    /**
+     * @return The time the last reindexing started at, or {@code ""} if
+     *         there was none.
+     */
+    String getStart();
+
+    /**
+     * @return The time the last reindexing finished at, or {@code ""} if it
+     *         is still running.
+     */
+    String getDone();
+
+    /**
+     * @return the paths of the index definitions of the last reindexing
+     */
+    String getIndexes();
+
+    /**
+     * @return the number of threads used for reindexing
+     */
+    int getThreadCount();
+
+    /**
+     * @return the number of partitions the content was split into
+     */
+    int getPartitionCount();
+
+    /**
+     * @return the number of partitions that have been indexed so far
+     */
+    int getCompletedPartitionCount();
+
+    /**
+     * @return the number of nodes traversed so far, over all partitions
+     */
+    long getTraversedNodeCount();
+
+    /**
+     * @return the number of nodes traversed per second, since the start of
+     *         the last reindexing
+     */
+    long getTraversedNodesPerSecond();
+
+}
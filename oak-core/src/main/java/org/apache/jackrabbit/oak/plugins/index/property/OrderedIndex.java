@@ -124,7 +124,30 @@ public interface OrderedIndex {
      * the default direction for sorting the index
      */
     OrderDirection DEFAULT_DIRECTION = OrderDirection.ASC;
-    
+
+    /**
+     * the 'key' used for specifying how the index content is stored when providing the
+     * configuration. Changing it on an existing index requires a reindex.
+     *
+     * {@code  { "propertyNames"="foobar", "storage"="btree" } }
+     */
+    String STORAGE = "storage";
+
+    /**
+     * the keys are kept in a skip list (default)
+     */
+    String STORAGE_SKIP_LIST = "skiplist";
+
+    /**
+     * the keys are kept in a B+tree of pages
+     */
+    String STORAGE_BTREE = "btree";
+
+    /**
+     * the maximum number of entries of a B+tree page before it is split
+     */
+    int FANOUT = Integer.getInteger("oak.orderedIndex.fanout", 64);
+
     /**
      * defines the default distribution of items across the skip list. It's with a factor of 10%
      * having therefore
@@ -26,7 +26,7 @@ import java.util.List;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.commons.PathUtils;
-import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedContentMirrorStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedIndexStoreStrategy;
 import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.spi.query.Cursors;
 import org.apache.jackrabbit.oak.spi.query.Filter;
@@ -185,7 +185,7 @@ public class OrderedPropertyIndex implements QueryIndex, AdvancedQueryIndex {
         List<OrderEntry> sortOrder = plan.getSortOrder();
         String pathPrefix = plan.getPathPrefix();
         Iterable<String> paths = null;
-        OrderedContentMirrorStoreStrategy strategy
+        OrderedIndexStoreStrategy strategy
                 = OrderedPropertyIndexLookup.getStrategy(plan.getDefinition());
         int depth = 1;
         PropertyRestriction pr = plan.getPropertyRestriction();
@@ -28,6 +28,7 @@ import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.BTreeOrderedStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
@@ -52,6 +53,16 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
      */
     static final IndexStoreStrategy ORDERED_MIRROR_DESCENDING = new OrderedContentMirrorStoreStrategy(OrderDirection.DESC);
 
+    /**
+     * the Ascending B+tree StoreStrategy
+     */
+    static final IndexStoreStrategy BTREE = new BTreeOrderedStoreStrategy();
+
+    /**
+     * the Descending B+tree StoreStrategy
+     */
+    static final IndexStoreStrategy BTREE_DESCENDING = new BTreeOrderedStoreStrategy(OrderDirection.DESC);
+
     private static final Logger LOG = LoggerFactory.getLogger(OrderedPropertyIndexEditor.class);
     
     private final Set<String> propertyNames;
@@ -59,6 +70,8 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
     private boolean properlyConfigured;
 
     private OrderDirection direction = OrderedIndex.DEFAULT_DIRECTION;
+
+    private boolean btree;
     
     private StopwatchLogger swl;
 
@@ -97,6 +110,15 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
             }
         }
         
+        // configuring storage
+        String storage = definition.getString(OrderedIndex.STORAGE);
+        if (OrderedIndex.STORAGE_BTREE.equals(storage)) {
+            this.btree = true;
+        } else if (storage != null && !OrderedIndex.STORAGE_SKIP_LIST.equals(storage)) {
+            LOG.warn("An unknown storage has been specified: '{}'. Using the default one.",
+                     storage);
+        }
+
         // initialising the stopwatch.
         swl = new StopwatchLogger(OrderedPropertyIndexEditor.class);
     }
@@ -105,6 +127,7 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
         super(parent, name);
         this.propertyNames = parent.getPropertyNames();
         this.direction = parent.getDirection();
+        this.btree = parent.btree;
         this.swl = parent.swl;
     }
 
@@ -115,13 +138,21 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
      */
     @Override
     IndexStoreStrategy getStrategy(boolean unique) {
-        IndexStoreStrategy store = ORDERED_MIRROR;
+        IndexStoreStrategy store = btree ? BTREE : ORDERED_MIRROR;
         if (!OrderedIndex.DEFAULT_DIRECTION.equals(getDirection())) {
-            store = ORDERED_MIRROR_DESCENDING;
+            store = btree ? BTREE_DESCENDING : ORDERED_MIRROR_DESCENDING;
         }
         return store;
     }
 
+    /**
+     * The ordered index does not maintain statistics.
+     */
+    @Override
+    boolean isStatisticsEnabled() {
+        return false;
+    }
+
     public boolean isProperlyConfigured() {
         return properlyConfigured;
     }
@@ -36,7 +36,9 @@ import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.BTreeOrderedStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedContentMirrorStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedIndexStoreStrategy;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex;
@@ -63,6 +65,16 @@ public class OrderedPropertyIndexLookup {
      * the descending ordered index
      */
     private static final OrderedContentMirrorStoreStrategy REVERSED_STORE = new OrderedContentMirrorStoreStrategy(OrderDirection.DESC);
+
+    /**
+     * the Ascending B+tree index
+     */
+    private static final BTreeOrderedStoreStrategy BTREE_STORE = new BTreeOrderedStoreStrategy();
+
+    /**
+     * the Descending B+tree index
+     */
+    private static final BTreeOrderedStoreStrategy REVERSED_BTREE_STORE = new BTreeOrderedStoreStrategy(OrderDirection.DESC);
     
     /**
      * we're slightly more expensive than the standard PropertyIndex.
@@ -148,11 +160,12 @@ public class OrderedPropertyIndexLookup {
         return null;
     }
 
-    static OrderedContentMirrorStoreStrategy getStrategy(NodeState indexMeta) {
+    static OrderedIndexStoreStrategy getStrategy(NodeState indexMeta) {
+        boolean btree = OrderedIndex.STORAGE_BTREE.equals(indexMeta.getString(OrderedIndex.STORAGE));
         if (OrderDirection.isAscending(indexMeta)) {
-            return STORE;
+            return btree ? BTREE_STORE : STORE;
         } else {
-            return REVERSED_STORE;
+            return btree ? REVERSED_BTREE_STORE : REVERSED_STORE;
         }
     }
     
@@ -39,8 +39,10 @@ import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditor;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.BucketedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.PropertyIndexStatistics;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.UniqueEntryStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.nodetype.TypePredicate;
 import org.apache.jackrabbit.oak.spi.commit.Editor;
@@ -66,6 +68,9 @@ class PropertyIndexEditor implements IndexEditor {
     private static final IndexStoreStrategy UNIQUE =
             new UniqueEntryStoreStrategy();
 
+    /** Index storage strategy for non-unique indexes of this definition */
+    private final IndexStoreStrategy mirror;
+
     /** Parent editor, or {@code null} if this is the root editor. */
     private final PropertyIndexEditor parent;
 
@@ -139,6 +144,13 @@ class PropertyIndexEditor implements IndexEditor {
             this.keysToCheckForUniqueness = null;
         }
         this.updateCallback = updateCallback;
+
+        if (definition.hasProperty(IndexConstants.BUCKET_COUNT_PROPERTY_NAME)) {
+            this.mirror = new BucketedContentMirrorStoreStrategy(
+                    BucketedContentMirrorStoreStrategy.getBucketCount(definition));
+        } else {
+            this.mirror = MIRROR;
+        }
     }
     
     PropertyIndexEditor(PropertyIndexEditor parent, String name) {
@@ -150,6 +162,7 @@ class PropertyIndexEditor implements IndexEditor {
         this.typePredicate = parent.typePredicate;
         this.keysToCheckForUniqueness = parent.keysToCheckForUniqueness;
         this.updateCallback = parent.updateCallback;
+        this.mirror = parent.mirror;
     }
     
     /**
@@ -206,7 +219,7 @@ class PropertyIndexEditor implements IndexEditor {
     }
 
     IndexStoreStrategy getStrategy(boolean unique) {
-        return unique ? UNIQUE : MIRROR;
+        return unique ? UNIQUE : mirror;
     }
 
     @Override
@@ -216,6 +229,22 @@ class PropertyIndexEditor implements IndexEditor {
         
         beforeKeys = null;
         afterKeys = null;
+
+        if (parent == null && isStatisticsEnabled()
+                && !definition.hasChildNode(INDEX_CONTENT_NODE_NAME)) {
+            // the index content is built from scratch: maintain statistics
+            PropertyIndexStatistics.init(definition.child(INDEX_CONTENT_NODE_NAME));
+        }
+    }
+
+    /**
+     * Whether this editor maintains the {@link PropertyIndexStatistics}
+     * of the index. Unique indexes don't need them.
+     *
+     * @return {@code true} if statistics are maintained
+     */
+    boolean isStatisticsEnabled() {
+        return keysToCheckForUniqueness == null;
     }
 
     @Override
@@ -260,6 +289,9 @@ class PropertyIndexEditor implements IndexEditor {
                 NodeBuilder index = definition.child(INDEX_CONTENT_NODE_NAME);
                 getStrategy(keysToCheckForUniqueness != null).update(
                         index, getPath(), beforeKeys, afterKeys);
+                if (isStatisticsEnabled()) {
+                    PropertyIndexStatistics.update(index, beforeKeys, afterKeys);
+                }
                 if (keysToCheckForUniqueness != null) {
                     keysToCheckForUniqueness.addAll(afterKeys);
                 }
@@ -34,6 +34,7 @@ import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.BucketedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.UniqueEntryStoreStrategy;
@@ -73,6 +74,10 @@ public class PropertyIndexLookup {
     private static final IndexStoreStrategy MIRROR =
             new ContentMirrorStoreStrategy();
 
+    /** Index storage strategy */
+    private static final IndexStoreStrategy BUCKETED_MIRROR =
+            new BucketedContentMirrorStoreStrategy();
+
     /** Index storage strategy */
     private static final IndexStoreStrategy UNIQUE =
             new UniqueEntryStoreStrategy();
@@ -119,6 +124,8 @@ public class PropertyIndexLookup {
     IndexStoreStrategy getStrategy(NodeState indexMeta) {
         if (indexMeta.getBoolean(IndexConstants.UNIQUE_PROPERTY_NAME)) {
             return UNIQUE;
+        } else if (indexMeta.hasProperty(IndexConstants.BUCKET_COUNT_PROPERTY_NAME)) {
+            return BUCKETED_MIRROR;
         }
         return MIRROR;
     }
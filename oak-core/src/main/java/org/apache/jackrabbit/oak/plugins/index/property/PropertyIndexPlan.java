@@ -22,6 +22,7 @@ import static com.google.common.collect.Iterables.isEmpty;
 import static com.google.common.collect.Sets.newHashSet;
 import static com.google.common.collect.Sets.newLinkedHashSet;
 import static java.util.Collections.emptySet;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.BUCKET_COUNT_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.DECLARING_NODE_TYPES;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.PROPERTY_NAMES;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.UNIQUE_PROPERTY_NAME;
@@ -31,6 +32,7 @@ import java.util.Set;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.BucketedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.UniqueEntryStoreStrategy;
@@ -68,6 +70,10 @@ public class PropertyIndexPlan {
     private static final IndexStoreStrategy MIRROR =
             new ContentMirrorStoreStrategy();
 
+    /** Index storage strategy */
+    private static final IndexStoreStrategy BUCKETED_MIRROR =
+            new BucketedContentMirrorStoreStrategy();
+
     /** Index storage strategy */
     private static final IndexStoreStrategy UNIQUE =
             new UniqueEntryStoreStrategy();
@@ -99,6 +105,8 @@ public class PropertyIndexPlan {
 
         if (definition.getBoolean(UNIQUE_PROPERTY_NAME)) {
             this.strategy = UNIQUE;
+        } else if (definition.hasProperty(BUCKET_COUNT_PROPERTY_NAME)) {
+            this.strategy = BUCKETED_MIRROR;
         } else {
             this.strategy = MIRROR;
         }
@@ -0,0 +1,634 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Queues.newArrayDeque;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ENTRY_COUNT_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex;
+import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.state.AbstractChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * An {@link OrderedIndexStoreStrategy} that keeps the keys of the index in a
+ * B+tree of pages with a fixed maximum fanout. The paths of a key are
+ * mirrored below the key node as with the {@link ContentMirrorStoreStrategy}.
+ * <br>
+ * The key nodes and the pages are all child nodes of the index node, which
+ * is also the root page. Every page keeps its sorted keys in the
+ * {@value #KEYS} property, a leaf page only refers to the key nodes by name.
+ * An inner page refers to one child page per key, listed in the
+ * {@value #PAGES} property, where the key is the lower bound of the keys
+ * within that child page. The first key of an inner page is always empty, as
+ * its lower bound is defined by the parent page:
+ *
+ * <code>
+ *  :index : {
+ *      :keys = [, m], :pages = [:p0, :p1], :seq = 2,
+ *      :p0 : { :keys = [a, c] },
+ *      :p1 : { :keys = [m, x] },
+ *      a : { content(match=true) }, c : { ... }, m : { ... }, x : { ... }
+ *  }
+ * </code>
+ *
+ * Adding a path for an existing key only touches the key node. Adding or
+ * removing a key touches a single leaf page, unless the page needs to be
+ * split or becomes empty, which also changes its parent page. As pages only
+ * hold names, splitting a page never moves key nodes or pages. Pages are not
+ * merged when they get less than half full, empty pages are removed.
+ * <br>
+ * Range queries seek to the first matching leaf and then scan the leaves in
+ * the requested direction, lazily, so that a {@code LIMIT} or a keyset
+ * pagination ({@code x > lastSeen ORDER BY x}) only reads the pages it
+ * returns entries from. The keys are stored in ascending order regardless of
+ * the direction, which only defines the order of the query results.
+ */
+public class BTreeOrderedStoreStrategy extends ContentMirrorStoreStrategy
+        implements OrderedIndexStoreStrategy {
+
+    /**
+     * the property holding the sorted keys of a page
+     */
+    public static final String KEYS = ":keys";
+
+    /**
+     * the property holding the names of the child pages of an inner page
+     */
+    public static final String PAGES = ":pages";
+
+    /**
+     * the property of the index node holding the sequence number used for
+     * naming new pages
+     */
+    static final String SEQUENCE = ":seq";
+
+    private static final String PAGE_PREFIX = ":p";
+
+    /**
+     * the number of keys to scan when estimating the number of entries
+     * in a range, per counted entry
+     */
+    private static final int KEY_SCAN_FACTOR = 100;
+
+    private final OrderDirection direction;
+
+    private final int fanout;
+
+    public BTreeOrderedStoreStrategy() {
+        this(OrderDirection.ASC);
+    }
+
+    public BTreeOrderedStoreStrategy(OrderDirection direction) {
+        this(direction, OrderedIndex.FANOUT);
+    }
+
+    public BTreeOrderedStoreStrategy(OrderDirection direction, int fanout) {
+        checkArgument(fanout >= 4, "fanout must be at least 4");
+        this.direction = direction;
+        this.fanout = fanout;
+    }
+
+    @Override
+    public void update(
+            NodeBuilder index, String path,
+            Set<String> beforeKeys, Set<String> afterKeys) {
+        for (String key : beforeKeys) {
+            remove(index, key, path);
+        }
+        for (String key : afterKeys) {
+            insert(index, key, path);
+        }
+    }
+
+    private void insert(NodeBuilder index, String key, String value) {
+        NodeBuilder builder = index.child(key);
+        for (String name : PathUtils.elements(value)) {
+            builder = builder.child(name);
+        }
+        builder.setProperty("match", true);
+
+        Deque<NodeBuilder> pages = findLeaf(index, key);
+        NodeBuilder leaf = pages.peek();
+        List<String> keys = getValues(leaf.getProperty(KEYS));
+        int i = Collections.binarySearch(keys, key);
+        if (i < 0) {
+            keys.add(-i - 1, key);
+            leaf.setProperty(KEYS, keys, Type.STRINGS);
+            if (keys.size() > fanout) {
+                split(index, pages);
+            }
+        }
+    }
+
+    private void remove(NodeBuilder index, String key, String value) {
+        NodeBuilder builder = index.getChildNode(key);
+        if (builder.exists()) {
+            // Collect all builders along the given path
+            Deque<NodeBuilder> builders = newArrayDeque();
+            builders.addFirst(builder);
+
+            // Descend to the correct location in the index tree
+            for (String name : PathUtils.elements(value)) {
+                builder = builder.getChildNode(name);
+                builders.addFirst(builder);
+            }
+
+            // Drop the match value,  if present
+            if (builder.exists()) {
+                builder.removeProperty("match");
+            }
+
+            // Prune all index nodes that are no longer needed
+            prune(index, builders, key);
+
+            if (!index.hasChildNode(key)) {
+                Deque<NodeBuilder> pages = findLeaf(index, key);
+                NodeBuilder leaf = pages.peek();
+                List<String> keys = getValues(leaf.getProperty(KEYS));
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    removePage(pages, key);
+                } else {
+                    leaf.setProperty(KEYS, keys, Type.STRINGS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Descend from the root page to the leaf page for the given key.
+     *
+     * @return the pages along the way, the leaf page first
+     */
+    private static Deque<NodeBuilder> findLeaf(NodeBuilder index, String key) {
+        Deque<NodeBuilder> pages = newArrayDeque();
+        NodeBuilder page = index;
+        pages.push(page);
+        while (page.hasProperty(PAGES)) {
+            List<String> keys = getValues(page.getProperty(KEYS));
+            List<String> children = getValues(page.getProperty(PAGES));
+            page = index.getChildNode(children.get(getChildIndex(keys, key)));
+            pages.push(page);
+        }
+        return pages;
+    }
+
+    /**
+     * Split the first page of the given list into two pages, and the parent
+     * pages as needed. The root page is split by moving both halves into new
+     * pages, so that it stays at the same location. Only the {@value #KEYS}
+     * and {@value #PAGES} properties are changed, the key nodes and pages
+     * themselves stay where they are.
+     */
+    private void split(NodeBuilder index, Deque<NodeBuilder> pages) {
+        NodeBuilder page = pages.pop();
+        NodeBuilder parent = pages.peek();
+        List<String> keys = getValues(page.getProperty(KEYS));
+        List<String> children = page.hasProperty(PAGES)
+                ? getValues(page.getProperty(PAGES)) : null;
+        int mid = keys.size() / 2;
+        if (parent == null) {
+            String left = nextPageName(index);
+            String right = nextPageName(index);
+            copy(index.child(left), keys, children, 0, mid);
+            copy(index.child(right), keys, children, mid, keys.size());
+            page.setProperty(KEYS, newArrayList("", keys.get(mid)), Type.STRINGS);
+            page.setProperty(PAGES, newArrayList(left, right), Type.STRINGS);
+        } else {
+            String name = nextPageName(index);
+            copy(index.child(name), keys, children, mid, keys.size());
+            page.setProperty(KEYS, newArrayList(keys.subList(0, mid)), Type.STRINGS);
+            if (children != null) {
+                page.setProperty(PAGES, newArrayList(children.subList(0, mid)), Type.STRINGS);
+            }
+
+            // register the new page right after the split one
+            List<String> parentKeys = getValues(parent.getProperty(KEYS));
+            List<String> parentChildren = getValues(parent.getProperty(PAGES));
+            int i = getChildIndex(parentKeys, keys.get(mid)) + 1;
+            parentKeys.add(i, keys.get(mid));
+            parentChildren.add(i, name);
+            parent.setProperty(KEYS, parentKeys, Type.STRINGS);
+            parent.setProperty(PAGES, parentChildren, Type.STRINGS);
+            if (parentKeys.size() > fanout) {
+                split(index, pages);
+            }
+        }
+    }
+
+    /**
+     * Set the given range of the keys, and of the child pages of an inner
+     * page, on the given new page.
+     *
+     * @param children the child pages, or null for a leaf page
+     */
+    private static void copy(NodeBuilder to,
+            List<String> keys, @Nullable List<String> children,
+            int start, int end) {
+        List<String> copied = newArrayList(keys.subList(start, end));
+        if (children != null) {
+            copied.set(0, "");
+            to.setProperty(PAGES, newArrayList(children.subList(start, end)), Type.STRINGS);
+        }
+        to.setProperty(KEYS, copied, Type.STRINGS);
+    }
+
+    private static String nextPageName(NodeBuilder index) {
+        PropertyState sequence = index.getProperty(SEQUENCE);
+        long next = sequence == null ? 0 : sequence.getValue(Type.LONG);
+        index.setProperty(SEQUENCE, next + 1);
+        return PAGE_PREFIX + next;
+    }
+
+    /**
+     * Remove the first page of the given list, which became empty, and the
+     * parent pages that become empty as a consequence. The root page is kept
+     * as an empty leaf page.
+     *
+     * @param key a key that was routed to the removed page
+     */
+    private static void removePage(Deque<NodeBuilder> pages, String key) {
+        NodeBuilder page = pages.pop();
+        NodeBuilder parent = pages.peek();
+        if (parent == null) {
+            page.removeProperty(KEYS);
+            page.removeProperty(PAGES);
+            return;
+        }
+        page.remove();
+        List<String> parentKeys = getValues(parent.getProperty(KEYS));
+        List<String> parentChildren = getValues(parent.getProperty(PAGES));
+        int i = getChildIndex(parentKeys, key);
+        parentKeys.remove(i);
+        parentChildren.remove(i);
+        if (parentChildren.isEmpty()) {
+            removePage(pages, key);
+        } else {
+            if (i == 0) {
+                parentKeys.set(0, "");
+            }
+            parent.setProperty(KEYS, parentKeys, Type.STRINGS);
+            parent.setProperty(PAGES, parentChildren, Type.STRINGS);
+        }
+    }
+
+    /**
+     * @return the index of the child page of an inner page with the given
+     *         keys that contains the given key
+     */
+    static int getChildIndex(List<String> keys, String key) {
+        int i = Collections.binarySearch(keys, key);
+        return i >= 0 ? i : Math.max(0, -i - 2);
+    }
+
+    @Nonnull
+    private static List<String> getValues(@Nullable PropertyState property) {
+        if (property == null) {
+            return newArrayList();
+        }
+        return newArrayList(property.getValue(Type.STRINGS));
+    }
+
+    /**
+     * Fetch the node of the given key.
+     *
+     * @param index the index node
+     * @param key the key
+     * @return the key node, which might not exist
+     */
+    @Nonnull
+    static NodeState getKeyNode(@Nonnull NodeState index, @Nonnull String key) {
+        return index.getChildNode(key);
+    }
+
+    /**
+     * The key nodes within the given range, in the given order.
+     *
+     * @param index the index node
+     * @param first the lower bound, or null
+     * @param firstIncluding whether the lower bound is included
+     * @param last the upper bound, or null
+     * @param lastIncluding whether the upper bound is included
+     * @param ascending whether to return the keys in ascending order
+     * @return the key nodes
+     */
+    static Iterator<ChildNodeEntry> getKeyNodes(NodeState index,
+            String first, boolean firstIncluding,
+            String last, boolean lastIncluding, boolean ascending) {
+        return new RangeIterator(index, first, firstIncluding, last, lastIncluding, ascending);
+    }
+
+    @Override
+    public Iterable<String> query(final Filter filter, final String indexName,
+            final NodeState indexMeta, final PropertyRestriction pr,
+            final String pathPrefix) {
+        final NodeState index = indexMeta.getChildNode(INDEX_CONTENT_NODE_NAME);
+        final String first = encode(pr.first);
+        final String last = encode(pr.last);
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                PathIterator it = new PathIterator(filter, indexName, pathPrefix);
+                it.setPathContainsValue(true);
+                it.enqueue(getKeyNodes(index, first, pr.firstIncluding,
+                        last, pr.lastIncluding, direction.isAscending()));
+                return it;
+            }
+        };
+    }
+
+    @Override
+    public Iterable<String> query(final Filter filter, final String indexName,
+            final NodeState indexMeta, final String indexStorageNodeName,
+            final Iterable<String> values) {
+        final NodeState index = indexMeta.getChildNode(indexStorageNodeName);
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                PathIterator it = new PathIterator(filter, indexName, "");
+                it.setPathContainsValue(true);
+                if (values == null) {
+                    it.enqueue(getKeyNodes(index, null, false, null, false,
+                            direction.isAscending()));
+                } else {
+                    for (String p : values) {
+                        it.enqueue(getKeyNodes(index, p, true, p, true, true));
+                    }
+                }
+                return it;
+            }
+        };
+    }
+
+    @Override
+    public long count(Filter filter, NodeState indexMeta, String indexStorageNodeName,
+            Set<String> values, int max) {
+        if (values == null || indexMeta.hasProperty(ENTRY_COUNT_PROPERTY_NAME)) {
+            // the entries are counted below the pages or
+            // the configured entry count is used
+            return super.count(filter, indexMeta, indexStorageNodeName, values, max);
+        }
+        NodeState index = indexMeta.getChildNode(indexStorageNodeName);
+        long count = 0;
+        for (String p : values) {
+            if (count > max) {
+                break;
+            }
+            NodeState key = getKeyNode(index, p);
+            if (key.exists()) {
+                CountingNodeVisitor v = new CountingNodeVisitor(max);
+                v.visit(key);
+                count += v.getEstimatedCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Estimate the number of entries within the given restriction. The
+     * entries are counted for the first keys of the range, up to the given
+     * maximum. Then only the keys of the leaf pages are counted, without
+     * reading the key nodes, and the number of entries is extrapolated from
+     * the average number of entries per key.
+     */
+    @Override
+    public long count(NodeState indexMeta, PropertyRestriction pr, int max) {
+        NodeState index = indexMeta.getChildNode(INDEX_CONTENT_NODE_NAME);
+        if (!index.exists()) {
+            return 0;
+        }
+        if (pr == null) {
+            pr = new PropertyRestriction();
+        }
+        if (pr.first == null && pr.last == null) {
+            PropertyState ec = indexMeta.getProperty(ENTRY_COUNT_PROPERTY_NAME);
+            if (ec != null) {
+                return ec.getValue(Type.LONG);
+            }
+        }
+        Iterator<ChildNodeEntry> it = getKeyNodes(index,
+                encode(pr.first), pr.firstIncluding,
+                encode(pr.last), pr.lastIncluding, true);
+        long count = 0;
+        long keys = 0;
+        long countedKeys = 0;
+        long maxKeys = (long) max * KEY_SCAN_FACTOR;
+        while (it.hasNext() && keys < maxKeys) {
+            ChildNodeEntry key = it.next();
+            keys++;
+            if (count <= max) {
+                CountingNodeVisitor v = new CountingNodeVisitor(max);
+                v.visit(key.getNodeState());
+                count += v.getEstimatedCount();
+                countedKeys++;
+            }
+        }
+        if (countedKeys > 0 && countedKeys < keys) {
+            count = count * keys / countedKeys;
+        }
+        return count;
+    }
+
+    @CheckForNull
+    private static String encode(@Nullable PropertyValue value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return URLEncoder.encode(value.getValue(Type.STRING), Charsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is unsupported", e);
+        }
+    }
+
+    /**
+     * Iterates over the key nodes within a range. The pages are read lazily,
+     * starting with the path from the root page to the first leaf page of the
+     * range.
+     */
+    private static class RangeIterator extends AbstractIterator<ChildNodeEntry> {
+
+        private final Deque<Cursor> cursors = newArrayDeque();
+        private final NodeState index;
+        private final String first;
+        private final boolean firstIncluding;
+        private final String last;
+        private final boolean lastIncluding;
+        private final boolean ascending;
+
+        RangeIterator(NodeState index,
+                String first, boolean firstIncluding,
+                String last, boolean lastIncluding, boolean ascending) {
+            this.index = index;
+            this.first = first;
+            this.firstIncluding = firstIncluding;
+            this.last = last;
+            this.lastIncluding = lastIncluding;
+            this.ascending = ascending;
+            seek(index);
+        }
+
+        /**
+         * Descend to the leaf page containing the start of the range.
+         */
+        private void seek(NodeState root) {
+            String start = ascending ? first : last;
+            Cursor cursor = new Cursor(root);
+            cursors.push(cursor);
+            while (cursor.children != null) {
+                if (start != null) {
+                    cursor.position = getChildIndex(cursor.keys, start);
+                }
+                cursor = new Cursor(cursor.getChild());
+                cursors.push(cursor);
+            }
+            if (start != null) {
+                int i = Collections.binarySearch(cursor.keys, start);
+                if (ascending) {
+                    cursor.position = i >= 0
+                            ? (firstIncluding ? i : i + 1) : -i - 1;
+                } else {
+                    cursor.position = i >= 0
+                            ? (lastIncluding ? i : i - 1) : -i - 2;
+                }
+            }
+        }
+
+        @Override
+        protected ChildNodeEntry computeNext() {
+            while (!cursors.isEmpty()) {
+                Cursor cursor = cursors.peek();
+                if (cursor.position < 0 || cursor.position >= cursor.keys.size()) {
+                    // continue with the next sibling page
+                    cursors.pop();
+                    if (!cursors.isEmpty()) {
+                        cursors.peek().advance();
+                    }
+                } else if (cursor.children != null) {
+                    cursors.push(new Cursor(cursor.getChild()));
+                } else {
+                    String key = cursor.keys.get(cursor.position);
+                    cursor.advance();
+                    if (isBeyondEnd(key)) {
+                        cursors.clear();
+                        break;
+                    }
+                    return new KeyEntry(index, key);
+                }
+            }
+            return endOfData();
+        }
+
+        private boolean isBeyondEnd(String key) {
+            if (ascending) {
+                if (last == null) {
+                    return false;
+                }
+                int c = key.compareTo(last);
+                return c > 0 || (c == 0 && !lastIncluding);
+            } else {
+                if (first == null) {
+                    return false;
+                }
+                int c = key.compareTo(first);
+                return c < 0 || (c == 0 && !firstIncluding);
+            }
+        }
+
+        /**
+         * The current position within a page.
+         */
+        private class Cursor {
+
+            final List<String> keys;
+            final List<String> children;
+            int position;
+
+            Cursor(NodeState page) {
+                this.keys = getValues(page.getProperty(KEYS));
+                PropertyState pages = page.getProperty(PAGES);
+                this.children = pages == null ? null : getValues(pages);
+                this.position = ascending ? 0 : keys.size() - 1;
+            }
+
+            NodeState getChild() {
+                return index.getChildNode(children.get(position));
+            }
+
+            void advance() {
+                position += ascending ? 1 : -1;
+            }
+
+        }
+
+    }
+
+    /**
+     * A key node, which is only read when needed.
+     */
+    private static class KeyEntry extends AbstractChildNodeEntry {
+
+        private final NodeState index;
+        private final String name;
+
+        KeyEntry(NodeState index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+
+        @Override
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        @Nonnull
+        public NodeState getNodeState() {
+            return index.getChildNode(name);
+        }
+
+    }
+
+}
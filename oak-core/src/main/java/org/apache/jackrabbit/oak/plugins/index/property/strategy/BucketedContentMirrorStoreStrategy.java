@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Queues.newArrayDeque;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.BUCKET_COUNT_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ENTRY_COUNT_PROPERTY_NAME;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryChildNodeEntry;
+import org.apache.jackrabbit.oak.query.FilterIterators;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
+
+/**
+ * A {@link ContentMirrorStoreStrategy} that spreads the mirrored paths of a
+ * key over a fixed number of buckets. The bucket of a path is derived from
+ * the hash code of the path.<br>
+ * This avoids a single large (and frequently rewritten) list of child nodes
+ * for keys shared by many nodes, which otherwise becomes a hot spot for
+ * concurrent commits.<br>
+ * <br>
+ * For example for a node that is under {@code /test/node}, the index
+ * structure will be {@code /oak:index/index/key/bucket/test/node}:
+ *
+ * <pre>
+ * {@code
+ * /
+ *   test
+ *     node
+ *   oak:index
+ *     index
+ *       key
+ *         3
+ *           test
+ *             node
+ * }
+ * </pre>
+ *
+ * The number of buckets is configured with the
+ * {@link org.apache.jackrabbit.oak.plugins.index.IndexConstants#BUCKET_COUNT_PROPERTY_NAME}
+ * property of the index definition. Changing it requires a reindex.
+ * Queries and cost estimates read the buckets of the index content or the
+ * number of buckets of the given index definition, so they do not depend on
+ * the number of buckets this instance was created with.
+ */
+public class BucketedContentMirrorStoreStrategy extends ContentMirrorStoreStrategy {
+
+    /**
+     * The default number of buckets per key.
+     */
+    public static final int DEFAULT_BUCKET_COUNT = 16;
+
+    private final int bucketCount;
+
+    public BucketedContentMirrorStoreStrategy() {
+        this(DEFAULT_BUCKET_COUNT);
+    }
+
+    public BucketedContentMirrorStoreStrategy(int bucketCount) {
+        checkArgument(bucketCount > 0, "bucketCount must be positive");
+        this.bucketCount = bucketCount;
+    }
+
+    /**
+     * Returns the number of buckets configured in the given index definition.
+     *
+     * @param definition the index definition
+     * @return the number of buckets
+     */
+    public static int getBucketCount(NodeBuilder definition) {
+        return getBucketCount(definition.getProperty(BUCKET_COUNT_PROPERTY_NAME));
+    }
+
+    /**
+     * Returns the number of buckets configured in the given index definition.
+     *
+     * @param definition the index definition
+     * @return the number of buckets
+     */
+    public static int getBucketCount(NodeState definition) {
+        return getBucketCount(definition.getProperty(BUCKET_COUNT_PROPERTY_NAME));
+    }
+
+    private static int getBucketCount(@Nullable PropertyState property) {
+        if (property != null) {
+            long count = property.getValue(Type.LONG);
+            if (count > 0 && count <= Integer.MAX_VALUE) {
+                return (int) count;
+            }
+        }
+        return DEFAULT_BUCKET_COUNT;
+    }
+
+    int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * @param path the path stored in the index
+     * @return the name of the bucket node for the given path
+     */
+    String getBucket(String path) {
+        return String.valueOf((path.hashCode() & Integer.MAX_VALUE) % bucketCount);
+    }
+
+    @Override
+    public void update(
+            NodeBuilder index, String path,
+            Set<String> beforeKeys, Set<String> afterKeys) {
+        String bucket = getBucket(path);
+        for (String key : beforeKeys) {
+            remove(index, key, bucket, path);
+        }
+        for (String key : afterKeys) {
+            insert(index, key, bucket, path);
+        }
+    }
+
+    private void remove(NodeBuilder index, String key, String bucket, String value) {
+        NodeBuilder builder = index.getChildNode(key);
+        if (builder.exists()) {
+            // Collect all builders along the given path
+            Deque<NodeBuilder> builders = newArrayDeque();
+            builders.addFirst(builder);
+            builder = builder.getChildNode(bucket);
+            builders.addFirst(builder);
+
+            // Descend to the correct location in the index tree
+            for (String name : PathUtils.elements(value)) {
+                builder = builder.getChildNode(name);
+                builders.addFirst(builder);
+            }
+
+            // Drop the match value,  if present
+            if (builder.exists()) {
+                builder.removeProperty("match");
+            }
+
+            // Prune all index nodes that are no longer needed
+            prune(index, builders, key);
+        }
+    }
+
+    private void insert(NodeBuilder index, String key, String bucket, String value) {
+        NodeBuilder builder = fetchKeyNode(index, key).child(bucket);
+        for (String name : PathUtils.elements(value)) {
+            builder = builder.child(name);
+        }
+        builder.setProperty("match", true);
+    }
+
+    @Override
+    public Iterable<String> query(final Filter filter, final String indexName,
+            final NodeState indexMeta, final String indexStorageNodeName,
+            final Iterable<String> values) {
+        final NodeState index = indexMeta.getChildNode(indexStorageNodeName);
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                if (values == null) {
+                    // a path with multiple values is found in multiple
+                    // keys, but always in the same bucket. Iterate bucket
+                    // by bucket, so that duplicates only need to be
+                    // detected within a bucket. The buckets are those of
+                    // the index definition, not the ones of this instance
+                    return Iterators.concat(Iterators.transform(
+                            new BucketNameIterator(getBucketCount(indexMeta)),
+                            new Function<String, Iterator<String>>() {
+                                @Override
+                                public Iterator<String> apply(String bucket) {
+                                    return queryBucket(filter, indexName, index, bucket);
+                                }
+                            }));
+                }
+                PathIterator it = new PathIterator(filter, indexName, "");
+                for (String p : values) {
+                    NodeState property = index.getChildNode(p);
+                    if (property.exists()) {
+                        // we have an entry for this value, so use it
+                        it.enqueue(getBuckets(property));
+                    }
+                }
+                return it;
+            }
+        };
+    }
+
+    /**
+     * Returns the distinct paths in the given bucket of all keys.
+     */
+    private Iterator<String> queryBucket(Filter filter, String indexName,
+            NodeState index, final String bucket) {
+        PathIterator it = new PathIterator(filter, indexName, "");
+        it.enqueue(Iterators.transform(getChildNodeEntries(index).iterator(),
+                new Function<ChildNodeEntry, ChildNodeEntry>() {
+                    @Override
+                    public ChildNodeEntry apply(ChildNodeEntry key) {
+                        return new MemoryChildNodeEntry("",
+                                key.getNodeState().getChildNode(bucket));
+                    }
+                }));
+        final long maxMemoryEntries = filter.getQueryEngineSettings().getLimitInMemory();
+        final Set<String> knownPaths = Sets.newHashSet();
+        return Iterators.filter(it, new Predicate<String>() {
+            @Override
+            public boolean apply(String path) {
+                if (!knownPaths.add(path)) {
+                    return false;
+                }
+                FilterIterators.checkMemoryLimit(knownPaths.size(), maxMemoryEntries);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Iterates over the bucket names, from "0" to the bucket count minus one.
+     */
+    private static class BucketNameIterator extends AbstractIterator<String> {
+
+        private final int bucketCount;
+
+        private int next;
+
+        BucketNameIterator(int bucketCount) {
+            this.bucketCount = bucketCount;
+        }
+
+        @Override
+        protected String computeNext() {
+            if (next < bucketCount) {
+                return String.valueOf(next++);
+            }
+            return endOfData();
+        }
+    }
+
+    /**
+     * Returns the buckets of the given key node as entries with an empty
+     * name, so that the mirrored paths below them are relative to the root.
+     */
+    private static Iterator<ChildNodeEntry> getBuckets(NodeState key) {
+        return Iterators.transform(key.getChildNodeEntries().iterator(),
+                new Function<ChildNodeEntry, ChildNodeEntry>() {
+                    @Override
+                    public ChildNodeEntry apply(ChildNodeEntry bucket) {
+                        return new MemoryChildNodeEntry("", bucket.getNodeState());
+                    }
+                });
+    }
+
+    @Override
+    public long count(Filter filter, NodeState indexMeta, final String indexStorageNodeName,
+            Set<String> values, int max) {
+        if (values == null || values.isEmpty()
+                || indexMeta.hasProperty(ENTRY_COUNT_PROPERTY_NAME)) {
+            // counting all entries or using the configured entry count
+            // does not depend on the layout below the keys
+            return super.count(filter, indexMeta, indexStorageNodeName, values, max);
+        }
+        NodeState index = indexMeta.getChildNode(indexStorageNodeName);
+        String filterRootPath = null;
+        if (filter != null &&
+                filter.getPathRestriction().equals(Filter.PathRestriction.ALL_CHILDREN)) {
+            filterRootPath = filter.getPath();
+        }
+        if (filterRootPath == null && PropertyIndexStatistics.isAvailable(index)) {
+            return countFromStatistics(index, values);
+        }
+        long count = 0;
+        int size = values.size();
+        max = Math.max(10, max / size);
+        int i = 0;
+        for (String p : values) {
+            if (count > max && i > 3) {
+                // the total count is extrapolated from the the number
+                // of values counted so far to the total number of values
+                count = count * size / i;
+                break;
+            }
+            NodeState key = index.getChildNode(p);
+            if (key.exists()) {
+                CountingNodeVisitor v = new CountingNodeVisitor(max);
+                long buckets = key.getChildNodeCount(Long.MAX_VALUE);
+                long visited = 0;
+                for (ChildNodeEntry bucket : key.getChildNodeEntries()) {
+                    if (v.getCount() >= max) {
+                        break;
+                    }
+                    visited++;
+                    NodeState s = bucket.getNodeState();
+                    if (filterRootPath != null) {
+                        // Descend directly to path restriction inside index tree
+                        for (String pathFragment : PathUtils
+                                .elements(filterRootPath)) {
+                            s = s.getChildNode(pathFragment);
+                            if (!s.exists()) {
+                                break;
+                            }
+                        }
+                    }
+                    if (s.exists()) {
+                        v.visit(s);
+                    }
+                }
+                long keyCount = v.getEstimatedCount();
+                if (visited < buckets) {
+                    // the paths are spread evenly over the buckets, so the
+                    // count of the key is extrapolated from the buckets
+                    // visited so far to all buckets
+                    keyCount = keyCount * buckets / visited;
+                }
+                count += keyCount;
+            }
+            i++;
+        }
+        return count;
+    }
+
+}
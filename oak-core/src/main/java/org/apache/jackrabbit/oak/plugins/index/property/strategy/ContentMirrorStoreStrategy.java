@@ -175,15 +175,19 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
     public long count(Filter filter, NodeState indexMeta, final String indexStorageNodeName,
             Set<String> values, int max) {
         NodeState index = indexMeta.getChildNode(indexStorageNodeName);
-        int count = 0;
+        long count = 0;
         if (values == null) {
             PropertyState ec = indexMeta.getProperty(ENTRY_COUNT_PROPERTY_NAME);
             if (ec != null) {
                 return ec.getValue(Type.LONG);
             }
-            CountingNodeVisitor v = new CountingNodeVisitor(max);
-            v.visit(index);
-            count = v.getEstimatedCount();
+            if (PropertyIndexStatistics.isAvailable(index)) {
+                count = PropertyIndexStatistics.getCount(index);
+            } else {
+                CountingNodeVisitor v = new CountingNodeVisitor(max);
+                v.visit(index);
+                count = v.getEstimatedCount();
+            }
             if (count >= max) {
                 // "is not null" queries typically read more data
                 count *= 10;
@@ -202,6 +206,8 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                 ec = indexMeta.getProperty(KEY_COUNT_PROPERTY_NAME);
                 if (ec != null) {
                     keyCount = ec.getValue(Type.LONG);
+                } else if (PropertyIndexStatistics.getDistinctKeyCount(index) > 0) {
+                    keyCount = PropertyIndexStatistics.getDistinctKeyCount(index);
                 }
                 // cast to double to avoid overflow 
                 // (entryCount could be Long.MAX_VALUE)
@@ -209,13 +215,16 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                 // otherwise the traversing index might be used
                 return (long) ((double) entryCount / keyCount) + size;
             }
-            max = Math.max(10, max / size);
-            int i = 0;
             String filterRootPath = null;
             if (filter != null &&
                     filter.getPathRestriction().equals(Filter.PathRestriction.ALL_CHILDREN)) {
                 filterRootPath = filter.getPath();
             }
+            if (filterRootPath == null && PropertyIndexStatistics.isAvailable(index)) {
+                return countFromStatistics(index, values);
+            }
+            max = Math.max(10, max / size);
+            int i = 0;
             for (String p : values) {
                 if (count > max && i > 3) {
                     // the total count is extrapolated from the the number 
@@ -245,6 +254,25 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
         return count;
     }
 
+    /**
+     * Sums up the maintained number of entries of the given keys.
+     *
+     * @param index the index content node, with statistics
+     * @param values the keys
+     * @return the approximate number of entries
+     * @see PropertyIndexStatistics
+     */
+    static long countFromStatistics(NodeState index, Set<String> values) {
+        long count = 0;
+        for (String p : values) {
+            NodeState s = index.getChildNode(p);
+            if (s.exists()) {
+                count += Math.max(0, PropertyIndexStatistics.getCount(s));
+            }
+        }
+        return count;
+    }
+
     /**
      * An iterator over paths within an index node.
      */
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import java.util.Arrays;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * A HyperLogLog sketch to estimate the number of distinct values added to
+ * it, using 64 registers (a standard error of about 13%). The registers are
+ * kept in a short string, so that the sketch can be stored in a property.
+ * Adding a value only changes the sketch occasionally, and less and less
+ * often the more values were added.
+ */
+public class HyperLogLog {
+
+    /**
+     * Number of bits of the hash used to select the register.
+     */
+    private static final int P = 6;
+
+    private static final int M = 1 << P;
+
+    /**
+     * Bias correction constant for {@code M = 64}.
+     */
+    private static final double ALPHA = 0.709;
+
+    /**
+     * Characters used to encode the registers (values 0 to 59).
+     */
+    private static final String ALPHABET =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_";
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[M];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * Adds the given value to the sketch.
+     *
+     * @param value the value
+     * @return {@code true} if the sketch changed
+     */
+    public boolean add(@Nonnull String value) {
+        return addHash(Hashing.murmur3_128().hashString(value, Charsets.UTF_8).asLong());
+    }
+
+    boolean addHash(long hash) {
+        int index = (int) (hash >>> (64 - P));
+        // rank of the first 1-bit in the remaining bits
+        byte rank = (byte) (Math.min(Long.numberOfLeadingZeros(hash << P), 64 - P) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds all values of the given sketch to this sketch, as if the values
+     * added to the given sketch were added to this sketch.
+     *
+     * @param other the other sketch
+     * @return {@code true} if this sketch changed
+     */
+    public boolean addAll(@Nonnull HyperLogLog other) {
+        boolean changed = false;
+        for (int i = 0; i < M; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the estimated number of distinct values added to the sketch
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * M * M / sum;
+        if (estimate <= 2.5 * M && zeros > 0) {
+            // small range correction (linear counting)
+            estimate = M * Math.log((double) M / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Parses a sketch previously serialized with {@link #toString()}.
+     *
+     * @param value the serialized sketch
+     * @return the sketch, or {@code null} if the value is not a valid sketch
+     */
+    @CheckForNull
+    public static HyperLogLog fromString(@Nonnull String value) {
+        if (value.length() != M) {
+            return null;
+        }
+        byte[] registers = new byte[M];
+        for (int i = 0; i < M; i++) {
+            int r = ALPHABET.indexOf(value.charAt(i));
+            if (r < 0) {
+                return null;
+            }
+            registers[i] = (byte) r;
+        }
+        return new HyperLogLog(registers);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buff = new StringBuilder(M);
+        for (byte r : registers) {
+            buff.append(ALPHABET.charAt(r));
+        }
+        return buff.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof HyperLogLog) {
+            return Arrays.equals(registers, ((HyperLogLog) obj).registers);
+        }
+        return false;
+    }
+
+}
@@ -71,7 +71,8 @@ import com.google.common.collect.Lists;
  *  }
  * </code>
  */
-public class OrderedContentMirrorStoreStrategy extends ContentMirrorStoreStrategy {
+public class OrderedContentMirrorStoreStrategy extends ContentMirrorStoreStrategy
+        implements OrderedIndexStoreStrategy {
     /**
      * convenience property for initialising an empty multi-value :next
      */
@@ -282,6 +283,7 @@ public class OrderedContentMirrorStoreStrategy extends ContentMirrorStoreStrateg
      * @param pr
      * @return the iterable
      */
+    @Override
     public Iterable<String> query(final Filter filter, final String indexName,
                                   final NodeState indexMeta, final PropertyRestriction pr,
                                   String pathPrefix) {
@@ -481,6 +483,7 @@ public class OrderedContentMirrorStoreStrategy extends ContentMirrorStoreStrateg
      * @param max
      * @return the estimated number of nodes
      */
+    @Override
     public long count(NodeState indexMeta, Filter.PropertyRestriction pr, int max) {
         long count = 0;
         NodeState content = indexMeta.getChildNode(INDEX_CONTENT_NODE_NAME);
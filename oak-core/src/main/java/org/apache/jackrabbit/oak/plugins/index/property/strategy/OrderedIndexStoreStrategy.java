@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * Strategy for index content that keeps the keys sorted, so that range
+ * restrictions and ordered results can be served from the index.
+ */
+public interface OrderedIndexStoreStrategy extends IndexStoreStrategy {
+
+    /**
+     * Search the index for the provided property restriction. The paths are
+     * returned in the order of the index.
+     *
+     * @param filter the filter
+     * @param indexName the name of the index (for logging)
+     * @param indexMeta the index metadata node (may not be null)
+     * @param pr the property restriction; an empty restriction returns all
+     *            indexed paths
+     * @param pathPrefix the path of the node holding the index definition
+     * @return an iterable of paths
+     */
+    Iterable<String> query(Filter filter, String indexName, NodeState indexMeta,
+            PropertyRestriction pr, String pathPrefix);
+
+    /**
+     * Estimate the number of paths matching the provided property
+     * restriction.
+     *
+     * @param indexMeta the index metadata node (may not be null)
+     * @param pr the property restriction, or null for all indexed paths
+     * @param max the maximum number of paths to count before estimating
+     * @return the estimated number of paths
+     */
+    long count(NodeState indexMeta, PropertyRestriction pr, int max);
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import java.util.Random;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * Cardinality statistics of a property index, maintained incrementally in
+ * hidden properties of the index content:
+ * <ul>
+ *     <li>{@code :count} on the index content node: the number of entries
+ *     of the index,</li>
+ *     <li>{@code :count} on each key node: the number of entries of that
+ *     key,</li>
+ *     <li>{@code :distinct} on the index content node: a {@link HyperLogLog}
+ *     sketch of the distinct keys.</li>
+ * </ul>
+ * Counts up to {@link #EXACT_LIMIT} are exact. Beyond that, a count is only
+ * updated with a probability of {@code 1 / RESOLUTION}, but then by
+ * {@code RESOLUTION}, so that concurrent commits rarely touch the same
+ * property. The statistics are only available for index content that was
+ * built with them, i.e. indexes created or reindexed after the statistics
+ * were introduced.
+ */
+public final class PropertyIndexStatistics {
+
+    public static final String COUNT_PROPERTY_NAME = ":count";
+
+    public static final String DISTINCT_PROPERTY_NAME = ":distinct";
+
+    /**
+     * Counts below this limit are maintained exactly.
+     */
+    static final long EXACT_LIMIT = 100;
+
+    /**
+     * Resolution of counts above {@link #EXACT_LIMIT}.
+     */
+    static final int RESOLUTION = 100;
+
+    private static final Random RANDOM = new Random();
+
+    private PropertyIndexStatistics() {
+    }
+
+    /**
+     * Starts maintaining statistics for the given, empty, index content.
+     *
+     * @param index the index content node
+     */
+    public static void init(@Nonnull NodeBuilder index) {
+        index.setProperty(COUNT_PROPERTY_NAME, 0L);
+        index.setProperty(DISTINCT_PROPERTY_NAME, new HyperLogLog().toString());
+    }
+
+    /**
+     * Updates the statistics after a path was removed from the before keys
+     * and added to the after keys.
+     *
+     * @param index the index content node
+     * @param beforeKeys keys that no longer apply to the path
+     * @param afterKeys keys that now do apply to the path
+     */
+    public static void update(@Nonnull NodeBuilder index,
+                              @Nonnull Set<String> beforeKeys,
+                              @Nonnull Set<String> afterKeys) {
+        if (!index.hasProperty(COUNT_PROPERTY_NAME)) {
+            return;
+        }
+        for (String key : beforeKeys) {
+            NodeBuilder k = index.getChildNode(key);
+            if (k.exists()) {
+                adjustCount(k, -1);
+            }
+            adjustCount(index, -1);
+        }
+        HyperLogLog distinct = null;
+        boolean distinctChanged = false;
+        for (String key : afterKeys) {
+            NodeBuilder k = index.getChildNode(key);
+            if (k.exists()) {
+                adjustCount(k, 1);
+            }
+            adjustCount(index, 1);
+            if (distinct == null) {
+                distinct = getDistinct(index.getString(DISTINCT_PROPERTY_NAME));
+            }
+            distinctChanged |= distinct.add(key);
+        }
+        if (distinctChanged) {
+            index.setProperty(DISTINCT_PROPERTY_NAME, distinct.toString());
+        }
+    }
+
+    /**
+     * @param index the index content node
+     * @return whether statistics are maintained for the index content
+     */
+    public static boolean isAvailable(@Nonnull NodeState index) {
+        return index.hasProperty(COUNT_PROPERTY_NAME);
+    }
+
+    /**
+     * @param node the index content node or a key node
+     * @return the approximate number of entries, or {@code -1} if unknown
+     */
+    public static long getCount(@Nonnull NodeState node) {
+        PropertyState p = node.getProperty(COUNT_PROPERTY_NAME);
+        return p == null ? -1 : p.getValue(Type.LONG);
+    }
+
+    /**
+     * @param index the index content node
+     * @return the approximate number of distinct keys, or {@code -1} if
+     *          unknown
+     */
+    public static long getDistinctKeyCount(@Nonnull NodeState index) {
+        String s = index.getString(DISTINCT_PROPERTY_NAME);
+        if (s == null) {
+            return -1;
+        }
+        HyperLogLog distinct = HyperLogLog.fromString(s);
+        return distinct == null ? -1 : distinct.estimate();
+    }
+
+    /**
+     * Merges two values of a statistics property, for index content that was
+     * built separately for disjoint sets of paths: counts are added up and
+     * the distinct keys are combined.
+     *
+     * @param a a value of the property
+     * @param b another value of the same property
+     * @return the merged value, or {@code null} if the property is not a
+     *          statistics property
+     */
+    @CheckForNull
+    public static PropertyState merge(@Nonnull PropertyState a, @Nonnull PropertyState b) {
+        if (COUNT_PROPERTY_NAME.equals(a.getName())) {
+            return PropertyStates.createProperty(COUNT_PROPERTY_NAME,
+                    a.getValue(Type.LONG) + b.getValue(Type.LONG), Type.LONG);
+        } else if (DISTINCT_PROPERTY_NAME.equals(a.getName())) {
+            HyperLogLog distinct = getDistinct(a.getValue(Type.STRING));
+            distinct.addAll(getDistinct(b.getValue(Type.STRING)));
+            return PropertyStates.createProperty(
+                    DISTINCT_PROPERTY_NAME, distinct.toString(), Type.STRING);
+        }
+        return null;
+    }
+
+    private static HyperLogLog getDistinct(String s) {
+        HyperLogLog distinct = s == null ? null : HyperLogLog.fromString(s);
+        return distinct == null ? new HyperLogLog() : distinct;
+    }
+
+    private static void adjustCount(NodeBuilder builder, long offset) {
+        PropertyState p = builder.getProperty(COUNT_PROPERTY_NAME);
+        long count = p == null ? 0 : p.getValue(Type.LONG);
+        if (count < EXACT_LIMIT) {
+            count += offset;
+        } else if (RANDOM.nextInt(RESOLUTION) == 0) {
+            count += offset * RESOLUTION;
+        } else {
+            return;
+        }
+        builder.setProperty(COUNT_PROPERTY_NAME, Math.max(0, count));
+    }
+
+}
@@ -137,6 +137,15 @@ public class CompactionMap {
         return null;
     }
 
+    /**
+     * Returns the number of entries in this map.
+     *
+     * @return number of mapped records
+     */
+    int size() {
+        return recent.size() + beforeOffsets.length;
+    }
+
     /**
      * Adds a new entry to the compaction map. Overwriting a previously
      * added entry is not supported.
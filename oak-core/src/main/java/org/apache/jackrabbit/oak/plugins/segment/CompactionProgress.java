@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the progress of a compaction run. Progress is measured by the
+ * approximate amount of content written by the {@link Compactor}, compared
+ * to the estimated size of the reachable content before compaction.
+ */
+public class CompactionProgress implements CompactionProgressMBean {
+
+    private final AtomicLong nodes = new AtomicLong();
+
+    private final AtomicLong size = new AtomicLong();
+
+    private volatile long estimatedSize = 0;
+
+    private volatile long startTime = -1;
+
+    private volatile boolean running = false;
+
+    /**
+     * Sets the estimated size of the content to be compacted, typically
+     * the reachable size from a {@code CompactionGainEstimate}.
+     */
+    public void setEstimatedSize(long estimatedSize) {
+        this.estimatedSize = estimatedSize;
+    }
+
+    public void start() {
+        nodes.set(0);
+        size.set(0);
+        startTime = System.currentTimeMillis();
+        running = true;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    void nodeCompacted() {
+        nodes.incrementAndGet();
+    }
+
+    void compacted(long bytes) {
+        size.addAndGet(bytes);
+    }
+
+    //------------------------------------------< CompactionProgressMBean >--
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public String getStartTime() {
+        long start = startTime;
+        if (start < 0) {
+            return null;
+        }
+        return new Date(start).toString();
+    }
+
+    @Override
+    public long getCompactedNodes() {
+        return nodes.get();
+    }
+
+    @Override
+    public long getCompactedSize() {
+        return size.get();
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    @Override
+    public int getPercentDone() {
+        if (startTime < 0) {
+            return -1;
+        } else if (!running) {
+            return 100;
+        }
+        long estimate = estimatedSize;
+        if (estimate <= 0) {
+            return -1;
+        }
+        // the estimate is approximate, so never claim to be done early
+        return (int) Math.min(99, 100 * size.get() / estimate);
+    }
+
+    @Override
+    public long getEstimatedTimeRemaining() {
+        long estimate = estimatedSize;
+        long done = size.get();
+        if (!running || estimate <= 0 || done <= 0) {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        long remaining = Math.max(0, estimate - done);
+        return (long) ((double) remaining * elapsed / done / 1000);
+    }
+
+    @Override
+    public String toString() {
+        return "CompactionProgress{nodes=" + nodes + ", size=" + size
+                + ", estimatedSize=" + estimatedSize + ", running=" + running + "}";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * MBean for monitoring the progress of TarMK compaction.
+ */
+public interface CompactionProgressMBean {
+    String TYPE = "CompactionProgress";
+
+    /**
+     * @return  {@code true} if a compaction is currently running
+     */
+    boolean isRunning();
+
+    /**
+     * @return  start time of the current or last compaction, or
+     *          {@code null} if compaction has never run
+     */
+    @CheckForNull
+    String getStartTime();
+
+    /**
+     * @return  number of nodes compacted so far by the current or
+     *          last compaction
+     */
+    long getCompactedNodes();
+
+    /**
+     * @return  approximate number of bytes written so far by the current
+     *          or last compaction
+     */
+    long getCompactedSize();
+
+    /**
+     * @return  estimated number of bytes of reachable content to compact,
+     *          or zero if not known
+     */
+    long getEstimatedSize();
+
+    /**
+     * @return  estimated percentage (0-100) of the compaction that is done,
+     *          or -1 if not known
+     */
+    int getPercentDone();
+
+    /**
+     * @return  estimated number of seconds until the current compaction
+     *          completes, or -1 if not known or no compaction is running
+     */
+    long getEstimatedTimeRemaining();
+}
@@ -17,15 +17,27 @@
 package org.apache.jackrabbit.oak.plugins.segment;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
 import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static java.util.Collections.synchronizedList;
 import static org.apache.jackrabbit.oak.api.Type.BINARIES;
 import static org.apache.jackrabbit.oak.api.Type.BINARY;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.jcr.PropertyType;
 
 import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -36,12 +48,14 @@ import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
 import org.apache.jackrabbit.oak.plugins.memory.MultiBinaryPropertyState;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
 import org.apache.jackrabbit.oak.spi.state.ApplyDiff;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
 
 /**
  * Tool for compacting segments.
@@ -64,10 +78,57 @@ public class Compactor {
                 r.getSegmentId().getLeastSignificantBits(), r.getOffset() };
     }
 
+    /**
+     * Estimated number of bytes written for a node record, excluding
+     * its properties. Used for throttling.
+     */
+    private static final int NODE_OVERHEAD = 64;
+
+    /**
+     * Minimum number of child nodes for the children of a node to be
+     * compacted in parallel, when an executor is configured.
+     */
+    private static final int PARALLEL_THRESHOLD = 1000;
+
+    /**
+     * Number of child nodes compacted by a single parallel task.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Maximum number of parallel tasks submitted but not yet collected
+     * for a single node. Bounds the memory used by the pending results.
+     */
+    private static final int MAX_PENDING_BATCHES = 64;
+
     private final SegmentWriter writer;
 
+    /**
+     * Writers of the parallel compaction workers. Each worker thread gets
+     * its own writer so that the workers do not contend on the lock of
+     * a single shared writer.
+     */
+    private final List<SegmentWriter> workerWriters =
+            synchronizedList(new ArrayList<SegmentWriter>());
+
+    private final ThreadLocal<SegmentWriter> workerWriter =
+            new ThreadLocal<SegmentWriter>();
+
     private CompactionMap map = new CompactionMap(100000);
 
+    /**
+     * Maximum number of entries in the compaction map. Once reached, no
+     * further records are mapped, which only reduces the de-duplication
+     * of content that is compacted again when rebasing concurrent changes.
+     */
+    private final int mapLimit;
+
+    /**
+     * Optional limit on the rate (in bytes per second) at which compacted
+     * content is written, or {@code null} for unthrottled compaction.
+     */
+    private final RateLimiter throttle;
+
     /**
      * Map from {@link #getBlobKey(Blob) blob keys} to matching compacted
      * blob record identifiers. Used to de-duplicate copies of the same
@@ -75,14 +136,91 @@ public class Compactor {
      */
     private final Map<String, List<RecordId>> binaries = newHashMap();
 
+    /**
+     * Optional executor for compacting the children of large nodes in
+     * parallel, or {@code null} for sequential compaction.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Optional progress tracker, or {@code null}.
+     */
+    private CompactionProgress progress;
+
     public Compactor(SegmentWriter writer) {
+        this(writer, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * @param writer writer for the compacted records
+     * @param mapLimit maximum number of entries in the compaction map
+     * @param throttle rate limiter in bytes per second, or {@code null}
+     */
+    public Compactor(SegmentWriter writer, int mapLimit, RateLimiter throttle) {
         this.writer = writer;
+        this.mapLimit = mapLimit;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Sets the executor used to compact the children of nodes with many
+     * child nodes in parallel. The compacted content is the same as with
+     * sequential compaction, only the traversal of the large child node
+     * maps is spread across the threads of the executor. Each thread
+     * writes through its own {@link SegmentWriter}, so {@link #flush()}
+     * needs to be called before the compacted content is made visible.
+     *
+     * @param executor executor, or {@code null} for sequential compaction
+     * @return this instance
+     */
+    public Compactor setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param progress tracker to be updated as content gets compacted,
+     *                 or {@code null}
+     * @return this instance
+     */
+    public Compactor setProgress(CompactionProgress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    /**
+     * Flushes the writers of the compaction workers and then the main
+     * writer, whose records may refer to the records written by the
+     * workers. Must be called before the compacted content is made
+     * visible, for example by setting it as the new head state.
+     */
+    public void flush() {
+        synchronized (workerWriters) {
+            for (SegmentWriter worker : workerWriters) {
+                worker.flush();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return the writer of the current compaction worker, or the main
+     *         writer when not called from a worker thread
+     */
+    private SegmentWriter getWriter() {
+        SegmentWriter worker = workerWriter.get();
+        if (worker != null) {
+            return worker;
+        } else {
+            return writer;
+        }
     }
 
     protected SegmentNodeBuilder process(NodeState before, NodeState after) {
         SegmentNodeBuilder builder = new SegmentNodeBuilder(
                 writer.writeNode(before), writer);
-        after.compareAgainstBaseState(before, new CompactDiff(builder));
+        after.compareAgainstBaseState(
+                before, new CompactDiff(builder, executor != null));
         return builder;
     }
 
@@ -95,10 +233,207 @@ public class Compactor {
         return map;
     }
 
+    private RecordId getCompacted(RecordId before) {
+        synchronized (map) {
+            return map.get(before);
+        }
+    }
+
+    private void mapCompacted(RecordId before, RecordId after) {
+        synchronized (map) {
+            if (map.size() < mapLimit) {
+                map.put(before, after);
+            }
+        }
+    }
+
+    /**
+     * Accounts for the given (estimated) number of compacted bytes, and
+     * throttles the compaction if needed.
+     */
+    private void compacted(long bytes) {
+        if (progress != null) {
+            progress.compacted(bytes);
+        }
+        if (throttle != null && bytes > 0) {
+            throttle.acquire((int) Math.min(bytes, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Compacts the given node and its subtree.
+     *
+     * @param after node to compact
+     * @param parallel whether the children of large nodes may be compacted
+     *                 in parallel
+     * @return compacted node, or {@code null} if compaction was aborted
+     */
+    private SegmentNodeState compactNode(NodeState after, boolean parallel) {
+        RecordId id = null;
+        if (after instanceof SegmentNodeState) {
+            id = ((SegmentNodeState) after).getRecordId();
+            RecordId compactedId = getCompacted(id);
+            if (compactedId != null) {
+                return new SegmentNodeState(compactedId);
+            }
+        }
+
+        NodeBuilder child;
+        if (parallel && executor != null
+                && after.getChildNodeCount(PARALLEL_THRESHOLD) >= PARALLEL_THRESHOLD) {
+            child = compactParallel(after);
+        } else {
+            child = EmptyNodeState.EMPTY_NODE.builder();
+            if (!EmptyNodeState.compareAgainstEmptyState(
+                    after, new CompactDiff(child, parallel))) {
+                child = null;
+            }
+        }
+        if (child == null) {
+            return null;
+        }
+
+        compacted(NODE_OVERHEAD);
+        SegmentNodeState state = getWriter().writeNode(child.getNodeState());
+        if (progress != null) {
+            progress.nodeCompacted();
+        }
+        if (id != null && includeInMap(state)) {
+            mapCompacted(id, state.getRecordId());
+        }
+        return state;
+    }
+
+    /**
+     * Compacts the properties of the given node, and fans out the
+     * compaction of its child nodes in batches to the executor. The
+     * batches are compacted sequentially by the worker threads, so
+     * that no task ever waits for another one to complete.
+     *
+     * @return builder with the compacted content, or {@code null}
+     *         if compaction was aborted
+     */
+    private NodeBuilder compactParallel(NodeState after) {
+        NodeBuilder builder = EmptyNodeState.EMPTY_NODE.builder();
+        for (PropertyState property : after.getProperties()) {
+            builder.setProperty(compact(property));
+        }
+
+        Queue<Future<Map<String, NodeState>>> pending =
+                new LinkedList<Future<Map<String, NodeState>>>();
+        try {
+            List<ChildNodeEntry> batch = newArrayListWithCapacity(BATCH_SIZE);
+            for (ChildNodeEntry entry : after.getChildNodeEntries()) {
+                batch.add(entry);
+                if (batch.size() == BATCH_SIZE) {
+                    pending.add(executor.submit(new CompactBatch(batch)));
+                    batch = newArrayListWithCapacity(BATCH_SIZE);
+                    if (pending.size() > MAX_PENDING_BATCHES
+                            && !setChildNodes(builder, pending.remove())) {
+                        return null;
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(executor.submit(new CompactBatch(batch)));
+            }
+            while (!pending.isEmpty()) {
+                if (!setChildNodes(builder, pending.remove())) {
+                    return null;
+                }
+            }
+            return builder;
+        } finally {
+            for (Future<?> future : pending) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static boolean setChildNodes(
+            NodeBuilder builder, Future<Map<String, NodeState>> future) {
+        Map<String, NodeState> children;
+        try {
+            children = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while waiting for parallel compaction", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Parallel compaction failed", cause);
+        }
+        if (children == null) {
+            return false;
+        }
+        for (Entry<String, NodeState> entry : children.entrySet()) {
+            builder.setChildNode(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    private boolean includeInMap(SegmentNodeState state) {
+        if (state.getChildNodeCount(2) > 1) {
+            return true;
+        }
+        long count = 0;
+        for (PropertyState ps : state.getProperties()) {
+            for (int i = 0; i < ps.count(); i++) {
+                long size = ps.size(i);
+                count += size;
+                if (size >= threshold || count >= threshold) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sequentially compacts a batch of sibling nodes.
+     */
+    private class CompactBatch implements Callable<Map<String, NodeState>> {
+
+        private final List<ChildNodeEntry> entries;
+
+        CompactBatch(List<ChildNodeEntry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public Map<String, NodeState> call() {
+            if (workerWriter.get() == null) {
+                SegmentWriter worker = new SegmentWriter(
+                        writer.getStore(), writer.getTracker());
+                workerWriters.add(worker);
+                workerWriter.set(worker);
+            }
+            Map<String, NodeState> compacted = newLinkedHashMap();
+            for (ChildNodeEntry entry : entries) {
+                SegmentNodeState state =
+                        compactNode(entry.getNodeState(), false);
+                if (state == null) {
+                    return null;
+                }
+                compacted.put(entry.getName(), state);
+            }
+            return compacted;
+        }
+
+    }
+
     private class CompactDiff extends ApplyDiff {
 
-        CompactDiff(NodeBuilder builder) {
+        private final boolean parallel;
+
+        CompactDiff(NodeBuilder builder, boolean parallel) {
             super(builder);
+            this.parallel = parallel;
         }
 
         @Override
@@ -115,46 +450,13 @@ public class Compactor {
 
         @Override
         public boolean childNodeAdded(String name, NodeState after) {
-            RecordId id = null;
-            if (after instanceof SegmentNodeState) {
-                id = ((SegmentNodeState) after).getRecordId();
-                RecordId compactedId = map.get(id);
-                if (compactedId != null) {
-                    builder.setChildNode(name, new SegmentNodeState(compactedId));
-                    return true;
-                }
-            }
-
-            NodeBuilder child = EmptyNodeState.EMPTY_NODE.builder();
-            boolean success = EmptyNodeState.compareAgainstEmptyState(after,
-                    new CompactDiff(child));
-
-            if (success) {
-                SegmentNodeState state = writer.writeNode(child.getNodeState());
+            SegmentNodeState state = compactNode(after, parallel);
+            if (state != null) {
                 builder.setChildNode(name, state);
-                if (id != null && includeInMap(state)) {
-                    map.put(id, state.getRecordId());
-                }
-            }
-
-            return success;
-        }
-
-        private boolean includeInMap(SegmentNodeState state) {
-            if (state.getChildNodeCount(2) > 1) {
                 return true;
+            } else {
+                return false;
             }
-            long count = 0;
-            for (PropertyState ps : state.getProperties()) {
-                for (int i = 0; i < ps.count(); i++) {
-                    long size = ps.size(i);
-                    count += size;
-                    if (size >= threshold || count >= threshold) {
-                        return true;
-                    }
-                }
-            }
-            return false;
         }
 
         @Override
@@ -163,7 +465,7 @@ public class Compactor {
             RecordId id = null;
             if (after instanceof SegmentNodeState) {
                 id = ((SegmentNodeState) after).getRecordId();
-                RecordId compactedId = map.get(id);
+                RecordId compactedId = getCompacted(id);
                 if (compactedId != null) {
                     builder.setChildNode(name, new SegmentNodeState(compactedId));
                     return true;
@@ -172,12 +474,12 @@ public class Compactor {
 
             NodeBuilder child = builder.getChildNode(name);
             boolean success = after.compareAgainstBaseState(
-                    before, new CompactDiff(child));
+                    before, new CompactDiff(child, parallel));
 
             if (success && id != null && child.getChildNodeCount(2) > 1) {
                 RecordId compactedId =
-                        writer.writeNode(child.getNodeState()).getRecordId();
-                map.put(id, compactedId);
+                        getWriter().writeNode(child.getNodeState()).getRecordId();
+                mapCompacted(id, compactedId);
             }
 
             return success;
@@ -188,6 +490,14 @@ public class Compactor {
     private PropertyState compact(PropertyState property) {
         String name = property.getName();
         Type<?> type = property.getType();
+        if (type.tag() != PropertyType.BINARY) {
+            // binaries are throttled as they are cloned
+            long size = 0;
+            for (int i = 0; i < property.count(); i++) {
+                size += property.size(i);
+            }
+            compacted(size);
+        }
         if (type == BINARY) {
             Blob blob = compact(property.getValue(Type.BINARY));
             return BinaryPropertyState.binaryProperty(name, blob);
@@ -216,36 +526,44 @@ public class Compactor {
             try {
                 // if the blob is inlined or external, just clone it
                 if (sb.isExternal() || sb.length() < Segment.MEDIUM_LIMIT) {
-                    return sb.clone(writer);
+                    return sb.clone(getWriter());
                 }
 
                 // else check if we've already cloned this specific record
                 RecordId id = sb.getRecordId();
-                RecordId compactedId = map.get(id);
+                RecordId compactedId = getCompacted(id);
                 if (compactedId != null) {
                     return new SegmentBlob(compactedId);
                 }
 
                 // alternatively look if the exact same binary has been cloned
                 String key = getBlobKey(blob);
-                List<RecordId> ids = binaries.get(key);
+                List<RecordId> ids;
+                synchronized (binaries) {
+                    ids = binaries.get(key);
+                    ids = ids != null ? newArrayList(ids) : null;
+                }
                 if (ids != null) {
                     for (RecordId duplicateId : ids) {
                         if (new SegmentBlob(duplicateId).equals(sb)) {
-                            map.put(id, duplicateId);
+                            mapCompacted(id, duplicateId);
                             return new SegmentBlob(duplicateId);
                         }
                     }
                 }
 
                 // if not, clone the blob and keep track of the result
-                sb = sb.clone(writer);
-                map.put(id, sb.getRecordId());
-                if (ids == null) {
-                    ids = newArrayList();
-                    binaries.put(key, ids);
+                compacted(sb.length());
+                sb = sb.clone(getWriter());
+                mapCompacted(id, sb.getRecordId());
+                synchronized (binaries) {
+                    ids = binaries.get(key);
+                    if (ids == null) {
+                        ids = newArrayList();
+                        binaries.put(key, ids);
+                    }
+                    ids.add(sb.getRecordId());
                 }
-                ids.add(sb.getRecordId());
 
                 return sb;
             } catch (IOException e) {
@@ -96,6 +96,12 @@ public class Segment {
      */
     public static final int MEDIUM_LIMIT = (1 << (16 - 2)) + SMALL_LIMIT;
 
+    /**
+     * Offset of the segment version byte. Zero for segments in the
+     * uncompressed format written by the {@link SegmentWriter}.
+     */
+    public static final int VERSION_OFFSET = 4;
+
     public static int REF_COUNT_OFFSET = 5;
 
     static int ROOT_COUNT_OFFSET = 6;
@@ -126,8 +132,6 @@ public class Segment {
      */
     private final ConcurrentMap<Integer, Template> templates = newConcurrentMap();
 
-    private volatile long accessed = 0;
-
     public Segment(SegmentTracker tracker, SegmentId id, ByteBuffer data) {
         this.tracker = checkNotNull(tracker);
         this.id = checkNotNull(id);
@@ -154,13 +158,21 @@ public class Segment {
         refids[0] = id;
     }
 
-    void access() {
-        accessed++;
-    }
-
-    boolean accessed() {
-        accessed >>>= 1;
-        return accessed != 0;
+    /**
+     * Copies the raw bytes of this segment to a new direct buffer. Returns
+     * {@code null} if the segment data already lives outside the Java heap,
+     * for example when the segment was read from a memory mapped file.
+     *
+     * @return direct buffer with the segment data, or {@code null}
+     */
+    ByteBuffer copyToDirectBuffer() {
+        if (data.isDirect()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.remaining());
+        buffer.put(data.duplicate());
+        buffer.flip();
+        return buffer;
     }
 
     /**
@@ -31,6 +31,13 @@ public class SegmentId implements Comparable<SegmentId> {
     /** Logger instance */
     private static final Logger log = LoggerFactory.getLogger(SegmentId.class);
 
+    /**
+     * Only every n-th access to an already loaded segment is reported to
+     * the segment cache, which keeps the fast path cheap while still
+     * giving the cache enough information to rank its entries.
+     */
+    private static final int ACCESS_SAMPLE_MASK = 15;
+
     /**
      * Checks whether this is a data segment identifier.
      *
@@ -50,9 +57,14 @@ public class SegmentId implements Comparable<SegmentId> {
      * A reference to the segment object, if it is available in memory. It is
      * used for fast lookup. The segment tracker will set or reset this field.
      */
-    // TODO: possibly we could remove the volatile
     private volatile Segment segment;
 
+    /**
+     * Number of accesses to the memoized segment. Deliberately not
+     * synchronized, as lost updates only affect the sampling.
+     */
+    private int accessCount;
+
     public SegmentId(SegmentTracker tracker, long msb, long lsb, Segment segment) {
         this.tracker = tracker;
         this.msb = msb;
@@ -104,12 +116,18 @@ public class SegmentId implements Comparable<SegmentId> {
                     segment = tracker.getSegment(this);
                 }
             }
+        } else if ((accessCount++ & ACCESS_SAMPLE_MASK) == 0) {
+            tracker.segmentAccessed(this);
         }
-        segment.access();
         return segment;
     }
 
-    synchronized void setSegment(Segment segment) {
+    /**
+     * Sets or resets the in-memory segment reference. Not synchronized, as
+     * it is called by the segment cache while evicting entries and a plain
+     * volatile write is sufficient.
+     */
+    void setSegment(Segment segment) {
         this.segment = segment;
     }
 
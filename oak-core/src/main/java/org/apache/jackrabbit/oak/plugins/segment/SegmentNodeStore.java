@@ -39,6 +39,7 @@ import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.segment.file.FileStore;
 import org.apache.jackrabbit.oak.plugins.segment.memory.MemoryStore;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.apache.jackrabbit.oak.spi.commit.ChangeDispatcher;
@@ -139,15 +140,21 @@ public class SegmentNodeStore implements NodeStore, Observable {
         SegmentNodeBuilder snb = (SegmentNodeBuilder) builder;
 
         try {
+            NodeState merged;
             commitSemaphore.acquire();
             try {
                 Commit commit = new Commit(snb, commitHook, info);
-                NodeState merged = commit.execute();
+                merged = commit.execute();
                 snb.reset(merged);
-                return merged;
             } finally {
                 commitSemaphore.release();
             }
+            // wait for the flush only after releasing the semaphore, so
+            // that concurrent commits can share it
+            if (store instanceof FileStore) {
+                ((FileStore) store).awaitDurability();
+            }
+            return merged;
         } catch (InterruptedException e) {
             throw new CommitFailedException(
                     "Segment", 2, "Merge interrupted", e);
@@ -302,6 +309,19 @@ public class SegmentNodeStore implements NodeStore, Observable {
         return false;
     }
 
+    /**
+     * Sets the head of the underlying store. Does not wait for a
+     * {@link FileStore} to write it to disk, as that should happen
+     * outside the {@link #commitSemaphore}.
+     */
+    private boolean publishHead(SegmentNodeState base, SegmentNodeState head) {
+        if (store instanceof FileStore) {
+            return ((FileStore) store).publishHead(base, head);
+        } else {
+            return store.setHead(base, head);
+        }
+    }
+
     private class Commit {
 
         private final Random random = new Random();
@@ -326,7 +346,7 @@ public class SegmentNodeStore implements NodeStore, Observable {
 
         private boolean setHead(SegmentNodeState before, SegmentNodeState after) {
             refreshHead();
-            if (store.setHead(before, after)) {
+            if (publishHead(before, after)) {
                 head.set(after);
                 changeDispatcher.contentChanged(after.getChildNode(ROOT), info);
                 refreshHead();
@@ -18,6 +18,8 @@ package org.apache.jackrabbit.oak.plugins.segment;
 
 import static com.google.common.base.Preconditions.checkState;
 import static org.apache.jackrabbit.oak.commons.PropertiesUtil.toBoolean;
+import static org.apache.jackrabbit.oak.commons.PropertiesUtil.toInteger;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.registerMBean;
 
 import java.io.Closeable;
@@ -25,6 +27,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.Locale;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.felix.scr.annotations.Activate;
@@ -35,6 +38,8 @@ import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.jackrabbit.oak.api.jmx.CacheStatsMBean;
+import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.osgi.ObserverTracker;
 import org.apache.jackrabbit.oak.osgi.OsgiWhiteboard;
 import org.apache.jackrabbit.oak.plugins.blob.BlobGC;
@@ -42,6 +47,10 @@ import org.apache.jackrabbit.oak.plugins.blob.BlobGCMBean;
 import org.apache.jackrabbit.oak.plugins.blob.BlobGarbageCollector;
 import org.apache.jackrabbit.oak.plugins.blob.MarkSweepGarbageCollector;
 import org.apache.jackrabbit.oak.plugins.segment.file.FileStore;
+import org.apache.jackrabbit.oak.plugins.segment.file.FileStore.Durability;
+import org.apache.jackrabbit.oak.plugins.segment.file.FlushStatsMBean;
+import org.apache.jackrabbit.oak.plugins.segment.file.SegmentCompression;
+import org.apache.jackrabbit.oak.plugins.segment.file.SegmentLookupStatsMBean;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.apache.jackrabbit.oak.spi.blob.GarbageCollectableBlobStore;
 import org.apache.jackrabbit.oak.spi.commit.Observable;
@@ -80,9 +89,36 @@ public class SegmentNodeStoreService extends ProxyNodeStore
     @Property(description="Cache size (MB)", intValue=256)
     public static final String CACHE = "cache";
 
+    @Property(description="Off-heap segment cache size (MB, 0 to disable)", intValue=0)
+    public static final String OFF_HEAP_CACHE = "oak.segment.offHeapCacheSize";
+
+    @Property(description="Number of concurrent segment writers", intValue=1)
+    public static final String WRITERS = "tarmk.writers";
+
+    @Property(description = "TarMK commit durability (periodic, batched or commit)", value = "periodic")
+    public static final String DURABILITY = "tarmk.durability";
+
+    @Property(description = "TarMK data segment compression (none, lz or deflate)", value = "none")
+    public static final String COMPRESSION = "tarmk.compression";
+
     @Property(description = "TarMK compaction paused flag", boolValue = true)
     public static final String PAUSE_COMPACTION = "pauseCompaction";
 
+    @Property(description = "Minimum estimated gain (%) of the TarMK for compaction to run", intValue = 10)
+    public static final String COMPACTION_GAIN_THRESHOLD = "compaction.gainThreshold";
+
+    @Property(description = "Also run TarMK compaction when a single tar file reaches the gain threshold", boolValue = false)
+    public static final String COMPACTION_PER_FILE_GAIN = "compaction.perFileGain";
+
+    @Property(description = "Maximum number of entries in the TarMK compaction map", intValue = Integer.MAX_VALUE)
+    public static final String COMPACTION_MAP_LIMIT = "compaction.mapLimit";
+
+    @Property(description = "TarMK compaction write rate limit (MB/s, 0 for unthrottled)", intValue = 0)
+    public static final String COMPACTION_THROTTLE = "compaction.throttle";
+
+    @Property(description = "Number of threads used by TarMK compaction (1 for sequential compaction)", intValue = 1)
+    public static final String COMPACTION_THREADS = "compaction.threads";
+
     @Property(description = "Flag indicating that this component will not register as a NodeStore but just as a NodeStoreProvider", boolValue = false)
     public static final String STANDBY = "standby";
     /**
@@ -110,6 +146,11 @@ public class SegmentNodeStoreService extends ProxyNodeStore
     private ServiceRegistration providerRegistration;
     private Registration revisionGCRegistration;
     private Registration blobGCRegistration;
+    private Registration segmentCacheRegistration;
+    private Registration offHeapCacheRegistration;
+    private Registration compactionProgressRegistration;
+    private Registration flushStatsRegistration;
+    private Registration segmentLookupStatsRegistration;
     private WhiteboardExecutor executor;
     private boolean customBlobStore;
 
@@ -159,16 +200,64 @@ public class SegmentNodeStoreService extends ProxyNodeStore
             size = System.getProperty(SIZE, "256");
         }
 
+        String writers = lookup(context, WRITERS);
+        if (writers == null) {
+            writers = System.getProperty(WRITERS, "1");
+        }
+
+        String offHeapCache = lookup(context, OFF_HEAP_CACHE);
+        if (offHeapCache == null) {
+            offHeapCache = System.getProperty(OFF_HEAP_CACHE, "0");
+        }
+
+        String durability = lookup(context, DURABILITY);
+        if (durability == null) {
+            durability = System.getProperty(DURABILITY, "periodic");
+        }
+        Durability commitDurability =
+                Durability.valueOf(durability.trim().toUpperCase(Locale.ENGLISH));
+
+        String compression = lookup(context, COMPRESSION);
+        if (compression == null) {
+            compression = System.getProperty(COMPRESSION, "none");
+        }
+        SegmentCompression segmentCompression = SegmentCompression.valueOf(
+                compression.trim().toUpperCase(Locale.ENGLISH));
+
         boolean pauseCompaction = toBoolean(lookup(context, PAUSE_COMPACTION), true);
+        int gainThreshold = toInteger(lookup(context, COMPACTION_GAIN_THRESHOLD), 10);
+        boolean perFileGain = toBoolean(lookup(context, COMPACTION_PER_FILE_GAIN), false);
+        int mapLimit = toInteger(lookup(context, COMPACTION_MAP_LIMIT), Integer.MAX_VALUE);
+        int throttle = toInteger(lookup(context, COMPACTION_THROTTLE), 0);
+        int threads = toInteger(lookup(context, COMPACTION_THREADS), 1);
         boolean memoryMapping = "64".equals(mode);
         if (customBlobStore) {
             log.info("Initializing SegmentNodeStore with BlobStore [{}]", blobStore);
-            store = new FileStore(blobStore, new File(directory),
-                    Integer.parseInt(size), memoryMapping)
-                    .setPauseCompaction(pauseCompaction);
+            store = new FileStore(blobStore, new File(directory), EMPTY_NODE,
+                    Integer.parseInt(size), 0, memoryMapping,
+                    Integer.parseInt(writers))
+                    .setPauseCompaction(pauseCompaction)
+                    .setCompactionGainThreshold(gainThreshold)
+                    .setCompactionPerFileGain(perFileGain)
+                    .setCompactionMapLimit(mapLimit)
+                    .setCompactionThrottle(throttle)
+                    .setCompactionThreads(threads)
+                    .setDurability(commitDurability)
+                    .setCompression(segmentCompression)
+                    .setOffHeapCacheSize(Integer.parseInt(offHeapCache));
         } else {
-            store = new FileStore(new File(directory), Integer.parseInt(size),
-                    memoryMapping).setPauseCompaction(pauseCompaction);
+            store = new FileStore(null, new File(directory), EMPTY_NODE,
+                    Integer.parseInt(size), 0, memoryMapping,
+                    Integer.parseInt(writers))
+                    .setPauseCompaction(pauseCompaction)
+                    .setCompactionGainThreshold(gainThreshold)
+                    .setCompactionPerFileGain(perFileGain)
+                    .setCompactionMapLimit(mapLimit)
+                    .setCompactionThrottle(throttle)
+                    .setCompactionThreads(threads)
+                    .setDurability(commitDurability)
+                    .setCompression(segmentCompression)
+                    .setOffHeapCacheSize(Integer.parseInt(offHeapCache));
         }
 
         delegate = new SegmentNodeStore(store);
@@ -188,6 +277,29 @@ public class SegmentNodeStoreService extends ProxyNodeStore
         executor = new WhiteboardExecutor();
         executor.start(whiteboard);
 
+        CacheStats segmentCacheStats = store.getTracker().getSegmentCacheStats();
+        segmentCacheRegistration = registerMBean(whiteboard, CacheStatsMBean.class,
+                segmentCacheStats, CacheStatsMBean.TYPE, segmentCacheStats.getName());
+        CacheStats offHeapCacheStats = store.getTracker().getOffHeapCacheStats();
+        if (offHeapCacheStats != null) {
+            offHeapCacheRegistration = registerMBean(whiteboard, CacheStatsMBean.class,
+                    offHeapCacheStats, CacheStatsMBean.TYPE, offHeapCacheStats.getName());
+        }
+
+        compactionProgressRegistration = registerMBean(whiteboard,
+                CompactionProgressMBean.class,
+                ((FileStore) store).getCompactionProgress(),
+                CompactionProgressMBean.TYPE, "Segment node store compaction progress");
+
+        flushStatsRegistration = registerMBean(whiteboard, FlushStatsMBean.class,
+                ((FileStore) store).getFlushStats(), FlushStatsMBean.TYPE,
+                "Segment node store flush statistics");
+        segmentLookupStatsRegistration = registerMBean(whiteboard,
+                SegmentLookupStatsMBean.class,
+                ((FileStore) store).getSegmentLookupStats(),
+                SegmentLookupStatsMBean.TYPE,
+                "Segment node store segment lookup statistics");
+
         RevisionGC revisionGC = new RevisionGC(new Runnable() {
             @Override
             public void run() {
@@ -264,6 +376,26 @@ public class SegmentNodeStoreService extends ProxyNodeStore
             blobGCRegistration.unregister();
             blobGCRegistration = null;
         }
+        if (segmentCacheRegistration != null) {
+            segmentCacheRegistration.unregister();
+            segmentCacheRegistration = null;
+        }
+        if (offHeapCacheRegistration != null) {
+            offHeapCacheRegistration.unregister();
+            offHeapCacheRegistration = null;
+        }
+        if (compactionProgressRegistration != null) {
+            compactionProgressRegistration.unregister();
+            compactionProgressRegistration = null;
+        }
+        if (flushStatsRegistration != null) {
+            flushStatsRegistration.unregister();
+            flushStatsRegistration = null;
+        }
+        if (segmentLookupStatsRegistration != null) {
+            segmentLookupStatsRegistration.unregister();
+            segmentLookupStatsRegistration = null;
+        }
         if (executor != null) {
             executor.stop();
             executor = null;
@@ -16,19 +16,26 @@
  */
 package org.apache.jackrabbit.oak.plugins.segment;
 
-import static com.google.common.collect.Lists.newLinkedList;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Queues.newArrayDeque;
 import static com.google.common.collect.Sets.newHashSet;
 import static com.google.common.collect.Sets.newIdentityHashSet;
 
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
-import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+import com.google.common.cache.Weigher;
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.cache.CacheLIRS.EvictionCallback;
+import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.plugins.blob.ReferenceCollector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +44,12 @@ import org.slf4j.LoggerFactory;
  * Tracker of references to segment identifiers and segment instances
  * that are currently kept in memory.
  * <p>
- * It is also responsible to cache segment objects in memory.
+ * It is also responsible to cache segment objects in memory. Segments are
+ * kept in a scan resistant {@link CacheLIRS} cache. Optionally, the raw
+ * bytes of segments evicted from that cache are kept in a second level
+ * cache of direct (off-heap) buffers, from which they can be reloaded
+ * without going back to the underlying store. The off-heap cache is
+ * disabled by default, see {@link #setOffHeapCacheSize(int)}.
  */
 public class SegmentTracker {
 
@@ -57,7 +69,7 @@ public class SegmentTracker {
 
     private static final int MB = 1024 * 1024;
 
-    private static final int DEFAULT_MEMORY_CACHE_SIZE = 256;
+    public static final int DEFAULT_MEMORY_CACHE_SIZE = 256;
 
     /**
      * The random number source for generating new segment identifiers.
@@ -66,7 +78,13 @@ public class SegmentTracker {
 
     private final SegmentStore store;
 
-    private final SegmentWriter writer;
+    /**
+     * Striped set of segment writers. Each writing thread uses the writer
+     * selected by its thread id, so threads with consecutive ids (like
+     * those of a thread pool) use different writers. Threads only contend
+     * on the same monitor when they map to the same stripe.
+     */
+    private final SegmentWriter[] writers;
 
     /**
      * Serialized map that contains the link between old record
@@ -89,71 +107,219 @@ public class SegmentTracker {
      */
     private final SegmentIdTable[] tables = new SegmentIdTable[32];
 
-    private final LinkedList<Segment> segments = newLinkedList();
+    /**
+     * Cache of segments that are currently loaded. Evicted segments are
+     * detached from their identifiers so that they can be garbage collected.
+     */
+    private final CacheLIRS<SegmentId, Segment> segmentCache;
+
+    private final CacheStats segmentCacheStats;
 
-    private long currentSize = 0;
+    /**
+     * Second level cache of the raw bytes of evicted segments, stored in
+     * direct buffers. {@code null} if the off-heap cache is disabled.
+     */
+    private volatile CacheLIRS<SegmentId, ByteBuffer> offHeapCache;
 
-    public SegmentTracker(SegmentStore store, int cacheSizeMB) {
+    private volatile CacheStats offHeapCacheStats;
+
+    public SegmentTracker(
+            SegmentStore store, int cacheSizeMB, int writerCount) {
+        checkArgument(writerCount > 0);
         for (int i = 0; i < tables.length; i++) {
             tables[i] = new SegmentIdTable(this);
         }
 
         this.store = store;
-        this.writer = new SegmentWriter(store, this);
-        this.cacheSize = cacheSizeMB * MB;
+        this.cacheSize = (long) cacheSizeMB * MB;
+
+        Weigher<SegmentId, Segment> weigher = new Weigher<SegmentId, Segment>() {
+            @Override
+            public int weigh(SegmentId id, Segment segment) {
+                return (int) segment.getCacheSize();
+            }
+        };
+        this.segmentCache = CacheLIRS.newBuilder()
+                .weigher(weigher)
+                .averageWeight(Segment.MAX_SEGMENT_SIZE / 2)
+                .maximumWeight(cacheSize)
+                .evictionCallback(new EvictionCallback<SegmentId, Segment>() {
+                    @Override
+                    public void evicted(SegmentId id, Segment segment) {
+                        id.setSegment(null);
+                        log.debug("Removed segment {} from tracker cache", id);
+                        CacheLIRS<SegmentId, ByteBuffer> offHeapCache =
+                                SegmentTracker.this.offHeapCache;
+                        if (offHeapCache != null && segment != null) {
+                            ByteBuffer buffer = segment.copyToDirectBuffer();
+                            if (buffer != null) {
+                                offHeapCache.put(id, buffer);
+                            }
+                        }
+                    }
+                })
+                .build();
+        this.segmentCacheStats = new CacheStats(
+                segmentCache, "Segment", weigher, cacheSize);
+
+        this.writers = new SegmentWriter[writerCount];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new SegmentWriter(store, this);
+        }
+    }
+
+    public SegmentTracker(SegmentStore store, int cacheSizeMB) {
+        this(store, cacheSizeMB, 1);
     }
 
     public SegmentTracker(SegmentStore store) {
         this(store, DEFAULT_MEMORY_CACHE_SIZE);
     }
 
+    /**
+     * Returns the segment writer assigned to the calling thread. With a
+     * single writer (the default) all threads share the same instance.
+     *
+     * @return segment writer for the current thread
+     */
     public SegmentWriter getWriter() {
-        return writer;
+        if (writers.length == 1) {
+            return writers[0];
+        }
+        long id = Thread.currentThread().getId();
+        return writers[(int) ((id & Long.MAX_VALUE) % writers.length)];
+    }
+
+    /**
+     * Flushes the pending segments of all writers of this tracker. Needs
+     * to be called before persisting a head state, as records reachable
+     * from that state may have been written by any of the writers.
+     */
+    public void flushWriters() {
+        for (SegmentWriter writer : writers) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Drops the record caches of all writers of this tracker.
+     */
+    public void dropWriterCaches() {
+        for (SegmentWriter writer : writers) {
+            writer.dropCache();
+        }
     }
 
     public SegmentStore getStore() {
         return store;
     }
 
-    Segment getSegment(SegmentId id) {
-        Segment segment = store.readSegment(id);
-        setSegment(id, segment);
-        return segment;
+    Segment getSegment(final SegmentId id) {
+        try {
+            return segmentCache.get(id, new Callable<Segment>() {
+                @Override
+                public Segment call() {
+                    Segment segment = null;
+                    CacheLIRS<SegmentId, ByteBuffer> offHeapCache =
+                            SegmentTracker.this.offHeapCache;
+                    if (offHeapCache != null) {
+                        ByteBuffer buffer = offHeapCache.getIfPresent(id);
+                        if (buffer != null) {
+                            segment = new Segment(
+                                    SegmentTracker.this, id, buffer.duplicate());
+                        }
+                    }
+                    if (segment == null) {
+                        segment = store.readSegment(id);
+                    }
+                    // set before the segment is added to the cache, so that
+                    // an immediate eviction does not leave a stale reference
+                    id.setSegment(segment);
+                    return segment;
+                }
+            });
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Records an access to a segment that was served from the memoized
+     * reference of its identifier, so that the segment cache keeps ranking
+     * frequently used segments as hot. Segments not (or no longer) in the
+     * cache, for example those still being written, are ignored and
+     * not counted as misses.
+     */
+    void segmentAccessed(SegmentId id) {
+        if (segmentCache.peek(id) != null) {
+            segmentCache.getIfPresent(id);
+        }
     }
 
     void setSegment(SegmentId id, Segment segment) {
-        // done before synchronization to allow concurrent segment access
-        // while we update the cache below
+        // done before updating the cache to allow concurrent segment access
         id.setSegment(segment);
+        segmentCache.put(id, segment);
+        log.debug("Added segment {} to tracker cache ({} bytes)",
+                id, segment.getCacheSize());
+    }
 
-        synchronized (this) {
-            long size = segment.getCacheSize();
-
-            segments.addFirst(segment);
-            currentSize += size;
-
-            log.debug("Added segment {} to tracker cache ({} bytes)",
-                    id, size);
-
-            // TODO possibly this cache could be improved
-            while (currentSize > cacheSize && segments.size() > 1) {
-                Segment last = segments.removeLast();
-                SegmentId lastId = last.getSegmentId();
-                if (last.accessed()) {
-                    segments.addFirst(last);
-                    log.debug("Segment {} was recently used, keeping in cache",
-                            lastId);
-                } else {
-                    long lastSize = last.getCacheSize();
+    /**
+     * Sets the size of the second level cache of evicted segments kept in
+     * direct (off-heap) buffers. Any previously cached off-heap segments
+     * are dropped.
+     *
+     * @param offHeapCacheSizeMB size of the off-heap cache in MB, or
+     *            {@code 0} to disable it
+     */
+    public synchronized void setOffHeapCacheSize(int offHeapCacheSizeMB) {
+        checkArgument(offHeapCacheSizeMB >= 0);
+        CacheLIRS<SegmentId, ByteBuffer> previous = offHeapCache;
+        if (offHeapCacheSizeMB > 0) {
+            long offHeapSize = (long) offHeapCacheSizeMB * MB;
+            Weigher<SegmentId, ByteBuffer> weigher =
+                    new Weigher<SegmentId, ByteBuffer>() {
+                        @Override
+                        public int weigh(SegmentId id, ByteBuffer buffer) {
+                            return buffer.remaining();
+                        }
+                    };
+            CacheLIRS<SegmentId, ByteBuffer> cache = CacheLIRS.newBuilder()
+                    .weigher(weigher)
+                    .averageWeight(Segment.MAX_SEGMENT_SIZE / 2)
+                    .maximumWeight(offHeapSize)
+                    .build();
+            offHeapCacheStats = new CacheStats(
+                    cache, "Segment-OffHeap", weigher, offHeapSize);
+            offHeapCache = cache;
+        } else {
+            offHeapCache = null;
+            offHeapCacheStats = null;
+        }
+        if (previous != null) {
+            previous.invalidateAll();
+        }
+    }
 
-                    lastId.setSegment(null);
-                    currentSize -= lastSize;
+    /**
+     * @return statistics of the segment cache
+     */
+    @Nonnull
+    public CacheStats getSegmentCacheStats() {
+        return segmentCacheStats;
+    }
 
-                    log.debug("Removed segment {} from tracker cache ({} bytes)",
-                            lastId, lastSize);
-                }
-            }
-        }
+    /**
+     * @return statistics of the off-heap segment cache, or {@code null} if
+     *         the off-heap cache is disabled
+     */
+    @CheckForNull
+    public CacheStats getOffHeapCacheStats() {
+        return offHeapCacheStats;
     }
 
     public void setCompactionMap(CompactionMap compaction) {
@@ -192,7 +358,7 @@ public class SegmentTracker {
     public void collectBlobReferences(ReferenceCollector collector) {
         Set<SegmentId> processed = newIdentityHashSet();
         Queue<SegmentId> queue = newArrayDeque(getReferencedSegmentIds());
-        writer.flush(); // force the current segment to have root record info
+        flushWriters(); // force the current segments to have root record info
         while (!queue.isEmpty()) {
             SegmentId id = queue.remove();
             if (id.isDataSegmentId() && processed.add(id)) {
@@ -79,6 +79,10 @@ import org.slf4j.LoggerFactory;
  * <p>
  * The same writer is used to create multiple segments (data is automatically
  * split: new segments are automatically created if and when needed).
+ * <p>
+ * All writes of a single writer are serialized. To allow concurrent writes,
+ * the {@link SegmentTracker} can be configured with a striped set of
+ * writers, each filling its own segment buffer.
  */
 public class SegmentWriter {
 
@@ -94,7 +98,7 @@ public class SegmentWriter {
         buffer[1] = 'a';
         buffer[2] = 'K';
         buffer[3] = '\n';
-        buffer[4] = 0;
+        buffer[Segment.VERSION_OFFSET] = 0;
         buffer[5] = 0; // refcount
         return buffer;
     }
@@ -163,6 +167,14 @@ public class SegmentWriter {
         segment.getSegmentId().setSegment(segment);
     }
 
+    SegmentStore getStore() {
+        return store;
+    }
+
+    SegmentTracker getTracker() {
+        return tracker;
+    }
+
     public synchronized Segment getCurrentSegment(SegmentId id) {
         if (id == segment.getSegmentId()) {
             return segment;
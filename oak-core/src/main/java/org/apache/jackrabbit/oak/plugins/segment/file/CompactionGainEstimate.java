@@ -18,7 +18,13 @@ package org.apache.jackrabbit.oak.plugins.segment.file;
 
 import static org.apache.jackrabbit.oak.api.Type.BINARIES;
 
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
 import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 
 import org.apache.jackrabbit.oak.api.Blob;
@@ -34,7 +40,7 @@ import com.google.common.hash.PrimitiveSink;
 
 class CompactionGainEstimate implements TarEntryVisitor {
 
-    private static final Funnel<UUID> UUID_FUNNEL = new Funnel<UUID>() {
+    static final Funnel<UUID> UUID_FUNNEL = new Funnel<UUID>() {
         @Override
         public void funnel(UUID from, PrimitiveSink into) {
             into.putLong(from.getMostSignificantBits());
@@ -48,6 +54,11 @@ class CompactionGainEstimate implements TarEntryVisitor {
 
     private long reachableSize = 0;
 
+    /**
+     * Total and reachable sizes per tar file.
+     */
+    private final Map<File, long[]> fileSizes = newHashMap();
+
     CompactionGainEstimate(NodeState node, int estimatedBulkCount) {
         uuids = BloomFilter.create(UUID_FUNNEL, estimatedBulkCount);
         collectBulkSegments(node);
@@ -81,6 +92,25 @@ class CompactionGainEstimate implements TarEntryVisitor {
         return 100 * (totalSize - reachableSize) / totalSize;
     }
 
+    /**
+     * Returns the tar files for which running compaction (and cleanup)
+     * could release at least the given percentage of their size.
+     *
+     * @param threshold minimum gain percentage (scale 0-100)
+     * @return tar files worth compacting
+     */
+    public List<File> getCompactionCandidates(long threshold) {
+        List<File> files = newArrayList();
+        for (Entry<File, long[]> entry : fileSizes.entrySet()) {
+            long total = entry.getValue()[0];
+            long reachable = entry.getValue()[1];
+            if (total > 0 && 100 * (total - reachable) / total >= threshold) {
+                files.add(entry.getKey());
+            }
+        }
+        return files;
+    }
+
     public long getTotalSize() {
         return totalSize;
     }
@@ -94,10 +124,17 @@ class CompactionGainEstimate implements TarEntryVisitor {
     @Override
     public void visit(long msb, long lsb, File file, int offset, int size) {
         int entrySize = TarReader.getEntrySize(size);
+        long[] sizes = fileSizes.get(file);
+        if (sizes == null) {
+            sizes = new long[2];
+            fileSizes.put(file, sizes);
+        }
         totalSize += entrySize;
+        sizes[0] += entrySize;
         if (SegmentId.isDataSegmentId(lsb)
                 || uuids.mightContain(new UUID(msb, lsb))) {
             reachableSize += entrySize;
+            sizes[1] += entrySize;
         }
     }
 
@@ -19,10 +19,15 @@ package org.apache.jackrabbit.oak.plugins.segment.file;
 import static com.google.common.base.Preconditions.checkState;
 import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 
 /**
  * A wrapper around either memory mapped files or random access files, to allow
@@ -76,14 +81,32 @@ abstract class FileAccess {
     }
     
     /**
-     * The implementation that uses random access file (reads are synchronized).
+     * The implementation that uses random access file. Reads are done with
+     * positional {@link FileChannel#read(ByteBuffer, long)} calls, which
+     * do not modify the file pointer and can thus proceed concurrently.
+     * <p>
+     * A file channel gets closed when a thread blocked in a read on it is
+     * interrupted. In that case the file is transparently reopened, so that
+     * the interrupt of one reader does not affect all other readers.
      */    
     static class Random extends FileAccess {
 
-        private final RandomAccessFile file;
+        private final File path;
 
-        Random(RandomAccessFile file) {
+        private volatile RandomAccessFile file;
+
+        /**
+         * The channel of {@link #file}, kept separately as older JVMs
+         * synchronize on the file in {@link RandomAccessFile#getChannel()}.
+         */
+        private volatile FileChannel channel;
+
+        private volatile boolean closed = false;
+
+        Random(File path, RandomAccessFile file) {
+            this.path = path;
             this.file = file;
+            this.channel = file.getChannel();
         }
 
         @Override
@@ -99,16 +122,53 @@ abstract class FileAccess {
         }
 
         @Override
-        public synchronized ByteBuffer read(int position, int length)
+        public ByteBuffer read(int position, int length)
                 throws IOException {
             ByteBuffer entry = ByteBuffer.allocate(length);
-            file.seek(position);
-            file.readFully(entry.array());
+            boolean interrupted = false;
+            try {
+                while (entry.hasRemaining()) {
+                    int n;
+                    try {
+                        n = channel.read(entry, position + entry.position());
+                    } catch (ClosedByInterruptException e) {
+                        // like RandomAccessFile reads, ignore the interrupt:
+                        // clear it for the retry and restore it afterwards
+                        interrupted |= Thread.interrupted();
+                        reopen();
+                        continue;
+                    } catch (ClosedChannelException e) {
+                        if (closed) {
+                            throw e;
+                        }
+                        // closed by an interrupted concurrent reader
+                        reopen();
+                        continue;
+                    }
+                    if (n == -1) {
+                        throw new EOFException("Unexpected end of file at "
+                                + (position + entry.position()));
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            entry.flip();
             return entry;
         }
 
+        private synchronized void reopen() throws IOException {
+            if (!closed && !channel.isOpen()) {
+                file = new RandomAccessFile(path, "r");
+                channel = file.getChannel();
+            }
+        }
+
         @Override
         public synchronized void close() throws IOException {
+            closed = true;
             file.close();
         }
 
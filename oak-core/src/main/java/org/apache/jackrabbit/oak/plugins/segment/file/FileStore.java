@@ -37,6 +37,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileLock;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -44,15 +45,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
 import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.plugins.blob.BlobStoreBlob;
+import org.apache.jackrabbit.oak.plugins.segment.CompactionProgress;
 import org.apache.jackrabbit.oak.plugins.segment.Compactor;
 import org.apache.jackrabbit.oak.plugins.segment.RecordId;
 import org.apache.jackrabbit.oak.plugins.segment.Segment;
@@ -74,6 +82,40 @@ import org.slf4j.LoggerFactory;
  */
 public class FileStore implements SegmentStore {
 
+    /**
+     * Durability levels of the changes made through {@link #setHead}.
+     * <p>
+     * With {@link #BATCHED} or {@link #COMMIT} durability the new head is
+     * visible to other threads before it is flushed, so a failed flush
+     * does not fail the commit that triggered it. Instead, further commits
+     * are rejected until the pending changes could be flushed.
+     */
+    public enum Durability {
+
+        /**
+         * Changes are written to disk by the background flush thread,
+         * once every five seconds. {@code setHead} does not wait.
+         */
+        PERIODIC,
+
+        /**
+         * {@code setHead} waits for a short group commit delay before
+         * flushing, so that more concurrent commits can share a single
+         * flush. Trades some commit latency for fewer disk syncs. Callers
+         * that serialize their commits should use {@link #publishHead}
+         * and {@link #awaitDurability()} outside of their lock, otherwise
+         * there is nothing to batch.
+         */
+        BATCHED,
+
+        /**
+         * {@code setHead} flushes immediately. Commits that are waiting
+         * while another flush is in progress still share the next flush.
+         */
+        COMMIT
+
+    }
+
     /** Logger instance */
     private static final Logger log = LoggerFactory.getLogger(FileStore.class);
 
@@ -86,6 +128,18 @@ public class FileStore implements SegmentStore {
 
     private static final String JOURNAL_FILE_NAME = "journal.log";
 
+    /**
+     * Number of times compaction tries to rebase concurrent changes before
+     * giving up, to avoid competing with committers indefinitely.
+     */
+    private static final int COMPACTION_RETRIES = 5;
+
+    /**
+     * Number of tar files not covered by the segment {@link #lookup}
+     * table after which the table is rebuilt.
+     */
+    private static final int LOOKUP_REBUILD_THRESHOLD = 8;
+
     private static final boolean MEMORY_MAPPING_DEFAULT =
             "64".equals(System.getProperty("sun.arch.data.model", "32"));
 
@@ -101,6 +155,19 @@ public class FileStore implements SegmentStore {
 
     private volatile List<TarReader> readers;
 
+    /**
+     * Lookup table from segment identifiers to the {@link #readers} that
+     * contain them. Readers of tar files created after the table was built
+     * are not covered, and are checked first using their Bloom filters.
+     * Always updated <em>before</em> the list of readers, so that a thread
+     * that sees a list of readers also sees a table that is at least as
+     * recent.
+     */
+    private volatile TarLookup lookup = TarLookup.EMPTY;
+
+    private final SegmentLookupStats lookupStats =
+            new SegmentLookupStats(this);
+
     private int writeNumber;
 
     private File writeFile;
@@ -122,6 +189,38 @@ public class FileStore implements SegmentStore {
      */
     private final AtomicReference<RecordId> persistedHead;
 
+    /**
+     * Sequence number of the successful {@link #setHead} calls.
+     */
+    private final AtomicLong headSequence = new AtomicLong();
+
+    /**
+     * Sequence number of the latest head that has been written to disk.
+     * Only updated while holding the {@link #persistedHead} lock.
+     */
+    private volatile long persistedSequence = 0;
+
+    private volatile Durability durability = Durability.PERIODIC;
+
+    /**
+     * The failure of the latest flush a durable commit waited for, or
+     * {@code null} if the changes have been flushed since.
+     */
+    private volatile Throwable flushFailure = null;
+
+    /**
+     * Time in milliseconds that a commit waits for other commits to join
+     * its flush with {@link Durability#BATCHED} durability.
+     */
+    private volatile int groupCommitDelay = 2;
+
+    /**
+     * Compression codec for newly written data segments.
+     */
+    private volatile SegmentCompression compression = SegmentCompression.NONE;
+
+    private final FlushStats flushStats = new FlushStats(this);
+
     /**
      * The background flush thread. Automatically flushes the TarMK state
      * once every five seconds.
@@ -134,6 +233,12 @@ public class FileStore implements SegmentStore {
      */
     private final BackgroundThread compactionThread;
 
+    /**
+     * Background thread validating the tar files that were opened using
+     * the {@link StoreManifest}, or {@code null} if there are none.
+     */
+    private final Thread validationThread;
+
     /**
      * Flag to request revision cleanup during the next flush.
      */
@@ -144,6 +249,43 @@ public class FileStore implements SegmentStore {
      */
     private volatile boolean pauseCompaction = true;
 
+    /**
+     * Minimum estimated gain (percentage of the size) of the whole store,
+     * or of at least one tar file if {@link #compactionPerFileGain} is set,
+     * for compaction to run.
+     */
+    private volatile int compactionGainThreshold = 10;
+
+    /**
+     * Whether compaction also runs when a single tar file reaches the
+     * {@link #compactionGainThreshold}, even if the gain of the whole store
+     * does not.
+     */
+    private volatile boolean compactionPerFileGain = false;
+
+    /**
+     * Maximum number of entries in the compaction map.
+     */
+    private volatile int compactionMapLimit = Integer.MAX_VALUE;
+
+    /**
+     * Maximum write rate of compaction in MB per second, or zero for
+     * unthrottled compaction.
+     */
+    private volatile int compactionThrottleMB = 0;
+
+    /**
+     * Number of threads used to compact the children of large nodes,
+     * or one for sequential compaction.
+     */
+    private volatile int compactionThreads = 1;
+
+    /**
+     * Progress of the current or last compaction.
+     */
+    private final CompactionProgress compactionProgress =
+            new CompactionProgress();
+
     /**
      * List of old tar file generations that are waiting to be removed. They can
      * not be removed immediately, because they first need to be closed, and the
@@ -172,14 +314,29 @@ public class FileStore implements SegmentStore {
     }
 
     public FileStore(
-            BlobStore blobStore, final File directory, NodeState initial,
+            BlobStore blobStore, File directory, NodeState initial,
             int maxFileSizeMB, int cacheSizeMB, boolean memoryMapping)
             throws IOException {
+        this(blobStore, directory, initial, maxFileSizeMB, cacheSizeMB,
+                memoryMapping, 1);
+    }
+
+    /**
+     * Creates a file store with the given number of concurrent segment
+     * writers. Writing threads are striped over the writers by thread id,
+     * so that commits from different threads mostly fill independent
+     * segment buffers instead of contending on a single one.
+     */
+    public FileStore(
+            BlobStore blobStore, final File directory, NodeState initial,
+            int maxFileSizeMB, int cacheSizeMB, boolean memoryMapping,
+            int writerCount) throws IOException {
         checkNotNull(directory).mkdirs();
         if (cacheSizeMB > 0) {
-            this.tracker = new SegmentTracker(this, cacheSizeMB);
+            this.tracker = new SegmentTracker(this, cacheSizeMB, writerCount);
         } else {
-            this.tracker = new SegmentTracker(this);
+            this.tracker = new SegmentTracker(this,
+                    SegmentTracker.DEFAULT_MEMORY_CACHE_SIZE, writerCount);
         }
         this.blobStore = blobStore;
         this.directory = directory;
@@ -190,13 +347,31 @@ public class FileStore implements SegmentStore {
                 new File(directory, JOURNAL_FILE_NAME), "rw");
         journalLock = journalFile.getChannel().lock();
 
+        Stopwatch timer = Stopwatch.createStarted();
+        StoreManifest manifest = StoreManifest.read(directory);
+        final List<TarReader> unvalidated = newArrayList();
         Map<Integer, Map<Character, File>> map = collectFiles(directory);
         this.readers = newArrayListWithCapacity(map.size());
         Integer[] indices = map.keySet().toArray(new Integer[map.size()]);
         Arrays.sort(indices);
         for (int i = indices.length - 1; i >= 0; i--) {
-            readers.add(TarReader.open(map.get(indices[i]), memoryMapping));
+            Map<Character, File> files = map.get(indices[i]);
+            TarReader reader = null;
+            if (manifest != null && files.size() == 1) {
+                reader = manifest.open(
+                        files.values().iterator().next(), memoryMapping);
+                if (reader != null) {
+                    unvalidated.add(reader);
+                }
+            }
+            if (reader == null) {
+                reader = TarReader.open(files, memoryMapping);
+            }
+            readers.add(reader);
         }
+        this.lookup = new TarLookup(readers);
+        log.debug("TarMK indexed {} segments in {} tar files ({} from manifest) in {}",
+                lookup.size(), readers.size(), unvalidated.size(), timer);
 
         if (indices.length > 0) {
             this.writeNumber = indices[indices.length - 1] + 1;
@@ -208,17 +383,35 @@ public class FileStore implements SegmentStore {
                 String.format(FILE_NAME_FORMAT, writeNumber, "a"));
         this.writer = new TarWriter(writeFile);
 
+        RecordId id = null;
+        String manifestHead = null;
+        if (manifest != null) {
+            manifestHead = manifest.getHead(journalFile.length());
+        }
+        if (manifestHead != null) {
+            RecordId last = RecordId.fromString(tracker, manifestHead);
+            SegmentId segmentId = last.getSegmentId();
+            if (containsSegment(
+                    segmentId.getMostSignificantBits(),
+                    segmentId.getLeastSignificantBits())) {
+                // skip reading the journal, new entries get appended
+                id = last;
+                journalFile.seek(journalFile.length());
+            }
+        }
+
         LinkedList<String> heads = newLinkedList();
-        String line = journalFile.readLine();
-        while (line != null) {
-            int space = line.indexOf(' ');
-            if (space != -1) {
-                heads.add(line.substring(0, space));
+        if (id == null) {
+            String line = journalFile.readLine();
+            while (line != null) {
+                int space = line.indexOf(' ');
+                if (space != -1) {
+                    heads.add(line.substring(0, space));
+                }
+                line = journalFile.readLine();
             }
-            line = journalFile.readLine();
         }
 
-        RecordId id = null;
         while (id == null && !heads.isEmpty()) {
             RecordId last = RecordId.fromString(tracker, heads.removeLast());
             SegmentId segmentId = last.getSegmentId();
@@ -241,6 +434,7 @@ public class FileStore implements SegmentStore {
                     builder.getNodeState()).getRecordId());
             persistedHead = new AtomicReference<RecordId>(null);
         }
+        lookupStats.started(timer.elapsed(MILLISECONDS));
 
         this.flushThread = new BackgroundThread(
                 "TarMK flush thread [" + directory + "]", 5000, // 5s interval
@@ -264,35 +458,99 @@ public class FileStore implements SegmentStore {
                         Stopwatch watch = Stopwatch.createStarted();
                         CompactionGainEstimate estimate = estimateCompactionGain();
                         long gain = estimate.estimateCompactionGain();
-                        if (gain >= 10) {
+                        List<File> candidates = compactionPerFileGain
+                                ? estimate.getCompactionCandidates(compactionGainThreshold)
+                                : Collections.<File>emptyList();
+                        if (gain >= compactionGainThreshold || !candidates.isEmpty()) {
                             log.info(
-                                    "Estimated compaction in {}, gain is {}% ({}/{}) or ({}/{}), so running compaction",
+                                    "Estimated compaction in {}, gain is {}% ({}/{}) or ({}/{}), {} tar files above {}%, so running compaction",
                                     watch, gain,
                                     estimate.getReachableSize(),
                                     estimate.getTotalSize(),
                                     humanReadableByteCount(estimate.getReachableSize()),
-                                    humanReadableByteCount(estimate.getTotalSize()));
+                                    humanReadableByteCount(estimate.getTotalSize()),
+                                    candidates.size(), compactionGainThreshold);
                             if (!pauseCompaction) {
+                                compactionProgress.setEstimatedSize(
+                                        estimate.getReachableSize());
                                 compact();
                             } else {
                                 log.info("TarMK compaction paused");
                             }
                         } else {
                             log.info(
-                                    "Estimated compaction in {}ms, gain is {}% ({}/{}) or ({}/{}), so skipping compaction for now",
+                                    "Estimated compaction in {}ms, gain is {}% ({}/{}) or ({}/{}), below {}%, so skipping compaction for now",
                                     watch, gain,
                                     estimate.getReachableSize(),
                                     estimate.getTotalSize(),
                                     humanReadableByteCount(estimate.getReachableSize()),
-                                    humanReadableByteCount(estimate.getTotalSize()));
+                                    humanReadableByteCount(estimate.getTotalSize()),
+                                    compactionGainThreshold);
                         }
                         cleanupNeeded.set(true);
                     }
                 });
 
+        if (!unvalidated.isEmpty()) {
+            this.validationThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    validate(unvalidated);
+                }
+            }, "TarMK manifest validation [" + directory + "]");
+            validationThread.setDaemon(true);
+            validationThread.start();
+        } else {
+            this.validationThread = null;
+        }
+
         log.info("TarMK opened: {} (mmap={})", directory, memoryMapping);
     }
 
+    /**
+     * Checks that the index and graph of the given tar files, as loaded
+     * from the store manifest, match the actual files. Mismatching files
+     * are reopened the normal way, which falls back to recovery if needed.
+     */
+    private void validate(List<TarReader> unvalidated) {
+        for (TarReader reader : unvalidated) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                if (!reader.validate()) {
+                    log.warn("TarMK manifest does not match tar file {},"
+                            + " reopening it", reader.getFile());
+                    reopen(reader);
+                }
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                log.warn("Failed to validate tar file " + reader.getFile(), e);
+            }
+        }
+        log.debug("TarMK validated {} tar files from the manifest",
+                unvalidated.size());
+    }
+
+    private synchronized void reopen(TarReader reader) throws IOException {
+        List<TarReader> list = newArrayList(readers);
+        int index = list.indexOf(reader);
+        if (index == -1) {
+            // already removed by cleanup or close
+            return;
+        }
+        File file = reader.getFile();
+        String name = file.getName();
+        char generation = name.charAt(name.length() - "a.tar".length());
+        list.set(index, TarReader.open(
+                singletonMap(generation, file), memoryMapping));
+        lookup = new TarLookup(list);
+        readers = list;
+        reader.close();
+    }
+
     static Map<Integer, Map<Character, File>> collectFiles(File directory)
             throws IOException {
         Map<Integer, Map<Character, File>> dataFiles = newHashMap();
@@ -399,29 +657,7 @@ public class FileStore implements SegmentStore {
 
     public void flush() throws IOException {
         synchronized (persistedHead) {
-            RecordId before = persistedHead.get();
-            RecordId after = head.get();
-            boolean cleanup = cleanupNeeded.getAndSet(false);
-            if (cleanup || !after.equals(before)) {
-                // needs to happen outside the synchronization block below to
-                // avoid a deadlock with another thread flushing the writer
-                tracker.getWriter().flush();
-
-                // needs to happen outside the synchronization block below to
-                // prevent the flush from stopping concurrent reads and writes
-                writer.flush();
-
-                synchronized (this) {
-                    log.debug("TarMK journal update {} -> {}", before, after);
-                    journalFile.writeBytes(after.toString10() + " root\n");
-                    journalFile.getChannel().force(false);
-                    persistedHead.set(after);
-
-                    if (cleanup) {
-                        cleanup();
-                    }
-                }
-            }
+            persist(cleanupNeeded.getAndSet(false));
             synchronized (this) {
                 // remove all obsolete tar generations
                 Iterator<File> iterator = toBeRemoved.iterator();
@@ -438,6 +674,100 @@ public class FileStore implements SegmentStore {
         }
     }
 
+    /**
+     * Writes the pending segments and the latest head to disk. Should only
+     * be called while holding the {@link #persistedHead} lock.
+     *
+     * @param cleanup whether to run revision cleanup after the flush
+     * @throws IOException if the changes could not be written to disk
+     */
+    private void persist(boolean cleanup) throws IOException {
+        // read the sequence number before the head, so that all heads
+        // up to that sequence number are included in the flushed head
+        long sequence = headSequence.get();
+        RecordId before = persistedHead.get();
+        RecordId after = head.get();
+        if (cleanup || !after.equals(before)) {
+            long start = System.nanoTime();
+
+            // needs to happen outside the synchronization block below to
+            // avoid a deadlock with another thread flushing the writers
+            tracker.flushWriters();
+
+            // needs to happen outside the synchronization block below to
+            // prevent the flush from stopping concurrent reads and writes
+            writer.flush();
+
+            synchronized (this) {
+                log.debug("TarMK journal update {} -> {}", before, after);
+                journalFile.writeBytes(after.toString10() + " root\n");
+                journalFile.getChannel().force(false);
+                persistedHead.set(after);
+                flushStats.flushed(System.nanoTime() - start);
+
+                if (cleanup) {
+                    cleanup();
+                }
+            }
+        }
+        persistedSequence = sequence;
+        flushFailure = null;
+    }
+
+    /**
+     * Waits until the heads set so far have been written to disk, unless
+     * the durability is {@link Durability#PERIODIC}. Concurrent callers
+     * share a single flush. As the heads are already visible, a failure to
+     * flush is only logged, but rejects further durable commits until a
+     * flush succeeds.
+     */
+    public void awaitDurability() {
+        if (durability == Durability.PERIODIC) {
+            return;
+        }
+        try {
+            awaitDurability(headSequence.get());
+        } catch (IOException e) {
+            flushFailed(e);
+        } catch (RuntimeException e) {
+            flushFailed(e);
+        }
+    }
+
+    private void flushFailed(Throwable e) {
+        flushFailure = e;
+        log.error("Failed to flush the TarMK at " + directory
+                + ", the latest commits are not yet durable and no further"
+                + " commits are accepted until a flush succeeds", e);
+    }
+
+    /**
+     * Waits until the head with the given sequence number has been written
+     * to disk, flushing it if no other thread did so in the meantime.
+     * Concurrent callers share a single flush.
+     */
+    private void awaitDurability(long sequence) throws IOException {
+        flushStats.durableCommit();
+        if (durability == Durability.BATCHED && groupCommitDelay > 0
+                && persistedSequence < sequence) {
+            try {
+                // give other commits a chance to join this flush
+                Thread.sleep(groupCommitDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (persistedSequence < sequence) {
+            synchronized (persistedHead) {
+                // double check, a concurrent flush may already
+                // have written this head while we were waiting
+                if (persistedSequence < sequence) {
+                    persist(false);
+                }
+            }
+        }
+    }
+
     /**
      * Runs garbage collection on the segment level, which could write new
      * generations of tar files. It checks which segments are still reachable,
@@ -479,6 +809,7 @@ public class FileStore implements SegmentStore {
                 toBeRemoved.addLast(file);
             }
         }
+        lookup = new TarLookup(list);
         readers = list;
         long finalSize = size();
         log.info("TarMK revision cleanup completed in {}. Post cleanup size is {} " +
@@ -497,35 +828,63 @@ public class FileStore implements SegmentStore {
         log.info("TarMK compaction running");
 
         SegmentWriter writer = new SegmentWriter(this, tracker);
-        Compactor compactor = new Compactor(writer);
-
-        SegmentNodeState before = getHead();
-        long existing = before.getChildNode(SegmentNodeStore.CHECKPOINTS)
-                .getChildNodeCount(Long.MAX_VALUE);
-        if (existing > 1) {
-            log.warn(
-                    "TarMK compaction found {} checkpoints, you might need to run checkpoint cleanup",
-                    existing);
-        }
-
-        SegmentNodeState after = compactor.compact(EMPTY_NODE, before);
-        writer.flush();
-        while (!setHead(before, after)) {
-            // Some other concurrent changes have been made.
-            // Rebase (and compact) those changes on top of the
-            // compacted state before retrying to set the head.
-            SegmentNodeState head = getHead();
-            after = compactor.compact(before, head);
-            before = head;
-            writer.flush();
+        RateLimiter throttle = null;
+        if (compactionThrottleMB > 0) {
+            throttle = RateLimiter.create((double) compactionThrottleMB * MB);
+        }
+        ExecutorService executor = null;
+        if (compactionThreads > 1) {
+            executor = Executors.newFixedThreadPool(
+                    compactionThreads, new CompactionThreadFactory(directory));
+        }
+        Compactor compactor =
+                new Compactor(writer, compactionMapLimit, throttle)
+                        .setExecutor(executor)
+                        .setProgress(compactionProgress);
+
+        compactionProgress.start();
+        try {
+            SegmentNodeState before = getHead();
+            long existing = before.getChildNode(SegmentNodeStore.CHECKPOINTS)
+                    .getChildNodeCount(Long.MAX_VALUE);
+            if (existing > 1) {
+                log.warn(
+                        "TarMK compaction found {} checkpoints, you might need to run checkpoint cleanup",
+                        existing);
+            }
+
+            SegmentNodeState after = compactor.compact(EMPTY_NODE, before);
+            compactor.flush();
+            int retries = 0;
+            while (!setHead(before, after)) {
+                if (++retries > COMPACTION_RETRIES) {
+                    // Do not keep competing with concurrent commits, the
+                    // compacted content will be reclaimed by the next cleanup
+                    log.info("TarMK compaction gave up after {} attempts to"
+                            + " rebase concurrent changes", COMPACTION_RETRIES);
+                    return;
+                }
+                // Some other concurrent changes have been made.
+                // Rebase (and compact) those changes on top of the
+                // compacted state before retrying to set the head.
+                SegmentNodeState head = getHead();
+                after = compactor.compact(before, head);
+                before = head;
+                compactor.flush();
+            }
+        } finally {
+            compactionProgress.stop();
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
         tracker.setCompactionMap(compactor.getCompactionMap());
 
         // Drop the SegmentWriter caches and flush any existing state
         // in an attempt to prevent new references to old pre-compacted
         // content. TODO: There should be a cleaner way to do this.
-        tracker.getWriter().dropCache();
-        tracker.getWriter().flush();
+        tracker.dropWriterCaches();
+        tracker.flushWriters();
 
         log.info("TarMK compaction completed in {}ms", MILLISECONDS
                 .convert(System.nanoTime() - start, NANOSECONDS));
@@ -560,9 +919,43 @@ public class FileStore implements SegmentStore {
 
     @Override
     public boolean setHead(SegmentNodeState base, SegmentNodeState head) {
+        if (!publishHead(base, head)) {
+            return false;
+        }
+        awaitDurability();
+        return true;
+    }
+
+    /**
+     * Sets the head like {@link #setHead}, but does not wait for it to be
+     * written to disk. Should be followed by a call to
+     * {@link #awaitDurability()}, preferably after releasing any lock
+     * that serializes the commits.
+     *
+     * @throws IllegalStateException if a previous flush failed with
+     *         {@link Durability#BATCHED} or {@link Durability#COMMIT}
+     *         durability and the pending changes still can't be flushed
+     */
+    public boolean publishHead(SegmentNodeState base, SegmentNodeState head) {
+        if (flushFailure != null && durability != Durability.PERIODIC) {
+            synchronized (persistedHead) {
+                if (flushFailure != null) {
+                    try {
+                        persist(false);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to flush the TarMK at "
+                                + directory + ", commits are not accepted", e);
+                    }
+                }
+            }
+        }
         RecordId id = this.head.get();
-        return id.equals(base.getRecordId())
-                && this.head.compareAndSet(id, head.getRecordId());
+        if (!id.equals(base.getRecordId())
+                || !this.head.compareAndSet(id, head.getRecordId())) {
+            return false;
+        }
+        headSequence.incrementAndGet();
+        return true;
     }
 
     @Override
@@ -571,14 +964,24 @@ public class FileStore implements SegmentStore {
         // threads before acquiring the synchronization lock
         compactionThread.close();
         flushThread.close();
+        if (validationThread != null) {
+            validationThread.interrupt();
+            try {
+                validationThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
 
         synchronized (this) {
             try {
                 flush();
 
                 writer.close();
+                writeManifest();
 
                 List<TarReader> list = readers;
+                lookup = TarLookup.EMPTY;
                 readers = newArrayList();
                 for (TarReader reader : list) {
                     reader.close();
@@ -597,6 +1000,23 @@ public class FileStore implements SegmentStore {
         log.info("TarMK closed: {}", directory);
     }
 
+    /**
+     * Writes the store manifest to speed up the next startup. Failing
+     * to do so only affects the startup time, so errors are just logged.
+     */
+    private void writeManifest() {
+        RecordId persisted = persistedHead.get();
+        try {
+            if (persisted != null) {
+                StoreManifest.write(directory, journalFile.length(),
+                        persisted.toString10(), readers);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write the TarMK manifest in " + directory, e);
+            StoreManifest.remove(directory);
+        }
+    }
+
     @Override
     public boolean containsSegment(SegmentId id) {
         if (id.getTracker() == tracker) {
@@ -609,10 +1029,8 @@ public class FileStore implements SegmentStore {
     }
 
     private boolean containsSegment(long msb, long lsb) {
-        for (TarReader reader : readers) {
-            if (reader.containsEntry(msb, lsb)) {
-                return true;
-            }
+        if (findReader(msb, lsb) != null) {
+            return true;
         }
 
         synchronized (this) {
@@ -623,13 +1041,46 @@ public class FileStore implements SegmentStore {
 
         // the writer might have switched to a new file,
         // so we need to re-check the readers
-        for (TarReader reader : readers) {
-            if (reader.containsEntry(msb, lsb)) {
-                return true;
+        return findReader(msb, lsb) != null;
+    }
+
+    /**
+     * Finds the tar file that contains the given segment. Tar files not
+     * yet covered by the {@link #lookup} table are checked first, newest
+     * first, skipping those whose Bloom filter excludes the segment.
+     *
+     * @return the reader of the tar file, or {@code null} if the segment
+     *         is not in any of the tar files that are open for reading
+     */
+    private TarReader findReader(long msb, long lsb) {
+        List<TarReader> list = readers;
+        TarLookup table = lookup;
+        for (TarReader reader : list) {
+            if (table.covers(reader)) {
+                // all older readers are covered by the table
+                break;
+            }
+            if (reader.mightContain(msb, lsb)) {
+                lookupStats.probed();
+                if (reader.containsEntry(msb, lsb)) {
+                    return reader;
+                }
+                lookupStats.falsePositive();
             }
         }
+        return table.get(msb, lsb);
+    }
 
-        return false;
+    private ByteBuffer readEntry(long msb, long lsb) {
+        TarReader reader = findReader(msb, lsb);
+        if (reader != null) {
+            try {
+                return reader.readEntry(msb, lsb);
+            } catch (IOException e) {
+                log.warn("Failed to read from tar file " + reader, e);
+            }
+        }
+        return null;
     }
 
     @Override
@@ -637,46 +1088,54 @@ public class FileStore implements SegmentStore {
         long msb = id.getMostSignificantBits();
         long lsb = id.getLeastSignificantBits();
 
-        for (TarReader reader : readers) {
-            try {
-                ByteBuffer buffer = reader.readEntry(msb, lsb);
-                if (buffer != null) {
-                    return new Segment(tracker, id, buffer);
-                }
-            } catch (IOException e) {
-                log.warn("Failed to read from tar file " + reader, e);
+        long start = System.nanoTime();
+        try {
+            ByteBuffer buffer = readEntry(msb, lsb);
+            if (buffer != null) {
+                return new Segment(tracker, id, buffer);
             }
-        }
 
-        synchronized (this) {
-            try {
-                ByteBuffer buffer = writer.readEntry(msb, lsb);
-                if (buffer != null) {
-                    return new Segment(tracker, id, buffer);
+            synchronized (this) {
+                try {
+                    buffer = writer.readEntry(msb, lsb);
+                    if (buffer != null) {
+                        return new Segment(tracker, id, buffer);
+                    }
+                } catch (IOException e) {
+                    log.warn("Failed to read from tar file " + writer, e);
                 }
-            } catch (IOException e) {
-                log.warn("Failed to read from tar file " + writer, e);
             }
-        }
 
-        // the writer might have switched to a new file,
-        // so we need to re-check the readers
-        for (TarReader reader : readers) {
-            try {
-                ByteBuffer buffer = reader.readEntry(msb, lsb);
-                if (buffer != null) {
-                    return new Segment(tracker, id, buffer);
-                }
-            } catch (IOException e) {
-                log.warn("Failed to read from tar file " + reader, e);
+            // the writer might have switched to a new file,
+            // so we need to re-check the readers
+            buffer = readEntry(msb, lsb);
+            if (buffer != null) {
+                return new Segment(tracker, id, buffer);
             }
+        } finally {
+            lookupStats.lookedUp(System.nanoTime() - start);
         }
 
         throw new SegmentNotFoundException(id);
     }
 
     @Override
-    public synchronized void writeSegment(
+    public void writeSegment(
+            SegmentId id, byte[] data, int offset, int length) {
+        // compress outside the lock to not block concurrent readers
+        byte[] compressed = compression.compressSegment(
+                id.getLeastSignificantBits(), data, offset, length);
+        if (compressed != null) {
+            data = compressed;
+            offset = 0;
+            length = compressed.length;
+        }
+        synchronized (this) {
+            writeEntry(id, data, offset, length);
+        }
+    }
+
+    private void writeEntry(
             SegmentId id, byte[] data, int offset, int length) {
         try {
             long size = writer.writeEntry(
@@ -690,6 +1149,15 @@ public class FileStore implements SegmentStore {
                         newArrayListWithCapacity(1 + readers.size());
                 list.add(TarReader.open(writeFile, memoryMapping));
                 list.addAll(readers);
+                int uncovered = 0;
+                for (TarReader reader : list) {
+                    if (!lookup.covers(reader)) {
+                        uncovered++;
+                    }
+                }
+                if (uncovered > LOOKUP_REBUILD_THRESHOLD) {
+                    lookup = new TarLookup(list);
+                }
                 readers = list;
 
                 writeNumber++;
@@ -748,4 +1216,147 @@ public class FileStore implements SegmentStore {
         this.pauseCompaction = pauseCompaction;
         return this;
     }
+
+    /**
+     * Sets the minimum estimated gain (scale 0-100) that the store needs
+     * to reach for compaction to run. Defaults to 10.
+     */
+    public FileStore setCompactionGainThreshold(int compactionGainThreshold) {
+        this.compactionGainThreshold = compactionGainThreshold;
+        return this;
+    }
+
+    /**
+     * Sets whether compaction also runs when the estimated gain of a single
+     * tar file reaches the gain threshold, even if the gain of the whole
+     * store does not. Disabled by default.
+     */
+    public FileStore setCompactionPerFileGain(boolean compactionPerFileGain) {
+        this.compactionPerFileGain = compactionPerFileGain;
+        return this;
+    }
+
+    /**
+     * Limits the number of entries in the compaction map, to bound the
+     * memory used by compaction. Unbounded by default.
+     */
+    public FileStore setCompactionMapLimit(int compactionMapLimit) {
+        this.compactionMapLimit = compactionMapLimit;
+        return this;
+    }
+
+    /**
+     * Limits the rate at which compaction writes content, in MB per second.
+     * Zero (the default) disables throttling.
+     */
+    public FileStore setCompactionThrottle(int compactionThrottleMB) {
+        this.compactionThrottleMB = compactionThrottleMB;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads used to compact the children of nodes
+     * with many child nodes in parallel. Defaults to one, i.e. sequential
+     * compaction.
+     */
+    public FileStore setCompactionThreads(int compactionThreads) {
+        this.compactionThreads = compactionThreads;
+        return this;
+    }
+
+    /**
+     * Sets the durability level of the changes made through
+     * {@link #setHead}. Defaults to {@link Durability#PERIODIC}.
+     */
+    public FileStore setDurability(Durability durability) {
+        this.durability = checkNotNull(durability);
+        return this;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Sets the time in milliseconds that commits wait for other commits to
+     * share their flush with {@link Durability#BATCHED} durability.
+     * Defaults to 2ms.
+     */
+    public FileStore setGroupCommitDelay(int groupCommitDelay) {
+        this.groupCommitDelay = groupCommitDelay;
+        return this;
+    }
+
+    /**
+     * Sets the codec used to compress newly written data segments. Existing
+     * segments are read regardless of this setting. Defaults to
+     * {@link SegmentCompression#NONE}.
+     */
+    public FileStore setCompression(SegmentCompression compression) {
+        this.compression = checkNotNull(compression);
+        return this;
+    }
+
+    public SegmentCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the size in MB of the second level cache that keeps evicted
+     * segments in direct (off-heap) buffers. Zero (the default) disables
+     * the off-heap cache.
+     */
+    public FileStore setOffHeapCacheSize(int offHeapCacheSizeMB) {
+        tracker.setOffHeapCacheSize(offHeapCacheSizeMB);
+        return this;
+    }
+
+    /**
+     * @return the segment lookup statistics of this store
+     */
+    public SegmentLookupStatsMBean getSegmentLookupStats() {
+        return lookupStats;
+    }
+
+    int getTarFileCount() {
+        return readers.size();
+    }
+
+    long getIndexedSegmentCount() {
+        return lookup.size();
+    }
+
+    /**
+     * @return the flush latency statistics of this store
+     */
+    public FlushStatsMBean getFlushStats() {
+        return flushStats;
+    }
+
+    /**
+     * @return the progress of the current or last compaction
+     */
+    public CompactionProgress getCompactionProgress() {
+        return compactionProgress;
+    }
+
+    private static class CompactionThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private final File directory;
+
+        CompactionThreadFactory(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "TarMK compaction worker "
+                    + counter.incrementAndGet() + " [" + directory + "]");
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
 }
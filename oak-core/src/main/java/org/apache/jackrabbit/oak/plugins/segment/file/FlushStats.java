@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.file;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.stats.PowerOfTwoHistogram;
+
+/**
+ * Flush latency statistics of a {@link FileStore}, kept in a histogram
+ * with power-of-two microsecond buckets.
+ */
+class FlushStats implements FlushStatsMBean {
+
+    private static final int BUCKETS = 32;
+
+    private final PowerOfTwoHistogram flushTimes =
+            new PowerOfTwoHistogram(BUCKETS);
+
+    private final AtomicLong durableCommitCount = new AtomicLong();
+
+    private final FileStore store;
+
+    FlushStats(FileStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Records a flush that took the given number of nanoseconds.
+     */
+    void flushed(long nanos) {
+        flushTimes.record(nanos / 1000);
+    }
+
+    void durableCommit() {
+        durableCommitCount.incrementAndGet();
+    }
+
+    //--------------------------------------------------< FlushStatsMBean >--
+
+    @Override
+    public String getDurability() {
+        return store.getDurability().toString();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushTimes.getCount();
+    }
+
+    @Override
+    public long getDurableCommitCount() {
+        return durableCommitCount.get();
+    }
+
+    @Override
+    public long getMeanFlushTime() {
+        return flushTimes.getMean();
+    }
+
+    @Override
+    public long getMaxFlushTime() {
+        return flushTimes.getMax();
+    }
+
+    @Override
+    public long[] getFlushTimeHistogram() {
+        return flushTimes.getHistogram();
+    }
+
+    @Override
+    public long getFlushTimePercentile(int percentile) {
+        return flushTimes.getPercentile(percentile);
+    }
+
+}
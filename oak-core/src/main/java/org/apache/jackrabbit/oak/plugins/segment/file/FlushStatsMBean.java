@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.file;
+
+/**
+ * MBean exposing the latency of the TarMK flushes, i.e. the time it takes
+ * to write pending segments and the journal to disk, and how well commits
+ * waiting for durability are batched into shared flushes.
+ */
+public interface FlushStatsMBean {
+    String TYPE = "TarMKFlushStats";
+
+    /**
+     * @return  the configured durability level of commits
+     */
+    String getDurability();
+
+    /**
+     * @return  number of flushes that wrote changes to disk
+     */
+    long getFlushCount();
+
+    /**
+     * @return  number of commits that waited for their changes to become
+     *          durable. Compared to {@link #getFlushCount()} this shows
+     *          how many commits share a single flush.
+     */
+    long getDurableCommitCount();
+
+    /**
+     * @return  mean flush time in microseconds
+     */
+    long getMeanFlushTime();
+
+    /**
+     * @return  maximum flush time in microseconds
+     */
+    long getMaxFlushTime();
+
+    /**
+     * Histogram of the flush times. The entry at index {@code i} is the
+     * number of flushes that took between 2<sup>i</sup> (inclusive) and
+     * 2<sup>i+1</sup> (exclusive) microseconds, with the first entry also
+     * including flushes faster than one microsecond.
+     *
+     * @return  flush time histogram
+     */
+    long[] getFlushTimeHistogram();
+
+    /**
+     * @param percentile  percentile between 0 and 100
+     * @return  upper bound in microseconds of the histogram bucket that
+     *          contains the given percentile of flush times, or zero if
+     *          no flush happened yet
+     */
+    long getFlushTimePercentile(int percentile);
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.file;
+
+import java.io.IOException;
+
+/**
+ * A simple and fast LZ77 block codec using the LZ4 sequence format:
+ * each sequence starts with a token byte whose high nibble is the literal
+ * length and low nibble the match length minus {@link #MIN_MATCH}, with
+ * longer lengths continued in extra bytes of 255. The literals are followed
+ * by a two byte little-endian match offset. The last sequence of a block
+ * consists only of literals.
+ */
+final class LZCodec {
+
+    private static final int MIN_MATCH = 4;
+
+    private static final int MAX_OFFSET = 0xffff;
+
+    private static final int HASH_BITS = 12;
+
+    /**
+     * The last bytes of a block are always encoded as literals.
+     */
+    private static final int LAST_LITERALS = 5;
+
+    private LZCodec() {
+    }
+
+    /**
+     * Compresses the given data.
+     *
+     * @return compressed data, or {@code null} if the compressed data would
+     *         not be smaller than the input
+     */
+    static byte[] compress(byte[] data, int offset, int length) {
+        byte[] out = new byte[length];
+        int[] table = new int[1 << HASH_BITS];
+        int end = offset + length;
+        int limit = end - LAST_LITERALS;
+
+        int o = 0;
+        int anchor = offset;
+        int p = offset;
+        while (p < limit - MIN_MATCH) {
+            int h = hash(data, p);
+            int candidate = table[h] - 1 + offset;
+            table[h] = p - offset + 1;
+            if (candidate < offset || p - candidate > MAX_OFFSET
+                    || !matches(data, candidate, p)) {
+                p++;
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (p + matchLength < limit
+                    && data[candidate + matchLength] == data[p + matchLength]) {
+                matchLength++;
+            }
+
+            int literals = p - anchor;
+            // worst case size of this sequence
+            if (o + 1 + literals / 255 + 1 + literals + 2
+                    + (matchLength - MIN_MATCH) / 255 + 1 > out.length) {
+                return null;
+            }
+            int token = o++;
+            out[token] = (byte) (Math.min(literals, 15) << 4);
+            o = writeLength(out, o, literals);
+            System.arraycopy(data, anchor, out, o, literals);
+            o += literals;
+            int distance = p - candidate;
+            out[o++] = (byte) distance;
+            out[o++] = (byte) (distance >> 8);
+            out[token] |= (byte) Math.min(matchLength - MIN_MATCH, 15);
+            o = writeLength(out, o, matchLength - MIN_MATCH);
+
+            p += matchLength;
+            anchor = p;
+        }
+
+        int literals = end - anchor;
+        if (o + 1 + literals / 255 + 1 + literals >= out.length) {
+            return null;
+        }
+        out[o] = (byte) (Math.min(literals, 15) << 4);
+        o = writeLength(out, o + 1, literals);
+        System.arraycopy(data, anchor, out, o, literals);
+        o += literals;
+
+        byte[] compressed = new byte[o];
+        System.arraycopy(out, 0, compressed, 0, o);
+        return compressed;
+    }
+
+    /**
+     * Decompresses the given data into the given target range, which must
+     * match the length of the uncompressed data.
+     *
+     * @throws IOException if the compressed data is corrupt
+     */
+    static void decompress(
+            byte[] data, int offset, int length,
+            byte[] target, int targetOffset, int targetLength)
+            throws IOException {
+        try {
+            int p = offset;
+            int end = offset + length;
+            int o = targetOffset;
+            int targetEnd = targetOffset + targetLength;
+            while (p < end) {
+                int token = data[p++] & 0xff;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = data[p++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (p + literals > end || o + literals > targetEnd) {
+                    throw new IOException("Corrupt compressed segment");
+                }
+                System.arraycopy(data, p, target, o, literals);
+                p += literals;
+                o += literals;
+                if (p == end) {
+                    break;
+                }
+
+                int distance = (data[p++] & 0xff) | (data[p++] & 0xff) << 8;
+                int matchLength = token & 0x0f;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = data[p++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int source = o - distance;
+                if (distance == 0 || source < targetOffset
+                        || o + matchLength > targetEnd) {
+                    throw new IOException("Corrupt compressed segment");
+                }
+                // byte by byte, as the match may overlap its own output
+                for (int i = 0; i < matchLength; i++) {
+                    target[o++] = target[source + i];
+                }
+            }
+            if (o != targetEnd) {
+                throw new IOException("Truncated compressed segment");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt compressed segment", e);
+        }
+    }
+
+    private static int writeLength(byte[] out, int o, int length) {
+        if (length >= 15) {
+            int remaining = length - 15;
+            while (remaining >= 255) {
+                out[o++] = (byte) 255;
+                remaining -= 255;
+            }
+            out[o++] = (byte) remaining;
+        }
+        return o;
+    }
+
+    private static int hash(byte[] data, int p) {
+        int v = (data[p] & 0xff) | (data[p + 1] & 0xff) << 8
+                | (data[p + 2] & 0xff) << 16 | (data[p + 3] & 0xff) << 24;
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static boolean matches(byte[] data, int a, int b) {
+        return data[a] == data[b] && data[a + 1] == data[b + 1]
+                && data[a + 2] == data[b + 2] && data[a + 3] == data[b + 3];
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.file;
+
+import static org.apache.jackrabbit.oak.plugins.segment.Segment.REF_COUNT_OFFSET;
+import static org.apache.jackrabbit.oak.plugins.segment.Segment.VERSION_OFFSET;
+import static org.apache.jackrabbit.oak.plugins.segment.SegmentId.isDataSegmentId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression codecs for data segments stored in tar files.
+ * <p>
+ * A compressed data segment keeps the segment header and the list of
+ * referenced segment identifiers uncompressed, so that the segment graph
+ * can still be read directly from the stored bytes. The segment version
+ * byte at {@link org.apache.jackrabbit.oak.plugins.segment.Segment#VERSION_OFFSET}
+ * identifies the codec used for the rest of the segment (zero for an
+ * uncompressed segment), and the otherwise unused header bytes 10 to 13
+ * hold the uncompressed length of the segment. Segments are decompressed
+ * transparently when read from a tar file, so the rest of the segment
+ * store always sees the uncompressed format.
+ * <p>
+ * Bulk segments contain binary data that typically does not compress well
+ * and are therefore never compressed.
+ */
+public enum SegmentCompression {
+
+    /**
+     * No compression.
+     */
+    NONE(0) {
+        @Override
+        byte[] compress(byte[] data, int offset, int length) {
+            return null;
+        }
+
+        @Override
+        void decompress(byte[] data, int offset, int length,
+                byte[] target, int targetOffset, int targetLength) {
+            throw new IllegalStateException();
+        }
+    },
+
+    /**
+     * Fast LZ77 compression with an LZ4 style block format, implemented
+     * in pure Java. Favors compression and decompression speed over the
+     * compression ratio.
+     */
+    LZ(1) {
+        @Override
+        byte[] compress(byte[] data, int offset, int length) {
+            return LZCodec.compress(data, offset, length);
+        }
+
+        @Override
+        void decompress(byte[] data, int offset, int length,
+                byte[] target, int targetOffset, int targetLength)
+                throws IOException {
+            LZCodec.decompress(
+                    data, offset, length, target, targetOffset, targetLength);
+        }
+    },
+
+    /**
+     * Deflate compression at the fastest compression level. Achieves
+     * better compression ratios than {@link #LZ}, at a higher cost.
+     */
+    DEFLATE(2) {
+        @Override
+        byte[] compress(byte[] data, int offset, int length) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(data, offset, length);
+                deflater.finish();
+                byte[] buffer = new byte[length];
+                int n = 0;
+                while (!deflater.finished() && n < buffer.length) {
+                    n += deflater.deflate(buffer, n, buffer.length - n);
+                }
+                if (!deflater.finished()) {
+                    return null; // no savings
+                }
+                byte[] compressed = new byte[n];
+                System.arraycopy(buffer, 0, compressed, 0, n);
+                return compressed;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        void decompress(byte[] data, int offset, int length,
+                byte[] target, int targetOffset, int targetLength)
+                throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data, offset, length);
+                int n = 0;
+                while (n < targetLength && !inflater.finished()) {
+                    int m = inflater.inflate(
+                            target, targetOffset + n, targetLength - n);
+                    if (m == 0 && (inflater.needsInput()
+                            || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += m;
+                }
+                if (n != targetLength) {
+                    throw new IOException("Truncated compressed segment");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed segment", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    /**
+     * Offset of the uncompressed segment length in the header of a
+     * compressed segment.
+     */
+    private static final int LENGTH_OFFSET = 10;
+
+    /**
+     * Minimum size of data segments that are compressed.
+     */
+    private static final int MIN_SIZE = 1024;
+
+    private final byte version;
+
+    private SegmentCompression(int version) {
+        this.version = (byte) version;
+    }
+
+    /**
+     * Compresses the given data.
+     *
+     * @return compressed data, or {@code null} if the data could not
+     *         be compressed to a smaller size
+     */
+    abstract byte[] compress(byte[] data, int offset, int length);
+
+    abstract void decompress(
+            byte[] data, int offset, int length,
+            byte[] target, int targetOffset, int targetLength)
+            throws IOException;
+
+    /**
+     * Compresses the given segment, if it is an uncompressed data segment
+     * and compression reduces its size.
+     *
+     * @param lsb the least significant bits of the segment id
+     * @return the compressed segment, or {@code null} if the segment
+     *         should be stored as-is
+     */
+    byte[] compressSegment(long lsb, byte[] data, int offset, int length) {
+        if (this == NONE || !isDataSegmentId(lsb) || length < MIN_SIZE
+                || data[offset + VERSION_OFFSET] != 0) {
+            return null;
+        }
+
+        int prefix = 16 * ((data[offset + REF_COUNT_OFFSET] & 0xff) + 1);
+        byte[] compressed = compress(data, offset + prefix, length - prefix);
+        if (compressed == null || prefix + compressed.length >= length) {
+            return null;
+        }
+
+        byte[] segment = new byte[prefix + compressed.length];
+        System.arraycopy(data, offset, segment, 0, prefix);
+        System.arraycopy(compressed, 0, segment, prefix, compressed.length);
+        segment[VERSION_OFFSET] = version;
+        ByteBuffer.wrap(segment).putInt(LENGTH_OFFSET, length);
+        return segment;
+    }
+
+    /**
+     * Decompresses the given stored segment, if needed.
+     *
+     * @param lsb the least significant bits of the segment id
+     * @param data stored segment
+     * @return uncompressed segment
+     * @throws IOException if the segment could not be decompressed
+     */
+    static ByteBuffer decompressSegment(long lsb, ByteBuffer data)
+            throws IOException {
+        if (!isDataSegmentId(lsb) || data.remaining() < 16) {
+            return data;
+        }
+        int pos = data.position();
+        byte version = data.get(pos + VERSION_OFFSET);
+        if (version == 0) {
+            return data;
+        }
+
+        SegmentCompression codec = null;
+        for (SegmentCompression candidate : values()) {
+            if (candidate.version == version) {
+                codec = candidate;
+            }
+        }
+        if (codec == null || codec == NONE) {
+            throw new IOException("Unknown segment version " + version);
+        }
+
+        byte[] stored = new byte[data.remaining()];
+        data.duplicate().get(stored);
+        int prefix = 16 * ((stored[REF_COUNT_OFFSET] & 0xff) + 1);
+        int length = ByteBuffer.wrap(stored).getInt(LENGTH_OFFSET);
+        if (length < prefix || prefix > stored.length) {
+            throw new IOException("Invalid compressed segment header");
+        }
+
+        byte[] segment = new byte[length];
+        System.arraycopy(stored, 0, segment, 0, prefix);
+        segment[VERSION_OFFSET] = 0;
+        ByteBuffer.wrap(segment).putInt(LENGTH_OFFSET, 0);
+        codec.decompress(stored, prefix, stored.length - prefix,
+                segment, prefix, length - prefix);
+        return ByteBuffer.wrap(segment);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.file;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Segment lookup statistics of a {@link FileStore}.
+ */
+class SegmentLookupStats implements SegmentLookupStatsMBean {
+
+    private final AtomicLong lookupCount = new AtomicLong();
+
+    private final AtomicLong probeCount = new AtomicLong();
+
+    private final AtomicLong falsePositiveCount = new AtomicLong();
+
+    private final AtomicLong totalTime = new AtomicLong();
+
+    private final AtomicLong maxTime = new AtomicLong();
+
+    private final FileStore store;
+
+    private volatile long startupTime = 0;
+
+    SegmentLookupStats(FileStore store) {
+        this.store = store;
+    }
+
+    void started(long millis) {
+        startupTime = millis;
+    }
+
+    void probed() {
+        probeCount.incrementAndGet();
+    }
+
+    void falsePositive() {
+        falsePositiveCount.incrementAndGet();
+    }
+
+    /**
+     * Records a lookup that took the given number of nanoseconds.
+     */
+    void lookedUp(long nanos) {
+        long micros = nanos / 1000;
+        lookupCount.incrementAndGet();
+        totalTime.addAndGet(micros);
+        long max = maxTime.get();
+        while (micros > max && !maxTime.compareAndSet(max, micros)) {
+            max = maxTime.get();
+        }
+    }
+
+    //------------------------------------------< SegmentLookupStatsMBean >--
+
+    @Override
+    public long getStartupTime() {
+        return startupTime;
+    }
+
+    @Override
+    public int getTarFileCount() {
+        return store.getTarFileCount();
+    }
+
+    @Override
+    public long getIndexedSegmentCount() {
+        return store.getIndexedSegmentCount();
+    }
+
+    @Override
+    public long getLookupCount() {
+        return lookupCount.get();
+    }
+
+    @Override
+    public long getMeanLookupTime() {
+        long count = lookupCount.get();
+        return count > 0 ? totalTime.get() / count : 0;
+    }
+
+    @Override
+    public long getMaxLookupTime() {
+        return maxTime.get();
+    }
+
+    @Override
+    public double getMeanProbeCount() {
+        long count = lookupCount.get();
+        return count > 0 ? (double) probeCount.get() / count : 0;
+    }
+
+    @Override
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.get();
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.file;
+
+/**
+ * MBean exposing the cost of finding segments in the tar files of a
+ * TarMK, and the time it took to open them.
+ */
+public interface SegmentLookupStatsMBean {
+    String TYPE = "TarMKSegmentLookupStats";
+
+    /**
+     * @return  time in milliseconds it took to open the tar files and
+     *          build the segment lookup table at startup
+     */
+    long getStartupTime();
+
+    /**
+     * @return  number of tar files that are currently open for reading
+     */
+    int getTarFileCount();
+
+    /**
+     * @return  number of segments in the segment lookup table
+     */
+    long getIndexedSegmentCount();
+
+    /**
+     * @return  number of segment lookups in the tar files
+     */
+    long getLookupCount();
+
+    /**
+     * @return  mean time of a segment lookup (including reading the
+     *          segment) in microseconds
+     */
+    long getMeanLookupTime();
+
+    /**
+     * @return  maximum time of a segment lookup (including reading the
+     *          segment) in microseconds
+     */
+    long getMaxLookupTime();
+
+    /**
+     * @return  mean number of tar file indexes searched per lookup
+     */
+    double getMeanProbeCount();
+
+    /**
+     * @return  number of tar file index searches caused by false positives
+     *          of the per file Bloom filters
+     */
+    long getFalsePositiveCount();
+}
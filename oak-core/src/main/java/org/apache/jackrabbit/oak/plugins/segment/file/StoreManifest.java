@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.file;
+
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A snapshot of the state of a {@link FileStore}, written when the store
+ * is closed and used to speed up opening it again. It contains the list
+ * of tar files with their indexes and segment graphs, and the head state
+ * together with the length of the journal it was read from.
+ * <p>
+ * Tar files are only opened using the manifest if their name, length and
+ * modification time still match, so any tar file created or modified
+ * after the manifest was written is opened the normal way. Similarly the
+ * head state is only used if the journal has not changed in between. The
+ * whole manifest is protected by a checksum and ignored if corrupt.
+ * <p>
+ * The format of the manifest file is:
+ * <pre>
+ * magic (int), version (int)
+ * journal length (long), head (UTF string)
+ * count (int), and for each tar file:
+ *     name (UTF), length (long), last modified (long),
+ *     index size (int), index bytes,
+ *     graph size (int, -1 if none), graph bytes
+ * CRC32 checksum of all the above (long)
+ * </pre>
+ */
+class StoreManifest {
+
+    /** Logger instance */
+    private static final Logger log = LoggerFactory.getLogger(StoreManifest.class);
+
+    static final String FILE_NAME = "manifest";
+
+    private static final int MAGIC =
+            ('\n' << 24) + ('0' << 16) + ('M' << 8) + '\n';
+
+    private static final int VERSION = 1;
+
+    private static class Entry {
+
+        final long length;
+
+        final long lastModified;
+
+        final ByteBuffer index;
+
+        final ByteBuffer graph;
+
+        Entry(long length, long lastModified,
+                ByteBuffer index, ByteBuffer graph) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.index = index;
+            this.graph = graph;
+        }
+
+    }
+
+    private final long journalLength;
+
+    private final String head;
+
+    private final Map<String, Entry> entries;
+
+    private StoreManifest(
+            long journalLength, String head, Map<String, Entry> entries) {
+        this.journalLength = journalLength;
+        this.head = head;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the manifest in the given directory.
+     *
+     * @param directory store directory
+     * @return the manifest, or {@code null} if there is no manifest
+     *         or it is not valid
+     */
+    static StoreManifest read(File directory) {
+        File file = new File(directory, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] data = FileUtils.readFileToByteArray(file);
+            if (data.length < 8) {
+                log.warn("Ignoring truncated TarMK manifest {}", file);
+                return null;
+            }
+
+            CRC32 checksum = new CRC32();
+            checksum.update(data, 0, data.length - 8);
+            if (ByteBuffer.wrap(data, data.length - 8, 8).getLong()
+                    != checksum.getValue()) {
+                log.warn("Ignoring TarMK manifest {} with invalid checksum", file);
+                return null;
+            }
+
+            DataInputStream input = new DataInputStream(
+                    new ByteArrayInputStream(data, 0, data.length - 8));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                log.warn("Ignoring TarMK manifest {} of unknown format", file);
+                return null;
+            }
+            long journalLength = input.readLong();
+            String head = input.readUTF();
+            int count = input.readInt();
+            Map<String, Entry> entries = newHashMap();
+            for (int i = 0; i < count; i++) {
+                String name = input.readUTF();
+                long length = input.readLong();
+                long lastModified = input.readLong();
+                ByteBuffer index = readBuffer(input);
+                ByteBuffer graph = readBuffer(input);
+                entries.put(name, new Entry(length, lastModified, index, graph));
+            }
+            return new StoreManifest(journalLength, head, entries);
+        } catch (IOException e) {
+            log.warn("Failed to read TarMK manifest " + file, e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer readBuffer(DataInputStream input)
+            throws IOException {
+        int size = input.readInt();
+        if (size < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        input.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Writes a new manifest to the given directory, replacing any existing
+     * one. The manifest is first written to a temporary file that is then
+     * renamed, so that a partially written manifest is never used.
+     *
+     * @param directory store directory
+     * @param journalLength length of the journal file
+     * @param head head record identifier, as last written to the journal
+     * @param readers tar readers of the store
+     * @throws IOException if the manifest could not be written
+     */
+    static void write(
+            File directory, long journalLength, String head,
+            List<TarReader> readers) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(journalLength);
+        output.writeUTF(head);
+        output.writeInt(readers.size());
+        for (TarReader reader : readers) {
+            File file = reader.getFile();
+            output.writeUTF(file.getName());
+            output.writeLong(file.length());
+            output.writeLong(file.lastModified());
+            writeBuffer(output, reader.getIndex());
+            writeBuffer(output, reader.getGraphBuffer());
+        }
+        output.flush();
+
+        CRC32 checksum = new CRC32();
+        byte[] data = bytes.toByteArray();
+        checksum.update(data);
+
+        File temp = new File(directory, FILE_NAME + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            stream.write(data);
+            stream.write(ByteBuffer.allocate(8)
+                    .putLong(checksum.getValue()).array());
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+
+        File file = new File(directory, FILE_NAME);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to remove old manifest " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to rename manifest " + temp);
+        }
+    }
+
+    private static void writeBuffer(DataOutputStream output, ByteBuffer buffer)
+            throws IOException {
+        if (buffer == null) {
+            output.writeInt(-1);
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Removes the manifest in the given directory, if any.
+     */
+    static void remove(File directory) {
+        File file = new File(directory, FILE_NAME);
+        if (file.exists() && !file.delete()) {
+            log.warn("Failed to remove TarMK manifest {}", file);
+        }
+    }
+
+    /**
+     * Opens the given tar file using the index and graph from this
+     * manifest, if the file has not changed since the manifest was written.
+     *
+     * @return tar reader, or {@code null} if the file is not in this
+     *         manifest or has changed
+     * @throws IOException if the tar file could not be opened
+     */
+    TarReader open(File file, boolean memoryMapping) throws IOException {
+        Entry entry = entries.get(file.getName());
+        if (entry == null
+                || entry.length != file.length()
+                || entry.lastModified != file.lastModified()) {
+            return null;
+        }
+        return TarReader.open(file, entry.index, entry.graph, memoryMapping);
+    }
+
+    /**
+     * @param length current length of the journal file
+     * @return the head record identifier from this manifest, or
+     *         {@code null} if the journal has changed since
+     */
+    String getHead(long length) {
+        return length == journalLength ? head : null;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.file;
+
+import static com.google.common.collect.Sets.newIdentityHashSet;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable lookup table from segment identifiers to the tar files that
+ * contain them. Built from the indexes of a list of tar readers, so that
+ * finding the tar file of a segment costs a single hash table probe
+ * instead of one index search per tar file.
+ * <p>
+ * The table is an open addressing hash table over the segment identifiers
+ * stored as pairs of longs, to keep the memory overhead at about 20 bytes
+ * per segment. Segment identifiers are random, so the most significant
+ * bits are used as the hash code as-is.
+ */
+class TarLookup {
+
+    static final TarLookup EMPTY = new TarLookup(new TarReader[0]);
+
+    private final TarReader[] readers;
+
+    private final Set<TarReader> covered = newIdentityHashSet();
+
+    /**
+     * Segment identifiers, two longs (msb, lsb) per slot.
+     */
+    private final long[] keys;
+
+    /**
+     * One plus the index of the reader for each slot, or zero for
+     * empty slots.
+     */
+    private final int[] values;
+
+    private final int size;
+
+    TarLookup(List<TarReader> readers) {
+        this(readers.toArray(new TarReader[readers.size()]));
+    }
+
+    private TarLookup(TarReader[] readers) {
+        this.readers = readers;
+        int count = 0;
+        for (TarReader reader : readers) {
+            covered.add(reader);
+            count += reader.count();
+        }
+        // keep the load factor at or below 0.75
+        int capacity = Math.max(16, count + count / 3 + 1);
+        this.keys = new long[2 * capacity];
+        this.values = new int[capacity];
+
+        int total = 0;
+        for (int i = 0; i < readers.length; i++) {
+            final int value = i + 1;
+            final int[] added = new int[1];
+            readers[i].accept(new TarEntryVisitor() {
+                @Override
+                public void visit(
+                        long msb, long lsb, File file, int offset, int size) {
+                    if (put(msb, lsb, value)) {
+                        added[0]++;
+                    }
+                }
+            });
+            total += added[0];
+        }
+        this.size = total;
+    }
+
+    /**
+     * Adds the given entry, unless the segment is already contained in
+     * a newer tar file.
+     */
+    private boolean put(long msb, long lsb, int value) {
+        int slot = slot(msb, values.length);
+        while (values[slot] != 0) {
+            if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+                return false;
+            }
+            slot = (slot + 1) % values.length;
+        }
+        keys[2 * slot] = msb;
+        keys[2 * slot + 1] = lsb;
+        values[slot] = value;
+        return true;
+    }
+
+    private static int slot(long msb, int capacity) {
+        return (int) ((msb >>> 1) % capacity);
+    }
+
+    /**
+     * @return the number of segments in this table
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return {@code true} if the entries of the given reader are
+     *         included in this table
+     */
+    boolean covers(TarReader reader) {
+        return covered.contains(reader);
+    }
+
+    /**
+     * @return the tar reader that contains the given segment, or
+     *         {@code null} if none of the readers of this table do
+     */
+    TarReader get(long msb, long lsb) {
+        if (size == 0) {
+            return null;
+        }
+        int slot = slot(msb, values.length);
+        while (values[slot] != 0) {
+            if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+                return readers[values[slot] - 1];
+            }
+            slot = (slot + 1) % values.length;
+        }
+        return null;
+    }
+
+}
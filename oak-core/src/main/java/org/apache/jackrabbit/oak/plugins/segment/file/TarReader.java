@@ -17,8 +17,10 @@
 package org.apache.jackrabbit.oak.plugins.segment.file;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newConcurrentMap;
 import static com.google.common.collect.Maps.newHashMap;
 import static com.google.common.collect.Maps.newLinkedHashMap;
 import static com.google.common.collect.Maps.newTreeMap;
@@ -27,6 +29,7 @@ import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static org.apache.jackrabbit.oak.plugins.segment.Segment.REF_COUNT_OFFSET;
 import static org.apache.jackrabbit.oak.plugins.segment.SegmentId.isDataSegmentId;
+import static org.apache.jackrabbit.oak.plugins.segment.file.SegmentCompression.decompressSegment;
 import static org.apache.jackrabbit.oak.plugins.segment.file.TarWriter.GRAPH_MAGIC;
 
 import java.io.File;
@@ -41,14 +44,27 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.CRC32;
 
+import javax.annotation.Nonnull;
+
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.hash.BloomFilter;
+
 class TarReader {
 
     /** Logger instance */
@@ -68,6 +84,31 @@ class TarReader {
     /** The tar file block size. */
     private static final int BLOCK_SIZE = TarWriter.BLOCK_SIZE;
 
+    /**
+     * Maximum number of segments prefetched at once when a traversal is
+     * detected on a tar file that is not memory mapped. Read-ahead is
+     * disabled when set to zero (the default).
+     */
+    private static final int READ_AHEAD =
+            Integer.getInteger("oak.tar.readAhead", 0);
+
+    /**
+     * Maximum size of a single read done to prefetch several adjacent
+     * segments at once.
+     */
+    private static final int READ_AHEAD_SPAN = 1024 * 1024;
+
+    /**
+     * Background thread shared by all tar files to prefetch segments,
+     * created when first needed.
+     */
+    private static Executor defaultReadAheadExecutor;
+
+    /**
+     * False positive probability of the per file Bloom filters.
+     */
+    private static final double BLOOM_FILTER_FPP = 0.01;
+
     static int getEntrySize(int size) {
         return BLOCK_SIZE + size + TarWriter.getPaddingSize(size);
     }
@@ -82,6 +123,44 @@ class TarReader {
         }
     }
 
+    /**
+     * Opens the given tar file using an index and graph that were loaded
+     * from elsewhere, typically a {@link StoreManifest}, without reading
+     * them from the file. The caller is responsible for making sure that
+     * they match the file, see {@link #validate()}.
+     *
+     * @param file tar file
+     * @param index tar index
+     * @param graph segment graph, or {@code null} if not available
+     * @param memoryMapping whether to use memory mapping
+     * @return tar reader
+     * @throws IOException if the tar file could not be opened
+     */
+    static TarReader open(
+            File file, ByteBuffer index, ByteBuffer graph,
+            boolean memoryMapping) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file, "r");
+        try {
+            if (memoryMapping) {
+                try {
+                    FileAccess mapped = new FileAccess.Mapped(access);
+                    access = null;
+                    return new TarReader(file, mapped, index, graph);
+                } catch (IOException e) {
+                    log.warn("Failed to mmap tar file " + file.getName()
+                            + ". Falling back to normal file IO.", e);
+                }
+            }
+            FileAccess random = new FileAccess.Random(file, access);
+            access = null;
+            return new TarReader(file, random, index, graph);
+        } finally {
+            if (access != null) {
+                access.close();
+            }
+        }
+    }
+
     /**
      * Creates a TarReader instance for reading content from a tar file.
      * If there exist multiple generations of the same tar file, they are
@@ -224,7 +303,7 @@ class TarReader {
                             }
                         }
 
-                        FileAccess random = new FileAccess.Random(access);
+                        FileAccess random = new FileAccess.Random(file, access);
                         // prevent the finally block from closing the file
                         // as the returned TarReader will take care of that
                         access = null;
@@ -474,12 +553,70 @@ class TarReader {
 
     private final ByteBuffer graph;
 
+    /**
+     * Bloom filter of the segments in this file, derived from the index
+     * when the file is opened. Allows most lookups of segments that are
+     * not in this file to be answered without searching the index.
+     */
+    private final BloomFilter<UUID> filter;
+
+    /**
+     * Parsed segment graph used for read-ahead, loaded lazily on the first
+     * read when read-ahead is enabled.
+     */
+    private volatile Map<UUID, List<UUID>> references;
+
+    /**
+     * Identifier of the most recently read segment, used to detect
+     * traversals: a read of a segment referenced by the previously read
+     * segment triggers a prefetch of the other referenced segments.
+     */
+    private final AtomicReference<UUID> lastRead =
+            new AtomicReference<UUID>();
+
+    /**
+     * Maximum number of segments to prefetch, see {@link #READ_AHEAD}.
+     */
+    private volatile int readAhead = READ_AHEAD;
+
+    /**
+     * Executor of the prefetches, or {@code null} for the shared default
+     * read-ahead thread.
+     */
+    private volatile Executor readAheadExecutor;
+
+    /**
+     * Whether a prefetch is currently scheduled or running.
+     */
+    private final AtomicBoolean readingAhead = new AtomicBoolean();
+
+    /**
+     * Segments prefetched by read-ahead and not yet read. At most
+     * {@link #readAhead} entries; replaced by every new prefetch.
+     */
+    private final ConcurrentMap<UUID, ByteBuffer> prefetched =
+            newConcurrentMap();
+
     private TarReader(File file, FileAccess access, ByteBuffer index)
             throws IOException {
+        this(file, access, index, loadGraph(file, access, index));
+    }
+
+    private TarReader(
+            File file, FileAccess access, ByteBuffer index, ByteBuffer graph) {
         this.file = file;
         this.access = access;
         this.index = index;
-        this.graph = loadGraph(file, access, index);
+        this.graph = graph;
+        this.filter = BloomFilter.create(CompactionGainEstimate.UUID_FUNNEL,
+                Math.max(1, count()), BLOOM_FILTER_FPP);
+        int position = index.position();
+        while (position < index.limit()) {
+            filter.put(new UUID(
+                    index.getLong(position),
+                    index.getLong(position + 8)));
+            position += 24;
+        }
     }
 
     long size() {
@@ -530,12 +667,59 @@ class TarReader {
         return findEntry(msb, lsb) != -1;
     }
 
+    /**
+     * @return a read-only view of the tar index of this file
+     */
+    ByteBuffer getIndex() {
+        return index.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a read-only view of the raw segment graph of this file,
+     *         or {@code null} if this file has no graph
+     */
+    ByteBuffer getGraphBuffer() {
+        return graph != null ? graph.asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Re-reads the index and graph from the tar file and compares them
+     * with the ones used by this reader.
+     *
+     * @return {@code true} if they match, {@code false} otherwise
+     * @throws IOException if the tar file could not be read
+     */
+    boolean validate() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.file, "r");
+        try {
+            ByteBuffer loaded = loadAndValidateIndex(file, this.file.getName());
+            if (loaded == null || !loaded.equals(index)) {
+                return false;
+            }
+        } finally {
+            file.close();
+        }
+        ByteBuffer loaded = loadGraph(this.file, access, index);
+        return loaded != null ? loaded.equals(graph) : graph == null;
+    }
+
+    /**
+     * Checks the Bloom filter of this file for the given segment.
+     *
+     * @return {@code false} if the segment is definitely not in this
+     *         file, {@code true} if it might be
+     */
+    boolean mightContain(long msb, long lsb) {
+        return filter.mightContain(new UUID(msb, lsb));
+    }
+
     /**
      * If the given segment is in this file, get the byte buffer that allows
      * reading it.
      * <p>
      * Whether or not this will read from the file depends on whether memory
-     * mapped files are used or not.
+     * mapped files are used or not. Compressed segments are transparently
+     * decompressed.
      * 
      * @param msb the most significant bits of the segment id
      * @param lsb the least significant bits of the segment id
@@ -543,13 +727,176 @@ class TarReader {
      */
     ByteBuffer readEntry(long msb, long lsb) throws IOException {
         int position = findEntry(msb, lsb);
-        if (position != -1) {
-            return access.read(
+        if (position == -1) {
+            return null;
+        }
+
+        if (readAhead <= 0 || access.isMemoryMapped() || graph == null) {
+            return decompressSegment(lsb, access.read(
+                    index.getInt(position + 16),
+                    index.getInt(position + 20)));
+        }
+
+        UUID id = new UUID(msb, lsb);
+        ByteBuffer buffer = prefetched.remove(id);
+        if (buffer == null) {
+            buffer = access.read(
                     index.getInt(position + 16),
                     index.getInt(position + 20));
-        } else {
-            return null;
         }
+
+        UUID previous = lastRead.getAndSet(id);
+        if (previous != null && !previous.equals(id)) {
+            scheduleReadAhead(previous, id);
+        }
+        return decompressSegment(lsb, buffer);
+    }
+
+    /**
+     * Sets the maximum number of segments to prefetch when a traversal is
+     * detected, and the executor that prefetches them. Used for testing.
+     */
+    void setReadAhead(int readAhead, @Nonnull Executor executor) {
+        this.readAhead = readAhead;
+        this.readAheadExecutor = checkNotNull(executor);
+    }
+
+    /**
+     * @return {@code true} if the given segment was prefetched and has not
+     *         been read yet
+     */
+    boolean isPrefetched(UUID id) {
+        return prefetched.containsKey(id);
+    }
+
+    /**
+     * Prefetches the other segments referenced by the previously read
+     * segment, if the segment just read is one of them. Done in the
+     * background so that the read path only pays for the detection; at
+     * most one prefetch per tar file is in progress at any time.
+     */
+    private void scheduleReadAhead(final UUID previous, final UUID current) {
+        if (!readingAhead.compareAndSet(false, true)) {
+            return;
+        }
+        Executor executor = readAheadExecutor;
+        if (executor == null) {
+            executor = getDefaultReadAheadExecutor();
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<UUID> refs = getReferences().get(previous);
+                        if (refs != null && refs.contains(current)) {
+                            List<UUID> ids = newArrayList(refs);
+                            ids.remove(current);
+                            readAhead(ids);
+                        }
+                    } catch (IOException e) {
+                        log.debug("Failed to prefetch segments from tar file " + file, e);
+                    } finally {
+                        readingAhead.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            readingAhead.set(false);
+        }
+    }
+
+    private static synchronized Executor getDefaultReadAheadExecutor() {
+        if (defaultReadAheadExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    1, 1, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(64),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "TarMK read-ahead");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    },
+                    new ThreadPoolExecutor.DiscardPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            defaultReadAheadExecutor = executor;
+        }
+        return defaultReadAheadExecutor;
+    }
+
+    private Map<UUID, List<UUID>> getReferences() throws IOException {
+        Map<UUID, List<UUID>> references = this.references;
+        if (references == null) {
+            references = parseGraph();
+            this.references = references;
+        }
+        return references;
+    }
+
+    /**
+     * Prefetches the given segments that are contained in this tar file and
+     * not yet loaded. Entries that are close to each other in the file are
+     * read with a single positional read.
+     *
+     * @param ids identifiers of the segments to prefetch
+     */
+    private void readAhead(List<UUID> ids) throws IOException {
+        List<TarEntry> entries = newArrayList();
+        for (UUID id : ids) {
+            if (entries.size() >= readAhead) {
+                break;
+            }
+            long msb = id.getMostSignificantBits();
+            long lsb = id.getLeastSignificantBits();
+            int position = findEntry(msb, lsb);
+            if (position != -1 && !prefetched.containsKey(id)) {
+                entries.add(new TarEntry(msb, lsb,
+                        index.getInt(position + 16),
+                        index.getInt(position + 20)));
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        TarEntry[] sorted = entries.toArray(new TarEntry[entries.size()]);
+        Arrays.sort(sorted, TarEntry.OFFSET_ORDER);
+
+        Map<UUID, ByteBuffer> buffers = newHashMap();
+        int start = 0;
+        while (start < sorted.length) {
+            // extend the read as long as the next entry follows closely
+            int end = start + 1;
+            while (end < sorted.length
+                    && sorted[end].offset() - sorted[end - 1].offset()
+                            - sorted[end - 1].size() <= 2 * BLOCK_SIZE
+                    && sorted[end].offset() + sorted[end].size()
+                            - sorted[start].offset() <= READ_AHEAD_SPAN) {
+                end++;
+            }
+
+            int offset = sorted[start].offset();
+            ByteBuffer span = access.read(offset,
+                    sorted[end - 1].offset() + sorted[end - 1].size() - offset);
+            for (int i = start; i < end; i++) {
+                TarEntry entry = sorted[i];
+                ByteBuffer slice = span.duplicate();
+                slice.position(entry.offset() - offset);
+                slice.limit(entry.offset() - offset + entry.size());
+                ByteBuffer buffer = ByteBuffer.allocate(entry.size());
+                buffer.put(slice);
+                buffer.flip();
+                buffers.put(new UUID(entry.msb(), entry.lsb()), buffer);
+            }
+            start = end;
+        }
+
+        prefetched.clear();
+        prefetched.putAll(buffers);
+        log.debug("Prefetched {} segments from tar file {}",
+                buffers.size(), file);
     }
 
     /**
@@ -720,6 +1067,7 @@ class TarReader {
     }
 
     File close() throws IOException {
+        prefetched.clear();
         access.close();
         return file;
     }
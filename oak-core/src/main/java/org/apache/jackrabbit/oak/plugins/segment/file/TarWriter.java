@@ -25,6 +25,7 @@ import static com.google.common.collect.Maps.newTreeMap;
 import static com.google.common.collect.Sets.newHashSet;
 import static org.apache.jackrabbit.oak.plugins.segment.Segment.REF_COUNT_OFFSET;
 import static org.apache.jackrabbit.oak.plugins.segment.SegmentId.isDataSegmentId;
+import static org.apache.jackrabbit.oak.plugins.segment.file.SegmentCompression.decompressSegment;
 
 import java.io.File;
 import java.io.FileDescriptor;
@@ -126,6 +127,13 @@ class TarWriter {
      */
     private boolean closed = false;
 
+    /**
+     * Length of the file as of the last {@link #flush()}. Used to skip
+     * the disk sync when no entries were written since.
+     * Should only be accessed from synchronized code.
+     */
+    private long synced = 0;
+
     /**
      * Map of the entries that have already been written. Used by the
      * {@link #containsEntry(long, long)} and {@link #readEntry(long, long)}
@@ -178,7 +186,7 @@ class TarWriter {
             access.seek(entry.offset());
             access.readFully(data.array());
             access.seek(access.length());
-            return data;
+            return decompressSegment(lsb, data);
         } else {
             return null;
         }
@@ -248,6 +256,8 @@ class TarWriter {
 
     /**
      * Flushes the entries that have so far been written to the disk.
+     * Nothing is done if no entries were written since the last flush,
+     * so that repeated flushes only cost a disk sync if needed.
      * This method is <em>not</em> synchronized to allow concurrent reads
      * and writes to proceed while the file is being flushed. However,
      * this method <em>is</em> carefully synchronized with {@link #close()}
@@ -258,15 +268,22 @@ class TarWriter {
     void flush() throws IOException {
         synchronized (file) {
             FileDescriptor descriptor = null;
+            long length = 0;
 
             synchronized (this) {
                 if (access != null && !closed) {
-                    descriptor = access.getFD();
+                    length = access.length();
+                    if (length > synced) {
+                        descriptor = access.getFD();
+                    }
                 }
             }
 
             if (descriptor != null) {
                 descriptor.sync();
+                synchronized (this) {
+                    synced = length;
+                }
             }
         }
     }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.stats;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of non-negative values, typically durations, with
+ * power-of-two buckets. Bucket {@code i} counts the values between
+ * {@code 2^i} (inclusive) and {@code 2^(i+1)} (exclusive), except for the
+ * first bucket, which also counts zero, and the last bucket, which counts
+ * all larger values. Also keeps the count, mean and maximum of the values.
+ */
+public class PowerOfTwoHistogram {
+
+    private final AtomicLongArray histogram;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param buckets number of buckets, between 1 and 63
+     */
+    public PowerOfTwoHistogram(int buckets) {
+        checkArgument(buckets > 0 && buckets < 64);
+        this.histogram = new AtomicLongArray(buckets);
+    }
+
+    /**
+     * Records the given value.
+     */
+    public void record(long value) {
+        int bucket = Math.min(histogram.length() - 1,
+                63 - Long.numberOfLeadingZeros(Math.max(1, value)));
+        histogram.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, or zero if none were recorded
+     */
+    public long getMean() {
+        long c = count.get();
+        return c > 0 ? total.get() / c : 0;
+    }
+
+    /**
+     * @return the largest recorded value, or zero if none were recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return a snapshot of the number of values in each bucket
+     */
+    public long[] getHistogram() {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded values,
+     * that is the exclusive upper limit of the bucket the percentile falls
+     * into.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the percentile, or zero if no values were
+     *         recorded
+     */
+    public long getPercentile(int percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100);
+        long[] counts = getHistogram();
+        long sum = 0;
+        for (long c : counts) {
+            sum += c;
+        }
+        if (sum == 0) {
+            return 0;
+        }
+        long threshold = Math.max(1, (sum * percentile + 99) / 100);
+        sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += counts[i];
+            if (sum >= threshold) {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << counts.length;
+    }
+
+}
@@ -27,6 +27,7 @@ import static org.junit.Assert.fail;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.concurrent.Callable;
@@ -357,6 +358,27 @@ public class CacheTest {
         verify(test, "mem: 4 stack: 19 18 17 16 3 2 1 cold: 19 non-resident: 18 17 16");
     }
 
+    @Test
+    public void testEvictionCallback() {
+        final Map<Integer, Integer> evicted = new HashMap<Integer, Integer>();
+        CacheLIRS<Integer, Integer> test = new CacheLIRS<Integer, Integer>(
+                null, 4, 1, 1, 0, null,
+                new CacheLIRS.EvictionCallback<Integer, Integer>() {
+                    @Override
+                    public void evicted(Integer key, Integer value) {
+                        evicted.put(key, value);
+                    }
+                });
+        for (int i = 0; i < 20; i++) {
+            test.put(i, 10 * i);
+        }
+        assertEquals(16, evicted.size());
+        for (Entry<Integer, Integer> e : evicted.entrySet()) {
+            assertEquals(10 * e.getKey(), (int) e.getValue());
+            assertNull(test.getIfPresent(e.getKey()));
+        }
+    }
+
     @Test
     public void testBadHashMethod() {
         // ensure an 2^n cache size
@@ -36,6 +36,12 @@ class AmnesiaDiffCache implements DiffCache {
         return null;
     }
 
+    @Nonnull
+    @Override
+    public Entry newExternalEntry(@Nonnull Revision from, @Nonnull Revision to) {
+        return newEntry(from, to);
+    }
+
     @Nonnull
     @Override
     public Entry newEntry(@Nonnull Revision from, @Nonnull Revision to) {
@@ -66,5 +66,12 @@ public class BackgroundWriteTest {
             assertTrue(keys.size() <= UnsavedModifications.BACKGROUND_MULTI_UPDATE_LIMIT);
             super.update(collection, keys, updateOp);
         }
+
+        @Override
+        public <T extends Document> void update(Collection<T> collection,
+                                                List<UpdateOp> updateOps) {
+            assertTrue(updateOps.size() <= UnsavedModifications.BACKGROUND_MULTI_UPDATE_LIMIT);
+            super.update(collection, updateOps);
+        }
     }
 }
@@ -28,6 +28,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -37,7 +38,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import com.google.common.collect.Lists;
+
+import org.apache.commons.dbcp.DelegatingStatement;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.junit.Assume;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -264,6 +269,125 @@ public class BasicDocumentStoreTest extends AbstractDocumentStoreTest {
         assertEquals("bar", d.get("foo").toString());
     }
 
+    @Test
+    public void testBulkUpdate() {
+        String base = this.getClass().getName() + ".testBulkUpdate-";
+        List<UpdateOp> creates = new ArrayList<UpdateOp>();
+        for (int i = 0; i < 10; i++) {
+            String id = base + i;
+            super.ds.remove(Collection.NODES, id);
+            UpdateOp up = new UpdateOp(id, true);
+            up.set("_id", id);
+            creates.add(up);
+            removeMe.add(id);
+        }
+        assertTrue(super.ds.create(Collection.NODES, creates));
+        // populate the cache with some of the documents
+        assertNotNull(ds.find(Collection.NODES, base + 0));
+
+        // update the existing ones and a non-existing one
+        List<UpdateOp> updates = new ArrayList<UpdateOp>();
+        for (int i = 0; i < 10; i++) {
+            UpdateOp up = new UpdateOp(base + i, false);
+            up.set("foo", "bar-" + i);
+            updates.add(up);
+        }
+        updates.add(new UpdateOp(base + UUID.randomUUID(), false));
+        ds.update(Collection.NODES, updates);
+
+        for (int i = 0; i < 10; i++) {
+            Document d = ds.find(Collection.NODES, base + i);
+            assertNotNull(d);
+            assertEquals("bar-" + i, d.get("foo").toString());
+        }
+        ds.invalidateCache();
+        for (int i = 0; i < 10; i++) {
+            Document d = ds.find(Collection.NODES, base + i);
+            assertNotNull(d);
+            assertEquals("bar-" + i, d.get("foo").toString());
+        }
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        // more documents than read with a single batch
+        String base = "2:/" + this.getClass().getName() + ".testStream";
+        List<UpdateOp> creates = new ArrayList<UpdateOp>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 250; i++) {
+            String id = base + "/" + String.format("%03d", i);
+            super.ds.remove(Collection.NODES, id);
+            UpdateOp up = new UpdateOp(id, true);
+            up.set("_id", id);
+            creates.add(up);
+            expected.add(id);
+            removeMe.add(id);
+        }
+        assertTrue(super.ds.create(Collection.NODES, creates));
+
+        CloseableIterable<NodeDocument> docs = ds.stream(Collection.NODES,
+                base + "/", base + "0", null, 0, Integer.MAX_VALUE, false);
+        try {
+            assertEquals(expected, getKeys(Lists.newArrayList(docs)));
+        } finally {
+            docs.close();
+        }
+
+        docs = ds.stream(Collection.NODES, base + "/", base + "0", null, 0, 150, true);
+        try {
+            assertEquals(expected.subList(0, 150), getKeys(Lists.newArrayList(docs)));
+        } finally {
+            docs.close();
+        }
+    }
+
+    @Test
+    public void testBulkCreateOrUpdate() {
+        String base = this.getClass().getName() + ".testBulkCreateOrUpdate-";
+        List<UpdateOp> creates = new ArrayList<UpdateOp>();
+        for (int i = 0; i < 5; i++) {
+            String id = base + i;
+            super.ds.remove(Collection.NODES, id);
+            UpdateOp up = new UpdateOp(id, true);
+            up.set("_id", id);
+            up.set("foo", "initial");
+            creates.add(up);
+            removeMe.add(id);
+        }
+        assertTrue(super.ds.create(Collection.NODES, creates));
+
+        // update the existing documents and create new ones
+        List<UpdateOp> updates = new ArrayList<UpdateOp>();
+        for (int i = 0; i < 10; i++) {
+            String id = base + i;
+            if (i >= 5) {
+                super.ds.remove(Collection.NODES, id);
+            }
+            UpdateOp up = new UpdateOp(id, true);
+            up.set("_id", id);
+            up.set("foo", "bar-" + i);
+            updates.add(up);
+            removeMe.add(id);
+        }
+        List<NodeDocument> before = ds.createOrUpdate(Collection.NODES, updates);
+        assertEquals(updates.size(), before.size());
+        for (int i = 0; i < 10; i++) {
+            if (i < 5) {
+                assertNotNull(before.get(i));
+                assertEquals("initial", before.get(i).get("foo").toString());
+            } else {
+                assertNull(before.get(i));
+            }
+        }
+
+        ds.invalidateCache();
+        for (int i = 0; i < 10; i++) {
+            Document d = ds.find(Collection.NODES, base + i);
+            assertNotNull(d);
+            assertEquals("bar-" + i, d.get("foo").toString());
+        }
+    }
+
     @Test
     public void testQuery() {
         // create ten documents
@@ -401,6 +525,85 @@ public class BasicDocumentStoreTest extends AbstractDocumentStoreTest {
                 + cnt + " in " + duration + "ms (" + (cnt / (duration / 1000f)) + "/s)");
     }
 
+    @Test
+    public void testPerfReadBigDoc() throws SQLException {
+        String id = this.getClass().getName() + ".testPerfReadBigDoc";
+        // repetitive content, as found in real-world documents
+        StringBuilder pval = new StringBuilder();
+        while (pval.length() < 16 * 1024) {
+            pval.append(UUID.randomUUID().toString().substring(0, 8)).append("-abcdefghijklmnop-");
+        }
+        UpdateOp up = new UpdateOp(id, true);
+        up.set("_id", id);
+        up.set("foo", pval.toString());
+        assertTrue(super.ds.create(Collection.NODES, Collections.singletonList(up)));
+        removeMe.add(id);
+
+        long duration = 1000;
+        long end = System.currentTimeMillis() + duration;
+        long cnt = 0;
+        while (System.currentTimeMillis() < end) {
+            super.ds.invalidateCache();
+            NodeDocument nd = super.ds.find(Collection.NODES, id);
+            assertNotNull(nd);
+            assertEquals("failure to round-trip big document through " + super.dsname, pval.toString(), nd.get("foo"));
+            cnt += 1;
+        }
+
+        String stored = "";
+        if (super.rdbDataSource != null) {
+            Connection connection = super.rdbDataSource.getConnection();
+            try {
+                PreparedStatement stmt = connection.prepareStatement("select DATA, BDATA from " + DocumentStoreFixture.TABLEPREFIX
+                        + "NODES where ID = ?");
+                try {
+                    stmt.setString(1, id);
+                    ResultSet rs = stmt.executeQuery();
+                    assertTrue(rs.next());
+                    String data = rs.getString(1);
+                    byte[] bdata = rs.getBytes(2);
+                    // the serialized document exceeds BDATATHRESHOLD, so it
+                    // must have gone into BDATA, gzipped
+                    assertEquals("\"blob\"", data);
+                    assertNotNull("document not stored in BDATA for " + super.dsname, bdata);
+                    if (!Boolean.getBoolean("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOGZIP")) {
+                        assertTrue("BDATA not gzipped for " + super.dsname, bdata.length > 2 && (bdata[0] & 0xff) == 0x1f
+                                && (bdata[1] & 0xff) == 0x8b);
+                        assertTrue("stored size " + bdata.length + " not smaller than " + pval.length() + " for "
+                                + super.dsname, bdata.length < pval.length());
+                    }
+                    stored = " (stored as " + data.length() + " chars DATA, " + bdata.length + " octets BDATA)";
+                } finally {
+                    stmt.close();
+                }
+            } finally {
+                connection.close();
+            }
+        }
+
+        LOG.info("uncached reads of document with property of size " + pval.length() + " for " + super.dsname + " was " + cnt
+                + " in " + duration + "ms (" + (cnt / (duration / 1000f)) + "/s)" + stored);
+    }
+
+    @Test
+    public void testPreparedStatementPooling() throws SQLException {
+        Assume.assumeTrue(super.rdbDataSource != null);
+        String sql = "select ID from " + DocumentStoreFixture.TABLEPREFIX + "NODES where ID = ?";
+        Connection connection = super.rdbDataSource.getConnection();
+        try {
+            PreparedStatement first = connection.prepareStatement(sql);
+            Statement firstPhysical = ((DelegatingStatement) first).getInnermostDelegate();
+            first.close();
+            PreparedStatement second = connection.prepareStatement(sql);
+            Statement secondPhysical = ((DelegatingStatement) second).getInnermostDelegate();
+            second.close();
+            assertNotNull(firstPhysical);
+            assertTrue("prepared statement not reused for " + super.dsname, firstPhysical == secondPhysical);
+        } finally {
+            connection.close();
+        }
+    }
+
     @Test
     public void testPerfCollectionPaging() {
         testPerfCollectionPaging(this.getClass().getName() + ".testPerfCollectionPaging", false);
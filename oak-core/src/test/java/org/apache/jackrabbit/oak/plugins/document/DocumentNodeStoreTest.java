@@ -35,6 +35,7 @@ import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.kernel.KernelNodeState;
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.plugins.document.util.TimingDocumentStoreWrapper;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.spi.commit.CommitHook;
@@ -63,6 +64,7 @@ import static org.apache.jackrabbit.oak.plugins.document.NodeDocument.NUM_REVS_T
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -483,6 +485,22 @@ public class DocumentNodeStoreTest {
                 }
                 return super.query(collection, fromKey, toKey, limit);
             }
+
+            @Nonnull
+            @Override
+            public <T extends Document> CloseableIterable<T> stream(Collection<T> collection,
+                                                                    String fromKey,
+                                                                    String toKey,
+                                                                    String indexedProperty,
+                                                                    long startValue,
+                                                                    int limit,
+                                                                    boolean cache) {
+                if (collection == Collection.NODES) {
+                    maxLimit.set(Math.max(limit, maxLimit.get()));
+                }
+                return super.stream(collection, fromKey, toKey, indexedProperty,
+                        startValue, limit, cache);
+            }
         };
         DocumentNodeStore ns = new DocumentMK.Builder()
                 .setDocumentStore(docStore)
@@ -549,6 +567,56 @@ public class DocumentNodeStoreTest {
         assertEquals("value", state.getProperty("prop").getValue(Type.STRING));
     }
 
+    @Test
+    public void backgroundOperationStats() throws Exception {
+        DocumentNodeStore ns = new DocumentMK.Builder().setAsyncDelay(0)
+                .getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        int numNodes = DocumentNodeStore.SPLIT_BATCH_SIZE * 3;
+        for (int i = 0; i < numNodes; i++) {
+            builder.child("node-" + i);
+        }
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        // more candidates than fit into a single batch
+        for (int i = 0; i < numNodes; i++) {
+            ns.addSplitCandidate(Utils.getIdFromPath("/node-" + i));
+        }
+        BackgroundOperationStatsMBean stats = ns.getBackgroundOperationStats();
+        assertTrue(stats.getSplitCandidateCount() >= numNodes);
+
+        ns.runBackgroundOperations();
+
+        assertEquals(0, stats.getSplitCandidateCount());
+        assertEquals(1, stats.getSplitCount());
+        assertEquals(1, stats.getWriteCount());
+        assertEquals(1, stats.getReadCount());
+        assertTrue(stats.getTimePercentile("read", 100) > 0);
+        ns.dispose();
+    }
+
+    @Test
+    public void computedDiffIsCached() throws Exception {
+        DocumentNodeStore ns = new DocumentMK.Builder().setAsyncDelay(0)
+                .getNodeStore();
+        DocumentNodeState before = ns.getRoot();
+        NodeBuilder builder = before.builder();
+        builder.child("foo");
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        builder = ns.getRoot().builder();
+        builder.child("bar");
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        DocumentNodeState after = ns.getRoot();
+
+        // diff spans two commits and is not known to the cache yet
+        DiffCache cache = ns.getDiffCache();
+        assertNull(cache.getChanges(before.getLastRevision(),
+                after.getLastRevision(), "/"));
+        String diff = ns.diffChildren(after, before);
+        assertEquals(diff, cache.getChanges(before.getLastRevision(),
+                after.getLastRevision(), "/"));
+        ns.dispose();
+    }
+
     private static class TestHook extends EditorHook {
 
         TestHook(final String prefix) {
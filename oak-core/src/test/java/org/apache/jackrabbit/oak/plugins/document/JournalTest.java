@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.TimingDocumentStoreWrapper;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the journal written by the background write and used by the
+ * background read to invalidate caches.
+ */
+public class JournalTest {
+
+    private final AtomicInteger fullInvalidations = new AtomicInteger();
+
+    private DocumentStore docStore;
+    private DocumentNodeStore ns1;
+    private DocumentNodeStore ns2;
+
+    @Before
+    public void setUp() {
+        docStore = new MemoryDocumentStore();
+        DocumentStore store1 = new TimingDocumentStoreWrapper(docStore) {
+            @Override
+            public void invalidateCache() {
+                fullInvalidations.incrementAndGet();
+                super.invalidateCache();
+            }
+        };
+        ns1 = new DocumentMK.Builder().setAsyncDelay(0)
+                .setDocumentStore(store1).setClusterId(1).getNodeStore();
+        ns2 = new DocumentMK.Builder().setAsyncDelay(0)
+                .setDocumentStore(docStore).setClusterId(2).getNodeStore();
+    }
+
+    @After
+    public void tearDown() {
+        ns1.dispose();
+        ns2.dispose();
+    }
+
+    @Test
+    public void changedPaths() throws Exception {
+        NodeBuilder builder = ns2.getRoot().builder();
+        builder.setProperty("p", "v");
+        ns2.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns2.runBackgroundOperations();
+        Revision before = getLastRev(2);
+        assertNotNull(before);
+
+        builder = ns2.getRoot().builder();
+        builder.child("foo").child("bar");
+        builder.child("baz");
+        ns2.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns2.runBackgroundOperations();
+        Revision after = getLastRev(2);
+
+        Set<String> paths = JournalEntry.getChangedPaths(docStore, before, after);
+        assertNotNull(paths);
+        assertTrue(paths.contains("/"));
+        assertTrue(paths.contains("/foo"));
+        assertTrue(paths.contains("/foo/bar"));
+        assertTrue(paths.contains("/baz"));
+        assertEquals(4, paths.size());
+
+        // unknown start of range
+        assertNull(JournalEntry.getChangedPaths(docStore,
+                new Revision(after.getTimestamp() + 1, 0, 2), after));
+    }
+
+    @Test
+    public void selectiveInvalidation() throws Exception {
+        NodeBuilder builder = ns2.getRoot().builder();
+        builder.child("foo");
+        ns2.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns2.runBackgroundOperations();
+        // first read of cluster node 2 invalidates everything
+        ns1.runBackgroundOperations();
+        assertTrue(ns1.getRoot().hasChildNode("foo"));
+
+        fullInvalidations.set(0);
+        builder = ns2.getRoot().builder();
+        builder.child("foo").child("bar");
+        ns2.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns2.runBackgroundOperations();
+        ns1.runBackgroundOperations();
+
+        assertEquals(0, fullInvalidations.get());
+        assertTrue(ns1.getRoot().getChildNode("foo").hasChildNode("bar"));
+    }
+
+    @Test
+    public void removeOlderThan() throws Exception {
+        NodeBuilder builder = ns1.getRoot().builder();
+        builder.child("foo");
+        ns1.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns1.runBackgroundOperations();
+        builder = ns2.getRoot().builder();
+        builder.child("bar");
+        ns2.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns2.runBackgroundOperations();
+        int entries1 = getJournalEntries(1).size();
+        int entries2 = getJournalEntries(2).size();
+        assertTrue(entries1 > 0);
+        assertTrue(entries2 > 0);
+
+        // entries of all cluster nodes are removed, not only the
+        // ones of the cluster node running the garbage collection
+        assertEquals(0, JournalEntry.removeOlderThan(docStore, 0));
+        assertEquals(entries1 + entries2,
+                JournalEntry.removeOlderThan(docStore, Long.MAX_VALUE));
+        assertTrue(getJournalEntries(1).isEmpty());
+        assertTrue(getJournalEntries(2).isEmpty());
+    }
+
+    private List<JournalEntry> getJournalEntries(int clusterId) {
+        return docStore.query(Collection.JOURNAL,
+                JournalEntry.asId(new Revision(0, 0, clusterId)),
+                JournalEntry.asId(new Revision(Long.MAX_VALUE, 0, clusterId)),
+                Integer.MAX_VALUE);
+    }
+
+    private Revision getLastRev(int clusterId) {
+        NodeDocument root = docStore.find(NODES, Utils.getIdFromPath("/"), 0);
+        assertNotNull(root);
+        return root.getLastRev().get(clusterId);
+    }
+}
@@ -223,6 +223,47 @@ public class LastRevRecoveryAgentTest {
         merge(ds1, b1);
     }
 
+    @Test
+    public void recoverBatchesInParallel() throws Exception {
+        NodeBuilder b1 = ds1.getRoot().builder();
+        b1.child("x").child("y");
+        ds1.merge(b1, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ds1.runBackgroundOperations();
+
+        ds2.runBackgroundOperations();
+
+        // more suspects than fit into a single batch
+        NodeBuilder b2 = ds2.getRoot().builder();
+        NodeBuilder y = b2.child("x").child("y");
+        for (int i = 0; i < LastRevRecoveryAgent.BATCH_SIZE * 2 + 10; i++) {
+            y.child("n" + i);
+        }
+        ds2.merge(b2, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        Revision lastRev2 = getDocument(ds1, "/x/y/n0").getLastRev().get(c2Id);
+
+        long leaseTime = ds1.getClusterInfo().getLeaseTime();
+        ds1.runBackgroundOperations();
+
+        clock.waitUntil(clock.getTime() + leaseTime + 10);
+
+        //Renew the lease for C1
+        ds1.getClusterInfo().renewLease();
+
+        LastRevRecoveryAgent agent = ds1.getLastRevRecoveryAgent().setThreads(3);
+        agent.recover(c2Id);
+
+        assertEquals(lastRev2, getDocument(ds1, "/x/y").getLastRev().get(c2Id));
+        assertEquals(lastRev2, getDocument(ds1, "/x").getLastRev().get(c2Id));
+        assertEquals(lastRev2, getDocument(ds1, "/").getLastRev().get(c2Id));
+
+        LastRevRecoveryStatsMBean stats = agent.getStatsMBean();
+        assertFalse(stats.isRunning());
+        assertEquals(c2Id, stats.getClusterId());
+        assertTrue(stats.getScannedCount() > LastRevRecoveryAgent.BATCH_SIZE * 2);
+        assertEquals(stats.getScannedCount(), stats.getProcessedCount());
+        assertTrue(stats.getRecoveredCount() > 0);
+    }
+
     private static NodeDocument getDocument(DocumentNodeStore nodeStore,
                                             String path) {
         return nodeStore.getDocumentStore().find(NODES, getIdFromPath(path));
@@ -22,6 +22,7 @@ import java.util.Map;
 import javax.annotation.Nonnull;
 
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
 import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
@@ -79,5 +80,19 @@ public class ManyChildNodesTest {
             queries.put(fromKey, limit);
             return super.query(collection, fromKey, toKey, limit);
         }
+
+        @Nonnull
+        @Override
+        public <T extends Document> CloseableIterable<T> stream(Collection<T> collection,
+                                                                String fromKey,
+                                                                String toKey,
+                                                                String indexedProperty,
+                                                                long startValue,
+                                                                int limit,
+                                                                boolean cache) {
+            queries.put(fromKey, limit);
+            return super.stream(collection, fromKey, toKey, indexedProperty,
+                    startValue, limit, cache);
+        }
     }
 }
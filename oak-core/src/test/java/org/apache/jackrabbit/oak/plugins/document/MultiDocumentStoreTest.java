@@ -17,9 +17,13 @@
 package org.apache.jackrabbit.oak.plugins.document;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -118,4 +122,63 @@ public class MultiDocumentStoreTest extends AbstractMultiDocumentStoreTest {
             assertEquals(oldn1 + 2, prev.getModCount().intValue());
         }
     }
+
+    @Test
+    public void testBulkCreateOrUpdateConflict() {
+        String base = this.getClass().getName() + ".testBulkCreateOrUpdateConflict-";
+        List<UpdateOp> creates = new ArrayList<UpdateOp>();
+        for (int i = 0; i < 5; i++) {
+            String id = base + i;
+            super.ds1.remove(Collection.NODES, id);
+            removeMe.add(id);
+            if (i < 4) {
+                UpdateOp up = new UpdateOp(id, true);
+                up.set("_id", id);
+                up.set("foo", "initial");
+                creates.add(up);
+            }
+        }
+        assertTrue(super.ds1.create(Collection.NODES, creates));
+        // make sure the first store knows the current documents
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(super.ds1.find(Collection.NODES, base + i));
+        }
+
+        // concurrent changes through the second store: two documents are
+        // modified and one is removed
+        for (int i = 0; i < 2; i++) {
+            UpdateOp up = new UpdateOp(base + i, false);
+            up.set("_id", base + i);
+            up.set("foo", "concurrent");
+            assertNotNull(super.ds2.findAndUpdate(Collection.NODES, up));
+        }
+        super.ds2.remove(Collection.NODES, base + 2);
+
+        List<UpdateOp> updates = new ArrayList<UpdateOp>();
+        for (int i = 0; i < 5; i++) {
+            UpdateOp up = new UpdateOp(base + i, true);
+            up.set("_id", base + i);
+            up.set("bar", "bar-" + i);
+            updates.add(up);
+        }
+        List<NodeDocument> before = super.ds1.createOrUpdate(Collection.NODES, updates);
+        assertEquals(updates.size(), before.size());
+        assertEquals("concurrent", before.get(0).get("foo"));
+        assertEquals("concurrent", before.get(1).get("foo"));
+        // the removed document is created again, without the old content
+        assertNull(before.get(2));
+        assertEquals("initial", before.get(3).get("foo"));
+        assertNull(before.get(4));
+
+        for (int i = 0; i < 5; i++) {
+            NodeDocument d = super.ds2.find(Collection.NODES, base + i, 0);
+            assertNotNull(d);
+            assertEquals("bar-" + i, d.get("bar"));
+            // the cached documents of the first store are up to date
+            assertEquals(d.getModCount(), super.ds1.find(Collection.NODES, base + i).getModCount());
+        }
+        assertEquals("concurrent", super.ds2.find(Collection.NODES, base + 0, 0).get("foo"));
+        assertNull(super.ds2.find(Collection.NODES, base + 2, 0).get("foo"));
+        assertEquals("initial", super.ds2.find(Collection.NODES, base + 3, 0).get("foo"));
+    }
 }
@@ -332,6 +332,138 @@ public class VersionGarbageCollectorTest {
         assertNotNull(state);
     }
 
+    @Test
+    public void resumePartitions() throws Exception {
+        NodeBuilder b1 = store.getRoot().builder();
+        b1.child("x");
+        b1.child("a").child("b").child("c");
+        store.merge(b1, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        NodeBuilder b2 = store.getRoot().builder();
+        b2.child("x").remove();
+        b2.child("a").child("b").child("c").remove();
+        store.merge(b2, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        store.runBackgroundOperations();
+
+        long maxAge = 1; //hours
+        long delta = TimeUnit.MINUTES.toMillis(10);
+        clock.waitUntil(clock.getTime() + TimeUnit.HOURS.toMillis(maxAge) + delta);
+
+        // pretend a previous run completed the partition with /x
+        String xId = Utils.getIdFromPath("/x");
+        VersionGarbageCollector.Partition xPartition = null;
+        for (VersionGarbageCollector.Partition p : VersionGarbageCollector.getPartitions(
+                VersionGarbageCollector.getPathPrefixes(store.getRoot()))) {
+            if (p.fromId.compareTo(xId) < 0 && p.toId.compareTo(xId) > 0) {
+                assertNull("partitions must not overlap", xPartition);
+                xPartition = p;
+            }
+        }
+        assertNotNull(xPartition);
+        UpdateOp op = new UpdateOp(VersionGarbageCollector.SETTINGS_ID, true);
+        op.set(Document.ID, VersionGarbageCollector.SETTINGS_ID);
+        op.set(VersionGarbageCollector.RUN, "previous");
+        op.set(xPartition.getKey(), "previous");
+        // progress of another run does not count
+        op.set(VersionGarbageCollector.getPartitions(
+                ImmutableList.<String>of()).get(0).getKey(), "other");
+        store.getDocumentStore().createOrUpdate(
+                org.apache.jackrabbit.oak.plugins.document.Collection.SETTINGS, op);
+
+        VersionGCStats stats = gc.setThreads(2).gc(maxAge, TimeUnit.HOURS);
+        assertEquals(1, stats.deletedDocGCCount);
+        assertEquals(stats.partitionCount, stats.completedPartitionCount);
+        assertNotNull(getDoc("/x"));
+        assertNull(getDoc("/a/b/c"));
+        assertNull(store.getDocumentStore().find(
+                org.apache.jackrabbit.oak.plugins.document.Collection.SETTINGS,
+                VersionGarbageCollector.SETTINGS_ID));
+
+        VersionGCStatsMBean mbean = gc.getStatsMBean();
+        assertFalse(mbean.isRunning());
+        assertEquals(1, mbean.getDeletedDocCount());
+
+        // next run starts from scratch and collects /x
+        stats = gc.gc(maxAge, TimeUnit.HOURS);
+        assertEquals(1, stats.deletedDocGCCount);
+        assertNull(getDoc("/x"));
+    }
+
+    @Test
+    public void partitions() throws Exception {
+        List<String> prefixes = ImmutableList.of("/a", "/a/b", "/z");
+        List<VersionGarbageCollector.Partition> partitions =
+                VersionGarbageCollector.getPartitions(prefixes);
+
+        // the partitions are adjacent and cover all ids
+        assertEquals(NodeDocument.MIN_ID_VALUE, partitions.get(0).fromId);
+        assertEquals(NodeDocument.MAX_ID_VALUE,
+                partitions.get(partitions.size() - 1).toId);
+        Set<String> keys = Sets.newHashSet();
+        for (int i = 0; i < partitions.size(); i++) {
+            if (i > 0) {
+                assertEquals(partitions.get(i - 1).toId, partitions.get(i).fromId);
+            }
+            assertTrue(keys.add(partitions.get(i).getKey()));
+        }
+
+        // deeper levels are split at the path prefixes
+        assertFalse(getPartition(partitions, "2:/a/x").equals(
+                getPartition(partitions, "2:/z/x")));
+        assertFalse(getPartition(partitions, "3:/a/b/x").equals(
+                getPartition(partitions, "3:/a/c/x")));
+        assertEquals(getPartition(partitions, "1:/a"),
+                getPartition(partitions, "1:/z"));
+
+        List<String> tree = VersionGarbageCollector.getPathPrefixes(
+                store.getRoot());
+        assertTrue(tree.size() <= VersionGarbageCollector.MAX_PATH_PREFIXES);
+    }
+
+    @Test
+    public void maxDeleteRate() throws Exception {
+        NodeBuilder b1 = store.getRoot().builder();
+        for (int i = 0; i < 10; i++) {
+            b1.child("x" + i);
+            b1.child("y").child("z" + i);
+        }
+        store.merge(b1, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        NodeBuilder b2 = store.getRoot().builder();
+        for (int i = 0; i < 10; i++) {
+            b2.child("x" + i).remove();
+            b2.child("y").child("z" + i).remove();
+        }
+        store.merge(b2, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        store.runBackgroundOperations();
+
+        long maxAge = 1; //hours
+        long delta = TimeUnit.MINUTES.toMillis(10);
+        clock.waitUntil(clock.getTime() + TimeUnit.HOURS.toMillis(maxAge) + delta);
+
+        // the documents are in two partitions. Whichever is deleted
+        // second has to wait for the permits of the first one
+        long start = System.currentTimeMillis();
+        VersionGCStats stats = gc.setMaxDeleteRate(10).gc(maxAge, TimeUnit.HOURS);
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals(20, stats.deletedDocGCCount);
+        assertTrue("delete rate was not limited: " + elapsed + "ms",
+                elapsed >= 900);
+    }
+
+    private static VersionGarbageCollector.Partition getPartition(
+            List<VersionGarbageCollector.Partition> partitions, String id) {
+        VersionGarbageCollector.Partition partition = null;
+        for (VersionGarbageCollector.Partition p : partitions) {
+            if (p.fromId.compareTo(id) < 0 && p.toId.compareTo(id) > 0) {
+                assertNull("partitions must not overlap", partition);
+                partition = p;
+            }
+        }
+        assertNotNull(partition);
+        return partition;
+    }
+
     private NodeDocument getDoc(String path){
         return store.getDocumentStore().find(NODES, Utils.getIdFromPath(path), 0);
     }
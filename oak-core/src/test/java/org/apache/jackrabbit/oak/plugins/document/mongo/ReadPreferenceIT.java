@@ -21,11 +21,14 @@ package org.apache.jackrabbit.oak.plugins.document.mongo;
 
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.collect.Iterables;
 import com.mongodb.ReadPreference;
 import org.apache.jackrabbit.oak.plugins.document.DocumentMK;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
 import org.apache.jackrabbit.oak.plugins.document.MongoUtils;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
 import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.plugins.document.util.MongoConnection;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
@@ -43,6 +46,7 @@ import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.SETTINGS;
 import static org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore.DocumentReadPreference;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 public class ReadPreferenceIT {
@@ -152,6 +156,39 @@ public class ReadPreferenceIT {
                 mongoDS.getMongoReadPreference(NODES, parentId, DocumentReadPreference.PREFER_SECONDARY_IF_OLD_ENOUGH));
     }
 
+    @Test
+    public void testReadPreferenceStats() throws Exception{
+        NodeBuilder b1 = nodeStore.getRoot().builder();
+        b1.child("x").child("y");
+        nodeStore.merge(b1, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        String id = Utils.getIdFromPath("/x/y");
+        ReadPreferenceStatsMBean stats = mongoDS.getReadPreferenceStats();
+        long primaryReads = stats.getPrimaryReadCount();
+        long secondaryReads = stats.getSecondaryReadCount();
+
+        //Parent was modified recently, read must go to the primary
+        mongoDS.invalidateCache(NODES, id);
+        assertNotNull(mongoDS.find(NODES, id));
+        assertEquals(primaryReads + 1, stats.getPrimaryReadCount());
+        assertEquals(secondaryReads, stats.getSecondaryReadCount());
+
+        //Stable documents are read with the configured read preference
+        mongoDS.getDBCollection(NODES).getDB().setReadPreference(ReadPreference.secondaryPreferred());
+        mongoDS.invalidateCache(NODES, id);
+        assertNotNull(mongoDS.find(NODES, id, Integer.MAX_VALUE));
+        assertEquals(secondaryReads + 1, stats.getSecondaryReadCount());
+
+        //Streaming reads are recorded when the cursor is closed
+        long reads = stats.getPrimaryReadCount() + stats.getSecondaryReadCount();
+        CloseableIterable<NodeDocument> docs = mongoDS.stream(NODES,
+                Utils.getKeyLowerLimit("/x"), Utils.getKeyUpperLimit("/x"),
+                null, 0, Integer.MAX_VALUE, false);
+        assertEquals(1, Iterables.size(docs));
+        docs.close();
+        assertEquals(reads + 1, stats.getPrimaryReadCount() + stats.getSecondaryReadCount());
+    }
+
     @Test
     public void testReadWriteMode() throws Exception{
         assertEquals(ReadPreference.primary(), mongoDS.getConfiguredReadPreference(NODES));
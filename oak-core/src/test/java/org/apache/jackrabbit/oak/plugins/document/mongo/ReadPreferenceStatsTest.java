@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.ReadPreference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadPreferenceStatsTest {
+
+    private final ReadPreferenceStats stats = new ReadPreferenceStats();
+
+    @Test
+    public void readsByPreference() {
+        stats.read(ReadPreference.primary(), System.nanoTime());
+        stats.read(ReadPreference.primaryPreferred(), System.nanoTime());
+        stats.read(ReadPreference.secondary(), System.nanoTime());
+        stats.read(ReadPreference.secondaryPreferred(), System.nanoTime());
+        stats.read(ReadPreference.nearest(), System.nanoTime());
+        stats.secondaryMiss();
+
+        // primaryPreferred allows secondaries as well
+        assertEquals(1, stats.getPrimaryReadCount());
+        assertEquals(4, stats.getSecondaryReadCount());
+        assertEquals(1, stats.getSecondaryMissCount());
+    }
+
+    @Test
+    public void readTime() {
+        long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+        stats.read(ReadPreference.primary(), start);
+        assertTrue(stats.getPrimaryReadTime() >= 50);
+        assertEquals(0, stats.getSecondaryReadTime());
+    }
+
+    @Test
+    public void streamingRead() throws IOException {
+        CountingCloseable cursor = new CountingCloseable();
+        Closeable c = stats.read(ReadPreference.secondaryPreferred(), cursor);
+        assertEquals(0, stats.getSecondaryReadCount());
+
+        c.close();
+        assertEquals(1, cursor.closed);
+        assertEquals(1, stats.getSecondaryReadCount());
+        assertEquals(0, stats.getPrimaryReadCount());
+
+        // closing again does not count another read
+        c.close();
+        assertEquals(2, cursor.closed);
+        assertEquals(1, stats.getSecondaryReadCount());
+    }
+
+    @Test
+    public void streamingReadCloseFails() {
+        Closeable c = stats.read(ReadPreference.primary(), new Closeable() {
+            @Override
+            public void close() throws IOException {
+                throw new IOException("failed");
+            }
+        });
+        try {
+            c.close();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, stats.getPrimaryReadCount());
+    }
+
+    private static final class CountingCloseable implements Closeable {
+
+        int closed;
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+}
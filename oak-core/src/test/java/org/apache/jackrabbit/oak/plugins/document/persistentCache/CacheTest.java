@@ -19,12 +19,22 @@
 package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.util.Random;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.plugins.document.PathRev;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+
 public class CacheTest {
 
     @Test
@@ -43,4 +53,26 @@ public class CacheTest {
         cache.close();
     }
     
+    @Test
+    public void diffSurvivesRestart() throws Exception {
+        File dir = new File("target/diffCacheTest");
+        FileUtils.deleteDirectory(dir);
+        PathRev key = new PathRev(new Revision(1, 0, 1) + "/foo",
+                new Revision(2, 0, 1));
+
+        PersistentCache cache = new PersistentCache(dir.getPath());
+        Cache<PathRev, StringValue> diffs = cache.wrap(null, null,
+                CacheBuilder.newBuilder().<PathRev, StringValue>build(),
+                CacheType.DIFF);
+        diffs.put(key, new StringValue("^\"bar\":{}"));
+        cache.close();
+
+        cache = new PersistentCache(dir.getPath());
+        diffs = cache.wrap(null, null,
+                CacheBuilder.newBuilder().<PathRev, StringValue>build(),
+                CacheType.DIFF);
+        assertEquals("^\"bar\":{}", diffs.getIfPresent(key).asString());
+        cache.close();
+    }
+
 }
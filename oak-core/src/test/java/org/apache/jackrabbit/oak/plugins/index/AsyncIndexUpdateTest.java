@@ -611,6 +611,64 @@ public class AsyncIndexUpdateTest {
                         .getString("asyncMissing"));
     }
 
+    /**
+     * Index definitions assigned to different lanes are updated
+     * independently, each lane with its own checkpoint.
+     */
+    @Test
+    public void independentLanes() throws Exception {
+        MemoryNodeStore store = new MemoryNodeStore();
+        IndexEditorProvider provider = new PropertyIndexEditorProvider();
+
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "fastIndex", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "fast");
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "slowIndex", true, false, ImmutableSet.of("bar"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        builder.child("testRoot").setProperty("foo", "abc")
+                .setProperty("bar", "abc");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        // the slow lane fails, as its index provider is missing
+        AsyncIndexUpdate slow = new AsyncIndexUpdate("async", store,
+                CompositeIndexEditorProvider.compose(new ArrayList<IndexEditorProvider>()));
+        AsyncIndexUpdate fast = new AsyncIndexUpdate("fast", store, provider);
+        slow.run();
+        assertTrue(slow.isFailing());
+        fast.run();
+        assertFalse(fast.isFailing());
+
+        NodeState root = store.getRoot();
+        checkPathExists(root, INDEX_DEFINITIONS_NAME, "fastIndex",
+                INDEX_CONTENT_NODE_NAME);
+        assertFalse(root.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("slowIndex").hasChildNode(INDEX_CONTENT_NODE_NAME));
+        NodeState async = root.getChildNode(AsyncIndexUpdate.ASYNC);
+        assertTrue(async.hasProperty("fast"));
+        assertFalse(async.hasProperty("async"));
+
+        // the fast lane keeps up with new content
+        builder = store.getRoot().builder();
+        builder.child("testSecond").setProperty("foo", "def");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        slow.run();
+        fast.run();
+        assertEquals(ImmutableSet.of("testSecond"),
+                find(new PropertyIndexLookup(store.getRoot()), "foo", "def"));
+
+        // the slow lane catches up independently
+        slow = new AsyncIndexUpdate("async", store, provider);
+        slow.run();
+        assertFalse(slow.isFailing());
+        root = store.getRoot();
+        assertEquals(ImmutableSet.of("testRoot"),
+                find(new PropertyIndexLookup(root), "bar", "abc"));
+        async = root.getChildNode(AsyncIndexUpdate.ASYNC);
+        assertFalse(async.getString("fast").equals(async.getString("async")));
+    }
+
     private static class FaultyIndexEditorProvder implements
             IndexEditorProvider {
 
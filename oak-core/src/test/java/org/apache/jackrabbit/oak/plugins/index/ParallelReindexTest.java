@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static java.util.Collections.singletonList;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent.INITIAL_CONTENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.index.ParallelReindex.Partition;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class ParallelReindexTest {
+
+    private static final EditorHook HOOK = new EditorHook(
+            new IndexUpdateProvider(new PropertyIndexEditorProvider()));
+
+    private final ParallelReindex parallelReindex = new ParallelReindex(4);
+
+    private final EditorHook parallelHook = new EditorHook(
+            new IndexUpdateProvider(new PropertyIndexEditorProvider())
+                    .withParallelReindex(parallelReindex));
+
+    private NodeBuilder builder = INITIAL_CONTENT.builder();
+
+    @Test
+    public void partition() {
+        NodeBuilder flat = builder.child("flat");
+        for (int i = 0; i < 100; i++) {
+            flat.child("n" + i);
+        }
+        builder.child("a").child("b");
+
+        List<Partition> partitions = parallelReindex.partition(builder.getNodeState());
+        int ranges = 0;
+        for (Partition p : partitions) {
+            if (p.path.equals(singletonList("flat"))
+                    && p.children != null && !p.children.isEmpty()) {
+                ranges++;
+            }
+        }
+        assertTrue("flat node split into ranges: " + partitions, ranges > 1);
+
+        // each node of the content is contained in exactly one partition
+        int flatNodes = 0;
+        int propertyNodes = 0;
+        for (Partition p : partitions) {
+            NodeState view = p.getNodeState(builder.getNodeState());
+            flatNodes += (int) view.getChildNode("flat").getChildNodeCount(Long.MAX_VALUE);
+            if (p.path.isEmpty() && p.properties) {
+                propertyNodes++;
+            }
+        }
+        assertEquals(100, flatNodes);
+        assertEquals(1, propertyNodes);
+
+        // the views can be modified like any other node state
+        NodeState view = partitions.get(0).getNodeState(builder.getNodeState());
+        NodeBuilder viewBuilder = view.builder();
+        viewBuilder.child("added");
+        assertTrue(viewBuilder.getNodeState().hasChildNode("added"));
+        assertFalse(view.hasChildNode("added"));
+    }
+
+    @Test
+    public void sameAsSequential() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            NodeBuilder node = builder.child("node" + i);
+            node.setProperty("foo", "v" + i);
+            for (int j = 0; j < 5; j++) {
+                node.child("child" + j).setProperty("foo", "w" + j);
+            }
+        }
+        NodeBuilder flat = builder.child("flat");
+        for (int i = 0; i < 60; i++) {
+            flat.child("n" + i).setProperty("foo", "x" + (i % 7));
+        }
+        NodeState before = builder.getNodeState();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "fooIndex", true, false, ImmutableSet.of("foo"), null);
+        NodeState after = builder.getNodeState();
+
+        NodeState sequential = HOOK.processCommit(before, after, CommitInfo.EMPTY);
+        NodeState parallel = parallelHook.processCommit(before, after, CommitInfo.EMPTY);
+
+        assertEquals(
+                sequential.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("fooIndex"),
+                parallel.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("fooIndex"));
+
+        ReindexStatsMBean stats = parallelReindex.getReindexStats();
+        assertEquals(ReindexStatsMBean.STATUS_DONE, stats.getStatus());
+        assertEquals("/oak:index/fooIndex", stats.getIndexes());
+        assertEquals(4, stats.getThreadCount());
+        assertTrue(stats.getPartitionCount() > 1);
+        assertEquals(stats.getPartitionCount(), stats.getCompletedPartitionCount());
+        assertTrue(stats.getTraversedNodeCount() > 90);
+    }
+
+    @Test
+    public void uniqueAcrossPartitions() throws Exception {
+        builder.child("a").setProperty("foo", "x");
+        builder.child("b").child("c").setProperty("foo", "x");
+        NodeState before = builder.getNodeState();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "fooIndex", true, true, ImmutableSet.of("foo"), null);
+        NodeState after = builder.getNodeState();
+
+        try {
+            parallelHook.processCommit(before, after, CommitInfo.EMPTY);
+            fail("Uniqueness constraint should be violated");
+        } catch (CommitFailedException e) {
+            assertEquals(30, e.getCode());
+        }
+        assertEquals(ReindexStatsMBean.STATUS_FAILED,
+                parallelReindex.getReindexStats().getStatus());
+    }
+
+}
@@ -147,4 +147,27 @@ public class OrderedPropertyIndexEditorTest {
         assertEquals(OrderedPropertyIndexEditor.ORDERED_MIRROR_DESCENDING,
                 editor.getStrategy(false));
    }
+
+    @Test
+    public void btreeStrategies() {
+        final String property = "foobar";
+        NodeBuilder definition = EmptyNodeState.EMPTY_NODE.builder();
+        definition.setProperty(IndexConstants.PROPERTY_NAMES, property);
+        definition.setProperty(OrderedIndex.STORAGE, OrderedIndex.STORAGE_BTREE);
+        OrderedPropertyIndexEditor editor = new OrderedPropertyIndexEditor(
+                definition, null, null);
+        assertEquals(OrderedPropertyIndexEditor.BTREE, editor.getStrategy(false));
+
+        definition.setProperty(OrderedIndex.DIRECTION,
+                OrderDirection.DESC.getDirection());
+        editor = new OrderedPropertyIndexEditor(definition, null, null);
+        assertEquals(OrderedPropertyIndexEditor.BTREE_DESCENDING,
+                editor.getStrategy(false));
+
+        definition.setProperty(OrderedIndex.STORAGE, "foobar");
+        editor = new OrderedPropertyIndexEditor(definition, null, null);
+        assertEquals("an unknown storage falls back to the skip list",
+                OrderedPropertyIndexEditor.ORDERED_MIRROR_DESCENDING,
+                editor.getStrategy(false));
+    }
 }
\ No newline at end of file
@@ -21,12 +21,15 @@ import static org.apache.jackrabbit.JcrConstants.JCR_SYSTEM;
 import static org.apache.jackrabbit.JcrConstants.NT_BASE;
 import static org.apache.jackrabbit.JcrConstants.NT_FILE;
 import static org.apache.jackrabbit.JcrConstants.NT_UNSTRUCTURED;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.BUCKET_COUNT_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
 import static org.apache.jackrabbit.oak.plugins.nodetype.NodeTypeConstants.JCR_NODE_TYPES;
 import static org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent.INITIAL_CONTENT;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -36,6 +39,7 @@ import java.util.Set;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.PropertyIndexStatistics;
 import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
@@ -245,6 +249,150 @@ public class PropertyIndexTest {
         assertTrue("cost: " + cost, cost >= MANY);
     }
 
+    @Test
+    public void testBucketedPropertyLookup() throws Exception {
+        NodeState root = INITIAL_CONTENT;
+
+        // Add index definition
+        NodeBuilder builder = root.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(BUCKET_COUNT_PROPERTY_NAME, 4L);
+        NodeState before = builder.getNodeState();
+
+        // Add some content and process it through the property index hook
+        builder.child("a").setProperty("foo", "abc");
+        builder.child("b").setProperty("foo", Arrays.asList("abc", "def"),
+                Type.STRINGS);
+        for (int i = 0; i < MANY; i++) {
+            builder.child("n" + i).setProperty("foo", "xyz");
+        }
+        NodeState after = builder.getNodeState();
+
+        NodeState indexed = HOOK.processCommit(before, after, CommitInfo.EMPTY);
+
+        // the entries of a key are spread over the buckets
+        NodeState key = indexed.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("foo").getChildNode(INDEX_CONTENT_NODE_NAME)
+                .getChildNode("xyz");
+        assertEquals(4, key.getChildNodeCount(Long.MAX_VALUE));
+
+        FilterImpl f = createFilter(indexed, NT_BASE);
+
+        // Query the index
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+        assertEquals(ImmutableSet.of("a", "b"), find(lookup, "foo", "abc", f));
+        assertEquals(ImmutableSet.of("b"), find(lookup, "foo", "def", f));
+        assertEquals(ImmutableSet.of(), find(lookup, "foo", "ghi", f));
+        assertEquals(MANY, find(lookup, "foo", "xyz", f).size());
+        assertEquals(MANY + 2, find(lookup, "foo", null, f).size());
+
+        double cost;
+        cost = lookup.getCost(f, "foo", PropertyValues.newString("abc"));
+        assertTrue("cost: " + cost, cost >= 2 && cost < MANY);
+        cost = lookup.getCost(f, "foo", PropertyValues.newString("xyz"));
+        assertTrue("cost: " + cost, cost >= MANY);
+        cost = lookup.getCost(f, "foo", null);
+        assertTrue("cost: " + cost, cost >= MANY);
+
+        // removing content prunes the buckets
+        before = indexed;
+        builder = indexed.builder();
+        builder.getChildNode("b").remove();
+        for (int i = 0; i < MANY; i++) {
+            builder.getChildNode("n" + i).remove();
+        }
+        indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        NodeState content = indexed.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("foo").getChildNode(INDEX_CONTENT_NODE_NAME);
+        assertEquals(ImmutableSet.of("abc"), Sets.newHashSet(content.getChildNodeNames()));
+        assertEquals(1, content.getChildNode("abc").getChildNodeCount(Long.MAX_VALUE));
+
+        f = createFilter(indexed, NT_BASE);
+        lookup = new PropertyIndexLookup(indexed);
+        assertEquals(ImmutableSet.of("a"), find(lookup, "foo", "abc", f));
+        assertEquals(ImmutableSet.of("a"), find(lookup, "foo", null, f));
+    }
+
+    @Test
+    public void testManyBucketsLookup() throws Exception {
+        NodeState root = INITIAL_CONTENT;
+
+        // more buckets than the default number
+        NodeBuilder builder = root.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(BUCKET_COUNT_PROPERTY_NAME, 64L);
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < MANY; i++) {
+            builder.child("n" + i).setProperty("foo", "x" + i % 3);
+        }
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+
+        NodeState key = indexed.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("foo").getChildNode(INDEX_CONTENT_NODE_NAME)
+                .getChildNode("x0");
+        boolean highBucket = false;
+        for (String bucket : key.getChildNodeNames()) {
+            highBucket |= Integer.parseInt(bucket) >= 16;
+        }
+        assertTrue(highBucket);
+
+        FilterImpl f = createFilter(indexed, NT_BASE);
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+        assertEquals(MANY, find(lookup, "foo", null, f).size());
+        assertEquals(34, find(lookup, "foo", "x0", f).size());
+    }
+
+    @Test
+    public void costEstimationWithStatistics() throws Exception {
+        NodeState root = INITIAL_CONTENT;
+
+        // Add index definition
+        NodeBuilder builder = root.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null);
+        NodeState before = builder.getNodeState();
+
+        // skewed values: one very common, two rare ones
+        int common = 2000;
+        for (int i = 0; i < common; i++) {
+            builder.child("n" + i).setProperty("foo", "common");
+        }
+        builder.child("r1").setProperty("foo", "rare");
+        builder.child("r2").setProperty("foo", "other");
+        NodeState after = builder.getNodeState();
+
+        NodeState indexed = HOOK.processCommit(before, after, CommitInfo.EMPTY);
+
+        NodeState content = indexed.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("foo").getChildNode(INDEX_CONTENT_NODE_NAME);
+        assertTrue(PropertyIndexStatistics.isAvailable(content));
+        assertEquals(1, PropertyIndexStatistics.getCount(content.getChildNode("rare")));
+        assertEquals(3, PropertyIndexStatistics.getDistinctKeyCount(content));
+
+        FilterImpl f = createFilter(indexed, NT_BASE);
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+        double cost;
+        cost = lookup.getCost(f, "foo", PropertyValues.newString("rare"));
+        assertTrue("cost: " + cost, cost < 5);
+        cost = lookup.getCost(f, "foo", PropertyValues.newString("missing"));
+        assertTrue("cost: " + cost, cost < 5);
+        cost = lookup.getCost(f, "foo", PropertyValues.newString("common"));
+        assertTrue("cost: " + cost, cost > common / 4);
+
+        // statistics are updated incrementally
+        before = indexed;
+        builder = indexed.builder();
+        builder.getChildNode("r1").remove();
+        builder.child("r3").setProperty("foo", "other");
+        indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        content = indexed.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("foo").getChildNode(INDEX_CONTENT_NODE_NAME);
+        assertFalse(content.hasChildNode("rare"));
+        assertEquals(2, PropertyIndexStatistics.getCount(content.getChildNode("other")));
+    }
+
     @Test
     public void testPathAwarePropertyLookup() throws Exception {
         NodeState root = INITIAL_CONTENT;
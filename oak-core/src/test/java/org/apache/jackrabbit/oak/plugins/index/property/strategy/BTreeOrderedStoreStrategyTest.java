@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.property.strategy.BTreeOrderedStoreStrategy.KEYS;
+import static org.apache.jackrabbit.oak.plugins.index.property.strategy.BTreeOrderedStoreStrategy.PAGES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex;
+import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
+import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
+import org.apache.jackrabbit.oak.query.ast.Operator;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.query.PropertyValues;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+public class BTreeOrderedStoreStrategyTest {
+
+    private static final Set<String> EMPTY_KEY_SET = Collections.emptySet();
+
+    private static final String PROPERTY = "property";
+
+    private static final int FANOUT = 4;
+
+    private static final int KEY_COUNT = 200;
+
+    private final BTreeOrderedStoreStrategy ascending =
+            new BTreeOrderedStoreStrategy(OrderDirection.ASC, FANOUT);
+
+    private final BTreeOrderedStoreStrategy descending =
+            new BTreeOrderedStoreStrategy(OrderDirection.DESC, FANOUT);
+
+    @Test
+    public void splitPages() {
+        NodeBuilder index = createIndex();
+        assertTrue(index.hasProperty(PAGES));
+        checkIndex(index.getNodeState());
+        assertEquals(keys(0, KEY_COUNT), getKeys(index.getNodeState(), true));
+        assertEquals(Lists.reverse(keys(0, KEY_COUNT)),
+                getKeys(index.getNodeState(), false));
+    }
+
+    @Test
+    public void removeKeys() {
+        NodeBuilder index = createIndex();
+        for (int i = 0; i < KEY_COUNT; i += 2) {
+            ascending.update(index, path(i), newHashSet(key(i)), EMPTY_KEY_SET);
+        }
+        checkIndex(index.getNodeState());
+        List<String> expected = Lists.newArrayList();
+        for (int i = 1; i < KEY_COUNT; i += 2) {
+            expected.add(key(i));
+        }
+        assertEquals(expected, getKeys(index.getNodeState(), true));
+
+        for (int i = 1; i < KEY_COUNT; i += 2) {
+            ascending.update(index, path(i), newHashSet(key(i)), EMPTY_KEY_SET);
+        }
+        assertEquals(0, index.getChildNodeCount(1));
+        assertFalse(index.hasProperty(KEYS));
+        assertFalse(index.hasProperty(PAGES));
+    }
+
+    @Test
+    public void keyWithMultiplePaths() {
+        NodeBuilder index = EmptyNodeState.EMPTY_NODE.builder();
+        ascending.update(index, "/path/a", EMPTY_KEY_SET, newHashSet("001"));
+        ascending.update(index, "/path/b", EMPTY_KEY_SET, newHashSet("001"));
+        ascending.update(index, "/path/c", EMPTY_KEY_SET, newHashSet("002"));
+        NodeState indexMeta = getIndexMeta(index);
+
+        assertEquals(newHashSet("path/a", "path/b"), newHashSet(ascending.query(
+                new FilterImpl(), "indexName", indexMeta, ImmutableList.of("001"))));
+
+        ascending.update(index, "/path/a", newHashSet("001"), EMPTY_KEY_SET);
+        indexMeta = getIndexMeta(index);
+        assertEquals(ImmutableList.of("path/b"), ImmutableList.copyOf(ascending.query(
+                new FilterImpl(), "indexName", indexMeta, ImmutableList.of("001"))));
+        assertEquals(2, ascending.count(indexMeta, (PropertyRestriction) null, 100));
+    }
+
+    @Test
+    public void rangeQueries() {
+        NodeState indexMeta = getIndexMeta(createIndex());
+
+        // > 050 and <= 060
+        FilterImpl filter = new FilterImpl();
+        filter.restrictProperty(PROPERTY, Operator.GREATER_THAN,
+                PropertyValues.newString(key(50)));
+        filter.restrictProperty(PROPERTY, Operator.LESS_OR_EQUAL,
+                PropertyValues.newString(key(60)));
+        PropertyRestriction pr = filter.getPropertyRestriction(PROPERTY);
+        assertEquals(paths(51, 61), ImmutableList.copyOf(
+                ascending.query(filter, "indexName", indexMeta, pr, "")));
+        assertEquals(Lists.reverse(paths(51, 61)), ImmutableList.copyOf(
+                descending.query(filter, "indexName", indexMeta, pr, "")));
+        assertEquals(10, ascending.count(indexMeta, pr, 100));
+
+        // >= 190
+        filter = new FilterImpl();
+        filter.restrictProperty(PROPERTY, Operator.GREATER_OR_EQUAL,
+                PropertyValues.newString(key(190)));
+        pr = filter.getPropertyRestriction(PROPERTY);
+        assertEquals(paths(190, KEY_COUNT), ImmutableList.copyOf(
+                ascending.query(filter, "indexName", indexMeta, pr, "")));
+        assertEquals(Lists.reverse(paths(190, KEY_COUNT)), ImmutableList.copyOf(
+                descending.query(filter, "indexName", indexMeta, pr, "")));
+
+        // < 005
+        filter = new FilterImpl();
+        filter.restrictProperty(PROPERTY, Operator.LESS_THAN,
+                PropertyValues.newString(key(5)));
+        pr = filter.getPropertyRestriction(PROPERTY);
+        assertEquals(paths(0, 5), ImmutableList.copyOf(
+                ascending.query(filter, "indexName", indexMeta, pr, "")));
+        assertEquals(Lists.reverse(paths(0, 5)), ImmutableList.copyOf(
+                descending.query(filter, "indexName", indexMeta, pr, "")));
+
+        // = 123
+        filter = new FilterImpl();
+        filter.restrictProperty(PROPERTY, Operator.EQUAL,
+                PropertyValues.newString(key(123)));
+        pr = filter.getPropertyRestriction(PROPERTY);
+        assertEquals(paths(123, 124), ImmutableList.copyOf(
+                ascending.query(filter, "indexName", indexMeta, pr, "")));
+
+        // not null
+        pr = new PropertyRestriction();
+        assertEquals(paths(0, KEY_COUNT), ImmutableList.copyOf(
+                ascending.query(new FilterImpl(), "indexName", indexMeta, pr, "")));
+        assertEquals(KEY_COUNT, ascending.count(indexMeta, pr, 1000));
+    }
+
+    @Test
+    public void splitDoesNotTouchKeyNodes() {
+        NodeState before = createIndex().getNodeState();
+        NodeBuilder index = before.builder();
+        // add keys until a page is split
+        int splits = 0;
+        for (int i = 0; i < FANOUT * 4; i++) {
+            String key = key(KEY_COUNT + i);
+            NodeState base = index.getNodeState();
+            ascending.update(index, path(KEY_COUNT + i), EMPTY_KEY_SET, newHashSet(key));
+            ChangeCounter changes = new ChangeCounter();
+            index.getNodeState().compareAgainstBaseState(base, changes);
+            if (changes.changedPages > 1) {
+                splits++;
+            }
+            // only the added key node and the pages change
+            assertEquals(ImmutableList.of(key), changes.keys);
+        }
+        assertTrue(splits > 0);
+        checkIndex(index.getNodeState());
+    }
+
+    /**
+     * Compares the results and the number of changed nodes per update with
+     * the skip list of the {@link OrderedContentMirrorStoreStrategy}.
+     */
+    @Test
+    public void compareWithSkipList() {
+        OrderedContentMirrorStoreStrategy skipList = new OrderedContentMirrorStoreStrategy();
+        BTreeOrderedStoreStrategy btree = new BTreeOrderedStoreStrategy(
+                OrderDirection.ASC, OrderedIndex.FANOUT);
+        NodeBuilder skipListIndex = EmptyNodeState.EMPTY_NODE.builder();
+        NodeBuilder btreeIndex = EmptyNodeState.EMPTY_NODE.builder();
+        int count = 1000;
+        long skipListChanges = 0;
+        long btreeChanges = 0;
+        int btreeMaxChanges = 0;
+        for (int i = 0; i < count; i++) {
+            int k = (i * 379) % count;
+            String path = "/path/n" + String.format("%04d", k);
+            Set<String> key = newHashSet(String.format("%04d", k));
+
+            NodeState base = skipListIndex.getNodeState();
+            skipList.update(skipListIndex, path, EMPTY_KEY_SET, key);
+            ChangeCounter changes = new ChangeCounter();
+            skipListIndex.getNodeState().compareAgainstBaseState(base, changes);
+            skipListChanges += changes.getCount();
+
+            base = btreeIndex.getNodeState();
+            btree.update(btreeIndex, path, EMPTY_KEY_SET, key);
+            changes = new ChangeCounter();
+            btreeIndex.getNodeState().compareAgainstBaseState(base, changes);
+            btreeChanges += changes.getCount();
+            btreeMaxChanges = Math.max(btreeMaxChanges, changes.getCount());
+        }
+        // the b-tree changes the key node and its leaf page, and on a split
+        // a new page and the parent page, here the index node. The skip list
+        // changes the key node and its predecessor on each of its lanes
+        assertTrue("b-tree: " + btreeMaxChanges, btreeMaxChanges <= 4);
+        assertTrue("b-tree: " + btreeChanges + ", skip list: " + skipListChanges,
+                btreeChanges * 10 < skipListChanges * 12);
+
+        NodeState skipListMeta = getIndexMeta(skipListIndex);
+        NodeState btreeMeta = getIndexMeta(btreeIndex);
+        FilterImpl filter = new FilterImpl();
+        filter.restrictProperty(PROPERTY, Operator.GREATER_THAN,
+                PropertyValues.newString("0250"));
+        filter.restrictProperty(PROPERTY, Operator.LESS_OR_EQUAL,
+                PropertyValues.newString("0750"));
+        PropertyRestriction pr = filter.getPropertyRestriction(PROPERTY);
+        List<String> expected = ImmutableList.copyOf(
+                skipList.query(filter, "indexName", skipListMeta, pr, ""));
+        assertEquals(500, expected.size());
+        assertEquals(expected, ImmutableList.copyOf(
+                btree.query(filter, "indexName", btreeMeta, pr, "")));
+    }
+
+    @Test
+    public void keysetPagination() {
+        NodeState indexMeta = getIndexMeta(createIndex());
+        List<String> result = Lists.newArrayList();
+        String lastSeen = null;
+        while (true) {
+            FilterImpl filter = new FilterImpl();
+            if (lastSeen != null) {
+                filter.restrictProperty(PROPERTY, Operator.GREATER_THAN,
+                        PropertyValues.newString(lastSeen));
+            }
+            PropertyRestriction pr = filter.getPropertyRestriction(PROPERTY);
+            if (pr == null) {
+                pr = new PropertyRestriction();
+            }
+            List<String> page = ImmutableList.copyOf(Iterables.limit(
+                    ascending.query(filter, "indexName", indexMeta, pr, ""), 15));
+            if (page.isEmpty()) {
+                break;
+            }
+            result.addAll(page);
+            String last = page.get(page.size() - 1);
+            lastSeen = last.substring(last.length() - 3);
+        }
+        assertEquals(paths(0, KEY_COUNT), result);
+    }
+
+    /**
+     * Adds the keys in an order that splits pages at the start, the end and
+     * in the middle of the key range.
+     */
+    private NodeBuilder createIndex() {
+        NodeBuilder index = EmptyNodeState.EMPTY_NODE.builder();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            int k = (i * 37) % KEY_COUNT;
+            ascending.update(index, path(k), EMPTY_KEY_SET, newHashSet(key(k)));
+        }
+        return index;
+    }
+
+    private static NodeState getIndexMeta(NodeBuilder index) {
+        NodeBuilder indexMeta = EmptyNodeState.EMPTY_NODE.builder();
+        indexMeta.setChildNode(INDEX_CONTENT_NODE_NAME, index.getNodeState());
+        return indexMeta.getNodeState();
+    }
+
+    private static List<String> getKeys(NodeState index, boolean ascending) {
+        List<String> keys = Lists.newArrayList();
+        Iterable<ChildNodeEntry> entries = ImmutableList.copyOf(
+                BTreeOrderedStoreStrategy.getKeyNodes(
+                        index, null, false, null, false, ascending));
+        for (ChildNodeEntry entry : entries) {
+            assertTrue(entry.getNodeState().exists());
+            keys.add(entry.getName());
+        }
+        return keys;
+    }
+
+    /**
+     * Checks that the keys of each page are sorted, pages are not over full
+     * and the child nodes of the index are the pages and the keys of the
+     * leaf pages.
+     */
+    private static void checkIndex(NodeState index) {
+        Set<String> names = newHashSet();
+        checkPage(index, index, true, names);
+        assertEquals(names, newHashSet(index.getChildNodeNames()));
+    }
+
+    private static void checkPage(NodeState index, NodeState page, boolean root,
+            Set<String> names) {
+        List<String> keys = ImmutableList.copyOf(page.getStrings(KEYS));
+        assertTrue(keys.size() <= FANOUT);
+        assertTrue(root || !keys.isEmpty());
+        assertTrue(Ordering.natural().isStrictlyOrdered(keys));
+        if (!root) {
+            assertEquals(0, page.getChildNodeCount(1));
+        }
+        if (page.hasProperty(PAGES)) {
+            List<String> pages = ImmutableList.copyOf(page.getStrings(PAGES));
+            assertEquals(keys.size(), pages.size());
+            assertEquals("", keys.get(0));
+            for (String name : pages) {
+                assertTrue(names.add(name));
+                checkPage(index, index.getChildNode(name), false, names);
+            }
+        } else {
+            for (String key : keys) {
+                assertTrue(names.add(key));
+            }
+        }
+    }
+
+    /**
+     * Counts the changed direct child nodes of an index node, and collects
+     * the changed key nodes.
+     */
+    private static class ChangeCounter extends DefaultNodeStateDiff {
+
+        final List<String> keys = Lists.newArrayList();
+
+        int changedPages;
+
+        boolean changedIndex;
+
+        int getCount() {
+            return changedPages + keys.size() + (changedIndex ? 1 : 0);
+        }
+
+        @Override
+        public boolean propertyAdded(PropertyState after) {
+            changedIndex = true;
+            return true;
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            changedIndex = true;
+            return true;
+        }
+
+        @Override
+        public boolean propertyDeleted(PropertyState before) {
+            changedIndex = true;
+            return true;
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            return changed(name);
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return changed(name);
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            return changed(name);
+        }
+
+        private boolean changed(String name) {
+            if (name.startsWith(":")) {
+                changedPages++;
+            } else {
+                keys.add(name);
+            }
+            return true;
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("%03d", i);
+    }
+
+    private static String path(int i) {
+        return "/path/n" + key(i);
+    }
+
+    private static List<String> keys(int from, int to) {
+        List<String> keys = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            keys.add(key(i));
+        }
+        return keys;
+    }
+
+    private static List<String> paths(int from, int to) {
+        List<String> paths = Lists.newArrayList();
+        for (int i = from; i < to; i++) {
+            paths.add(path(i).substring(1));
+        }
+        return paths;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.BUCKET_COUNT_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Test the bucketed content mirror strategy
+ */
+public class BucketedContentMirrorStoreStrategyTest {
+
+    private static final Set<String> EMPTY = newHashSet();
+
+    @Test
+    public void testQueryAllDistinct() {
+        BucketedContentMirrorStoreStrategy store = new BucketedContentMirrorStoreStrategy(4);
+        NodeBuilder indexMeta = EMPTY_NODE.builder();
+        indexMeta.setProperty(BUCKET_COUNT_PROPERTY_NAME, 4L);
+        NodeBuilder index = indexMeta.child(INDEX_CONTENT_NODE_NAME);
+        for (int i = 0; i < 100; i++) {
+            // every path is indexed with two keys
+            store.update(index, "n" + i, EMPTY, newHashSet("x" + i % 3, "y"));
+        }
+
+        List<String> paths = Lists.newArrayList(store.query(new FilterImpl(),
+                "test", indexMeta.getNodeState(), null));
+        Assert.assertEquals(100, paths.size());
+        Assert.assertEquals(100, newHashSet(paths).size());
+    }
+
+    @Test
+    public void testQueryAllMemoryLimit() {
+        BucketedContentMirrorStoreStrategy store = new BucketedContentMirrorStoreStrategy(1);
+        NodeBuilder indexMeta = EMPTY_NODE.builder();
+        indexMeta.setProperty(BUCKET_COUNT_PROPERTY_NAME, 1L);
+        NodeBuilder index = indexMeta.child(INDEX_CONTENT_NODE_NAME);
+        for (int i = 0; i < 100; i++) {
+            store.update(index, "n" + i, EMPTY, newHashSet("x", "y"));
+        }
+
+        QueryEngineSettings settings = new QueryEngineSettings();
+        settings.setLimitInMemory(50);
+        FilterImpl filter = new FilterImpl(null, null, settings);
+        try {
+            Lists.newArrayList(store.query(filter, "test", indexMeta.getNodeState(), null));
+            Assert.fail("the paths of a bucket exceed the in-memory limit");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCountExtrapolatesBuckets() {
+        BucketedContentMirrorStoreStrategy store = new BucketedContentMirrorStoreStrategy(16);
+        NodeBuilder indexMeta = EMPTY_NODE.builder();
+        NodeBuilder index = indexMeta.child(INDEX_CONTENT_NODE_NAME);
+        for (int i = 0; i < 1000; i++) {
+            store.update(index, "n" + i, EMPTY, newHashSet("x"));
+        }
+        NodeState state = indexMeta.getNodeState();
+
+        // only the first few buckets are counted
+        long count = store.count(state, newHashSet("x"), 100);
+        Assert.assertTrue("count: " + count, count >= 500 && count <= 2000);
+
+        // small keys are counted exactly
+        store.update(index, "a", EMPTY, newHashSet("z"));
+        store.update(index, "b", EMPTY, newHashSet("z"));
+        Assert.assertEquals(2, store.count(indexMeta.getNodeState(), newHashSet("z"), 100));
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void empty() {
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    @Test
+    public void duplicates() {
+        HyperLogLog hll = new HyperLogLog();
+        assertTrue(hll.add("foo"));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(hll.add("foo"));
+        }
+        assertEquals(1, hll.estimate());
+    }
+
+    @Test
+    public void estimate() {
+        for (int size : new int[] {10, 100, 1000, 10000, 100000}) {
+            HyperLogLog hll = new HyperLogLog();
+            for (int i = 0; i < size; i++) {
+                hll.add("value-" + i);
+                hll.add("value-" + (i / 2));
+            }
+            long estimate = hll.estimate();
+            assertTrue("estimate for " + size + ": " + estimate,
+                    estimate > size * 0.6 && estimate < size * 1.4);
+        }
+    }
+
+    @Test
+    public void serialization() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            hll.add("value-" + i);
+        }
+        String s = hll.toString();
+        assertEquals(hll, HyperLogLog.fromString(s));
+        assertEquals(hll.estimate(), HyperLogLog.fromString(s).estimate());
+        assertNull(HyperLogLog.fromString("invalid"));
+    }
+
+}
@@ -16,10 +16,14 @@
  */
 package org.apache.jackrabbit.oak.plugins.segment;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import junit.framework.Assert;
 
 import org.apache.jackrabbit.oak.Oak;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
 import org.apache.jackrabbit.oak.plugins.segment.memory.MemoryStore;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
@@ -29,6 +33,8 @@ import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.junit.Test;
 
+import com.google.common.util.concurrent.RateLimiter;
+
 public class CompactorTest {
 
     @Test
@@ -56,6 +62,95 @@ public class CompactorTest {
 
     }
 
+    @Test
+    public void testCompactionMapLimit() throws Exception {
+        MemoryStore source = new MemoryStore();
+        try {
+            NodeStore store = new SegmentNodeStore(source);
+            init(store);
+
+            Compactor compactor = new Compactor(
+                    source.getTracker().getWriter(), 0,
+                    RateLimiter.create(Double.MAX_VALUE));
+            addTestContent(store, 0);
+
+            SegmentNodeState after = compactor.compact(
+                    EmptyNodeState.EMPTY_NODE, store.getRoot());
+            Assert.assertEquals(store.getRoot(), after);
+            Assert.assertEquals(0, compactor.getCompactionMap().size());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void testParallelCompaction() throws Exception {
+        MemoryStore source = new MemoryStore();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            NodeStore store = new SegmentNodeStore(source);
+            init(store);
+
+            NodeBuilder builder = store.getRoot().builder();
+            NodeBuilder large = builder.child("large");
+            for (int i = 0; i < 2500; i++) {
+                large.child("node" + i).setProperty("value", i);
+            }
+            store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+            CompactionProgress progress = new CompactionProgress();
+            Compactor compactor = new Compactor(source.getTracker().getWriter())
+                    .setExecutor(executor)
+                    .setProgress(progress);
+            progress.start();
+            SegmentNodeState after = compactor.compact(
+                    EmptyNodeState.EMPTY_NODE, store.getRoot());
+            progress.stop();
+            Assert.assertEquals(store.getRoot(), after);
+            Assert.assertTrue(progress.getCompactedNodes() > 2500);
+            Assert.assertEquals(100, progress.getPercentDone());
+        } finally {
+            executor.shutdown();
+            source.close();
+        }
+    }
+
+    @Test
+    public void testCompactionThrottle() throws Exception {
+        MemoryStore source = new MemoryStore();
+        try {
+            NodeStore store = new SegmentNodeStore(source);
+            init(store);
+            addTestContent(store, 0);
+
+            // measure the amount of content to compact
+            CompactionProgress unthrottled = new CompactionProgress();
+            new Compactor(source.getTracker().getWriter())
+                    .setProgress(unthrottled)
+                    .compact(EmptyNodeState.EMPTY_NODE, store.getRoot());
+            long size = unthrottled.getCompactedSize();
+            Assert.assertTrue(size > 0);
+
+            // a rate of half the content per second needs about two seconds
+            CompactionProgress throttled = new CompactionProgress();
+            Compactor compactor = new Compactor(
+                    source.getTracker().getWriter(), Integer.MAX_VALUE,
+                    RateLimiter.create(size / 2.0));
+            compactor.setProgress(throttled);
+            long start = System.currentTimeMillis();
+            SegmentNodeState after = compactor.compact(
+                    EmptyNodeState.EMPTY_NODE, store.getRoot());
+            long elapsed = System.currentTimeMillis() - start;
+
+            Assert.assertEquals(store.getRoot(), after);
+            Assert.assertEquals(size, throttled.getCompactedSize());
+            Assert.assertTrue("compaction was not throttled: " + elapsed + "ms",
+                    elapsed >= 1000);
+        } finally {
+            source.close();
+        }
+    }
+
     private static void init(NodeStore store) {
         new Oak(store).with(new OpenSecurityProvider())
                 .createContentRepository();
@@ -17,9 +17,13 @@
 package org.apache.jackrabbit.oak.plugins.segment.file;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
+import static com.google.common.collect.Sets.newIdentityHashSet;
 import static com.google.common.collect.Sets.newTreeSet;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -27,21 +31,37 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.io.Files;
 import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
 import org.apache.jackrabbit.oak.plugins.segment.Compactor;
 import org.apache.jackrabbit.oak.plugins.segment.RecordId;
 import org.apache.jackrabbit.oak.plugins.segment.Segment;
 import org.apache.jackrabbit.oak.plugins.segment.SegmentBlob;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentId;
 import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeBuilder;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeStore;
 import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeState;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentTracker;
 import org.apache.jackrabbit.oak.plugins.segment.SegmentWriter;
+import org.apache.jackrabbit.oak.plugins.segment.file.FileStore.Durability;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -254,4 +274,321 @@ public class FileStoreTest {
         }
     }
 
+    @Test
+    public void segmentCacheStats() throws Exception {
+        FileStore store = new FileStore(directory, 1, false);
+        SegmentNodeState base = store.getHead();
+        SegmentNodeBuilder builder = base.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.child("c" + i).setProperty("p", i);
+        }
+        store.setHead(base, builder.getNodeState());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (long) store.getHead().getChildNode("c" + i)
+                    .getProperty("p").getValue(Type.LONG));
+        }
+        assertNull(store.getTracker().getOffHeapCacheStats());
+        store.setOffHeapCacheSize(1);
+        assertNotNull(store.getTracker().getOffHeapCacheStats());
+        store.close();
+
+        store = new FileStore(directory, 1, false);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (long) store.getHead().getChildNode("c" + i)
+                    .getProperty("p").getValue(Type.LONG));
+        }
+        CacheStats stats = store.getTracker().getSegmentCacheStats();
+        assertTrue(stats.getMissCount() > 0);
+
+        // repeated access to the now memoized segments is reported as hits
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (long) store.getHead().getChildNode("c" + i)
+                    .getProperty("p").getValue(Type.LONG));
+        }
+        stats = store.getTracker().getSegmentCacheStats();
+        assertTrue(stats.getHitCount() > 0);
+        assertEquals(stats.getHitCount() + stats.getMissCount(),
+                stats.getRequestCount());
+        store.close();
+    }
+
+    @Test
+    public void writerPerThread() throws Exception {
+        final FileStore store = new FileStore(null, directory,
+                EmptyNodeState.EMPTY_NODE, 1, 0, false, 4);
+        try {
+            final SegmentTracker tracker = store.getTracker();
+            final Map<Long, SegmentWriter> writers =
+                    Collections.synchronizedMap(new HashMap<Long, SegmentWriter>());
+            final Set<Long> unstable =
+                    Collections.synchronizedSet(new HashSet<Long>());
+            Set<Long> stripes = newHashSet();
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        long id = Thread.currentThread().getId();
+                        SegmentWriter writer = tracker.getWriter();
+                        if (writer != tracker.getWriter()) {
+                            unstable.add(id);
+                        }
+                        writers.put(id, writer);
+                    }
+                });
+                stripes.add(threads[i].getId() % 4);
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // each thread keeps its writer, and threads on different
+            // stripes use different writers
+            assertTrue(unstable.isEmpty());
+            assertEquals(threads.length, writers.size());
+            Set<SegmentWriter> distinct = newIdentityHashSet();
+            distinct.addAll(writers.values());
+            assertEquals(stripes.size(), distinct.size());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void parallelCompaction() throws Exception {
+        FileStore store = new FileStore(directory, 1, false)
+                .setCompactionThreads(4);
+        SegmentNodeState base = store.getHead();
+        SegmentNodeBuilder builder = base.builder();
+        NodeBuilder large = builder.child("large");
+        for (int i = 0; i < 2500; i++) {
+            large.child("node" + i).setProperty("value", i);
+        }
+        assertTrue(store.setHead(base, builder.getNodeState()));
+        store.compact();
+
+        // the children were compacted by the workers, each with its
+        // own writer and thus into different segments
+        SegmentNodeState head = store.getHead();
+        Set<SegmentId> segments = newHashSet();
+        for (int i = 0; i < 2500; i++) {
+            NodeState child = head.getChildNode("large").getChildNode("node" + i);
+            segments.add(((SegmentNodeState) child).getRecordId().getSegmentId());
+        }
+        assertTrue(segments.size() > 1);
+        store.close();
+
+        // all worker segments were flushed along with the compacted head
+        store = new FileStore(directory, 1, false);
+        NodeState compacted = store.getHead().getChildNode("large");
+        assertEquals(2500, compacted.getChildNodeCount(Long.MAX_VALUE));
+        for (int i = 0; i < 2500; i++) {
+            assertEquals(i, compacted.getChildNode("node" + i)
+                    .getProperty("value").getValue(Type.LONG).intValue());
+        }
+        store.close();
+    }
+
+    @Test
+    public void concurrentWriters() throws Exception {
+        final FileStore store = new FileStore(null, directory,
+                EmptyNodeState.EMPTY_NODE, 1, 0, false, 4);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final String name = "t" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int k = 0; k < 100; k++) {
+                        boolean merged = false;
+                        while (!merged) {
+                            SegmentNodeState base = store.getHead();
+                            SegmentNodeBuilder builder = base.builder();
+                            builder.child(name).setProperty("p" + k, k);
+                            merged = store.setHead(
+                                    base, builder.getNodeState());
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        store.close();
+
+        FileStore reopened = new FileStore(directory, 1, false);
+        SegmentNodeState head = reopened.getHead();
+        for (int i = 0; i < threads.length; i++) {
+            assertEquals(100, head.getChildNode("t" + i).getPropertyCount());
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void groupCommit() throws Exception {
+        final FileStore store = new FileStore(directory, 1, false)
+                .setDurability(Durability.BATCHED);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final String name = "t" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int k = 0; k < 25; k++) {
+                        boolean merged = false;
+                        while (!merged) {
+                            SegmentNodeState base = store.getHead();
+                            SegmentNodeBuilder builder = base.builder();
+                            builder.child(name).setProperty("p" + k, k);
+                            merged = store.setHead(
+                                    base, builder.getNodeState());
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // all commits are durable without an explicit flush
+        List<String> journal = Files.readLines(
+                new File(directory, "journal.log"), Charsets.UTF_8);
+        assertEquals(
+                store.getHead().getRecordId().toString10() + " root",
+                journal.get(journal.size() - 1));
+
+        FlushStatsMBean stats = store.getFlushStats();
+        assertEquals(100, stats.getDurableCommitCount());
+        assertTrue(stats.getFlushCount() > 0);
+        assertTrue(stats.getFlushCount() <= 100);
+        store.close();
+    }
+
+    @Test
+    public void groupCommitThroughNodeStore() throws Exception {
+        final FileStore store = new FileStore(directory, 1, false)
+                .setDurability(Durability.BATCHED);
+        final SegmentNodeStore nodeStore = new SegmentNodeStore(store);
+        final List<Exception> failures =
+                Collections.synchronizedList(new ArrayList<Exception>());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final String name = "t" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int k = 0; k < 25; k++) {
+                            NodeBuilder builder = nodeStore.getRoot().builder();
+                            builder.child(name).setProperty("p" + k, k);
+                            nodeStore.merge(builder, EmptyHook.INSTANCE,
+                                    CommitInfo.EMPTY);
+                        }
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+
+        // all merges are durable without an explicit flush
+        List<String> journal = Files.readLines(
+                new File(directory, "journal.log"), Charsets.UTF_8);
+        assertEquals(
+                store.getHead().getRecordId().toString10() + " root",
+                journal.get(journal.size() - 1));
+        for (int i = 0; i < threads.length; i++) {
+            assertEquals(25, nodeStore.getRoot().getChildNode("t" + i)
+                    .getPropertyCount());
+        }
+        assertEquals(100, store.getFlushStats().getDurableCommitCount());
+        store.close();
+    }
+
+    @Test
+    public void testStartupWithManifest() throws IOException {
+        FileStore store = new FileStore(directory, 1, false);
+        SegmentNodeState base = store.getHead();
+        SegmentNodeBuilder builder = base.builder();
+        byte[] data = new byte[5 * 1024 * 1024];
+        new Random().nextBytes(data);
+        builder.setProperty("foo", builder.createBlob(new ByteArrayInputStream(data)));
+        store.setHead(base, builder.getNodeState());
+        store.flush();
+        String head = store.getHead().getRecordId().toString10();
+        store.close();
+
+        File manifest = new File(directory, StoreManifest.FILE_NAME);
+        assertTrue(manifest.isFile());
+
+        // reopen using the manifest
+        store = new FileStore(directory, 1, false);
+        assertEquals(head, store.getHead().getRecordId().toString10());
+        assertEquals(data.length, store.getHead().getProperty("foo")
+                .getValue(Type.BINARY).length());
+        store.close();
+
+        // a corrupt manifest is ignored
+        RandomAccessFile file = new RandomAccessFile(manifest, "rw");
+        try {
+            file.seek(file.length() / 2);
+            int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xff);
+        } finally {
+            file.close();
+        }
+        store = new FileStore(directory, 1, false);
+        assertEquals(head, store.getHead().getRecordId().toString10());
+        store.close();
+    }
+
+    @Test
+    public void compressedSegments() throws IOException {
+        for (SegmentCompression compression : SegmentCompression.values()) {
+            File dir = new File(directory, compression.name());
+            FileStore store = new FileStore(dir, 1, false)
+                    .setCompression(compression);
+            SegmentNodeState base = store.getHead();
+            SegmentNodeBuilder builder = base.builder();
+            for (int i = 0; i < 1000; i++) {
+                builder.child("node" + i).setProperty(
+                        "text", Strings.repeat("compressible text " + i, 10));
+            }
+            store.setHead(base, builder.getNodeState());
+            store.flush();
+            assertEquals(1000, store.getHead().getChildNodeCount(2000));
+            store.close();
+
+            // read back from the tar readers with a different setting
+            store = new FileStore(dir, 1, false);
+            SegmentNodeState head = store.getHead();
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(
+                        Strings.repeat("compressible text " + i, 10),
+                        head.getChildNode("node" + i)
+                                .getString("text"));
+            }
+            store.close();
+        }
+    }
+
 }
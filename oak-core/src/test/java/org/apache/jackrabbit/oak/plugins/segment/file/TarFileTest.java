@@ -17,7 +17,13 @@
 package org.apache.jackrabbit.oak.plugins.segment.file;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static java.util.Arrays.asList;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -68,4 +74,153 @@ public class TarFileTest {
         }
     }
 
+    @Test
+    public void testReadAfterInterrupt() throws IOException {
+        UUID id = UUID.randomUUID();
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits() & (-1 >>> 4); // OAK-1672
+        byte[] data = "Hello, World!".getBytes(UTF_8);
+
+        TarWriter writer = new TarWriter(file);
+        try {
+            writer.writeEntry(msb, lsb, data, 0, data.length);
+        } finally {
+            writer.close();
+        }
+
+        TarReader reader = TarReader.open(file, false);
+        try {
+            // reads from an interrupted thread succeed and keep the interrupt
+            Thread.currentThread().interrupt();
+            try {
+                assertEquals(ByteBuffer.wrap(data), reader.readEntry(msb, lsb));
+                assertTrue(Thread.currentThread().isInterrupted());
+            } finally {
+                Thread.interrupted();
+            }
+
+            // the interrupt must not break subsequent reads
+            assertEquals(ByteBuffer.wrap(data), reader.readEntry(msb, lsb));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testReadAhead() throws IOException {
+        UUID[] refs = new UUID[3];
+        byte[][] refData = new byte[refs.length][];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = newDataSegmentId();
+            refData[i] = new byte[64];
+            refData[i][16] = (byte) i;
+        }
+        // a data segment referencing the other segments
+        UUID parent = newDataSegmentId();
+        ByteBuffer parentData = ByteBuffer.allocate(16 * (refs.length + 1));
+        parentData.put(5, (byte) refs.length);
+        for (int i = 0; i < refs.length; i++) {
+            parentData.putLong(16 * (i + 1), refs[i].getMostSignificantBits());
+            parentData.putLong(16 * (i + 1) + 8, refs[i].getLeastSignificantBits());
+        }
+
+        TarWriter writer = new TarWriter(file);
+        try {
+            for (int i = 0; i < refs.length; i++) {
+                writer.writeEntry(refs[i].getMostSignificantBits(),
+                        refs[i].getLeastSignificantBits(),
+                        refData[i], 0, refData[i].length);
+            }
+            writer.writeEntry(parent.getMostSignificantBits(),
+                    parent.getLeastSignificantBits(),
+                    parentData.array(), 0, parentData.capacity());
+        } finally {
+            writer.close();
+        }
+
+        TarReader reader = TarReader.open(file, false);
+        try {
+            reader.setReadAhead(10, sameThreadExecutor());
+            assertEquals(parentData, read(reader, parent));
+            for (UUID ref : refs) {
+                assertFalse(reader.isPrefetched(ref));
+            }
+
+            // reading a referenced segment prefetches the others
+            assertEquals(ByteBuffer.wrap(refData[0]), read(reader, refs[0]));
+            assertFalse(reader.isPrefetched(refs[0]));
+            assertTrue(reader.isPrefetched(refs[1]));
+            assertTrue(reader.isPrefetched(refs[2]));
+
+            // prefetched segments are served once
+            assertEquals(ByteBuffer.wrap(refData[1]), read(reader, refs[1]));
+            assertFalse(reader.isPrefetched(refs[1]));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static UUID newDataSegmentId() {
+        UUID id = UUID.randomUUID();
+        return new UUID(id.getMostSignificantBits(),
+                (id.getLeastSignificantBits() & (-1L >>> 4)) | (0xAL << 60));
+    }
+
+    private static ByteBuffer read(TarReader reader, UUID id) throws IOException {
+        return reader.readEntry(
+                id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        File other = File.createTempFile("TarFileTest", ".tar", new File("target"));
+        UUID[] ids = new UUID[200];
+        byte[] data = "Hello, World!".getBytes(UTF_8);
+        for (int i = 0; i < ids.length; i++) {
+            UUID id = UUID.randomUUID();
+            ids[i] = new UUID(
+                    id.getMostSignificantBits(),
+                    id.getLeastSignificantBits() & (-1 >>> 4)); // OAK-1672
+        }
+
+        TarWriter writer = new TarWriter(file);
+        TarWriter otherWriter = new TarWriter(other);
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                TarWriter target = i % 2 == 0 ? writer : otherWriter;
+                target.writeEntry(
+                        ids[i].getMostSignificantBits(),
+                        ids[i].getLeastSignificantBits(),
+                        data, 0, data.length);
+            }
+        } finally {
+            writer.close();
+            otherWriter.close();
+        }
+
+        TarReader reader = TarReader.open(file, false);
+        TarReader otherReader = TarReader.open(other, false);
+        try {
+            TarLookup lookup = new TarLookup(asList(otherReader, reader));
+            assertEquals(ids.length, lookup.size());
+            assertTrue(lookup.covers(reader));
+            assertTrue(lookup.covers(otherReader));
+            for (int i = 0; i < ids.length; i++) {
+                long msb = ids[i].getMostSignificantBits();
+                long lsb = ids[i].getLeastSignificantBits();
+                TarReader expected = i % 2 == 0 ? reader : otherReader;
+                assertSame(expected, lookup.get(msb, lsb));
+                assertTrue(expected.mightContain(msb, lsb));
+            }
+            assertNull(lookup.get(0, 0));
+            assertNull(TarLookup.EMPTY.get(
+                    ids[0].getMostSignificantBits(),
+                    ids[0].getLeastSignificantBits()));
+        } finally {
+            reader.close();
+            otherReader.close();
+            other.delete();
+        }
+    }
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.stats;
+
+import static junit.framework.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PowerOfTwoHistogramTest {
+
+    @Test
+    public void empty() {
+        PowerOfTwoHistogram histogram = new PowerOfTwoHistogram(8);
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(8, histogram.getHistogram().length);
+    }
+
+    @Test
+    public void buckets() {
+        PowerOfTwoHistogram histogram = new PowerOfTwoHistogram(4);
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(1000);
+
+        long[] counts = histogram.getHistogram();
+        assertEquals(2, counts[0]);
+        assertEquals(2, counts[1]);
+        assertEquals(1, counts[2]);
+        // larger values end up in the last bucket
+        assertEquals(1, counts[3]);
+
+        assertEquals(6, histogram.getCount());
+        assertEquals(1013 / 6, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void percentiles() {
+        PowerOfTwoHistogram histogram = new PowerOfTwoHistogram(16);
+        for (int i = 0; i < 90; i++) {
+            histogram.record(5);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(500);
+        }
+        assertEquals(8, histogram.getPercentile(0));
+        assertEquals(8, histogram.getPercentile(50));
+        assertEquals(8, histogram.getPercentile(90));
+        assertEquals(512, histogram.getPercentile(91));
+        assertEquals(512, histogram.getPercentile(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPercentile() {
+        new PowerOfTwoHistogram(8).getPercentile(101);
+    }
+
+}
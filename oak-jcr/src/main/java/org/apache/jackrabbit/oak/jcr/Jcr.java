@@ -173,6 +173,12 @@ public class Jcr {
         return this;
     }
 
+    @Nonnull
+    public Jcr withAsyncIndexing(@Nonnull String name, long delayInSeconds) {
+        oak.withAsyncIndexing(checkNotNull(name), delayInSeconds);
+        return this;
+    }
+
     @Nonnull
     public Jcr withObservationQueueLength(int observationQueueLength) {
         this.observationQueueLength = observationQueueLength;
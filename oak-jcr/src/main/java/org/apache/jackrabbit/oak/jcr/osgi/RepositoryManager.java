@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.jcr.osgi;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -33,6 +34,7 @@ import org.apache.jackrabbit.oak.Oak;
 import org.apache.jackrabbit.oak.commons.PropertiesUtil;
 import org.apache.jackrabbit.oak.osgi.OsgiWhiteboard;
 import org.apache.jackrabbit.oak.plugins.commit.JcrConflictHandler;
+import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent;
 import org.apache.jackrabbit.oak.plugins.observation.CommitRateLimiter;
 import org.apache.jackrabbit.oak.spi.lifecycle.RepositoryInitializer;
@@ -46,6 +48,8 @@ import org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardIndexEditorProvider;
 import org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardIndexProvider;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * RepositoryManager constructs the Repository instance and registers it with OSGi Service Registry.
@@ -55,8 +59,11 @@ import org.osgi.framework.ServiceRegistration;
  */
 @Component(policy = ConfigurationPolicy.REQUIRE)
 public class RepositoryManager {
+    private static final Logger log = LoggerFactory.getLogger(RepositoryManager.class);
+
     private static final int DEFAULT_OBSERVATION_QUEUE_LENGTH = 1000;
     private static final boolean DEFAULT_COMMIT_RATE_LIMIT = false;
+    private static final String[] DEFAULT_ASYNC_INDEXING_LANES = {"async:5"};
 
     private final WhiteboardEditorProvider editorProvider =
             new WhiteboardEditorProvider();
@@ -98,6 +105,15 @@ public class RepositoryManager {
                 "queue exceed 90% of its capacity.")
     private static final String COMMIT_RATE_LIMIT = "oak.observation.limit-commit-rate";
 
+    @Property(
+        value = {"async:5"},
+        name = "Async indexing lanes",
+        description = "Asynchronous indexing lanes, as 'name:delayInSeconds'. Index definitions are " +
+                "assigned to a lane with their 'async' property. Each lane is updated independently.")
+    private static final String ASYNC_INDEXING_LANES = "oak.index.async-lanes";
+
+    private String[] asyncIndexingLanes;
+
     @Activate
     public void activate(BundleContext bundleContext, Map<String, ?> config) throws Exception {
         observationQueueLength = PropertiesUtil.toInteger(prop(
@@ -110,6 +126,9 @@ public class RepositoryManager {
             commitRateLimiter = null;
         }
 
+        asyncIndexingLanes = PropertiesUtil.toStringArray(prop(
+                config, bundleContext, ASYNC_INDEXING_LANES), DEFAULT_ASYNC_INDEXING_LANES);
+
         whiteboard = new OsgiWhiteboard(bundleContext);
         initializers = whiteboard.track(RepositoryInitializer.class);
         editorProvider.start(whiteboard);
@@ -153,9 +172,12 @@ public class RepositoryManager {
                 .with(editorProvider)
                 .with(indexEditorProvider)
                 .with(indexProvider)
-                .withAsyncIndexing()
                 .with(executor);
 
+        for (Map.Entry<String, Long> lane : parseAsyncIndexingLanes(asyncIndexingLanes).entrySet()) {
+            oak.withAsyncIndexing(lane.getKey(), lane.getValue());
+        }
+
         for(RepositoryInitializer initializer : initializers.getServices()){
             oak.with(initializer);
         }
@@ -170,4 +192,42 @@ public class RepositoryManager {
                         observationQueueLength, commitRateLimiter),
                 new Properties());
     }
+
+    /**
+     * Parses the configured asynchronous indexing lanes, given as
+     * {@code name:delayInSeconds} or just {@code name}. Entries with an
+     * invalid lane name are skipped, a missing or invalid delay is replaced
+     * by {@link Oak#DEFAULT_ASYNC_DELAY}. Both are logged as a warning.
+     *
+     * @param lanes the configured lanes
+     * @return the delay in seconds per lane name, in configuration order
+     */
+    static Map<String, Long> parseAsyncIndexingLanes(String[] lanes) {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (String lane : lanes) {
+            int colon = lane.lastIndexOf(':');
+            String name = (colon < 0 ? lane : lane.substring(0, colon)).trim();
+            if (name.isEmpty() || name.startsWith(":")
+                    || IndexConstants.ASYNC_REINDEX_VALUE.equals(name)) {
+                log.warn("Ignoring async indexing lane with invalid name: {}", lane);
+                continue;
+            }
+            long delay = Oak.DEFAULT_ASYNC_DELAY;
+            if (colon >= 0) {
+                String value = lane.substring(colon + 1).trim();
+                try {
+                    delay = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    delay = -1;
+                }
+                if (delay <= 0) {
+                    log.warn("Invalid delay '{}' of async indexing lane {}, using the default of {} seconds",
+                            new Object[] {value, name, Oak.DEFAULT_ASYNC_DELAY});
+                    delay = Oak.DEFAULT_ASYNC_DELAY;
+                }
+            }
+            result.put(name, delay);
+        }
+        return result;
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.jcr.osgi;
+
+import static org.apache.jackrabbit.oak.jcr.osgi.RepositoryManager.parseAsyncIndexingLanes;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.Oak;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class RepositoryManagerTest {
+
+    @Test
+    public void asyncIndexingLanes() {
+        Map<String, Long> lanes = parseAsyncIndexingLanes(new String[] {
+                "async:5", " fast : 1 ", "default"});
+        assertEquals(ImmutableMap.of("async", 5L, "fast", 1L,
+                "default", Oak.DEFAULT_ASYNC_DELAY), lanes);
+    }
+
+    @Test
+    public void malformedDelay() {
+        Map<String, Long> lanes = parseAsyncIndexingLanes(new String[] {
+                "a:five", "b:", "c:-1", "d:0", "e:10"});
+        assertEquals(ImmutableMap.of("a", Oak.DEFAULT_ASYNC_DELAY,
+                "b", Oak.DEFAULT_ASYNC_DELAY, "c", Oak.DEFAULT_ASYNC_DELAY,
+                "d", Oak.DEFAULT_ASYNC_DELAY, "e", 10L), lanes);
+    }
+
+    @Test
+    public void invalidName() {
+        Map<String, Long> lanes = parseAsyncIndexingLanes(new String[] {
+                ":5", "", " ", "::hidden:5", "async-reindex:5", "async:5"});
+        assertEquals(ImmutableMap.of("async", 5L), lanes);
+    }
+
+}
@@ -71,7 +71,14 @@ public class LuceneInitializerHelper implements RepositoryInitializer {
     }
 
     public LuceneInitializerHelper async() {
-        async = "async";
+        return async("async");
+    }
+
+    /**
+     * Update the index in the given asynchronous indexing lane.
+     */
+    public LuceneInitializerHelper async(String lane) {
+        async = lane;
         return this;
     }
 
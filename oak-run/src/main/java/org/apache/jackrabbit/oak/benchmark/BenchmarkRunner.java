@@ -142,9 +142,11 @@ public class BenchmarkRunner {
                         };
         Benchmark[] allBenchmarks = new Benchmark[] {
             new OrderedIndexQueryOrderedIndexTest(),
+            new OrderedIndexQueryBTreeTest(),
             new OrderedIndexQueryStandardIndexTest(),
             new OrderedIndexQueryNoIndexTest(),
             new OrderedIndexInsertOrderedPropertyTest(),
+            new OrderedIndexInsertBTreeTest(),
             new OrderedIndexInsertStandardPropertyTest(),
             new OrderedIndexInsertNoIndexTest(),
             new LoginTest(
@@ -249,8 +251,18 @@ public class BenchmarkRunner {
             new ConcurrentCreateNodesTest(),
             new SequentialCreateNodesTest(),
             new CreateManyIndexedNodesTest(),
+            new ConcurrentIndexedWriteTest(),
             new GetPoliciesTest(),
             new ConcurrentFileWriteTest(),
+            new SegmentWriterConcurrencyTest(
+                    base.value(options),
+                    mmap.value(options)),
+            new CompactionScalabilityTest(
+                    base.value(options),
+                    mmap.value(options)),
+            new SegmentCompressionTest(
+                    base.value(options),
+                    mmap.value(options)),
             new GetAuthorizableByIdTest(
                     numberOfUsers.value(options),
                     flatStructure.value(options)),
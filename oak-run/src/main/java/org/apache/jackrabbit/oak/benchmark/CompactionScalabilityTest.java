@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.fixture.OakFixture;
+import org.apache.jackrabbit.oak.fixture.RepositoryFixture;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.plugins.segment.file.FileStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+
+/**
+ * Measures the time it takes to compact a TarMK as a function of the
+ * repository size, both sequentially and with parallel compaction using
+ * as many threads as the given concurrency level.
+ */
+public class CompactionScalabilityTest extends Benchmark {
+
+    /**
+     * Repository sizes (number of nodes) to measure.
+     */
+    private static final int[] SIZES = { 10000, 100000, 500000 };
+
+    /**
+     * Number of sibling nodes per parent, above the parallel compaction
+     * threshold so that large child node maps get fanned out.
+     */
+    private static final int FAN_OUT = 2000;
+
+    private static final int NODES_PER_COMMIT = 10000;
+
+    private final File base;
+
+    private final boolean memoryMapping;
+
+    public CompactionScalabilityTest(File base, boolean memoryMapping) {
+        this.base = base;
+        this.memoryMapping = memoryMapping;
+    }
+
+    @Override
+    public void run(Iterable<RepositoryFixture> fixtures) {
+        run(fixtures, Collections.<Integer>emptyList());
+    }
+
+    @Override
+    public void run(
+            Iterable<RepositoryFixture> fixtures, List<Integer> concurrencyLevels) {
+        if (concurrencyLevels == null || concurrencyLevels.isEmpty()) {
+            concurrencyLevels = Collections.singletonList(
+                    Runtime.getRuntime().availableProcessors());
+        }
+        for (RepositoryFixture fixture : fixtures) {
+            if (!OakFixture.OAK_TAR.equals(fixture.toString())) {
+                continue;
+            }
+            System.out.format(
+                    "# %-26.26s    C      nodes      time   nodes/s%n", toString());
+            for (int size : SIZES) {
+                for (int concurrency : concurrencyLevels) {
+                    try {
+                        report(fixture, size, 1);
+                        if (concurrency > 1) {
+                            report(fixture, size, concurrency);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    private void report(RepositoryFixture fixture, int size, int threads)
+            throws Exception {
+        File directory = new File(
+                base, "compaction-" + AbstractTest.TEST_ID + "-" + size);
+        try {
+            FileStore store = new FileStore(
+                    null, directory, EMPTY_NODE, 256, 0, memoryMapping, 1)
+                    .setCompactionThreads(threads);
+            try {
+                createContent(store, size);
+                long start = System.currentTimeMillis();
+                store.compact();
+                long duration = Math.max(1, System.currentTimeMillis() - start);
+                System.out.format(
+                        "%-28.28s  %3d  %9d  %8d  %8d%n",
+                        fixture, threads, size, duration,
+                        store.getCompactionProgress().getCompactedNodes()
+                                * 1000 / duration);
+            } finally {
+                store.close();
+            }
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    private static void createContent(FileStore store, int size)
+            throws Exception {
+        SegmentNodeStore nodeStore = new SegmentNodeStore(store);
+        NodeBuilder builder = nodeStore.getRoot().builder();
+        for (int i = 0; i < size; i++) {
+            builder.child("content").child("group-" + i / FAN_OUT)
+                    .child("node-" + i).setProperty("value", i);
+            if ((i + 1) % NODES_PER_COMMIT == 0) {
+                nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                builder = nodeStore.getRoot().builder();
+            }
+        }
+        nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        store.flush();
+    }
+
+}
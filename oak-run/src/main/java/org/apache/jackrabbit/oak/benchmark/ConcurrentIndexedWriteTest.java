@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.util.Random;
+import java.util.UUID;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.oak.benchmark.util.OakIndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
+
+/**
+ * Measures concurrent writes of nodes which all share the same value of an
+ * indexed property (e.g. {@code status=published}). By default the property
+ * index uses the content mirror layout; set the system property
+ * {@code bucketCount} to a positive value to spread the entries of the
+ * shared value over that number of buckets. The writers add nodes below a
+ * small set of shared parents, so that their index updates overlap.
+ */
+public class ConcurrentIndexedWriteTest extends AbstractTest {
+
+    private static final String NODE_TYPE = "oak:Unstructured";
+
+    protected static final String ROOT_NODE_NAME = "test" + TEST_ID;
+
+    private static final int WORKER_COUNT = Integer.getInteger("workerCount", 20);
+
+    private static final int BUCKET_COUNT = Integer.getInteger("bucketCount", 0);
+
+    private static final int PARENT_COUNT = 10;
+
+    private static final int NODES_PER_RUN = 50;
+
+    private Writer writer;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        Session session = loginWriter();
+        Node index = new OakIndexUtils.PropertyIndex()
+                .name("status" + TEST_ID).property("status").create(session);
+        if (index != null && BUCKET_COUNT > 0) {
+            index.setProperty(IndexConstants.BUCKET_COUNT_PROPERTY_NAME, BUCKET_COUNT);
+            index.setProperty(IndexConstants.REINDEX_PROPERTY_NAME, true);
+            session.save();
+        }
+        Node rootNode = session.getRootNode().addNode(ROOT_NODE_NAME, NODE_TYPE);
+        for (int i = 0; i < PARENT_COUNT; i++) {
+            rootNode.addNode("node" + i, NODE_TYPE);
+        }
+        session.save();
+        for (int i = 1; i < WORKER_COUNT; i++) {
+            addBackgroundJob(new Writer());
+        }
+        writer = new Writer();
+    }
+
+    private class Writer implements Runnable {
+
+        private final Random random = new Random();
+
+        private final Session session = loginWriter();
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < NODES_PER_RUN; i++) {
+                    session.refresh(false);
+                    String path = "/" + ROOT_NODE_NAME + "/node" + random.nextInt(PARENT_COUNT);
+                    Node node = session.getNode(path).addNode(
+                            UUID.randomUUID().toString(), NODE_TYPE);
+                    node.setProperty("status", "published");
+                    session.save();
+                }
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        writer.run();
+    }
+
+}
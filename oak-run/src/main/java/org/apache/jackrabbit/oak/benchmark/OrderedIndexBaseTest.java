@@ -130,6 +130,10 @@ public abstract class OrderedIndexBaseTest extends AbstractTest {
     }
 
     Node defineOrderedPropertyIndex(Session session) throws Exception {
+        return defineOrderedPropertyIndex(session, OrderedIndex.STORAGE_SKIP_LIST);
+    }
+
+    Node defineOrderedPropertyIndex(Session session, String storage) throws Exception {
         Node index = new OakIndexUtils.PropertyIndex().property(INDEXED_PROPERTY).create(session,
             OrderedIndex.TYPE);
         if (index == null) {
@@ -140,6 +144,7 @@ public abstract class OrderedIndexBaseTest extends AbstractTest {
             .getString())) {
             throw new RuntimeException("The index type does not match the expected");
         }
+        index.setProperty(OrderedIndex.STORAGE, storage);
         session.save();
         return index;
     }
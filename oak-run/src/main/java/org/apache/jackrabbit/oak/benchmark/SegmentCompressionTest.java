@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.fixture.OakFixture;
+import org.apache.jackrabbit.oak.fixture.RepositoryFixture;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.plugins.segment.file.FileStore;
+import org.apache.jackrabbit.oak.plugins.segment.file.SegmentCompression;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * Compares the segment compression codecs of the TarMK. For each codec
+ * the same content is written to a new store, and the resulting size on
+ * disk, the write time and the time to traverse the reopened store with
+ * a cold segment cache are reported.
+ */
+public class SegmentCompressionTest extends Benchmark {
+
+    private static final int NODES = 200000;
+
+    private static final int NODES_PER_COMMIT = 10000;
+
+    private static final int FAN_OUT = 1000;
+
+    private final File base;
+
+    private final boolean memoryMapping;
+
+    public SegmentCompressionTest(File base, boolean memoryMapping) {
+        this.base = base;
+        this.memoryMapping = memoryMapping;
+    }
+
+    @Override
+    public void run(Iterable<RepositoryFixture> fixtures) {
+        run(fixtures, Collections.<Integer>emptyList());
+    }
+
+    @Override
+    public void run(
+            Iterable<RepositoryFixture> fixtures, List<Integer> concurrencyLevels) {
+        for (RepositoryFixture fixture : fixtures) {
+            if (!OakFixture.OAK_TAR.equals(fixture.toString())) {
+                continue;
+            }
+            System.out.format(
+                    "# %-26.26s  %-8s   size (kB)   write (ms)   read (ms)%n",
+                    toString(), "codec");
+            for (SegmentCompression compression : SegmentCompression.values()) {
+                try {
+                    report(fixture, compression);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void report(RepositoryFixture fixture, SegmentCompression compression)
+            throws Exception {
+        File directory = new File(
+                base, "compression-" + AbstractTest.TEST_ID + "-" + compression);
+        try {
+            FileStore store = new FileStore(
+                    null, directory, EMPTY_NODE, 256, 0, memoryMapping, 1)
+                    .setCompression(compression);
+            long start = System.currentTimeMillis();
+            try {
+                createContent(store);
+            } finally {
+                store.close();
+            }
+            long write = System.currentTimeMillis() - start;
+            long size = FileUtils.sizeOfDirectory(directory);
+
+            store = new FileStore(
+                    null, directory, EMPTY_NODE, 256, 0, memoryMapping, 1);
+            start = System.currentTimeMillis();
+            try {
+                traverse(store.getHead());
+            } finally {
+                store.close();
+            }
+            long read = System.currentTimeMillis() - start;
+
+            System.out.format(
+                    "%-28.28s  %-8s  %10d  %11d  %10d%n",
+                    fixture, compression, size / 1024, write, read);
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    private static void createContent(FileStore store) throws Exception {
+        SegmentNodeStore nodeStore = new SegmentNodeStore(store);
+        NodeBuilder builder = nodeStore.getRoot().builder();
+        for (int i = 0; i < NODES; i++) {
+            NodeBuilder node = builder.child("content")
+                    .child("folder-" + i / FAN_OUT).child("page-" + i);
+            node.setProperty("jcr:primaryType", "cq:Page");
+            node.setProperty("jcr:title", "Title of page number " + i);
+            node.setProperty("sling:resourceType", "site/components/page");
+            node.setProperty("text", "Lorem ipsum dolor sit amet, page " + i
+                    + ", consectetur adipiscing elit, sed do eiusmod tempor.");
+            if ((i + 1) % NODES_PER_COMMIT == 0) {
+                nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                builder = nodeStore.getRoot().builder();
+            }
+        }
+        nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        store.flush();
+    }
+
+    private static void traverse(NodeState state) {
+        for (PropertyState property : state.getProperties()) {
+            for (int i = 0; i < property.count(); i++) {
+                property.getValue(Type.STRING, i);
+            }
+        }
+        for (ChildNodeEntry entry : state.getChildNodeEntries()) {
+            traverse(entry.getNodeState());
+        }
+    }
+
+}
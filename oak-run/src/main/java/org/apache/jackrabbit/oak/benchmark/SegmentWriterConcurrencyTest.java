@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.fixture.OakFixture;
+import org.apache.jackrabbit.oak.fixture.RepositoryFixture;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeBuilder;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeState;
+import org.apache.jackrabbit.oak.plugins.segment.file.FileStore;
+
+/**
+ * Compares the throughput of concurrent node writes on a TarMK with a
+ * single, shared segment writer against one with a striped set of as
+ * many segment writers as writing threads. The writers are assigned to
+ * the threads in round robin order when they first write.
+ */
+public class SegmentWriterConcurrencyTest extends Benchmark {
+
+    private static final int NODES_PER_THREAD = 10000;
+
+    private final File base;
+
+    private final boolean memoryMapping;
+
+    public SegmentWriterConcurrencyTest(File base, boolean memoryMapping) {
+        this.base = base;
+        this.memoryMapping = memoryMapping;
+    }
+
+    @Override
+    public void run(Iterable<RepositoryFixture> fixtures) {
+        run(fixtures, Collections.<Integer>emptyList());
+    }
+
+    @Override
+    public void run(
+            Iterable<RepositoryFixture> fixtures, List<Integer> concurrencyLevels) {
+        if (concurrencyLevels == null || concurrencyLevels.isEmpty()) {
+            concurrencyLevels = Collections.singletonList(
+                    Runtime.getRuntime().availableProcessors());
+        }
+        for (RepositoryFixture fixture : fixtures) {
+            if (!OakFixture.OAK_TAR.equals(fixture.toString())) {
+                continue;
+            }
+            System.out.format(
+                    "# %-26.26s    C   writers   nodes/s%n", toString());
+            for (int concurrency : concurrencyLevels) {
+                try {
+                    report(fixture, concurrency, 1);
+                    report(fixture, concurrency, concurrency);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void report(RepositoryFixture fixture, int concurrency, int writers)
+            throws Exception {
+        File directory = new File(
+                base, "segment-writer-" + AbstractTest.TEST_ID + "-" + writers);
+        try {
+            FileStore store = new FileStore(
+                    null, directory, EMPTY_NODE, 256, 0, memoryMapping, writers);
+            try {
+                long rate = run(store, concurrency);
+                System.out.format(
+                        "%-28.28s  %3d  %8d  %8d%n",
+                        fixture, concurrency, writers, rate);
+            } finally {
+                store.close();
+            }
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    private static long run(final FileStore store, int concurrency)
+            throws InterruptedException {
+        final AtomicLong count = new AtomicLong();
+        Thread[] threads = new Thread[concurrency];
+        for (int i = 0; i < threads.length; i++) {
+            final String name = "thread-" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // each thread works on a private builder, so that
+                    // only the record writes themselves are measured
+                    SegmentNodeState state = store.getHead();
+                    for (int n = 0; n < NODES_PER_THREAD; n++) {
+                        SegmentNodeBuilder builder = state.builder();
+                        builder.child(name).child("node-" + n)
+                                .setProperty("value", n);
+                        state = builder.getNodeState();
+                        count.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        long start = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long duration = Math.max(1, System.currentTimeMillis() - start);
+        return count.get() * 1000 / duration;
+    }
+
+}
@@ -19,12 +19,14 @@
 package org.apache.jackrabbit.oak.plugins.segment.standby.client;
 
 import static org.apache.jackrabbit.oak.plugins.segment.standby.codec.Messages.newGetSegmentReq;
+import static org.apache.jackrabbit.oak.plugins.segment.standby.codec.Messages.newGetSegmentsReq;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.util.concurrent.EventExecutorGroup;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -133,7 +135,18 @@ public class SegmentLoaderHandler extends ChannelInboundHandlerAdapter
     @Override
     public Segment readSegment(final String id) {
         ctx.writeAndFlush(newGetSegmentReq(this.clientID, id));
-        return getSegment();
+        for (;;) {
+            Segment s = getSegment();
+            // skip segments left over from earlier batch requests
+            if (s == null || id.equals(s.getSegmentId().toString())) {
+                return s;
+            }
+        }
+    }
+
+    @Override
+    public void requestSegments(List<String> ids) {
+        ctx.writeAndFlush(newGetSegmentsReq(this.clientID, ids));
     }
 
     @Override
@@ -145,6 +158,7 @@ public class SegmentLoaderHandler extends ChannelInboundHandlerAdapter
 
     // implementation of RemoteSegmentLoader
 
+    @Override
     public Segment getSegment() {
         boolean interrupted = false;
         try {
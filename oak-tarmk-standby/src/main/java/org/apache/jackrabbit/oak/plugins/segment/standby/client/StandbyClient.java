@@ -232,6 +232,21 @@ public final class StandbyClient implements ClientStandbyStatusMBean, Runnable,
         return (int)(System.currentTimeMillis() / 1000 - this.lastSuccessfulRequest);
     }
 
+    @Override
+    public long getTransferredSegments() {
+        return this.store.getTransferredSegments();
+    }
+
+    @Override
+    public long getTransferredSegmentBytes() {
+        return this.store.getTransferredSegmentBytes();
+    }
+
+    @Override
+    public long getTransferRate() {
+        return this.store.getTransferRate();
+    }
+
     @Override
     public int calcFailedRequests() {
         return this.getFailedRequests();
@@ -18,6 +18,10 @@
  */
 package org.apache.jackrabbit.oak.plugins.segment.standby.codec;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class Messages {
 
     public static final byte HEADER_RECORD = 0x00;
@@ -25,9 +29,11 @@ public class Messages {
 
     public static final String GET_HEAD = "h";
     public static final String GET_SEGMENT = "s.";
+    public static final String GET_SEGMENTS = "b.";
 
     private static final String MAGIC = "Standby-CMD@";
     private static final String SEPARATOR = ":";
+    private static final String ID_SEPARATOR = ",";
 
     private static String newRequest(String clientID, String body) {
         return MAGIC + (clientID == null ? "" : clientID.replace(SEPARATOR, "#")) + SEPARATOR + body + "\r\n";
@@ -41,6 +47,29 @@ public class Messages {
         return newRequest(clientID, GET_SEGMENT + sid);
     }
 
+    /**
+     * Creates a request for a batch of segments, which the server sends
+     * back-to-back without waiting for further requests.
+     */
+    public static String newGetSegmentsReq(String clientID, List<String> sids) {
+        StringBuilder body = new StringBuilder(GET_SEGMENTS);
+        for (int i = 0; i < sids.size(); i++) {
+            if (i > 0) {
+                body.append(ID_SEPARATOR);
+            }
+            body.append(sids.get(i));
+        }
+        return newRequest(clientID, body.toString());
+    }
+
+    public static List<String> extractSegmentIdsFrom(String request) {
+        String ids = request.substring(GET_SEGMENTS.length());
+        if (ids.length() == 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(ids.split(ID_SEPARATOR));
+    }
+
     public static String extractMessageFrom(String payload) {
         if (payload.startsWith(MAGIC) && payload.length() > MAGIC.length()) {
             int i = payload.indexOf(SEPARATOR);
@@ -27,6 +27,15 @@ public interface ClientStandbyStatusMBean extends StandbyStatusMBean {
     @Description("number of seconds since last successful request")
     int getSecondsSinceLastSuccess();
 
+    @Description("number of segments transferred from the primary")
+    long getTransferredSegments();
+
+    @Description("number of segment bytes transferred from the primary")
+    long getTransferredSegmentBytes();
+
+    @Description("average segment transfer rate in bytes per second")
+    long getTransferRate();
+
     // expose the informations as operations, too
 
     @Description("number of consecutive failed requests")
@@ -21,6 +21,7 @@ package org.apache.jackrabbit.oak.plugins.segment.standby.server;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -143,6 +144,29 @@ public class StandbyServerHandler extends SimpleChannelInboundHandler<String> {
                     ctx.writeAndFlush(r);
                     return;
                 }
+            } else if (request.startsWith(Messages.GET_SEGMENTS)) {
+                List<String> sids = Messages.extractSegmentIdsFrom(request);
+                log.debug("request {} segments", sids.size());
+                // stream the available segments back-to-back and flush
+                // once, so that the client can keep several batches in
+                // flight; missing segments are requested again by the client
+                for (String sid : sids) {
+                    UUID uuid = UUID.fromString(sid);
+                    Segment s = null;
+                    try {
+                        s = store.readSegment(new SegmentId(store.getTracker(),
+                                uuid.getMostSignificantBits(), uuid
+                                .getLeastSignificantBits()));
+                    } catch (IllegalStateException e) {
+                        log.debug("segment {} not found: {}", sid, e.getMessage());
+                    }
+                    if (s != null) {
+                        ctx.write(s);
+                        observer.didSendSegmentBytes(clientID, s.size());
+                    }
+                }
+                ctx.flush();
+                return;
             } else if (request.startsWith(Messages.GET_SEGMENT)) {
                 String sid = request.substring(Messages.GET_SEGMENT.length());
                 log.debug("request segment id {}", sid);
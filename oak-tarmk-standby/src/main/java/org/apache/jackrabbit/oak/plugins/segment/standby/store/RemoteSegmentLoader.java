@@ -16,12 +16,27 @@
  */
 package org.apache.jackrabbit.oak.plugins.segment.standby.store;
 
+import java.util.List;
+
 import org.apache.jackrabbit.oak.plugins.segment.Segment;
 
 public interface RemoteSegmentLoader {
 
     Segment readSegment(String id);
 
+    /**
+     * Requests the given segments without waiting for them to arrive. The
+     * received segments are returned in any order by {@link #getSegment()}.
+     * Segments not available on the primary are skipped.
+     */
+    void requestSegments(List<String> ids);
+
+    /**
+     * @return the next received segment, or {@code null} if none arrived
+     *         within the timeout
+     */
+    Segment getSegment();
+
     void close();
 
     boolean isClosed();
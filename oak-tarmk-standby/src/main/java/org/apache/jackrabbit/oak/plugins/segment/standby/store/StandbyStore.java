@@ -19,9 +19,14 @@ package org.apache.jackrabbit.oak.plugins.segment.standby.store;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 
 import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.plugins.segment.Segment;
@@ -40,8 +45,39 @@ public class StandbyStore implements SegmentStore {
 
     private final SegmentStore delegate;
 
+    /**
+     * Maximum number of segment ids requested at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Maximum number of requested segments not yet received.
+     */
+    private static final int MAX_PENDING_SEGMENTS = 8 * BATCH_SIZE;
+
     private RemoteSegmentLoader loader;
 
+    /**
+     * Whether segments are requested in batches. Cleared when the primary
+     * does not answer batch requests, for example because it runs an older
+     * version, in which case segments are requested one at a time.
+     */
+    private volatile boolean batchRequests = true;
+
+    /**
+     * Whether the primary has answered a batch request.
+     */
+    private volatile boolean batchConfirmed = false;
+
+    private volatile long transferredSegments;
+
+    private volatile long transferredSegmentBytes;
+
+    /**
+     * Total time in milliseconds spent transferring segments.
+     */
+    private volatile long transferTime;
+
     public StandbyStore(SegmentStore delegate) {
         this.delegate = delegate;
     }
@@ -68,8 +104,110 @@ public class StandbyStore implements SegmentStore {
 
     @Override
     public Segment readSegment(SegmentId sid) {
-        Deque<SegmentId> ids = new ArrayDeque<SegmentId>();
-        ids.offer(sid);
+        if (!delegate.containsSegment(sid)) {
+            long start = System.currentTimeMillis();
+            try {
+                if (batchRequests) {
+                    loadSegments(sid);
+                } else {
+                    loadSegmentsSequentially(Collections.singleton(sid));
+                }
+            } finally {
+                transferTime += System.currentTimeMillis() - start;
+            }
+        }
+
+        log.debug("calling delegate to return segment " + sid);
+        return delegate.readSegment(sid);
+    }
+
+    /**
+     * Transfers the given segment and all segments reachable from it that
+     * are not yet present locally. The segment ids are requested in batches
+     * as they are discovered in the segment graph, with up to
+     * {@link #MAX_PENDING_SEGMENTS} segments in flight, so that the transfer
+     * is not bound by the round trip time to the primary.
+     */
+    private void loadSegments(SegmentId sid) {
+        Deque<UUID> ids = new ArrayDeque<UUID>();
+        Set<UUID> pending = new HashSet<UUID>();
+        Set<UUID> seen = new HashSet<UUID>();
+        UUID first = asUUID(sid);
+        ids.offer(first);
+        seen.add(first);
+        int err = 0;
+
+        while (!ids.isEmpty() || !pending.isEmpty()) {
+            while (!ids.isEmpty() && pending.size() < MAX_PENDING_SEGMENTS) {
+                List<String> batch = new ArrayList<String>(BATCH_SIZE);
+                while (!ids.isEmpty() && batch.size() < BATCH_SIZE) {
+                    UUID id = ids.remove();
+                    pending.add(id);
+                    batch.add(id.toString());
+                }
+                log.debug("requesting {} segments", batch.size());
+                loader.requestSegments(batch);
+            }
+
+            Segment s = loader.getSegment();
+            if (s == null && !batchConfirmed) {
+                // the primary did not answer the first batch request,
+                // most likely it is too old to support them
+                log.info("primary does not answer batch requests, falling"
+                        + " back to single segment requests");
+                batchRequests = false;
+                List<SegmentId> remaining = new ArrayList<SegmentId>();
+                for (UUID id : pending) {
+                    remaining.add(asSegmentId(id));
+                }
+                for (UUID id : ids) {
+                    remaining.add(asSegmentId(id));
+                }
+                loadSegmentsSequentially(remaining);
+                return;
+            } else if (s == null) {
+                log.error("could NOT read segments " + pending);
+                if (loader.isClosed() || err == 4) {
+                    loader.close();
+                    throw new IllegalStateException(
+                            "Unable to load remote segments " + pending);
+                }
+                err++;
+                // request the missing segments again
+                for (UUID id : pending) {
+                    ids.addFirst(id);
+                }
+                pending.clear();
+                continue;
+            }
+
+            SegmentId id = s.getSegmentId();
+            if (!pending.remove(asUUID(id))) {
+                log.debug("ignoring duplicate segment " + id);
+                continue;
+            }
+            log.debug("got segment " + id + " with size " + s.size());
+            batchConfirmed = true;
+            if (id.isDataSegmentId()) {
+                for (SegmentId ref : s.getReferencedIds()) {
+                    UUID uuid = asUUID(ref);
+                    if (seen.add(uuid) && !delegate.containsSegment(ref)) {
+                        ids.offer(uuid);
+                    }
+                }
+            }
+            storeSegment(id, s);
+            err = 0;
+        }
+    }
+
+    /**
+     * Transfers the given segments and all segments reachable from them
+     * that are not yet present locally, one request at a time. Used with
+     * primaries that do not support batch requests.
+     */
+    private void loadSegmentsSequentially(Collection<SegmentId> sids) {
+        Deque<SegmentId> ids = new ArrayDeque<SegmentId>(sids);
         int err = 0;
         Set<SegmentId> seen = new HashSet<SegmentId>();
 
@@ -80,18 +218,10 @@ public class StandbyStore implements SegmentStore {
                 Segment s = loader.readSegment(id.toString());
                 if (s != null) {
                     log.debug("got segment " + id + " with size " + s.size());
-                    ByteArrayOutputStream bout = new ByteArrayOutputStream(
-                            s.size());
                     if (id.isDataSegmentId()) {
                         ids.addAll(s.getReferencedIds());
                     }
-                    try {
-                        s.writeTo(bout);
-                        writeSegment(id, bout.toByteArray(), 0, s.size());
-                    } catch (IOException e) {
-                        throw new IllegalStateException(
-                                "Unable to write remote segment " + id, e);
-                    }
+                    storeSegment(id, s);
                     seen.add(id);
                     ids.removeAll(seen);
                     err = 0;
@@ -109,9 +239,29 @@ public class StandbyStore implements SegmentStore {
                 seen.add(id);
             }
         }
+    }
 
-        log.debug("calling delegate to return segment " + sid);
-        return delegate.readSegment(sid);
+    private void storeSegment(SegmentId id, Segment s) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(s.size());
+        try {
+            s.writeTo(bout);
+            writeSegment(id, bout.toByteArray(), 0, s.size());
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    "Unable to write remote segment " + id, e);
+        }
+        transferredSegments++;
+        transferredSegmentBytes += s.size();
+    }
+
+    private static UUID asUUID(SegmentId id) {
+        return new UUID(
+                id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    private SegmentId asSegmentId(UUID id) {
+        return tracker.getSegmentId(
+                id.getMostSignificantBits(), id.getLeastSignificantBits());
     }
 
     @Override
@@ -143,4 +293,20 @@ public class StandbyStore implements SegmentStore {
         this.loader = loader;
     }
 
+    public long getTransferredSegments() {
+        return transferredSegments;
+    }
+
+    public long getTransferredSegmentBytes() {
+        return transferredSegmentBytes;
+    }
+
+    /**
+     * @return the average transfer rate in bytes per second
+     */
+    public long getTransferRate() {
+        long time = transferTime;
+        return time > 0 ? transferredSegmentBytes * 1000 / time : 0;
+    }
+
 }
@@ -140,6 +140,10 @@ public class BulkTest extends TestBase {
 
             assertEquals(storeS.getHead(), storeC.getHead());
 
+            long received = ((Long)jmxServer.getAttribute(clientStatus, "TransferredSegments")).longValue();
+            assertEquals(segments, received);
+            assertEquals(bytes, ((Long)jmxServer.getAttribute(clientStatus, "TransferredSegmentBytes")).longValue());
+
             //compare(segments, "segment", minExpectedSegments, maxExpectedSegments);
             //compare(bytes, "byte", minExpectedBytes, maxExpectedBytes);
 
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.segment.standby.store;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.segment.RecordId;
+import org.apache.jackrabbit.oak.plugins.segment.Segment;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentId;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeBuilder;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeState;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentStore;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentTracker;
+import org.apache.jackrabbit.oak.plugins.segment.memory.MemoryStore;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class StandbyStoreTest {
+
+    private static final int NODES = 5000;
+
+    private MemoryStore primary;
+
+    @Before
+    public void setUp() {
+        // enough content to span several data segments
+        primary = new MemoryStore();
+        SegmentNodeState base = primary.getHead();
+        SegmentNodeBuilder builder = base.builder();
+        NodeBuilder test = builder.child("test");
+        for (int i = 0; i < NODES; i++) {
+            test.child("node" + i).setProperty(
+                    "value", i + Strings.repeat("x", 200));
+        }
+        primary.setHead(base, builder.getNodeState());
+        primary.getTracker().getWriter().flush();
+    }
+
+    @Test
+    public void testBatchTransfer() {
+        StandbyStore standby = new StandbyStore(new MemoryStore());
+        MemoryLoader loader = new MemoryLoader(primary, standby, true);
+        standby.setLoader(loader);
+
+        NodeState head = sync(standby);
+
+        boolean batched = false;
+        for (List<String> request : loader.batches) {
+            batched |= request.size() > 1;
+        }
+        assertTrue("no segments requested in batches", batched);
+        assertEquals(0, loader.singles);
+        assertTrue(standby.getTransferredSegments() > 1);
+        assertContent(head);
+    }
+
+    @Test
+    public void testFallbackWithoutBatchSupport() {
+        StandbyStore standby = new StandbyStore(new MemoryStore());
+        MemoryLoader loader = new MemoryLoader(primary, standby, false);
+        standby.setLoader(loader);
+
+        NodeState head = sync(standby);
+
+        assertEquals(1, loader.batches.size());
+        assertEquals(standby.getTransferredSegments(), loader.singles);
+        assertTrue(loader.singles > 1);
+        assertContent(head);
+
+        // later transfers skip the batch requests
+        SegmentNodeState base = primary.getHead();
+        SegmentNodeBuilder builder = base.builder();
+        builder.child("test").child("added");
+        primary.setHead(base, builder.getNodeState());
+        primary.getTracker().getWriter().flush();
+        int singles = loader.singles;
+        loader.batches.clear();
+        head = sync(standby);
+        assertEquals(0, loader.batches.size());
+        assertTrue(loader.singles > singles);
+        assertTrue(head.getChildNode("test").hasChildNode("added"));
+    }
+
+    private NodeState sync(StandbyStore standby) {
+        RecordId id = primary.getHead().getRecordId();
+        SegmentId sid = id.getSegmentId();
+        SegmentId target = standby.getTracker().getSegmentId(
+                sid.getMostSignificantBits(), sid.getLeastSignificantBits());
+        standby.readSegment(target);
+        return new SegmentNodeState(new RecordId(target, id.getOffset()));
+    }
+
+    private static void assertContent(NodeState head) {
+        NodeState test = head.getChildNode("test");
+        assertEquals(NODES, test.getChildNodeCount(Long.MAX_VALUE));
+        for (int i = 0; i < NODES; i++) {
+            assertEquals(i + Strings.repeat("x", 200), test.getChildNode(
+                    "node" + i).getProperty("value").getValue(Type.STRING));
+        }
+    }
+
+    /**
+     * Loader that reads the segments directly from the primary store,
+     * optionally ignoring batch requests like an older primary.
+     */
+    private static class MemoryLoader implements RemoteSegmentLoader {
+
+        private final SegmentStore source;
+
+        private final SegmentTracker target;
+
+        private final boolean batchSupport;
+
+        private final Queue<Segment> received = new ArrayDeque<Segment>();
+
+        private final List<List<String>> batches = new ArrayList<List<String>>();
+
+        private int singles = 0;
+
+        MemoryLoader(SegmentStore source, SegmentStore target, boolean batchSupport) {
+            this.source = source;
+            this.target = target.getTracker();
+            this.batchSupport = batchSupport;
+        }
+
+        @Override
+        public Segment readSegment(String id) {
+            singles++;
+            return copy(id);
+        }
+
+        @Override
+        public void requestSegments(List<String> ids) {
+            batches.add(ids);
+            if (batchSupport) {
+                for (String id : ids) {
+                    received.add(copy(id));
+                }
+            }
+        }
+
+        @Override
+        public Segment getSegment() {
+            return received.poll();
+        }
+
+        private Segment copy(String id) {
+            UUID uuid = UUID.fromString(id);
+            long msb = uuid.getMostSignificantBits();
+            long lsb = uuid.getLeastSignificantBits();
+            Segment segment = source.readSegment(
+                    source.getTracker().getSegmentId(msb, lsb));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                segment.writeTo(bytes);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return new Segment(target, target.getSegmentId(msb, lsb),
+                    ByteBuffer.wrap(bytes.toByteArray()));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+    }
+
+}